@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.components;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import uk.ac.sanger.artemis.Entry;
+import uk.ac.sanger.artemis.EntryGroup;
+import uk.ac.sanger.artemis.FeatureVector;
+import uk.ac.sanger.artemis.Options;
+import uk.ac.sanger.artemis.Selection;
+import uk.ac.sanger.artemis.SimpleEntryGroup;
+import uk.ac.sanger.artemis.SimpleGotoEventSource;
+import uk.ac.sanger.artemis.io.DocumentEntryFactory;
+import uk.ac.sanger.artemis.util.FileDocument;
+
+/**
+ * Time scrolling a FeatureDisplay that is zoomed out to show the whole of a
+ * dense GFF entry, first with nothing selected and then with a tenth of
+ * the features selected.  Each step scrolls the display and paints it into
+ * an image, which brings the visible feature list up to date.
+ * <pre>
+ * java uk.ac.sanger.artemis.components.FeatureDisplayBenchmark [file.gff]
+ * </pre>
+ * Without a file a GFF3 entry with 50000 genes on a 2Mb sequence is
+ * generated in the temporary directory.  FeatureDisplay needs a display so
+ * this can't be run headless.
+ */
+public class FeatureDisplayBenchmark
+{
+  private static final int STEPS = 20;
+
+  private static File makeEntry(final int features, final int length)
+      throws IOException
+  {
+    final File file = File.createTempFile("display", ".gff");
+    file.deleteOnExit();
+
+    final Random random = new Random(1);
+    final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.write("##gff-version 3\n##sequence-region chr1 1 " + length + "\n");
+    for(int i = 0; i < features; i++)
+    {
+      final int start = 1 + random.nextInt(length - 5000);
+      final int end = start + random.nextInt(5000);
+      final char strand = random.nextBoolean() ? '+' : '-';
+      writer.write("chr1\tbench\tgene\t" + start + "\t" + end + "\t.\t" +
+                   strand + "\t.\tID=gene" + i + "\n");
+    }
+    writer.write("##FASTA\n>chr1\n");
+    final String bases = "acgt";
+    final StringBuffer line = new StringBuffer();
+    for(int i = 0; i < length; i += 60)
+    {
+      line.setLength(0);
+      for(int j = 0; j < 60 && i + j < length; j++)
+        line.append(bases.charAt(random.nextInt(4)));
+      writer.write(line.append('\n').toString());
+    }
+    writer.close();
+    return file;
+  }
+
+  private static long scroll(final FeatureDisplay display,
+                             final Graphics graphics, final int length)
+  {
+    final long t0 = System.currentTimeMillis();
+    for(int i = 0; i < STEPS; i++)
+    {
+      display.setFirstAndLastBase(1 + i * 100, length + i * 100);
+      display.paint(graphics);
+    }
+    return (System.currentTimeMillis() - t0) / STEPS;
+  }
+
+  public static void main(String args[]) throws Exception
+  {
+    final File file;
+    if(args.length == 0)
+      file = makeEntry(50000, 2000000);
+    else
+      file = new File(args[0]);
+
+    final Entry entry = new Entry(DocumentEntryFactory.makeDocumentEntry(
+        Options.getArtemisEntryInformation(), new FileDocument(file), null));
+    final EntryGroup entry_group = new SimpleEntryGroup(entry.getBases());
+    entry_group.add(entry);
+
+    final Selection selection = new Selection(null);
+    final FeatureDisplay display =
+      new FeatureDisplay(entry_group, selection,
+                         new SimpleGotoEventSource(entry_group), null);
+    display.setSize(1200, 400);
+
+    final BufferedImage image =
+      new BufferedImage(1200, 400, BufferedImage.TYPE_INT_RGB);
+    final Graphics graphics = image.getGraphics();
+    final int length = entry_group.getSequenceLength();
+
+    // warm up
+    scroll(display, graphics, length);
+
+    System.out.println(file.getName() + ": " +
+        entry_group.getAllFeaturesCount() + " features, " +
+        scroll(display, graphics, length) + "ms per scroll step");
+
+    final FeatureVector all_features = entry_group.getAllFeatures();
+    final FeatureVector selected = new FeatureVector();
+    for(int i = 0; i < all_features.size(); i += 10)
+      selected.add(all_features.elementAt(i));
+    selection.set(selected);
+
+    System.out.println("  with " + selected.size() + " selected: " +
+        scroll(display, graphics, length) + "ms per scroll step");
+
+    graphics.dispose();
+    System.exit(0);
+  }
+}
@@ -71,6 +71,8 @@ public class TransferAnnotationToolTest
   @Before
   public void setup()
   {
+    // don't leave journals of the edits made by the tests
+    System.setProperty("nojournal", "true");
     entryGroup = readFile();
     originatingFeature = getFeature("gene", "O", "CDS", entryGroup);
 
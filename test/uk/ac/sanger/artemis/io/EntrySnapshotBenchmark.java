@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import uk.ac.sanger.artemis.Options;
+import uk.ac.sanger.artemis.util.FileDocument;
+
+/**
+ * Compare the time to open an EMBL or GenBank entry from its text and from
+ * its binary snapshot (see EntrySnapshot).
+ * <pre>
+ * java uk.ac.sanger.artemis.io.EntrySnapshotBenchmark [file.embl ...]
+ * </pre>
+ * Without a file an EMBL entry with 100000 features on a 10Mb sequence is
+ * generated in the temporary directory.
+ */
+public class EntrySnapshotBenchmark
+{
+  private static final int RUNS = 3;
+
+  private static File makeEntry(final int features, final int length)
+      throws IOException
+  {
+    final File file = File.createTempFile("snapshot", ".embl");
+    file.deleteOnExit();
+    EntrySnapshot.getSnapshotFile(file).deleteOnExit();
+
+    final Random random = new Random(1);
+    final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.write("ID   test; SV 1; linear; genomic DNA; STD; PRO; " +
+                 length + " BP.\nXX\nFH   Key             Location/Qualifiers\n");
+    for(int i = 0; i < features; i++)
+    {
+      final int start = 1 + random.nextInt(length - 5000);
+      final int end = start + random.nextInt(5000);
+      final boolean complement = random.nextBoolean();
+      writer.write("FT   CDS             " +
+                   (complement ? "complement(" + start + ".." + end + ")"
+                               : start + ".." + end) + "\n");
+      writer.write("FT                   /systematic_id=\"TEST_" + i + "\"\n");
+      writer.write("FT                   /product=\"hypothetical protein " +
+                   (i % 100) + "\"\n");
+      writer.write("FT                   /colour=" + (i % 17) + "\n");
+    }
+    writer.write("SQ   Sequence " + length + " BP;\n");
+    final String bases = "acgt";
+    final StringBuffer line = new StringBuffer();
+    for(int i = 0; i < length; i += 60)
+    {
+      line.setLength(0);
+      line.append("    ");
+      for(int j = 0; j < 60 && i + j < length; j++)
+      {
+        if(j % 10 == 0)
+          line.append(' ');
+        line.append(bases.charAt(random.nextInt(4)));
+      }
+      final String count = String.valueOf(Math.min(length, i + 60));
+      while(line.length() < 80 - count.length())
+        line.append(' ');
+      line.append(count).append('\n');
+      writer.write(line.toString());
+    }
+    writer.write("//\n");
+    writer.close();
+    return file;
+  }
+
+  private static DocumentEntry load(final File file, final boolean snapshots)
+      throws Exception
+  {
+    Options.getOptions().setProperty("entry_snapshots",
+                                     snapshots ? "yes" : "no");
+    return DocumentEntryFactory.makeDocumentEntry(
+        Options.getArtemisEntryInformation(), new FileDocument(file), null);
+  }
+
+  private static String getText(final DocumentEntry entry) throws IOException
+  {
+    final StringWriter writer = new StringWriter();
+    entry.writeToStream(writer);
+    return writer.toString();
+  }
+
+  private static void time(final File file) throws Exception
+  {
+    final File snapshot = EntrySnapshot.getSnapshotFile(file);
+    snapshot.delete();
+
+    // the first load with snapshots on writes the snapshot
+    final String text = getText(load(file, false));
+    long t0 = System.currentTimeMillis();
+    load(file, true);
+    System.out.println(file.getName() + ": text load and write snapshot " +
+        (System.currentTimeMillis() - t0) + "ms, snapshot " +
+        snapshot.length() + " bytes");
+
+    for(int i = 0; i < RUNS; i++)
+    {
+      t0 = System.currentTimeMillis();
+      load(file, false);
+      final long text_time = System.currentTimeMillis() - t0;
+
+      t0 = System.currentTimeMillis();
+      final DocumentEntry entry = load(file, true);
+      final long snapshot_time = System.currentTimeMillis() - t0;
+
+      System.out.println("  text " + text_time + "ms, snapshot " +
+          snapshot_time + "ms, " + entry.getFeatureCount() + " features" +
+          (text.equals(getText(entry)) ? "" : " - DIFFERENT"));
+    }
+  }
+
+  public static void main(String args[]) throws Exception
+  {
+    if(args.length == 0)
+      time(makeEntry(100000, 10000000));
+    for(int i = 0; i < args.length; i++)
+      time(new File(args[i]));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Compare range query times of the bucket and interval FeatureTree indexes.
+ * <pre>
+ * java uk.ac.sanger.artemis.io.FeatureTreeBenchmark [file.gff]
+ * </pre>
+ * Without a GFF file 500000 random features are generated on a 100Mb
+ * sequence along with a few whole-sequence features (e.g. source and gaps).
+ */
+public class FeatureTreeBenchmark
+{
+  private static final int QUERIES = 20000;
+  private static final int WINDOW = 20000;
+
+  /**
+   * Read the start and end columns of a GFF file.
+   */
+  private static int[][] readGff(final String fileName) throws IOException
+  {
+    final Vector<int[]> ranges = new Vector<int[]>();
+    final BufferedReader reader = new BufferedReader(new FileReader(fileName));
+    String line;
+    while((line = reader.readLine()) != null)
+    {
+      if(line.startsWith("##FASTA"))
+        break;
+      if(line.startsWith("#") || line.trim().length() == 0)
+        continue;
+      final String cols[] = line.split("\\t");
+      if(cols.length < 5)
+        continue;
+      ranges.add(new int[] { Integer.parseInt(cols[3]),
+                             Integer.parseInt(cols[4]) });
+    }
+    reader.close();
+    return ranges.toArray(new int[ranges.size()][]);
+  }
+
+  private static int[][] makeRandom(final int count, final int length)
+  {
+    final Random random = new Random(1);
+    final int[][] ranges = new int[count][];
+    for(int i = 0; i < count; i++)
+    {
+      if(i < 5)
+      {
+        ranges[i] = new int[] { 1, length };
+        continue;
+      }
+      final int start = 1 + random.nextInt(length - 5000);
+      ranges[i] = new int[] { start, start + random.nextInt(5000) };
+    }
+    return ranges;
+  }
+
+  private static FeatureTree load(final int[][] ranges,
+                                  final FeatureIndex index) throws Exception
+  {
+    final FeatureTree tree = new FeatureTree(new FeatureComparator(), index);
+    for(int i = 0; i < ranges.length; i++)
+      tree.add(new EmblStreamFeature(new Key("misc_feature"),
+          new Location(new Range(ranges[i][0], ranges[i][1])),
+          new QualifierVector()));
+    return tree;
+  }
+
+  private static void time(final String name, final int[][] ranges,
+                           final FeatureIndex index, final int length)
+      throws Exception
+  {
+    long t0 = System.currentTimeMillis();
+    final FeatureTree tree = load(ranges, index);
+    final long loadTime = System.currentTimeMillis() - t0;
+
+    final Random random = new Random(2);
+    long found = 0;
+    t0 = System.currentTimeMillis();
+    for(int i = 0; i < QUERIES; i++)
+    {
+      final int start = 1 + random.nextInt(Math.max(1, length - WINDOW));
+      found += tree.getFeaturesInRange(new Range(start, start + WINDOW)).size();
+    }
+    final long queryTime = System.currentTimeMillis() - t0;
+
+    System.out.println(name + ": load " + loadTime + "ms, " + QUERIES +
+        " queries " + queryTime + "ms (" + found + " features found)");
+  }
+
+  public static void main(String args[]) throws Exception
+  {
+    final int[][] ranges;
+    if(args.length > 0)
+      ranges = readGff(args[0]);
+    else
+      ranges = makeRandom(500000, 100000000);
+
+    int length = 1;
+    for(int i = 0; i < ranges.length; i++)
+      length = Math.max(length, ranges[i][1]);
+
+    System.out.println(ranges.length + " features, max base " + length);
+    for(int i = 0; i < 2; i++)
+    {
+      time("bucket  ", ranges,
+          new BucketFeatureIndex(new FeatureComparator()), length);
+      time("interval", ranges, new IntervalFeatureIndex(), length);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import uk.ac.sanger.artemis.util.OutOfRangeException;
+
+public class FeatureTreeTest
+{
+  /**
+   * Make a feature covering start..end.
+   */
+  static Feature makeFeature(final int start, final int end)
+      throws OutOfRangeException, InvalidRelationException
+  {
+    return new EmblStreamFeature(new Key("misc_feature"),
+        new Location(new Range(start, end)), new QualifierVector());
+  }
+
+  /**
+   * Make a tree of random features, some of them very long.
+   */
+  static FeatureTree makeTree(final FeatureIndex index, final int count,
+                              final long seed)
+      throws OutOfRangeException, InvalidRelationException
+  {
+    final FeatureTree tree = new FeatureTree(new FeatureComparator(), index);
+    final Random random = new Random(seed);
+    for(int i = 0; i < count; i++)
+    {
+      final int start = 1 + random.nextInt(1000000);
+      final int length = (i % 100 == 0 ? random.nextInt(1000000) :
+                                         random.nextInt(2000));
+      tree.add(makeFeature(start, start + length));
+    }
+    return tree;
+  }
+
+  private static Set<Feature> asSet(final FeatureVector features)
+  {
+    final Set<Feature> set = new HashSet<Feature>();
+    for(int i = 0; i < features.size(); i++)
+      set.add(features.featureAt(i));
+    return set;
+  }
+
+  /**
+   * Test that the interval index returns the same features as a linear
+   * scan.
+   */
+  @Test
+  public void testIntervalIndexMatchesScan() throws Exception
+  {
+    final FeatureTree tree = makeTree(new IntervalFeatureIndex(), 5000, 7);
+    final Random random = new Random(11);
+
+    for(int i = 0; i < 200; i++)
+    {
+      final int start = 1 + random.nextInt(1000000);
+      final Range range = new Range(start, start + random.nextInt(20000));
+
+      final Set<Feature> expected = new HashSet<Feature>();
+      final FeatureEnumeration features = tree.features();
+      while(features.hasMoreFeatures())
+      {
+        final Feature feature = features.nextFeature();
+        if(feature.getLocation().getTotalRange().overlaps(range))
+          expected.add(feature);
+      }
+
+      final FeatureVector found = tree.getFeaturesInRange(range);
+      assertEquals("No duplicates", found.size(), asSet(found).size());
+      assertEquals("Features in " + range, expected, asSet(found));
+    }
+  }
+
+  /**
+   * Test that the interval and bucket indexes agree, including after
+   * features have been removed.
+   */
+  @Test
+  public void testIndexesAgree() throws Exception
+  {
+    final FeatureTree interval = makeTree(new IntervalFeatureIndex(), 3000, 3);
+    final FeatureTree bucket =
+      makeTree(new BucketFeatureIndex(new FeatureComparator()), 3000, 3);
+
+    final Random random = new Random(5);
+    final Feature[] features = (Feature[]) interval.toArray(new Feature[0]);
+    for(int i = 0; i < features.length; i += 3)
+      interval.remove(features[i]);
+    final Feature[] bucket_features = (Feature[]) bucket.toArray(new Feature[0]);
+    for(int i = 0; i < bucket_features.length; i += 3)
+      bucket.remove(bucket_features[i]);
+
+    assertEquals(interval.size(), bucket.size());
+
+    for(int i = 0; i < 200; i++)
+    {
+      final int start = 1 + random.nextInt(1000000);
+      final Range range = new Range(start, start + random.nextInt(5000));
+      assertEquals("Feature count in " + range,
+          bucket.getFeaturesInRange(range).size(),
+          interval.getFeaturesInRange(range).size());
+    }
+  }
+
+  /**
+   * Test that the enumeration and getNextFeature() order is unchanged.
+   */
+  @Test
+  public void testOrdering() throws Exception
+  {
+    final FeatureTree tree = new FeatureTree(new FeatureComparator());
+    final Feature f3 = makeFeature(50, 100);
+    final Feature f1 = makeFeature(1, 100);
+    final Feature f4 = makeFeature(150, 250);
+    final Feature f2 = makeFeature(1, 200);
+    tree.add(f3);
+    tree.add(f1);
+    tree.add(f4);
+    tree.add(f2);
+
+    final FeatureEnumeration features = tree.features();
+    assertSame(f1, features.nextFeature());
+    assertSame(f2, features.nextFeature());
+    assertSame(f3, features.nextFeature());
+    assertSame(f4, features.nextFeature());
+    assertSame(f3, tree.getNextFeature(f2));
+    assertNull(tree.getNextFeature(f4));
+  }
+}
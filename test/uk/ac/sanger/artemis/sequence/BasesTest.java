@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.sequence;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.ac.sanger.artemis.io.FastaStreamSequence;
+import uk.ac.sanger.artemis.io.Range;
+
+public class BasesTest
+{
+  /**
+   * Make a Bases object holding random bases.
+   */
+  private static Bases makeBases(final int length, final long seed)
+  {
+    final Random random = new Random(seed);
+    final char[] bases = new char[length];
+    for(int i = 0; i < length; i++)
+      bases[i] = "acgt".charAt(random.nextInt(4));
+    return new Bases(new FastaStreamSequence(new String(bases), "test"));
+  }
+
+  /**
+   * Check the stop codons of every frame against a search of the bases.
+   */
+  private static void checkStopCodons(final Bases bases) throws Exception
+  {
+    final String sequence = bases.toString();
+    final int length = sequence.length();
+
+    for(int frame = 0; frame < 3; frame++)
+    {
+      final int[] stops =
+        bases.getStopCodons(new Range(1 + frame, length), Bases.FORWARD);
+
+      int count = 0;
+      for(int i = frame; i + 2 < length; i += 3)
+      {
+        if(Bases.isStopCodon(sequence.charAt(i), sequence.charAt(i + 1),
+                             sequence.charAt(i + 2)))
+          assertEquals("forward stop codon", i + 1, stops[count++]);
+      }
+      assertTrue("extra forward stop codon",
+                 count == stops.length || stops[count] == 0);
+    }
+
+    final int[][] reverse_stops =
+      bases.getStopOrStartCodons(new Range(1, length), Bases.REVERSE, null);
+    final int[] counts = new int[3];
+    for(int i = 2; i < length; i++)
+    {
+      if(Bases.isStopCodon(Bases.complement(sequence.charAt(i)),
+                           Bases.complement(sequence.charAt(i - 1)),
+                           Bases.complement(sequence.charAt(i - 2))))
+      {
+        final int frame = (length - 1 - i) % 3;
+        assertEquals("reverse stop codon", length - i,
+                     reverse_stops[frame][counts[frame]++]);
+      }
+    }
+    for(int frame = 0; frame < 3; frame++)
+      assertTrue("extra reverse stop codon",
+                 counts[frame] == reverse_stops[frame].length ||
+                 reverse_stops[frame][counts[frame]] == 0);
+  }
+
+  /**
+   * Edit the sequence while the stop codons are still being searched for
+   * in the background.
+   */
+  @Test
+  public void testEditDuringSearch() throws Exception
+  {
+    for(int i = 0; i < 10; i++)
+    {
+      final Bases bases = makeBases(1000000, i);
+      bases.addBases(500, Bases.FORWARD, "a");
+      checkStopCodons(bases);
+    }
+  }
+
+  /**
+   * Edit the sequence after the stop codons have been found.
+   */
+  @Test
+  public void testEditAfterSearch() throws Exception
+  {
+    final Random random = new Random(1);
+    final Bases bases = makeBases(400000, 1);
+    checkStopCodons(bases);
+
+    for(int i = 0; i < 20; i++)
+    {
+      final int position = 1 + random.nextInt(bases.getLength() - 10);
+      if(random.nextBoolean())
+        bases.addBases(position, Bases.FORWARD,
+                       "acgt".substring(random.nextInt(4)));
+      else
+        bases.deleteRange(new Range(position, position + random.nextInt(8)));
+      checkStopCodons(bases);
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/* AlignMatchBlocks.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis;
+
+import uk.ac.sanger.artemis.io.Range;
+import uk.ac.sanger.artemis.util.OutOfRangeException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ *  Co-linear AlignMatch objects merged into blocks for showing a comparison
+ *  when it is zoomed out too far for the separate matches to be seen.  Two
+ *  matches are merged if they are in the same orientation, lie on (nearly)
+ *  the same diagonal and the gaps between them on both sequences are no
+ *  more than a given number of bases.  Each block is an AlignMatch that
+ *  spans its matches, with the highest score of them and the mean percent
+ *  identity weighted by length.
+ **/
+
+public class AlignMatchBlocks
+{
+  /** The blocks. */
+  private final AlignMatch[] blocks;
+
+  /** Index of the blocks by subject and query position. */
+  private final AlignMatchIndex index;
+
+  /**
+   *  Merge the given matches into blocks.
+   *  @param matches the matches to merge
+   *  @param max_gap matches further apart than this number of bases on
+   *    either sequence are not merged
+   **/
+  public AlignMatchBlocks(final AlignMatch[] matches, final int max_gap)
+  {
+    final Match[] sorted = new Match[matches.length];
+    for(int i = 0; i < matches.length; ++i)
+      sorted[i] = new Match(matches[i], max_gap);
+
+    Arrays.sort(sorted, new Comparator<Match>()
+    {
+      public int compare(final Match a, final Match b)
+      {
+        if(a.rev_match != b.rev_match)
+          return a.rev_match ? 1 : -1;
+        if(a.diagonal != b.diagonal)
+          return a.diagonal < b.diagonal ? -1 : 1;
+        if(a.subject_start != b.subject_start)
+          return a.subject_start < b.subject_start ? -1 : 1;
+        return 0;
+      }
+    });
+
+    final AlignMatch[] merged = new AlignMatch[sorted.length];
+    int block_count = 0;
+    int i = 0;
+
+    while(i < sorted.length)
+    {
+      final Match first = sorted[i];
+
+      int subject_start = first.subject_start;
+      int subject_end   = first.subject_end;
+      int query_start   = first.query_start;
+      int query_end     = first.query_end;
+      int score         = first.match.getScore();
+      long percent_id_sum    = 0;
+      long percent_id_length = 0;
+
+      int j = i;
+      for( ; j < sorted.length; ++j)
+      {
+        final Match next = sorted[j];
+
+        if(j > i)
+        {
+          if(next.rev_match != first.rev_match ||
+             next.diagonal != first.diagonal ||
+             next.subject_start > subject_end + max_gap ||
+             next.query_start > query_end + max_gap ||
+             next.query_end < query_start - max_gap)
+            break;
+
+          subject_end   = Math.max(subject_end, next.subject_end);
+          query_start   = Math.min(query_start, next.query_start);
+          query_end     = Math.max(query_end, next.query_end);
+          score         = Math.max(score, next.match.getScore());
+        }
+
+        final int percent_id = next.match.getPercentID();
+        if(percent_id > -1)
+        {
+          final int length = next.match.getLength() + 1;
+          percent_id_sum    += (long) percent_id * length;
+          percent_id_length += length;
+        }
+      }
+
+      if(j == i + 1)
+        merged[block_count++] = first.match;
+      else
+      {
+        final int percent_id;
+        if(percent_id_length > 0)
+          percent_id = (int) (percent_id_sum / percent_id_length);
+        else
+          percent_id = -1;
+
+        try
+        {
+          merged[block_count++] =
+            new AlignMatch(new Range(subject_start, subject_end),
+                           new Range(query_start, query_end),
+                           first.rev_match, score, percent_id);
+        }
+        catch(OutOfRangeException e)
+        {
+          throw new Error("internal error - unexpected exception: " + e);
+        }
+      }
+
+      i = j;
+    }
+
+    blocks = new AlignMatch[block_count];
+    System.arraycopy(merged, 0, blocks, 0, block_count);
+    index = new AlignMatchIndex(blocks);
+  }
+
+  /**
+   *  Return the blocks.
+   **/
+  public AlignMatch[] getBlocks()
+  {
+    return blocks;
+  }
+
+  /**
+   *  Return an index of the blocks (see getBlocks()) by position.
+   **/
+  public AlignMatchIndex getIndex()
+  {
+    return index;
+  }
+
+  /**
+   *  A match with its ranges and the diagonal it is on.
+   **/
+  private static class Match
+  {
+    final AlignMatch match;
+    final boolean rev_match;
+    final int subject_start;
+    final int subject_end;
+    final int query_start;
+    final int query_end;
+
+    /**
+     *  The diagonal (query start - subject start, or query end + subject
+     *  start for a reverse match) divided by the maximum gap.
+     **/
+    final int diagonal;
+
+    Match(final AlignMatch match, final int max_gap)
+    {
+      this.match     = match;
+      rev_match      = match.isRevMatch();
+      subject_start  = match.getSubjectSequenceRange().getStart();
+      subject_end    = match.getSubjectSequenceRange().getEnd();
+      query_start    = match.getQuerySequenceRange().getStart();
+      query_end      = match.getQuerySequenceRange().getEnd();
+
+      if(rev_match)
+        diagonal = (query_end + subject_start) / max_gap;
+      else
+        diagonal = (int) Math.floor((double) (query_start - subject_start) /
+                                    max_gap);
+    }
+  }
+}
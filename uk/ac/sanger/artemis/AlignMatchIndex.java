@@ -0,0 +1,316 @@
+/* AlignMatchIndex.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ *  An index over an array of AlignMatch objects that finds the matches
+ *  that overlap a range of the subject or of the query sequence without
+ *  looking at every match.  Each match is put in the smallest bin that
+ *  holds its whole range; the bins are 4kb at the lowest level and each
+ *  level up is eight times bigger.  Within a bin the matches are sorted by
+ *  score so that the score cut-offs skip the matches outside them.
+ *  <p>
+ *  The index holds the positions of the matches in the array it was made
+ *  from, so it must be made again if the array is reordered or if the
+ *  ranges of the matches change.
+ **/
+
+public class AlignMatchIndex
+{
+  /** The size of the smallest bins is 2^FIRST_SHIFT bases. */
+  private static final int FIRST_SHIFT = 12;
+
+  /** Each level of bins is 2^NEXT_SHIFT times bigger than the one below. */
+  private static final int NEXT_SHIFT = 3;
+
+  /** The bins of the matches by subject range. */
+  private final Bins subject_bins;
+
+  /** The bins of the matches by query range. */
+  private final Bins query_bins;
+
+  /** The score of each match. */
+  private final int[] scores;
+
+  /** The percent identity of each match. */
+  private final int[] percent_ids;
+
+  /** The length of each match. */
+  private final int[] lengths;
+
+  /**
+   *  Create a new AlignMatchIndex for the given matches.
+   **/
+  public AlignMatchIndex(final AlignMatch[] matches)
+  {
+    final int matches_length = matches.length;
+
+    scores      = new int[matches_length];
+    percent_ids = new int[matches_length];
+    lengths     = new int[matches_length];
+
+    final int[] subject_starts = new int[matches_length];
+    final int[] subject_ends   = new int[matches_length];
+    final int[] query_starts   = new int[matches_length];
+    final int[] query_ends     = new int[matches_length];
+
+    for(int i = 0; i < matches_length; ++i)
+    {
+      final AlignMatch match = matches[i];
+
+      scores[i]      = match.getScore();
+      percent_ids[i] = match.getPercentID();
+      lengths[i]     = match.getLength();
+
+      subject_starts[i] = match.getSubjectSequenceRange().getStart();
+      subject_ends[i]   = match.getSubjectSequenceRange().getEnd();
+      query_starts[i]   = match.getQuerySequenceRange().getStart();
+      query_ends[i]     = match.getQuerySequenceRange().getEnd();
+    }
+
+    subject_bins = new Bins(subject_starts, subject_ends, scores);
+    query_bins   = new Bins(query_starts, query_ends, scores);
+  }
+
+  /**
+   *  Return the positions (in ascending order) of the matches that overlap
+   *  the given subject range or the given query range and that pass the
+   *  score, percent identity and length cut-offs.  Matches without a score
+   *  or percent identity (-1) pass those cut-offs.
+   **/
+  public int[] getMatches(final int subject_start, final int subject_end,
+                          final int query_start, final int query_end,
+                          final int minimum_score, final int maximum_score,
+                          final int minimum_percent_id,
+                          final int maximum_percent_id,
+                          final int minimum_length)
+  {
+    final BitSet found = new BitSet(scores.length);
+
+    subject_bins.find(subject_start, subject_end,
+                      minimum_score, maximum_score,
+                      minimum_percent_id, maximum_percent_id,
+                      minimum_length, found);
+    query_bins.find(query_start, query_end,
+                    minimum_score, maximum_score,
+                    minimum_percent_id, maximum_percent_id,
+                    minimum_length, found);
+
+    final int[] positions = new int[found.cardinality()];
+    int count = 0;
+    for(int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+      positions[count++] = i;
+
+    return positions;
+  }
+
+  /**
+   *  Return true if and only if the match at the given position passes the
+   *  percent identity and length cut-offs.
+   **/
+  private boolean passes(final int position,
+                         final int minimum_percent_id,
+                         final int maximum_percent_id,
+                         final int minimum_length)
+  {
+    final int percent_id = percent_ids[position];
+    if(percent_id > -1 &&
+       (percent_id < minimum_percent_id || percent_id > maximum_percent_id))
+      return false;
+
+    return lengths[position] >= minimum_length;
+  }
+
+  /**
+   *  The matches binned by their range on one of the sequences.
+   **/
+  private class Bins
+  {
+    /** The largest base position of any match. */
+    private final int max_position;
+
+    /** The shift that gives the bin number of a base at each level. */
+    private final int[] level_shifts;
+
+    /** The number of the first bin of each level in bin_starts. */
+    private final int[] level_offsets;
+
+    /**
+     *  The matches of bin n are at entries[bin_starts[n]] to
+     *  entries[bin_starts[n+1] - 1].
+     **/
+    private final int[] bin_starts;
+
+    /** The positions of the matches, grouped by bin. */
+    private final int[] entries;
+
+    /** The score of the match at the same index of entries. */
+    private final int[] entry_scores;
+
+    /**
+     *  Bin the matches with the given start and end positions.
+     **/
+    Bins(final int[] starts, final int[] ends, final int[] scores)
+    {
+      final int matches_length = starts.length;
+
+      int max = 0;
+      for(int i = 0; i < matches_length; ++i)
+      {
+        if(ends[i] > max)
+          max = ends[i];
+      }
+      max_position = max;
+
+      int level_count = 1;
+      for(int shift = FIRST_SHIFT; (max_position >> shift) > 0;
+          shift += NEXT_SHIFT)
+        ++level_count;
+
+      level_shifts  = new int[level_count];
+      level_offsets = new int[level_count];
+
+      int bin_count = 0;
+      for(int level = 0; level < level_count; ++level)
+      {
+        level_shifts[level]  = FIRST_SHIFT + level * NEXT_SHIFT;
+        level_offsets[level] = bin_count;
+        bin_count += (max_position >> level_shifts[level]) + 1;
+      }
+
+      // count the matches in each bin
+      final int[] match_bins = new int[matches_length];
+      bin_starts = new int[bin_count + 1];
+
+      for(int i = 0; i < matches_length; ++i)
+      {
+        match_bins[i] = getBin(starts[i], ends[i]);
+        ++bin_starts[match_bins[i] + 1];
+      }
+
+      for(int bin = 0; bin < bin_count; ++bin)
+        bin_starts[bin + 1] += bin_starts[bin];
+
+      // sort by bin then by score with the unscored matches first and then
+      // the highest scores first
+      final long[] keys = new long[matches_length];
+      final int[] next_entry = new int[bin_count];
+      System.arraycopy(bin_starts, 0, next_entry, 0, bin_count);
+
+      for(int i = 0; i < matches_length; ++i)
+      {
+        final int score_key =
+          scores[i] < 0 ? Integer.MIN_VALUE : -scores[i];
+        keys[next_entry[match_bins[i]]++] =
+          ((long) score_key << 32) | i;
+      }
+
+      entries      = new int[matches_length];
+      entry_scores = new int[matches_length];
+
+      for(int bin = 0; bin < bin_count; ++bin)
+      {
+        final int bin_start = bin_starts[bin];
+        final int bin_end   = bin_starts[bin + 1];
+
+        if(bin_end - bin_start > 1)
+          Arrays.sort(keys, bin_start, bin_end);
+
+        for(int j = bin_start; j < bin_end; ++j)
+        {
+          entries[j]      = (int) keys[j];
+          entry_scores[j] = scores[entries[j]];
+        }
+      }
+    }
+
+    /**
+     *  Return the number of the smallest bin that holds the given range.
+     **/
+    private int getBin(final int start, final int end)
+    {
+      final int first = Math.max(start, 0);
+      for(int level = 0; level < level_shifts.length - 1; ++level)
+      {
+        final int shift = level_shifts[level];
+        if(first >> shift == end >> shift)
+          return level_offsets[level] + (first >> shift);
+      }
+
+      return level_offsets[level_shifts.length - 1];
+    }
+
+    /**
+     *  Set the positions of the matches that overlap the given range and
+     *  pass the cut-offs in found.
+     **/
+    void find(final int start, final int end,
+              final int minimum_score, final int maximum_score,
+              final int minimum_percent_id, final int maximum_percent_id,
+              final int minimum_length, final BitSet found)
+    {
+      if(end < 0 || start > max_position || start > end)
+        return;
+
+      final int first = Math.max(start, 0);
+      final int last  = Math.min(end, max_position);
+
+      for(int level = 0; level < level_shifts.length; ++level)
+      {
+        final int shift = level_shifts[level];
+        final int last_bin = level_offsets[level] + (last >> shift);
+
+        for(int bin = level_offsets[level] + (first >> shift);
+            bin <= last_bin; ++bin)
+        {
+          final int bin_end = bin_starts[bin + 1];
+          int j = bin_starts[bin];
+
+          // matches without a score
+          for( ; j < bin_end && entry_scores[j] < 0; ++j)
+          {
+            if(passes(entries[j], minimum_percent_id, maximum_percent_id,
+                      minimum_length))
+              found.set(entries[j]);
+          }
+
+          // skip the scores above the maximum
+          while(j < bin_end && entry_scores[j] > maximum_score)
+            ++j;
+
+          for( ; j < bin_end && entry_scores[j] >= minimum_score; ++j)
+          {
+            if(passes(entries[j], minimum_percent_id, maximum_percent_id,
+                      minimum_length))
+              found.set(entries[j]);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,449 @@
+/* BinaryComparisonData.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis;
+
+import uk.ac.sanger.artemis.io.Range;
+import uk.ac.sanger.artemis.util.Document;
+import uk.ac.sanger.artemis.util.FileDocument;
+import uk.ac.sanger.artemis.util.OutOfRangeException;
+import uk.ac.sanger.artemis.util.SnapshotFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ *  This class implements the ComparisonData interface for comparisons
+ *  stored in a binary file.  The file holds the subject and query ranges,
+ *  score, percent identity and orientation of each match as arrays of
+ *  numbers, so it is read much faster than the text formats.  The file is
+ *  memory mapped when it is read.
+ *  <p>
+ *  A binary file can be made from any of the text formats with:
+ *  <pre>
+ *  java uk.ac.sanger.artemis.BinaryComparisonData comparison_file binary_file
+ *  </pre>
+ *  and can then be given to ACT in place of the text file.  If the
+ *  comparison_snapshots option is set a binary copy of each text
+ *  comparison file that is read is saved next to it (as .file_name.cmp)
+ *  and used while the size and modification time of the text file are
+ *  unchanged.  The file ends with a CRC32 of the match count and the
+ *  matches so that a damaged file isn't used.
+ **/
+
+public class BinaryComparisonData extends SimpleComparisonData
+    implements ComparisonData
+{
+  private static final int MAGIC   = 0x4143544d;
+  private static final int VERSION = 2;
+
+  /** magic, version, source file length, source file time, match count */
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+  /** six ints and the orientation byte of each match */
+  private static final int MATCH_SIZE = 6 * 4 + 1;
+
+  /** Stored in place of the source file length and time in a file made
+   *  by main(). */
+  private static final long NO_SOURCE = -1;
+
+  /** Where the binary copies of text comparison files are kept. */
+  private static final SnapshotFile SNAPSHOT_FILE =
+    new SnapshotFile("comparison_snapshots", ".cmp");
+
+  /**
+   *  Create a new BinaryComparisonData from the contents of a binary
+   *  comparison file, starting after the header.
+   **/
+  private BinaryComparisonData(final ByteBuffer buffer, final int count)
+      throws IOException
+  {
+    final int[] subject_starts = readInts(buffer, count);
+    final int[] subject_ends   = readInts(buffer, count);
+    final int[] query_starts   = readInts(buffer, count);
+    final int[] query_ends     = readInts(buffer, count);
+    final int[] scores         = readInts(buffer, count);
+    final int[] percent_ids    = readInts(buffer, count);
+
+    if(buffer.remaining() < count)
+      throw new IOException("binary comparison file is truncated");
+    final byte[] rev_matches = new byte[count];
+    buffer.get(rev_matches);
+
+    final AlignMatch[] matches = new AlignMatch[count];
+    try
+    {
+      for(int i = 0; i < count; ++i)
+        matches[i] =
+          new AlignMatch(new Range(subject_starts[i], subject_ends[i]),
+                         new Range(query_starts[i], query_ends[i]),
+                         rev_matches[i] != 0, scores[i], percent_ids[i]);
+    }
+    catch(OutOfRangeException e)
+    {
+      throw new IOException("bad range in binary comparison file: " +
+                            e.getMessage());
+    }
+
+    setMatches(matches);
+  }
+
+  /**
+   *  Create a new, empty instance of BinaryComparisonData.
+   **/
+  protected BinaryComparisonData()
+  {
+  }
+
+  /**
+   *  Returns a new, empty instance of this type of object;
+   **/
+  protected SimpleComparisonData getNewSimpleComparisonData()
+  {
+    return new BinaryComparisonData();
+  }
+
+  /**
+   *  Binary comparison files have no text lines so this always throws an
+   *  IOException.
+   **/
+  protected AlignMatch makeMatchFromString(final String line)
+      throws IOException
+  {
+    throw new IOException("not a text comparison file");
+  }
+
+  /**
+   *  Read the given Document if it is a binary comparison file, or else
+   *  read the binary copy of the Document if there is one that is up to
+   *  date and the comparison_snapshots option is set.  Returns null if
+   *  there is neither.
+   *  @param in The contents of the Document, which must support mark().
+   *    If null is returned the stream is left at the start of the Document
+   *    so that the text can be read from it.
+   **/
+  static ComparisonData read(final Document document, final InputStream in)
+      throws IOException
+  {
+    if(isBinary(in))
+    {
+      final ByteBuffer buffer;
+      if(document instanceof FileDocument &&
+         !document.getName().endsWith(".gz"))
+      {
+        in.close();
+        buffer = SnapshotFile.map(((FileDocument) document).getFile());
+      }
+      else
+        buffer = readAll(in);
+
+      try
+      {
+        return read(buffer, null);
+      }
+      catch(RuntimeException e)
+      {
+        throw new IOException("corrupt binary comparison file: " + e);
+      }
+    }
+
+    final File file = SnapshotFile.getFile(document);
+    if(file == null || !SNAPSHOT_FILE.isEnabled())
+      return null;
+
+    final File snapshot_file = SNAPSHOT_FILE.getSnapshotFile(file);
+    if(!snapshot_file.exists())
+      return null;
+
+    final ByteBuffer buffer;
+    try
+    {
+      buffer = SnapshotFile.map(snapshot_file);
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not read " + snapshot_file +
+                         ": " + e.getMessage());
+      return null;
+    }
+
+    try
+    {
+      return read(buffer, file);
+    }
+    catch(IOException e)
+    {
+      deleteCorrupt(snapshot_file, e);
+      return null;
+    }
+    catch(RuntimeException e)
+    {
+      // a garbled snapshot can run off the end of the buffer
+      deleteCorrupt(snapshot_file, e);
+      return null;
+    }
+  }
+
+  /**
+   *  Delete a binary copy that could not be read so that the text file is
+   *  read instead and a new copy is written.
+   **/
+  private static void deleteCorrupt(final File snapshot_file,
+                                    final Exception e)
+  {
+    System.err.println("warning: ignoring corrupt snapshot " + snapshot_file +
+                       ": " + e);
+    snapshot_file.delete();
+  }
+
+  /**
+   *  Write a binary copy of the comparison that was read from the text of
+   *  the given Document.  Nothing is written unless the
+   *  comparison_snapshots option is set.
+   **/
+  static void update(final Document document,
+                     final SimpleComparisonData comparison_data)
+  {
+    final File file = SnapshotFile.getFile(document);
+    if(file == null || !SNAPSHOT_FILE.isEnabled())
+      return;
+
+    final File snapshot_file = SNAPSHOT_FILE.getSnapshotFile(file);
+    try
+    {
+      write(comparison_data.getMatches(), file, snapshot_file);
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not write " + snapshot_file +
+                         ": " + e.getMessage());
+    }
+  }
+
+  /**
+   *  Return true if the stream starts with the binary comparison magic
+   *  number.  The stream is reset to where it was.
+   **/
+  private static boolean isBinary(final InputStream in)
+      throws IOException
+  {
+    in.mark(4);
+    try
+    {
+      return new DataInputStream(in).readInt() == MAGIC;
+    }
+    catch(java.io.EOFException e)
+    {
+      return false;
+    }
+    finally
+    {
+      in.reset();
+    }
+  }
+
+  /**
+   *  Read the comparison in the buffer.  If source_file isn't null then
+   *  null is returned unless the buffer was made from that file as it is
+   *  now.
+   **/
+  private static ComparisonData read(final ByteBuffer buffer,
+                                     final File source_file)
+      throws IOException
+  {
+    if(buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC)
+      throw new IOException("not a binary comparison file");
+    if(buffer.getInt() != VERSION)
+      throw new IOException("unknown binary comparison file version");
+
+    final long source_length = buffer.getLong();
+    final long source_time   = buffer.getLong();
+    if(source_file != null &&
+       (source_length != source_file.length() ||
+        source_time != source_file.lastModified()))
+      return null;
+
+    checkCRC(buffer);
+
+    final int count = buffer.getInt();
+    if(count < 0 ||
+       HEADER_SIZE + (long)count * MATCH_SIZE + 4 != buffer.limit())
+      throw new IOException("binary comparison file has the wrong length " +
+                            "for " + count + " matches");
+
+    return new BinaryComparisonData(buffer, count);
+  }
+
+  /**
+   *  Check the CRC32 at the end of the file against the bytes from the
+   *  match count up to the CRC.  The position of the buffer isn't changed.
+   **/
+  private static void checkCRC(final ByteBuffer buffer)
+      throws IOException
+  {
+    final int crc_position = buffer.limit() - 4;
+    if(crc_position < HEADER_SIZE)
+      throw new IOException("binary comparison file is truncated");
+
+    final ByteBuffer body = buffer.duplicate();
+    body.position(HEADER_SIZE - 4);
+    body.limit(crc_position);
+
+    final CRC32 crc = new CRC32();
+    final byte[] bytes = new byte[65536];
+    while(body.hasRemaining())
+    {
+      final int length = Math.min(bytes.length, body.remaining());
+      body.get(bytes, 0, length);
+      crc.update(bytes, 0, length);
+    }
+
+    if(buffer.getInt(crc_position) != (int)crc.getValue())
+      throw new IOException("binary comparison file checksum does not match");
+  }
+
+  /**
+   *  Read count ints from the buffer.
+   **/
+  private static int[] readInts(final ByteBuffer buffer, final int count)
+      throws IOException
+  {
+    if(buffer.remaining() / 4 < count)
+      throw new IOException("binary comparison file is truncated");
+
+    final int[] values = new int[count];
+    final IntBuffer int_buffer = buffer.asIntBuffer();
+    int_buffer.get(values);
+    buffer.position(buffer.position() + count * 4);
+    return values;
+  }
+
+  private static ByteBuffer readAll(final InputStream in) throws IOException
+  {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[65536];
+    try
+    {
+      int count;
+      while((count = in.read(buffer)) != -1)
+        bytes.write(buffer, 0, count);
+    }
+    finally
+    {
+      in.close();
+    }
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  /**
+   *  Write the matches to a binary comparison file.
+   *  @param source_file the text file the matches were read from or null
+   **/
+  private static void write(final AlignMatch[] matches,
+                            final File source_file, final File binary_file)
+      throws IOException
+  {
+    SnapshotFile.write(binary_file, new SnapshotFile.Contents()
+    {
+      public void writeTo(final FileOutputStream file_out) throws IOException
+      {
+        final CRC32 crc = new CRC32();
+        final DataOutputStream out =
+          new DataOutputStream(new CheckedOutputStream(
+              new BufferedOutputStream(file_out, 65536), crc));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        if(source_file == null)
+        {
+          out.writeLong(NO_SOURCE);
+          out.writeLong(NO_SOURCE);
+        }
+        else
+        {
+          out.writeLong(source_file.length());
+          out.writeLong(source_file.lastModified());
+        }
+        crc.reset();
+        out.writeInt(matches.length);
+
+        for(int i = 0; i < matches.length; ++i)
+          out.writeInt(matches[i].getSubjectSequenceRange().getStart());
+        for(int i = 0; i < matches.length; ++i)
+          out.writeInt(matches[i].getSubjectSequenceRange().getEnd());
+        for(int i = 0; i < matches.length; ++i)
+          out.writeInt(matches[i].getQuerySequenceRange().getStart());
+        for(int i = 0; i < matches.length; ++i)
+          out.writeInt(matches[i].getQuerySequenceRange().getEnd());
+        for(int i = 0; i < matches.length; ++i)
+          out.writeInt(matches[i].getScore());
+        for(int i = 0; i < matches.length; ++i)
+          out.writeInt(matches[i].getPercentID());
+        for(int i = 0; i < matches.length; ++i)
+          out.writeByte(matches[i].isRevMatch() ? 1 : 0);
+
+        out.writeInt((int)crc.getValue());
+        out.flush();
+      }
+    });
+  }
+
+  /**
+   *  Convert a comparison file in any of the formats that ACT reads into a
+   *  binary comparison file.
+   **/
+  public static void main(final String[] args)
+  {
+    if(args.length != 2)
+    {
+      System.err.println("usage: java uk.ac.sanger.artemis.BinaryComparisonData " +
+                         "comparison_file binary_file");
+      System.exit(1);
+    }
+
+    try
+    {
+      final ComparisonData comparison_data =
+        ComparisonDataFactory.readComparisonData(
+            new FileDocument(new File(args[0])));
+      write(comparison_data.getMatches(), null, new File(args[1]));
+    }
+    catch(IOException e)
+    {
+      System.err.println("could not convert " + args[0] + ": " +
+                         e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -42,11 +42,29 @@ import java.util.StringTokenizer;
 public class ComparisonDataFactory {
   /**
    *  This method creates an appropriate ComparisonData object from a Document.
+   *  Binary comparison files (see BinaryComparisonData) are read directly.
    **/
   static public ComparisonData readComparisonData (Document data_document)
       throws IOException {
+
+    final InputStream in_stream =
+      new BufferedInputStream (data_document.getInputStream ());
+
+    final ComparisonData binary_comparison_data;
+    try {
+      binary_comparison_data =
+        BinaryComparisonData.read (data_document, in_stream);
+    } catch (IOException e) {
+      in_stream.close ();
+      throw e;
+    }
+
+    if (binary_comparison_data != null) {
+      in_stream.close ();
+      return binary_comparison_data;
+    }
     
-    final Reader in_file = data_document.getReader ();
+    final Reader in_file = new InputStreamReader (in_stream);
 
     final LinePushBackReader pushback_reader =
       new LinePushBackReader (in_file);
@@ -60,17 +78,19 @@ public class ComparisonDataFactory {
 
     pushback_reader.pushBack (line);
 
+    final SimpleComparisonData comparison_data;
+
     if (MSPcrunchComparisonData.formatCorrect (line)) {
-      return new MSPcrunchComparisonData (pushback_reader);
+      comparison_data = new MSPcrunchComparisonData (pushback_reader);
     } else {
       if (SSAHAComparisonData.formatCorrect (line)) {
-        return new SSAHAComparisonData (pushback_reader);
+        comparison_data = new SSAHAComparisonData (pushback_reader);
       } else {
         if (BlastM8ComparisonData.formatCorrect (line)) {
-          return new BlastM8ComparisonData (pushback_reader);
+          comparison_data = new BlastM8ComparisonData (pushback_reader);
         } else {
           if (MegaBlastComparisonData.formatCorrect (line)) {
-            return new MegaBlastComparisonData (pushback_reader);
+            comparison_data = new MegaBlastComparisonData (pushback_reader);
           } else {
 //      if (tokenizer.countTokens () < 8) {
 //        return new MUMmerComparisonData (pushback_reader);
@@ -81,6 +101,10 @@ public class ComparisonDataFactory {
         }
       }
     }
+
+    BinaryComparisonData.update (data_document, comparison_data);
+
+    return comparison_data;
   }
 }
 
@@ -31,8 +31,12 @@ import uk.ac.sanger.artemis.util.*;
 import uk.ac.sanger.artemis.io.DatabaseDocumentEntry;
 import uk.ac.sanger.artemis.io.EmblStreamFeature;
 import uk.ac.sanger.artemis.io.DocumentEntry;
+import uk.ac.sanger.artemis.io.DocumentEntryJournal;
+import uk.ac.sanger.artemis.io.SimpleDocumentEntry;
 import uk.ac.sanger.artemis.io.EmblDocumentEntry;
 import uk.ac.sanger.artemis.io.GFFDocumentEntry;
+import uk.ac.sanger.artemis.io.IndexFastaStream;
+import uk.ac.sanger.artemis.io.IndexedGFFDocumentEntry;
 import uk.ac.sanger.artemis.io.PartialSequence;
 import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.io.RangeVector;
@@ -81,6 +85,12 @@ public class Entry implements FeatureChangeListener, Selectable
    **/
   final private Vector feature_listener_list = new Vector();
 
+  /**
+   *  Records the changes to the features in the journal of the embl.Entry,
+   *  or null if it is not a SimpleDocumentEntry.
+   **/
+  private JournalListener journal_listener = null;
+
   /**
    *  This is the Bases reference that was passed to the constructor.
    **/
@@ -102,8 +112,10 @@ public class Entry implements FeatureChangeListener, Selectable
     this.embl_entry = embl_entry;
     this.bases = bases;
 
+    setContigRanges();
     checkLocations();
     createDianaFeatures();
+    addJournalListener();
   }
 
   /**
@@ -128,6 +140,7 @@ public class Entry implements FeatureChangeListener, Selectable
 
     checkLocations();
     createDianaFeatures();
+    addJournalListener();
   }
   
   
@@ -437,7 +450,7 @@ public class Entry implements FeatureChangeListener, Selectable
 //                           diana_feature + " " +
 //                           embl_features.elementAt(i));
 
-      return_features.add(diana_feature);
+      return_features.addElementAtEnd(diana_feature);
     }
 
 //    System.err.println("ending getFeaturesInRange()"); 
@@ -608,6 +621,12 @@ public class Entry implements FeatureChangeListener, Selectable
    **/
   public void dispose() 
   {
+    if(journal_listener != null)
+    {
+      removeEntryChangeListener(journal_listener);
+      removeFeatureChangeListener(journal_listener);
+    }
+
     final FeatureEnumeration feature_enum = features();
 
     while(feature_enum.hasMoreFeatures()) 
@@ -1171,6 +1190,56 @@ public class Entry implements FeatureChangeListener, Selectable
     }
   }
 
+  /**
+   *  Send the changes to the features of a SimpleDocumentEntry to its
+   *  DocumentEntryJournal, so that they can be recovered after a crash.
+   **/
+  private void addJournalListener()
+  {
+    if(!(embl_entry instanceof SimpleDocumentEntry))
+      return;
+
+    journal_listener =
+      new JournalListener((SimpleDocumentEntry) embl_entry);
+    addEntryChangeListener(journal_listener);
+    addFeatureChangeListener(journal_listener);
+  }
+
+  private static class JournalListener
+      implements EntryChangeListener, FeatureChangeListener
+  {
+    private final SimpleDocumentEntry document_entry;
+
+    JournalListener(final SimpleDocumentEntry document_entry)
+    {
+      this.document_entry = document_entry;
+    }
+
+    public void entryChanged(final EntryChangeEvent event)
+    {
+      final DocumentEntryJournal journal = document_entry.getJournal();
+      if(journal == null)
+        return;
+
+      switch(event.getType())
+      {
+        case EntryChangeEvent.FEATURE_ADDED:
+          journal.featureAdded(event.getFeature().getEmblFeature());
+          break;
+        case EntryChangeEvent.FEATURE_DELETED:
+          journal.featureDeleted(event.getFeature().getEmblFeature());
+          break;
+      }
+    }
+
+    public void featureChanged(final FeatureChangeEvent event)
+    {
+      final DocumentEntryJournal journal = document_entry.getJournal();
+      if(journal != null)
+        journal.featureChanged(event.getFeature().getEmblFeature());
+    }
+  }
+
   /**
    *  Return the uk.ac.sanger.artemis.Feature object of the given embl.Feature object.  This
    *  method will create an appropriate uk.ac.sanger.artemis.Feature if none exists.
@@ -1193,6 +1262,23 @@ public class Entry implements FeatureChangeListener, Selectable
       return test_feature;
   }
 
+  /**
+   *  If the Bases object is an indexed FASTA file that shows several
+   *  contigs end to end, move the features of a GFF entry that has no
+   *  sequence of its own onto their contigs.
+   **/
+  private void setContigRanges()
+  {
+    if(!(bases.getSequence() instanceof IndexFastaStream))
+      return;
+    final IndexFastaStream sequence = (IndexFastaStream)bases.getSequence();
+
+    if(embl_entry instanceof IndexedGFFDocumentEntry)
+      ((IndexedGFFDocumentEntry)embl_entry).setContigSequence(sequence);
+    else if(embl_entry instanceof GFFDocumentEntry)
+      ((GFFDocumentEntry)embl_entry).setContigRanges(sequence.getContigRanges());
+  }
+
   /**
    *  Check that all features in the embl.Entry object are in range for the
    *  Bases object that was passed to the constructor.
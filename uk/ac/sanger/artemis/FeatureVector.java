@@ -53,10 +53,12 @@ public class FeatureVector {
   }
 
   /**
-   *  Add a feature to the end of the Vector.
+   *  Add a feature to the end of the Vector.  Unlike add () this doesn't
+   *  check whether the feature is already in the Vector so the caller must
+   *  make sure that it isn't.
    **/
   public final void addElementAtEnd (Feature feature) {
-    vector.add (feature);
+    vector.addElementAtEnd (feature);
   }
 
   /**
@@ -32,6 +32,7 @@ import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.io.RangeVector;
 
 import java.io.*;
+import java.util.IdentityHashMap;
 import java.util.Vector;
 import java.awt.datatransfer.*;
 
@@ -137,8 +138,8 @@ public class Selection
    *  @param event The change event.
    **/
   public void featureChanged (FeatureChangeEvent event) {
-    if (segments == null && features.contains (event.getFeature ()) ||
-        getAllFeatures ().contains (event.getFeature ())) {
+    if (segments == null && feature_set.containsKey (event.getFeature ()) ||
+        contains (event.getFeature ())) {
       if (event.getType () == FeatureChangeEvent.QUALIFIER_CHANGED ||
           event.getType () == FeatureChangeEvent.KEY_CHANGED) {
         // no need to reset the cache in this case
@@ -161,7 +162,10 @@ public class Selection
     switch (event.getType ()) {
     case EntryChangeEvent.FEATURE_DELETED:
       
-      features.remove (event.getFeature ());
+      if (features.remove (event.getFeature ())) {
+        feature_set.remove (event.getFeature ());
+      }
+      resetCache ();
       
       if (contains (event.getFeature ())) {
         // we have a segment of the feature in the Selection -
@@ -239,11 +243,12 @@ public class Selection
    *    selection.
    **/
   private boolean addWithoutEvent (final Feature feature) {
-    if (features.contains (feature)) {
+    if (feature_set.containsKey (feature)) {
       return false;
       // do nothing
     } else {
-      features.add (feature);
+      feature_set.put (feature, feature);
+      features.addElementAtEnd (feature);
       return true;
     }
   }
@@ -357,6 +362,7 @@ public class Selection
    **/
   private void clearWithoutEvent () {
     features.removeAllElements ();
+    feature_set.clear ();
     segments.removeAllElements ();
     marker_range = null;
   }
@@ -366,6 +372,7 @@ public class Selection
    **/
   public void remove (final Feature feature) {
     if (features.remove (feature)) {
+      feature_set.remove (feature);
       changeSelection (SelectionChangeEvent.SELECTION_CHANGED);
     }
   }
@@ -398,20 +405,8 @@ public class Selection
    *  Return true if this selection contains the given Feature.
    **/
   public boolean contains (final Feature feature) {
-    if (getSelectedFeatures ().contains (feature)) {
-      return true;
-    }
-
-    for (int i = 0 ; i < segments.size () ; ++i) {
-      final FeatureSegment this_segment = segments.elementAt (i);
-      final Feature this_feature = this_segment.getFeature ();
-
-      if (feature == this_feature) {
-        return true;
-      }
-    }
-
-    return false;
+    getAllFeatures ();
+    return all_features_set.containsKey (feature);
   }
 
   /**
@@ -788,13 +783,15 @@ public class Selection
   public FeatureVector getAllFeatures () {
     if (all_features == null) {
       all_features = (FeatureVector) features.clone ();
+      all_features_set = new IdentityHashMap<Feature, Feature> (feature_set);
       
       for (int i = 0 ; i < segments.size () ; ++i) {
         final FeatureSegment this_segment = segments.elementAt (i);
         final Feature this_feature = this_segment.getFeature ();
         
-        if (!all_features.contains (this_feature)) {
-          all_features.add (this_feature);
+        if (!all_features_set.containsKey (this_feature)) {
+          all_features_set.put (this_feature, this_feature);
+          all_features.addElementAtEnd (this_feature);
         }
       }
     }
@@ -838,6 +835,7 @@ public class Selection
     start_base_marker = null;
     end_base_marker = null;
     all_features = null;
+    all_features_set = null;
   }
 
   /**
@@ -846,6 +844,12 @@ public class Selection
    **/
   private FeatureVector features = new FeatureVector ();
 
+  /**
+   *  The Feature objects in features, for quick membership tests.
+   **/
+  private final IdentityHashMap<Feature, Feature> feature_set =
+    new IdentityHashMap<Feature, Feature> ();
+
   /**
    *  A Vector containing the FeatureSegment objects that this selection
    *  currently holds.
@@ -858,6 +862,12 @@ public class Selection
    **/
   private FeatureVector all_features = null;
 
+  /**
+   *  The Feature objects in all_features, for quick membership tests by
+   *  contains (Feature).  This is set along with all_features.
+   **/
+  private IdentityHashMap<Feature, Feature> all_features_set = null;
+
   /**
    *  Each Selection object can hold one MarkerRange.
    **/
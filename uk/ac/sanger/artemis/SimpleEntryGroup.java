@@ -526,7 +526,8 @@ public class SimpleEntryGroup extends EntryVector
         {
           final Feature this_feature =
             visible_entry_features.elementAt(feature_index);
-          return_vector.add(this_feature);
+          // a feature is only ever in one entry
+          return_vector.addElementAtEnd(this_feature);
         }
       }
     }
@@ -146,6 +146,8 @@ public class ChadoTransactionManager
   
   // number of SQL commands successfully processed during a commit
   public static int commitReturnValue = 0;
+  // time taken by each phase of the last commit
+  private static String commitTimings;
   
   static
   {
@@ -2756,6 +2758,7 @@ public class ChadoTransactionManager
     
     final Vector sqlCopy = ctm.getSql();
     commitReturnValue = dbDoc.commit(sqlCopy, force);
+    commitTimings = dbDoc.getCommitTimings();
     
     boolean nocommit = true;
     if(System.getProperty("nocommit") == null ||
@@ -2831,5 +2834,14 @@ public class ChadoTransactionManager
   {
     return commitReturnValue;
   }
+
+  /**
+   * Return the time taken by each phase of the last commit.
+   * @return the timings, or null
+   */
+  public String getCommitTimings()
+  {
+    return commitTimings;
+  }
 }
 
@@ -101,14 +101,14 @@ public class CommitFrame extends JFrame
           commitList.ensureIndexIsVisible(ctm.getCommitReturnValue());
           
           JOptionPane.showMessageDialog(CommitFrame.this, 
-              "Test commit failed!",
+              "Test commit failed!"+getTimings(ctm),
               "Commit Test Result", 
               JOptionPane.INFORMATION_MESSAGE);
         }
         else
           JOptionPane.showMessageDialog(CommitFrame.this, 
               "Test commit (of "+ctm.getCommitReturnValue()+
-              " changes) succeeded!",
+              " changes) succeeded!"+getTimings(ctm),
               "Commit Test Result", 
               JOptionPane.INFORMATION_MESSAGE);
 
@@ -133,6 +133,13 @@ public class CommitFrame extends JFrame
     setVisible(true);
   }
   
+  private static String getTimings(final ChadoTransactionManager ctm)
+  {
+    if(ctm.getCommitTimings() == null)
+      return "";
+    return "\n\n"+ctm.getCommitTimings().replaceAll(", ", "\n");
+  }
+
   /**
    * Set the data for the JList
    * @param ctm
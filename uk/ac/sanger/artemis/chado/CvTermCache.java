@@ -0,0 +1,145 @@
+/* CvTermCache.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis.chado;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gmod.schema.cv.CvTerm;
+
+/**
+ * The CvTerms read from chado, looked up by cvterm_id or by CV and term
+ * name. This can be used from several threads at once, e.g. while the
+ * features of an entry are being read in parallel. The number of lookups
+ * by cvterm_id that are found (hits) and not found (misses) are counted.
+ */
+public class CvTermCache
+{
+  private final ConcurrentHashMap<Integer, CvTerm> byId;
+  private final ConcurrentHashMap<String, CvTerm> byName;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param cvterms the <code>List</code> of <code>CvTerm</code>'s to
+   *                start with, e.g. from <code>GmodDAO.getCvTerms()</code>
+   */
+  public CvTermCache(final List cvterms)
+  {
+    byId = new ConcurrentHashMap<Integer, CvTerm>(cvterms.size()*4/3 + 1);
+    byName = new ConcurrentHashMap<String, CvTerm>(cvterms.size()*4/3 + 1);
+
+    final Iterator it = cvterms.iterator();
+    while(it.hasNext())
+      put((CvTerm)it.next());
+  }
+
+  /**
+   * Add a CvTerm or replace the CvTerm with the same cvterm_id.
+   */
+  public void put(final CvTerm cvTerm)
+  {
+    byId.put(new Integer(cvTerm.getCvTermId()), cvTerm);
+    if(cvTerm.getCv() != null)
+      byName.put(getKey(cvTerm.getCv().getName(), cvTerm.getName()), cvTerm);
+  }
+
+  /**
+   * Return the CvTerm with a cvterm_id.
+   * @return the CvTerm or null if it is not in the cache
+   */
+  public CvTerm get(final int cvTermId)
+  {
+    final CvTerm cvTerm = byId.get(new Integer(cvTermId));
+    if(cvTerm == null)
+      misses.incrementAndGet();
+    else
+      hits.incrementAndGet();
+    return cvTerm;
+  }
+
+  /**
+   * Return the CvTerm with a cvterm_id, reading it from the database
+   * and adding it to the cache if it is not already there.
+   */
+  public CvTerm get(final int cvTermId, final GmodDAO dao)
+  {
+    CvTerm cvTerm = get(cvTermId);
+    if(cvTerm == null)
+    {
+      cvTerm = dao.getCvTermById(cvTermId);
+      if(cvTerm != null)
+        put(cvTerm);
+    }
+    return cvTerm;
+  }
+
+  /**
+   * Return the CvTerm with a name in a CV.
+   * @return the CvTerm or null if it is not in the cache
+   */
+  public CvTerm get(final String cvName, final String cvTermName)
+  {
+    return byName.get(getKey(cvName, cvTermName));
+  }
+
+  /**
+   * Return all the CvTerms in the cache.
+   */
+  public Collection<CvTerm> getCvTerms()
+  {
+    return byId.values();
+  }
+
+  public int size()
+  {
+    return byId.size();
+  }
+
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  public String toString()
+  {
+    return "CvTermCache size=" + size() + " hits=" + getHits() +
+           " misses=" + getMisses();
+  }
+
+  private static String getKey(final String cvName, final String cvTermName)
+  {
+    return cvName + "\t" + cvTermName;
+  }
+}
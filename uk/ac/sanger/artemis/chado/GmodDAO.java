@@ -116,6 +116,39 @@ public abstract class GmodDAO
    */
   public abstract List getResiduesByUniqueName(final String uniqueName);
   
+  /**
+   * Return the feature with this feature_id without reading its residues,
+   * so that the sequence of a large feature can be read in parts with
+   * getResiduesByFeatureIdAndRange().
+   * @param featureId
+   * @return the Feature, or null
+   */
+  public abstract Feature getFeatureNoResiduesById(final int featureId);
+  
+  /**
+   * Get part of the residues of a feature.
+   * @param featureId
+   * @param fmin  start of the sub-sequence (interbase)
+   * @param fmax  end of the sub-sequence (interbase)
+   * @return the residues, or null
+   */
+  public abstract byte[] getResiduesByFeatureIdAndRange(final int featureId,
+                                                        final int fmin,
+                                                        final int fmax);
+
+  /**
+   * Start queueing the writes made by merge(), persist() and delete()
+   * that can be sent to the database in a JDBC batch. Writes that cannot
+   * be batched are still made straight away.
+   */
+  public abstract void startBatch();
+
+  /**
+   * Send any queued writes to the database and stop queueing them.
+   * @return the number of rows changed, if known
+   */
+  public abstract int executeBatch();
+
   /**
    * Return all the Feature.featureProps for a <code>List</code> of feature_id's. 
    * These are grouped by their feature_id and returned in a <code>List</code>
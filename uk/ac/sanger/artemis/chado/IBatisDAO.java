@@ -25,6 +25,8 @@
 package uk.ac.sanger.artemis.chado;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Hashtable;
@@ -69,6 +71,20 @@ public class IBatisDAO extends GmodDAO
   private boolean featureCvTermRank        = true;
   private boolean featureCvTermRankChecked = false;
   
+  /** maximum number of ids in the IN list of a query */
+  private static final int MAX_IN_LIST = 1000;
+  
+  /** order of the features returned by a query ORDER BY feature_id */
+  private static final Comparator FEATURE_ID_ORDER = new Comparator()
+  {
+    public int compare(Object o1, Object o2)
+    {
+      final int id1 = ((Feature)o1).getFeatureId();
+      final int id2 = ((Feature)o2).getFeatureId();
+      return (id1 < id2 ? -1 : (id1 == id2 ? 0 : 1));
+    }
+  };
+  
   /**
    * Define a iBatis data access object. This uses <code>DbSqlConfig</code>
    * to read the configuration in. The system property <quote>chado</quote>
@@ -96,12 +112,58 @@ public class IBatisDAO extends GmodDAO
     return sqlMap.getSqlMap().getDataSource();
   }
 
+  /**
+   * Run a query with a list of ids that are used in an IN list, for at
+   * most MAX_IN_LIST ids at a time so that the queries do not get too
+   * large, and return all the results. The results of each chunk are
+   * only ordered within that chunk, so use the <code>Comparator</code>
+   * version for a statement with an ORDER BY.
+   * @param statementName the sqlmap query
+   * @param ids the <code>Collection</code> of ids
+   * @return the <code>List</code> of results
+   */
+  private List queryForListOfIds(final String statementName,
+                                 final Collection ids)
+  {
+    return queryForListOfIds(statementName, ids, null);
+  }
+  
+  /**
+   * Run a query with a list of ids that are used in an IN list, as above,
+   * and when the query was split up sort the merged results so that they
+   * are in the same order as the ORDER BY of the statement.
+   * @param statementName the sqlmap query
+   * @param ids the <code>Collection</code> of ids
+   * @param order the order of the results or null if it does not matter
+   * @return the <code>List</code> of results
+   */
+  private List queryForListOfIds(final String statementName,
+                                 final Collection ids,
+                                 final Comparator order)
+  {
+    if(ids.size() <= MAX_IN_LIST)
+      return sqlMap.queryForList(statementName, ids);
+
+    final List idList = new Vector(ids);
+    final List results = new Vector();
+    for(int i = 0; i < idList.size(); i += MAX_IN_LIST)
+    {
+      final int end = Math.min(i + MAX_IN_LIST, idList.size());
+      results.addAll(sqlMap.queryForList(statementName,
+                                         new Vector(idList.subList(i, end))));
+    }
+    
+    if(order != null)
+      Collections.sort(results, order);
+    return results;
+  }
+  
   /**
    * Test to see if this is an old chado database version
    * without the feature_cvterm.rank column.
    * @return true if the feature_cvterm.rank column exists.
    */
-  private boolean isFeatureCvTermRank()
+  private synchronized boolean isFeatureCvTermRank()
   {
   	if(featureCvTermRankChecked)
   		return featureCvTermRank;
@@ -144,7 +206,8 @@ public class IBatisDAO extends GmodDAO
   
   public List getFeatureDbXRefsByFeatureId(final List featureIds)
   {
-    return sqlMap.queryForList("getFeatureDbXRefsByFeatureId",featureIds);
+    return queryForListOfIds("getFeatureDbXRefsByFeatureId", featureIds,
+                             FEATURE_ID_ORDER);
   }
   
   public List getResiduesByUniqueName(final String uniqueName)
@@ -152,6 +215,30 @@ public class IBatisDAO extends GmodDAO
     return sqlMap.queryForList("getResiduesByUniqueName",uniqueName);
   }
   
+  public Feature getFeatureNoResiduesById(final int featureId)
+  {
+    return (Feature)sqlMap.queryForObject("getFeatureNoResiduesById",
+                                          new Integer(featureId));
+  }
+  
+  public byte[] getResiduesByFeatureIdAndRange(final int featureId,
+                                               final int fmin,
+                                               final int fmax)
+  {
+    final Feature feature = new Feature();
+    feature.setFeatureId(featureId);
+    final FeatureLoc featureLoc = new FeatureLoc();
+    featureLoc.setFmin(new Integer(fmin));
+    featureLoc.setFmax(new Integer(fmax));
+    feature.setFeatureLoc(featureLoc);
+
+    final Feature residues =
+      (Feature)sqlMap.queryForObject("getResiduesByFeatureIdAndRange", feature);
+    if(residues == null)
+      return null;
+    return residues.getResidues();
+  }
+  
   public List getResidueFeatures(final Integer organismId)
   {
 
@@ -169,12 +256,12 @@ public class IBatisDAO extends GmodDAO
   
   public List getFeatureLocsByListOfIds(final Collection featureIds)
   {
-    return sqlMap.queryForList("getFeatureLocsByListOfIds",featureIds);
+    return queryForListOfIds("getFeatureLocsByListOfIds", featureIds);
   }
   
   public List getParentFeaturesByChildFeatureIds(final List featureIds)
   {
-    return sqlMap.queryForList("getParentFeaturesByChildFeatureIds",featureIds);
+    return queryForListOfIds("getParentFeaturesByChildFeatureIds", featureIds);
   }
   
   public List getFeatureCvTermsBySrcFeature(Feature srcFeature)
@@ -208,7 +295,7 @@ public class IBatisDAO extends GmodDAO
 
   public List getClustersByFeatureIds(final List featureIds)
   {
-    return sqlMap.queryForList("getLazyClustersByFeatureIds", featureIds);
+    return queryForListOfIds("getLazyClustersByFeatureIds", featureIds);
   }
   
   /**
@@ -224,12 +311,13 @@ public class IBatisDAO extends GmodDAO
    */
   public List getSimilarityMatchesByFeatureIds(final List featureIds)
   {
-    return sqlMap.queryForList("getLazySimilarityMatchesByFeatureIds", featureIds);
+    return queryForListOfIds("getLazySimilarityMatchesByFeatureIds",
+                             featureIds, FEATURE_ID_ORDER);
   }
   
   public List getFeaturePropByFeatureIds(final List featureIds)
   {
-    return sqlMap.queryForList("getFeaturePropByFeatureIds", featureIds);
+    return queryForListOfIds("getFeaturePropByFeatureIds", featureIds);
   }
   
   /**
@@ -252,7 +340,7 @@ public class IBatisDAO extends GmodDAO
   
   public List getFeaturesByListOfIds(final List featureIds)
   {
-    return sqlMap.queryForList("getFeaturesByListOfIds", featureIds);
+    return queryForListOfIds("getFeaturesByListOfIds", featureIds);
   }
   
   public List getFeaturesByUniqueName(String uniquename) 
@@ -430,7 +518,7 @@ public class IBatisDAO extends GmodDAO
   public List getFeatureSynonymsByFeatureIds(final List featuresIds)
   {
     return
-      sqlMap.queryForList("getFeatureSynonymsByFeatureIds", featuresIds);
+      queryForListOfIds("getFeatureSynonymsByFeatureIds", featuresIds);
   }
   
   /**
@@ -1353,6 +1441,23 @@ public class IBatisDAO extends GmodDAO
     sqlMap.insert("insertPubDbXRef", pubDbXRef);
   }
 
+  /**
+   * Start an iBatis batch. Statements of the same SQL that follow each
+   * other are then sent together with the same prepared statement. The
+   * batch is only sent with executeBatch() so this should be used within
+   * a transaction and not for writes that are followed by a query that
+   * depends on them.
+   */
+  public void startBatch()
+  {
+    sqlMap.startBatch();
+  }
+
+  public int executeBatch()
+  {
+    return sqlMap.executeBatch();
+  }
+
   public void startTransaction() throws SQLException
   { 
     sqlMap.startTransaction();
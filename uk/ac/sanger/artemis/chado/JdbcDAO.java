@@ -29,7 +29,10 @@ import javax.swing.JPasswordField;
 import java.sql.*;
 import java.io.*;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.gmod.schema.sequence.Feature;
@@ -66,6 +69,9 @@ public class JdbcDAO extends GmodDAO
                           System.getProperty("file.separator") +
                           "art_sql_debug.log";
   private Connection conn;
+
+  /** statements with writes queued in the current batch, by SQL */
+  private Map<String, PreparedStatement> batch;
  
   /**
    * Define a JDBC data access object and establish a <code>Connection</code>.
@@ -173,6 +179,74 @@ public class JdbcDAO extends GmodDAO
     return null;
   }
   
+  /**
+   * Return the feature corresponding to this feature_id without its
+   * residues.  The length of the residues is set from seqlen.
+   * @param featureId the feature_id
+   * @return the Feature, or null
+   */
+  public Feature getFeatureNoResiduesById(final int featureId)
+  {
+    final String sql = "SELECT timelastmodified, f.feature_id, uniquename,"
+        + " f.organism_id, f.is_obsolete, f.name, f.type_id,"
+        + " coalesce(f.seqlen, length(residues)) AS seqlen"
+        + " FROM feature f WHERE f.feature_id=" + featureId;
+    appendToLogFile(sql, sqlLog);
+
+    try
+    {
+      Statement st = conn.createStatement();
+      ResultSet rs = st.executeQuery(sql);
+      if(!rs.next())
+        return null;
+
+      final Feature feature = new Feature();
+      feature.setFeatureId(rs.getInt("feature_id"));
+      feature.setUniqueName(rs.getString("uniquename"));
+      feature.setName(rs.getString("name"));
+      feature.setObsolete(rs.getBoolean("is_obsolete"));
+      feature.setTimeLastModified(rs.getTimestamp("timelastmodified"));
+      feature.setCvTerm(new CvTerm());
+      feature.getCvTerm().setCvTermId(rs.getInt("type_id"));
+
+      final Organism organism = new Organism();
+      organism.setOrganismId(rs.getInt("organism_id"));
+      feature.setOrganism(organism);
+
+      final int seqlen = rs.getInt("seqlen");
+      if(!rs.wasNull())
+        feature.setSeqLen(new Integer(seqlen));
+      return feature;
+    }
+    catch(SQLException sqle)
+    {
+      throw new RuntimeException(sqle);
+    }
+  }
+  
+  public byte[] getResiduesByFeatureIdAndRange(final int featureId,
+                                               final int fmin,
+                                               final int fmax)
+  {
+    final String sql = "SELECT substr(residues, " + (fmin+1) + ", " +
+                       (fmax-fmin) + ") AS residues FROM feature " +
+                       "WHERE feature_id=" + featureId;
+    appendToLogFile(sql, sqlLog);
+
+    try
+    {
+      Statement st = conn.createStatement();
+      ResultSet rs = st.executeQuery(sql);
+      if(!rs.next())
+        return null;
+      return rs.getBytes("residues");
+    }
+    catch(SQLException sqle)
+    {
+      throw new RuntimeException(sqle);
+    }
+  }
+  
   public List getFeaturePubsBySrcFeature(Feature srcFeature)
   {
     // TODO Auto-generated method stub
@@ -1392,6 +1466,89 @@ public class JdbcDAO extends GmodDAO
   }
   
   
+  public void startBatch()
+  {
+    if(batch == null)
+      batch = new LinkedHashMap<String, PreparedStatement>();
+  }
+
+  public int executeBatch()
+  {
+    if(batch == null)
+      return 0;
+
+    final Iterator<PreparedStatement> it = batch.values().iterator();
+    batch = null;
+    int rowCount = 0;
+    try
+    {
+      while(it.hasNext())
+      {
+        final PreparedStatement pstmt = it.next();
+        try
+        {
+          final int counts[] = pstmt.executeBatch();
+          for(int i=0; i<counts.length; i++)
+            if(counts[i] > 0)
+              rowCount += counts[i];
+        }
+        finally
+        {
+          pstmt.close();
+        }
+      }
+    }
+    catch(SQLException sqle)
+    {
+      while(it.hasNext())
+        try { it.next().close(); } catch(SQLException e) {}
+      throw new RuntimeException(sqle);
+    }
+    return rowCount;
+  }
+
+  /**
+   * Return a prepared statement for a write. In a batch the statement
+   * for the same SQL is reused.
+   * @param sql
+   */
+  private PreparedStatement prepareWrite(final String sql) throws SQLException
+  {
+    appendToLogFile(sql, sqlLog);
+    if(batch == null)
+      return conn.prepareStatement(sql);
+
+    PreparedStatement pstmt = batch.get(sql);
+    if(pstmt == null)
+    {
+      pstmt = conn.prepareStatement(sql);
+      batch.put(sql, pstmt);
+    }
+    return pstmt;
+  }
+
+  /**
+   * Execute a write from prepareWrite(), or add it to the batch.
+   * @param pstmt
+   */
+  private void executeWrite(final PreparedStatement pstmt) throws SQLException
+  {
+    if(batch != null)
+    {
+      pstmt.addBatch();
+      return;
+    }
+
+    try
+    {
+      pstmt.executeUpdate();
+    }
+    finally
+    {
+      pstmt.close();
+    }
+  }
+
   /**
    * Update a feature location with the give <code>FeatureLoc</code>
    * object.
@@ -1526,14 +1683,12 @@ public class JdbcDAO extends GmodDAO
                  "feature_id=(SELECT feature_id FROM feature WHERE uniquename=?)";
     try
     {
-      PreparedStatement pstmt = conn.prepareStatement(sql);
+      PreparedStatement pstmt = prepareWrite(sql);
       pstmt.setString(1, featureprop.getValue());
       pstmt.setInt(2, featureprop.getRank());
       pstmt.setLong(3, featureprop.getCvTerm().getCvTermId());
       pstmt.setString(4, featureprop.getFeature().getUniqueName());
-
-      appendToLogFile(sql, sqlLog);
-      pstmt.executeUpdate();
+      executeWrite(pstmt);
     }
     catch(SQLException sqle)
     {
@@ -1549,25 +1704,18 @@ public class JdbcDAO extends GmodDAO
   private void insertFeatureProp
                     (final FeatureProp featureprop)
   {
-    StringBuffer sqlBuff = new StringBuffer();
-
-    sqlBuff.append("INSERT INTO featureprop");
-    sqlBuff.append(" ( feature_id, type_id, value, rank ) ");
-    sqlBuff.append("VALUES ");
-    
-    sqlBuff.append("( (SELECT feature_id FROM feature WHERE uniquename=");
-    sqlBuff.append("'"+ featureprop.getFeature().getUniqueName()+"')," );
-    sqlBuff.append(featureprop.getCvTerm().getCvTermId()+", '");
-    sqlBuff.append(featureprop.getValue()+"',");
-    sqlBuff.append(featureprop.getRank()+" )");
-
-    appendToLogFile(new String(sqlBuff), sqlLog);
-
+    final String sql = "INSERT INTO featureprop"+
+                       " ( feature_id, type_id, value, rank ) VALUES "+
+                       "( (SELECT feature_id FROM feature WHERE uniquename=?),"+
+                       " ?, ?, ? )";
     try
     {
-      Statement st = conn.createStatement();
-      int rowCount = st.executeUpdate(new String(sqlBuff));
-      System.out.println(rowCount + " row(s) inserted");
+      PreparedStatement pstmt = prepareWrite(sql);
+      pstmt.setString(1, featureprop.getFeature().getUniqueName());
+      pstmt.setLong(2, featureprop.getCvTerm().getCvTermId());
+      pstmt.setString(3, featureprop.getValue());
+      pstmt.setInt(4, featureprop.getRank());
+      executeWrite(pstmt);
     }
     catch(SQLException sqle)
     {
@@ -1589,24 +1737,28 @@ public class JdbcDAO extends GmodDAO
 
     if(uniquename != null)
       sqlBuff.append("feature_id="+
-          "(SELECT feature_id FROM feature WHERE uniquename='"+
-          uniquename+"') AND ");
+          "(SELECT feature_id FROM feature WHERE uniquename=?) AND ");
     
     if(featureprop.getRank() > -1)
-      sqlBuff.append("rank="+featureprop.getRank()+" AND ");
+      sqlBuff.append("rank=? AND ");
     
     if(featureprop.getValue() != null)
-      sqlBuff.append("value="+featureprop.getValue()+" AND ");
+      sqlBuff.append("value=? AND ");
     
-    sqlBuff.append("type_id="+featureprop.getCvTerm().getCvTermId());
-      
-    appendToLogFile(new String(sqlBuff), sqlLog);
+    sqlBuff.append("type_id=?");
 
     try
     {
-      Statement st = conn.createStatement();
-      int rowCount = st.executeUpdate(new String(sqlBuff));
-      System.out.println(rowCount+" row(s) deleted");
+      PreparedStatement pstmt = prepareWrite(new String(sqlBuff));
+      int param = 1;
+      if(uniquename != null)
+        pstmt.setString(param++, uniquename);
+      if(featureprop.getRank() > -1)
+        pstmt.setInt(param++, featureprop.getRank());
+      if(featureprop.getValue() != null)
+        pstmt.setString(param++, featureprop.getValue());
+      pstmt.setLong(param, featureprop.getCvTerm().getCvTermId());
+      executeWrite(pstmt);
     }
     catch(SQLException sqle)
     {
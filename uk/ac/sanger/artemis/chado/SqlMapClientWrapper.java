@@ -131,6 +131,34 @@ public class SqlMapClientWrapper
     }
   }
 
+  protected void startBatch()
+  {
+    try
+    {
+      sqlMap.startBatch();
+    }
+    catch(SQLException e)
+    {
+      logger4j.error(e.getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
+  protected int executeBatch()
+  {
+    try
+    {
+      return sqlMap.executeBatch();
+    }
+    catch(SQLException e)
+    {
+      logger4j.error("executeBatch() "+e.getMessage());
+      if(e.getNextException() != null)
+        logger4j.error(e.getNextException().getMessage());
+      throw new RuntimeException(e);
+    }
+  }
+
   protected void startTransaction() throws SQLException
   { 
     sqlMap.startTransaction();
@@ -36,6 +36,7 @@ import uk.ac.sanger.artemis.io.RangeVector;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.Hashtable;
 import java.util.Vector;
 import java.util.Comparator;
 import java.util.Arrays;
@@ -67,6 +68,38 @@ public class AlignmentViewer extends CanvasPanel
    **/
   private AlignMatch[] all_matches = null;
 
+  /**
+   *  Index of all_matches by subject and query position.  This is set to
+   *  null when all_matches or the match ranges change and is made again
+   *  when needed.
+   **/
+  private AlignMatchIndex match_index = null;
+
+  /**
+   *  If more than this many matches are in view and the view is zoomed out
+   *  far enough, co-linear matches are drawn merged into blocks.
+   **/
+  private static final int MAX_SEPARATE_MATCHES = 5000;
+
+  /**
+   *  Matches are only merged into blocks when there are at least this many
+   *  bases per pixel.
+   **/
+  private static final int MIN_BLOCK_BASES_PER_PIXEL = 64;
+
+  /**
+   *  The AlignMatchBlocks made for each zoom level (see getBlockLevel()).
+   *  Cleared when all_matches or the cut-offs change.
+   **/
+  private final Hashtable<Integer, AlignMatchBlocks> match_blocks =
+    new Hashtable<Integer, AlignMatchBlocks>();
+
+  /** Set by matchesChanged() so that the match_blocks are made again. */
+  private boolean match_blocks_stale = false;
+
+  /** The cut-offs that were used to make the match_blocks. */
+  private String match_blocks_cutoffs = null;
+
   /**
    *  This is the last DisplayAdjustmentEvent reference that was passed to
    *  setSubjectSeqeuencePosition().
@@ -943,7 +976,6 @@ public class AlignmentViewer extends CanvasPanel
     final boolean subject_flipped = subjectIsRevComp();
     final boolean query_flipped   = queryIsRevComp();
 
-    final int all_matches_length = all_matches.length;
     final float base_width       = last_subject_event.getBaseWidth();
     final float query_base_width = last_query_event.getBaseWidth();
     
@@ -954,9 +986,11 @@ public class AlignmentViewer extends CanvasPanel
     boolean is_rev_match;
     int[] match_x_positions;
 
-    for(int i = all_matches_length - 1; i >= 0 ; --i) 
+    final int[] visible_positions = getVisibleMatchPositions(canvas_width);
+
+    for(int i = visible_positions.length - 1; i >= 0 ; --i) 
     {
-      final AlignMatch this_match = all_matches [i];
+      final AlignMatch this_match = all_matches[visible_positions[i]];
 
       is_rev_match = this_match.isRevMatch();
       match_x_positions =
@@ -1054,6 +1088,7 @@ public class AlignmentViewer extends CanvasPanel
         all_matches[all_matches_length - selected_matches_size + i] =
           selected_matches.elementAt(i);
       }
+      match_index = null;
     }
 
     repaint();
@@ -1368,6 +1403,116 @@ public class AlignmentViewer extends CanvasPanel
    *  Draw the alignments into the given Graphics object.
    **/
   private void drawAlignments(final Graphics g) 
+  {
+    final int canvas_width = getSize().width;
+    final int[] visible_positions = getVisibleMatchPositions(canvas_width);
+    final int block_level = getBlockLevel();
+
+    if(visible_positions.length <= MAX_SEPARATE_MATCHES || block_level < 0)
+    {
+      drawMatches(g, all_matches, visible_positions, true);
+      return;
+    }
+
+    // zoomed out: draw the matches merged into blocks then the selected
+    // matches on top
+    final AlignMatchBlocks blocks = getMatchBlocks(block_level);
+    final int[] subject_range =
+      getViewRange(last_subject_event, canvas_width,
+                   getSubjectForwardStrand().getSequenceLength(),
+                   subjectIsRevComp());
+    final int[] query_range =
+      getViewRange(last_query_event, canvas_width,
+                   getQueryForwardStrand().getSequenceLength(),
+                   queryIsRevComp());
+    final int[] block_positions =
+      blocks.getIndex().getMatches(subject_range[0], subject_range[1],
+                                   query_range[0], query_range[1],
+                                   Integer.MIN_VALUE, Integer.MAX_VALUE,
+                                   Integer.MIN_VALUE, Integer.MAX_VALUE,
+                                   Integer.MIN_VALUE);
+    drawMatches(g, blocks.getBlocks(), block_positions, false);
+
+    if(selected_matches != null)
+    {
+      final int selected_matches_size = selected_matches.size();
+      final AlignMatch[] selected = new AlignMatch[selected_matches_size];
+      final int[] selected_positions = new int[selected_matches_size];
+      for(int i = 0; i < selected_matches_size; ++i)
+      {
+        selected[i] = selected_matches.elementAt(i);
+        selected_positions[i] = i;
+      }
+      drawMatches(g, selected, selected_positions, true);
+    }
+  }
+
+  /**
+   *  Return the zoom level at which matches should be merged into blocks,
+   *  or -1 if the view is not zoomed out far enough.  At level n a pixel
+   *  holds up to 2^n bases of the subject or query sequence.
+   **/
+  private int getBlockLevel() 
+  {
+    final float min_base_width = Math.min(last_subject_event.getBaseWidth(),
+                                          last_query_event.getBaseWidth());
+    if(min_base_width <= 0)
+      return -1;
+
+    final double bases_per_pixel = 1.0 / min_base_width;
+    if(bases_per_pixel < MIN_BLOCK_BASES_PER_PIXEL)
+      return -1;
+
+    return (int) Math.ceil(Math.log(bases_per_pixel) / Math.log(2));
+  }
+
+  /**
+   *  Return the visible matches merged into blocks for the given zoom level
+   *  (see getBlockLevel()).  Matches up to two pixels apart are merged.
+   **/
+  private AlignMatchBlocks getMatchBlocks(final int level) 
+  {
+    final String cutoffs = minimum_score + " " + maximum_score + " " +
+      minimum_percent_id + " " + maximum_percent_id + " " +
+      scroll_bar.getValue() + " " + ignore_self_match_flag;
+
+    if(match_blocks_stale || !cutoffs.equals(match_blocks_cutoffs))
+    {
+      match_blocks.clear();
+      match_blocks_stale   = false;
+      match_blocks_cutoffs = cutoffs;
+    }
+
+    final Integer key = new Integer(level);
+    AlignMatchBlocks blocks = match_blocks.get(key);
+    if(blocks == null)
+    {
+      int visible_count = 0;
+      final AlignMatch[] visible = new AlignMatch[all_matches.length];
+      for(int i = 0; i < all_matches.length; ++i)
+      {
+        if(isVisible(all_matches[i]))
+          visible[visible_count++] = all_matches[i];
+      }
+
+      final AlignMatch[] matches = new AlignMatch[visible_count];
+      System.arraycopy(visible, 0, matches, 0, visible_count);
+
+      blocks = new AlignMatchBlocks(matches, 2 << level);
+      match_blocks.put(key, blocks);
+    }
+
+    return blocks;
+  }
+
+  /**
+   *  Draw the matches at the given positions of the matches array.
+   *  @param check_visible if true, matches that are not visible according
+   *    to isVisible() are not drawn
+   **/
+  private void drawMatches(final Graphics g, final AlignMatch[] matches,
+                           final int[] positions,
+                           final boolean check_visible) 
   {
     final int canvas_height = getSize().height;
     final int canvas_width  = getSize().width;
@@ -1389,11 +1534,10 @@ public class AlignmentViewer extends CanvasPanel
     boolean is_rev_match;
     int[] match_x_positions;
     AlignMatch this_match;
-    final int all_matches_length = all_matches.length;    
 
-    for(int i = 0 ; i < all_matches_length ; ++i) 
+    for(int i = 0 ; i < positions.length ; ++i) 
     {
-      this_match = all_matches[i];
+      this_match = matches[positions[i]];
 
       is_rev_match = this_match.isRevMatch();
       match_x_positions =
@@ -1404,7 +1548,7 @@ public class AlignmentViewer extends CanvasPanel
       if(match_x_positions == null) 
         continue;
 
-      if(!isVisible(this_match)) 
+      if(check_visible && !isVisible(this_match)) 
         continue;
 
       final int subject_start_x = match_x_positions[0];
@@ -1487,6 +1631,57 @@ public class AlignmentViewer extends CanvasPanel
     }
   }
 
+  /**
+   *  Return the positions in all_matches (in ascending order) of the matches
+   *  that may be on screen and that pass the score, percent identity and
+   *  length cut-offs.  Only matches that overlap the part of the subject or
+   *  query sequence that is in view are returned.
+   **/
+  private int[] getVisibleMatchPositions(final int canvas_width) 
+  {
+    if(match_index == null)
+      match_index = new AlignMatchIndex(all_matches);
+
+    final int[] subject_range =
+      getViewRange(last_subject_event, canvas_width,
+                   getSubjectForwardStrand().getSequenceLength(),
+                   subjectIsRevComp());
+    final int[] query_range =
+      getViewRange(last_query_event, canvas_width,
+                   getQueryForwardStrand().getSequenceLength(),
+                   queryIsRevComp());
+
+    return match_index.getMatches(subject_range[0], subject_range[1],
+                                  query_range[0], query_range[1],
+                                  minimum_score, maximum_score,
+                                  minimum_percent_id, maximum_percent_id,
+                                  scroll_bar.getValue());
+  }
+
+  /**
+   *  Return the first and last bases (on the original forward strand) that
+   *  are in view in a sequence, with a few bases to spare at each end.
+   **/
+  private static int[] getViewRange(final DisplayAdjustmentEvent event,
+                                    final int canvas_width,
+                                    final int sequence_length,
+                                    final boolean is_rev_comp) 
+  {
+    final float base_width = event.getBaseWidth();
+    if(base_width <= 0)
+      return new int[] { 1, sequence_length };
+
+    final int view_start = event.getStart() - 2;
+    final int view_end   = event.getStart() + 2 +
+                           (int) Math.ceil(canvas_width / base_width);
+
+    if(is_rev_comp)
+      return new int[] { sequence_length - view_end + 1,
+                         sequence_length - view_start + 1 };
+    else
+      return new int[] { view_start, view_end };
+  }
+
   /**
    *  Return true if and only if the given match is currently visible.
    **/
@@ -1583,6 +1778,16 @@ public class AlignmentViewer extends CanvasPanel
       return match.getQuerySequenceEnd();
   }
 
+  /**
+   *  Called when matches are added to or removed from all_matches or when
+   *  their ranges change.
+   **/
+  private void matchesChanged()
+  {
+    match_index = null;
+    match_blocks_stale = true;
+  }
+
   /**
    * Remove AlignMatch from the all_matches array
    * @param collection of indexes to be removed from the array
@@ -1610,6 +1815,7 @@ public class AlignmentViewer extends CanvasPanel
 
     this.all_matches = new AlignMatch[tmp_matches.length];
     this.all_matches = tmp_matches;
+    matchesChanged();
   }
   
   /**
@@ -1747,6 +1953,7 @@ public class AlignmentViewer extends CanvasPanel
 
     this.all_matches = new AlignMatch[tmp_matches.length];
     this.all_matches = tmp_matches;
+    matchesChanged();
 
     if(removals.size() > 0)
       removeMatches(removals);
@@ -1823,6 +2030,7 @@ public class AlignmentViewer extends CanvasPanel
       }
     }
 
+    matchesChanged();
   }
 
   /**
@@ -1901,6 +2109,8 @@ public class AlignmentViewer extends CanvasPanel
       }
     }
 
+    matchesChanged();
+
     if(removals.size() > 0)
       removeMatches(removals);
   }
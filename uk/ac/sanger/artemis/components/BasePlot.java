@@ -59,7 +59,8 @@ import org.apache.log4j.Level;
  **/
 
 public class BasePlot extends Plot
-    implements DisplayAdjustmentListener, SelectionChangeListener 
+    implements DisplayAdjustmentListener, SelectionChangeListener,
+               SequenceChangeListener
 {
   private static final long serialVersionUID = 1L;
 
@@ -124,6 +125,17 @@ public class BasePlot extends Plot
    **/
   private int step_size = 0;
 
+  /**
+   *  The first base of the window of the first value in value_array_array.
+   *  (Set by recalculateValues()).
+   **/
+  private int first_window_start = 1;
+
+  /**
+   *  Values calculated for earlier views, reused when the view scrolls.
+   **/
+  private final PlotTileCache tile_cache;
+
   /**
    *  The maximum of the values in value_array_array.
    **/
@@ -180,9 +192,11 @@ public class BasePlot extends Plot
     this.goto_event_source = goto_event_source;
     this.bases = getBaseAlgorithm().getBases();
     this.entryGroup  = entryGroup;
+    this.tile_cache = new PlotTileCache(getBaseAlgorithm());
     
     setBackground(Color.WHITE);
     getSelection().addSelectionChangeListener(this);
+    bases.addSequenceChangeListener(this, Bases.MIN_PRIORITY);
 
     MultiLineToolTipUI.initialize();
     setToolTipText("tool_tip");
@@ -308,6 +322,31 @@ public class BasePlot extends Plot
     repaint();
   }
 
+  /**
+   *  Implementation of the SequenceChangeListener interface.  Drop the
+   *  cached values of the windows that the change affects.
+   **/
+  public void sequenceChanged(final SequenceChangeEvent event) 
+  {
+    if(event.getType() == SequenceChangeEvent.INSERTION ||
+       event.getType() == SequenceChangeEvent.DELETION)
+    {
+      int unchanged_length = bases.getLength();
+      if(event.getType() == SequenceChangeEvent.INSERTION)
+        unchanged_length -= event.getSubSequence().length();
+
+      // on the forward strand the windows before the change keep their
+      // values, on the reverse strand the windows after it do
+      tile_cache.invalidate(Math.min(event.getPosition(),
+                            unchanged_length - event.getPosition() + 1));
+    }
+    else
+      tile_cache.clear();
+
+    recalculate_flag = true;
+    repaint();
+  }
+
   /**
    *  Return the algorithm that was passed to the constructor.
    **/
@@ -644,11 +683,15 @@ public class BasePlot extends Plot
     if(real_start < 1)
       real_start = 1;
 
-    final int unit_count = getEnd() - real_start;
+    // windows start at 1 + n * step_size wherever the view starts so that
+    // the values can be reused as the view scrolls
+    final int first_window = (real_start - 1) / step_size;
+    final int last_window =
+      Math.min((getEnd() - window_size) / step_size,
+               tile_cache.getLastWindow(window_size, step_size));
 
     // the number of plot points in the graph
-    final int number_of_values =
-      (unit_count - (window_size - step_size)) / step_size;
+    final int number_of_values = last_window - first_window + 1;
 
     if(number_of_values < 2) 
     {
@@ -677,22 +720,17 @@ public class BasePlot extends Plot
       // reuse the previous arrays
     }
 
-    float [] temp_values = new float [get_values_return_count];
+    first_window_start = 1 + first_window * step_size;
+    tile_cache.getValues(rev_comp_display, window_size, step_size,
+                         first_window, number_of_values, value_array_array);
 
     for(int i = 0 ; i < number_of_values ; ++i) 
     {
-      getBaseAlgorithm().getValues(real_start + i * step_size,
-                                   real_start + i * step_size +
-                                   window_size - 1,
-                                   temp_values);
-
       for(int value_index = 0 ;
           value_index < get_values_return_count ;
           ++value_index) 
       {
-        final float current_value = temp_values[value_index];
-
-        value_array_array[value_index][i] = current_value;
+        final float current_value = value_array_array[value_index][i];
 
         // use the Algorithm specified maximum if there is one - otherwise
         // calculate it
@@ -768,12 +806,7 @@ public class BasePlot extends Plot
       else
         g.setColor(Color.black);
 
-      final int offset;
-
-      if(getStart() < 1) 
-        offset = 1 - getStart();
-      else
-        offset = 0;
+      final int offset = first_window_start - getStart();
 
       drawPoints(g, min_value, max_value, step_size, window_size,
                    getWidthInBases(),
@@ -981,9 +1014,7 @@ public class BasePlot extends Plot
     if(value_array_array == null) // nothing to plot
       return null;
     
-    int offset = getStart();
-    if(offset < 1) 
-      offset = 0;
+    final int offset = first_window_start;
 
     final int get_values_return_count =
       getBaseAlgorithm().getValueCount();
@@ -718,6 +718,9 @@ public class EntryEdit extends JFrame
     getEntryGroup().removeEntryGroupChangeListener(this);
     getEntryGroup().removeEntryChangeListener(this);
 
+    if(vcfView != null)
+      vcfView.dispose();
+
     getEntryGroup().unref();
     
     dispose();
@@ -1854,6 +1857,12 @@ public class EntryEdit extends JFrame
     logger4j.debug("No. VCF FILES="+vcfFiles.size());
     if (vcfFiles.size() > 0)
     {
+      if(vcfView != null)
+      {
+        feature_display.removeDisplayAdjustmentListener(vcfView);
+        feature_display.getSelection().removeSelectionChangeListener(vcfView);
+        vcfView.dispose();
+      }
       vcfPanel.removeAll();
       vcfView = new VCFview(null, vcfPanel, vcfFiles,
           feature_display.getMaxVisibleBases(), 1, null, null,
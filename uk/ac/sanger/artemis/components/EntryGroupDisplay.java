@@ -27,16 +27,14 @@ package uk.ac.sanger.artemis.components;
 
 import uk.ac.sanger.artemis.*;
 import uk.ac.sanger.artemis.io.IndexFastaStream;
+import uk.ac.sanger.artemis.io.TwoBitStreamSequence;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Iterator;
 import java.util.Vector;
 
 import javax.swing.*;
 
-import net.sf.picard.reference.FastaSequenceIndex;
-
 /**
  *  This component allows the user to change the "active" setting of the
  *  objects in an EntryGroup.
@@ -217,35 +215,47 @@ public class EntryGroupDisplay extends JPanel
     add(new_component);
     
     if(entry.getEMBLEntry().getSequence() instanceof IndexFastaStream)
+      addContigSelector(entry,
+        ((IndexFastaStream)entry.getEMBLEntry().getSequence()).getContigNames());
+    else if(entry.getEMBLEntry().getSequence() instanceof TwoBitStreamSequence)
+      addContigSelector(entry,
+        ((TwoBitStreamSequence)entry.getEMBLEntry().getSequence()).getContigNames());
+  }
+
+  /**
+   *  Add a combo box to choose the sequence shown from an indexed FASTA
+   *  or .2bit file that contains several sequences.
+   **/
+  private void addContigSelector(final Entry entry, final Vector contigs)
+  {
+    final JComboBox cb = new JComboBox(contigs);
+    add(cb);
+    cb.addActionListener(new ActionListener()
     {
-      FastaSequenceIndex indexFasta = 
-        ((IndexFastaStream)entry.getEMBLEntry().getSequence()).getFastaIndex();
-      Iterator it = indexFasta.iterator();
-      Vector contigs = new Vector();
-      while(it.hasNext())
+      public void actionPerformed(ActionEvent e)
       {
-        String contig = it.next().toString().split(";")[0];
-        if(contig.startsWith("contig "))
-          contig = contig.substring(6);
-        contigs.add(  contig );
-      }
-      
-      final JComboBox cb = new JComboBox(contigs);
-      add(cb);
-      cb.addActionListener(new ActionListener()
-      {
-        public void actionPerformed(ActionEvent e)
+        final int index = cb.getSelectedIndex();
+        if(entry.getEMBLEntry().getSequence() instanceof IndexFastaStream)
         {
           IndexFastaStream is = (IndexFastaStream)entry.getEMBLEntry().getSequence();
-          is.setContigByIndex(cb.getSelectedIndex());
-          
-          owning_component.resetScrolls();
-          owning_component.getFeatureDisplay().getBases().clearCodonCache();
-          owning_component.repaint();
+          if(is.isConcatenated() &&
+             is.getContigStart(index) > 0)
+          {
+            // all the contigs are shown so go to the start of this one
+            owning_component.getFeatureDisplay().makeBaseVisible(
+                is.getContigStart(index));
+            return;
+          }
+          is.setContigByIndex(index);
         }
+        else
+          ((TwoBitStreamSequence)entry.getEMBLEntry().getSequence()).setContigByIndex(index);
         
-      });
-    }
+        owning_component.resetScrolls();
+        owning_component.getFeatureDisplay().getBases().clearCodonCache();
+        owning_component.repaint();
+      }
+    });
   }
 
   /**
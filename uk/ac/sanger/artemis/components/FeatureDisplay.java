@@ -54,6 +54,7 @@ import java.awt.*;
 import java.lang.Math;
 import java.util.Vector;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Enumeration;
 import javax.swing.border.Border;
 import javax.swing.border.BevelBorder;
@@ -1334,39 +1335,53 @@ public class FeatureDisplay extends EntryGroupPanel
 
     final FeatureVector new_visible_features = new FeatureVector();
 
+    // membership sets so that each step below is linear in the number of
+    // visible features
+    final int real_visible_features_size = real_visible_features.size();
+    final IdentityHashMap<Feature, Feature> real_visible_set =
+      new IdentityHashMap<Feature, Feature>(real_visible_features_size);
+    for(int i = 0 ; i < real_visible_features_size; ++i) 
+    {
+      final Feature feature = real_visible_features.elementAt(i);
+      real_visible_set.put(feature, feature);
+    }
+
+    final int visible_features_size = visible_features.size();
+    final IdentityHashMap<Feature, Feature> visible_set =
+      new IdentityHashMap<Feature, Feature>(visible_features_size);
+
     // add features that are in visible_features and
     // real_visible_features - ie features that are still visible
-    final int visible_features_size = visible_features.size();
     for(int i = 0 ; i < visible_features_size; ++i) 
     {
       final Feature new_feature = visible_features.elementAt(i);
-      if(real_visible_features.contains(new_feature)) 
+      visible_set.put(new_feature, new_feature);
+      if(real_visible_set.containsKey(new_feature)) 
         new_visible_features.addElementAtEnd(new_feature);
     }
 
+    final Selection selection = getSelection();
+
     // add features that are in real_visible_features and not currently
     // in visible_features and are not selected(selected features will be
     // added last so that they stay on top).
-    final int real_visible_features_size = real_visible_features.size();
     for(int i = 0 ; i < real_visible_features_size; ++i) 
     {
       final Feature new_feature = real_visible_features.elementAt(i);
 
-      if(!visible_features.contains(new_feature) &&
-         !getSelection().contains(new_feature)) 
+      if(!visible_set.containsKey(new_feature) &&
+         !selection.contains(new_feature)) 
         new_visible_features.addElementAtEnd(new_feature);
     }
 
-    final FeatureVector selection_features = getSelection().getAllFeatures();
-
     // now add features that are in real_visible_features, are not in
     // visible_features and are selected (selected features are added last so
     // that they stay on top).
     for(int i = 0 ; i < real_visible_features_size; ++i) 
     {
       final Feature new_feature = real_visible_features.elementAt(i);
-      if(!visible_features.contains(new_feature) &&
-         selection_features.contains(new_feature)) 
+      if(!visible_set.containsKey(new_feature) &&
+         selection.contains(new_feature)) 
         new_visible_features.addElementAtEnd(new_feature);
     }
 
@@ -1463,7 +1478,7 @@ public class FeatureDisplay extends EntryGroupPanel
             continue;
         }
 
-        filtered_features.add(this_feature);
+        filtered_features.addElementAtEnd(this_feature);
       }
 
       features_from_entry = filtered_features;
@@ -1506,7 +1521,6 @@ public class FeatureDisplay extends EntryGroupPanel
     g.setFont(getFont());
 //  System.out.println("2 "+ System.currentTimeMillis());
     final Selection selection = getSelection();
-    final FeatureVector selected_features = selection.getAllFeatures();
 
     final FeatureSegmentVector selected_segments =
       selection.getSelectedSegments();
@@ -1524,7 +1538,7 @@ public class FeatureDisplay extends EntryGroupPanel
 
     for(int i = 0; i < num_visible_features; ++i)
       drawFeature(g, segment_borders, getVisibleFeatures().elementAt(i),
-                  true, selected_features, selected_segments,
+                  true, selection, selected_segments,
                   segment_height, seq_length, fm);
 
 
@@ -3018,7 +3032,7 @@ public class FeatureDisplay extends EntryGroupPanel
                            final Vector segment_borders,
                            final Feature feature,
                            final boolean draw_feature_fill,
-                           final FeatureVector selected_features,
+                           final Selection selection,
                            final FeatureSegmentVector selected_segments, 
                            final int segment_height,
                            final int seq_length,
@@ -3035,7 +3049,7 @@ public class FeatureDisplay extends EntryGroupPanel
     // highlighted
     final boolean highlight_feature_flag;
 
-    if(selected_features.contains(feature))
+    if(selection.contains(feature))
     {
       // ignore the possibility that a feature and a segment from the same
       // feature could be in the selection vector at the same time
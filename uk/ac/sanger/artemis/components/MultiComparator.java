@@ -102,6 +102,7 @@ public class MultiComparator extends JFrame
 
   private JPanel bamPanel[] = null;
   private JPanel vcfPanel[] = null;
+  private VCFview vcfView[] = null;
   private Dimension dimensionAlignViewer = null;
   
   /**
@@ -192,6 +193,8 @@ public class MultiComparator extends JFrame
       new JPanel[entry_group_array.length];
     vcfPanel =
       new JPanel[entry_group_array.length];
+    vcfView =
+      new VCFview[entry_group_array.length];
     alignment_viewer_array =
       new AlignmentViewer[comparison_data_array.length];
     comparator_glue_array =
@@ -950,6 +953,7 @@ public class MultiComparator extends JFrame
       JMenuItem read_bam_file = new JMenuItem("Read BAM / VCF ...");
       final JPanel thisBamPanel = bamPanel[i];
       final JPanel thisVCFPanel = vcfPanel[i];
+      final int vcfIndex = i;
       final FeatureDisplay feature_display = feature_display_array[i];
  
       read_bam_file.addActionListener(new ActionListener()
@@ -1003,15 +1007,23 @@ public class MultiComparator extends JFrame
           List<String> vcfFiles = fileChooser.getFiles(".*\\.vcf(\\.gz)*$");
           if (vcfFiles.size() > 0)
           {
+            if(vcfView[vcfIndex] != null)
+            {
+              feature_display.removeDisplayAdjustmentListener(vcfView[vcfIndex]);
+              feature_display.getSelection().removeSelectionChangeListener(
+                  vcfView[vcfIndex]);
+              vcfView[vcfIndex].dispose();
+            }
             thisVCFPanel.removeAll();
             thisVCFPanel.setVisible(true);
             
-            VCFview vcfView = new VCFview(null, thisVCFPanel, vcfFiles,
+            vcfView[vcfIndex] = new VCFview(null, thisVCFPanel, vcfFiles,
                 feature_display.getMaxVisibleBases(), 1, null, null,
                 feature_display);
             
-            feature_display.addDisplayAdjustmentListener(vcfView);
-            feature_display.getSelection().addSelectionChangeListener(vcfView);
+            feature_display.addDisplayAdjustmentListener(vcfView[vcfIndex]);
+            feature_display.getSelection().addSelectionChangeListener(
+                vcfView[vcfIndex]);
             MultiComparator.this.validate();
           }
         }
@@ -0,0 +1,280 @@
+/* PlotTileCache.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.components;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import uk.ac.sanger.artemis.plot.BaseAlgorithm;
+
+/**
+ *  The values of a BasePlot, calculated in tiles of TILE_WINDOWS windows.
+ *  Window n starts at base 1 + n * step_size wherever the display starts,
+ *  so that when the display scrolls most of the tiles can be reused and
+ *  only the newly exposed ones are calculated.  Missing tiles are
+ *  calculated in parallel and the least recently used tiles are dropped
+ *  when there are more than MAX_TILES.  All the tiles are dropped if the
+ *  sequence changes without a SequenceChangeEvent, e.g. when another contig
+ *  of an indexed sequence is shown.
+ **/
+class PlotTileCache
+{
+  /** the number of windows in a tile */
+  static final int TILE_WINDOWS = 256;
+
+  private static final int MAX_TILES = 512;
+
+  private static ExecutorService executor;
+
+  private final BaseAlgorithm algorithm;
+
+  /** the change count of the Bases (see Bases.getSequenceChanges()) that
+   *  the tiles were calculated for */
+  private int sequence_changes;
+
+  /** tiles indexed by window size, step size, strand and tile number */
+  private final Map<TileKey, float[][]> tiles =
+    new LinkedHashMap<TileKey, float[][]>(64, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+
+    protected boolean removeEldestEntry(Map.Entry<TileKey, float[][]> eldest)
+    {
+      return size() > MAX_TILES;
+    }
+  };
+
+  /**
+   *  @param algorithm The algorithm that calculates the values.
+   **/
+  PlotTileCache(final BaseAlgorithm algorithm)
+  {
+    this.algorithm = algorithm;
+    this.sequence_changes = algorithm.getBases().getSequenceChanges();
+  }
+
+  /**
+   *  Return the index of the last window that fits in the sequence.
+   **/
+  int getLastWindow(final int window_size, final int step_size)
+  {
+    return (algorithm.getBases().getLength() - window_size) / step_size;
+  }
+
+  /**
+   *  Fill in the values for a run of windows, calculating any tiles that
+   *  are not already in the cache.
+   *  @param rev_comp_display true if the values are for the reverse
+   *    complement display.
+   *  @param first_window The index of the first window, which starts at
+   *    base 1 + first_window * step_size.
+   *  @param window_count The number of windows.
+   *  @param values values[value_index][i] is set to the value_index'th
+   *    value of window first_window + i.
+   **/
+  void getValues(final boolean rev_comp_display,
+                 final int window_size, final int step_size,
+                 final int first_window, final int window_count,
+                 final float[][] values)
+  {
+    final int changes = algorithm.getBases().getSequenceChanges();
+    if(changes != sequence_changes)
+    {
+      tiles.clear();
+      sequence_changes = changes;
+    }
+
+    final int first_tile = first_window / TILE_WINDOWS;
+    final int last_tile = (first_window + window_count - 1) / TILE_WINDOWS;
+    final int last_window = getLastWindow(window_size, step_size);
+
+    final float[][][] tile_values = new float[last_tile - first_tile + 1][][];
+    final List<Callable<Object>> tasks = new Vector<Callable<Object>>();
+
+    for(int tile = first_tile; tile <= last_tile; tile++)
+    {
+      final TileKey key =
+        new TileKey(window_size, step_size, rev_comp_display, tile);
+      final int index = tile - first_tile;
+      final int tile_first_window = tile * TILE_WINDOWS;
+      final int count =
+        Math.min(TILE_WINDOWS, last_window - tile_first_window + 1);
+      tile_values[index] = tiles.get(key);
+
+      // a tile from the end of a shorter sequence is calculated again
+      if(tile_values[index] == null || tile_values[index][0].length < count)
+      {
+        tile_values[index] = new float[algorithm.getValueCount()][count];
+        tiles.put(key, tile_values[index]);
+
+        final float[][] this_tile = tile_values[index];
+        tasks.add(new Callable<Object>()
+        {
+          public Object call()
+          {
+            algorithm.getValues(1 + tile_first_window * step_size,
+                                window_size, step_size, count, this_tile);
+            return null;
+          }
+        });
+      }
+    }
+
+    calculate(tasks);
+
+    for(int i = 0; i < window_count; i++)
+    {
+      final int window = first_window + i;
+      final float[][] tile = tile_values[window / TILE_WINDOWS - first_tile];
+      final int tile_index = window % TILE_WINDOWS;
+
+      for(int value_index = 0; value_index < values.length; value_index++)
+        values[value_index][i] = tile[value_index][tile_index];
+    }
+  }
+
+  /**
+   *  Run the tasks, in parallel if there is more than one.
+   **/
+  private void calculate(final List<Callable<Object>> tasks)
+  {
+    try
+    {
+      if(tasks.size() == 1)
+        tasks.get(0).call();
+      else if(tasks.size() > 1)
+      {
+        final List<Future<Object>> results = getExecutor().invokeAll(tasks);
+        for(int i = 0; i < results.size(); i++)
+          results.get(i).get();
+      }
+    }
+    catch(ExecutionException e)
+    {
+      tiles.clear();
+      throw new Error("internal error - unexpected exception: " + e.getCause());
+    }
+    catch(Exception e)
+    {
+      tiles.clear();
+      throw new Error("internal error - unexpected exception: " + e);
+    }
+  }
+
+  /**
+   *  Drop the tiles with windows that end at or after the given position,
+   *  or all of the tiles if the algorithm uses values for the whole
+   *  sequence.
+   **/
+  void invalidate(final int position)
+  {
+    sequence_changes = algorithm.getBases().getSequenceChanges();
+    if(!algorithm.isWindowLocal() || position <= 1)
+    {
+      tiles.clear();
+      return;
+    }
+
+    final Iterator<Map.Entry<TileKey, float[][]>> it =
+      tiles.entrySet().iterator();
+    while(it.hasNext())
+    {
+      final Map.Entry<TileKey, float[][]> entry = it.next();
+      final TileKey key = entry.getKey();
+      final int count = entry.getValue()[0].length;
+      final int last_window_end =
+        (key.tile * TILE_WINDOWS + count - 1) * key.step_size +
+        key.window_size;
+
+      if(last_window_end >= position)
+        it.remove();
+    }
+  }
+
+  void clear()
+  {
+    sequence_changes = algorithm.getBases().getSequenceChanges();
+    tiles.clear();
+  }
+
+  private static synchronized ExecutorService getExecutor()
+  {
+    if(executor == null)
+    {
+      executor = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "BasePlot values");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return executor;
+  }
+
+  private static class TileKey
+  {
+    private final int window_size;
+    private final int step_size;
+    private final boolean rev_comp_display;
+    private final int tile;
+
+    TileKey(final int window_size, final int step_size,
+            final boolean rev_comp_display, final int tile)
+    {
+      this.window_size = window_size;
+      this.step_size = step_size;
+      this.rev_comp_display = rev_comp_display;
+      this.tile = tile;
+    }
+
+    public boolean equals(final Object obj)
+    {
+      if(!(obj instanceof TileKey))
+        return false;
+      final TileKey key = (TileKey) obj;
+      return key.window_size == window_size && key.step_size == step_size &&
+             key.rev_comp_display == rev_comp_display && key.tile == tile;
+    }
+
+    public int hashCode()
+    {
+      return ((window_size * 31 + step_size) * 31 + tile) * 2 +
+             (rev_comp_display ? 1 : 0);
+    }
+  }
+}
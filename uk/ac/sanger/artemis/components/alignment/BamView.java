@@ -62,9 +62,16 @@ import java.lang.management.MemoryMXBean;
 import java.net.URL;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
@@ -83,13 +90,13 @@ import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 
 import org.apache.log4j.Level;
 
-import net.sf.samtools.AlignmentBlock;
 import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.SAMFileReader;
 import net.sf.samtools.SAMRecord;
@@ -128,7 +135,7 @@ public class BamView extends JPanel
 {
   private static final long serialVersionUID = 1L;
 
-  private List<SAMRecord> readsInView;
+  private ReadStore readsInView;
   private Hashtable<String, SAMFileReader> samFileReaderHash = new Hashtable<String, SAMFileReader>();
 
   private Hashtable<String, Integer> seqLengths = new Hashtable<String, Integer>();
@@ -136,6 +143,10 @@ public class BamView extends JPanel
   private Vector<String> seqNames = new Vector<String>();
   protected List<String> bamList;
   private List<Integer> hideBamList = new Vector<Integer>();
+  private Hashtable<String, CoveragePyramid> coveragePyramids = 
+    new Hashtable<String, CoveragePyramid>();
+  /** BAM files with coverage being built or that failed to build */
+  private Set<String> coverageBuilds = new HashSet<String>();
 
   private SAMRecordFlagPredicate samRecordFlagPredicate;
   private SAMRecordMapQPredicate samRecordMapQPredicate;
@@ -171,6 +182,8 @@ public class BamView extends JPanel
   private int maxUnitIncrement = 8;
 
   private boolean asynchronous = true;
+  private ExecutorService loaderExecutor;
+  private ReadLoad currentLoad;
   private boolean showBaseAlignment = false;
   
   private JMenu bamFilesMenu = new JMenu("BAM files");
@@ -189,8 +202,9 @@ public class BamView extends JPanel
   private Color deepPink   = new Color(139,10,80);
   
   private Point lastMousePoint = null;
-  private SAMRecord mouseOverSAMRecord = null;
-  private SAMRecord highlightSAMRecord = null;
+  private ReadStore mouseOverReads = null;
+  private int mouseOverRead = -1;
+  private String highlightReadName = null;
   private String mouseOverInsertion;
   // record of where a mouse drag starts
   private int dragStart = -1;
@@ -274,30 +288,32 @@ public class BamView extends JPanel
   
   public String getToolTipText()
   {
-    if(mouseOverSAMRecord == null)
+    if(mouseOverRead < 0)
       return null;
+    final ReadStore reads = mouseOverReads;
+    final int read = mouseOverRead;
     
     String msg = 
-        mouseOverSAMRecord.getReadName() + "\n" + 
-        mouseOverSAMRecord.getAlignmentStart() + ".." +
-        mouseOverSAMRecord.getAlignmentEnd() + "\nisize=" +
-        mouseOverSAMRecord.getInferredInsertSize() + "\nmapq=" +
-        mouseOverSAMRecord.getMappingQuality()+"\nrname="+
-        mouseOverSAMRecord.getReferenceName();
+        reads.getReadName(read) + "\n" + 
+        reads.getAlignmentStart(read) + ".." +
+        reads.getAlignmentEnd(read) + "\nisize=" +
+        reads.getInferredInsertSize(read) + "\nmapq=" +
+        reads.getMappingQuality(read)+"\nrname="+
+        reads.getReferenceName(read);
 
-    if( mouseOverSAMRecord.getReadPairedFlag() && 
-        mouseOverSAMRecord.getProperPairFlag() && 
-       !mouseOverSAMRecord.getMateUnmappedFlag())
+    if( reads.getReadPairedFlag(read) && 
+        reads.getProperPairFlag(read) && 
+       !reads.getMateUnmappedFlag(read))
     {
       msg = msg +
         "\nstrand (read/mate): "+
-       (mouseOverSAMRecord.getReadNegativeStrandFlag() ? "-" : "+")+" / "+
-       (mouseOverSAMRecord.getMateNegativeStrandFlag() ? "-" : "+");
+       (reads.getReadNegativeStrandFlag(read) ? "-" : "+")+" / "+
+       (reads.getMateNegativeStrandFlag(read) ? "-" : "+");
     }
     else
       msg = msg +
         "\nstrand (read/mate): "+
-       (mouseOverSAMRecord.getReadNegativeStrandFlag() ? "-" : "+");
+       (reads.getReadNegativeStrandFlag(read) ? "-" : "+");
     
     if(msg != null && mouseOverInsertion != null)
       msg = msg + "\nInsertion at:" +mouseOverInsertion;
@@ -390,9 +406,18 @@ public class BamView extends JPanel
   
   /**
    * Read a SAM or BAM file.
+   * @param start
+   * @param end
+   * @param bamIndex  index of the file in <code>bamList</code>
+   * @param refName   reference to read when not concatenating sequences
+   * @param reads     the <code>ReadStore</code> to add the reads to
+   * @param load      the background load this is part of or null
+   * @return false if the read was stopped because of the memory limit
    * @throws IOException 
    */
-  private void readFromBamPicard(int start, int end, int bamIndex) 
+  private boolean readFromBamPicard(int start, int end, int bamIndex,
+                                    String refName, ReadStore reads,
+                                    ReadLoad load) 
           throws IOException
   {
     // Open the input file.  Automatically detects whether input is SAM or BAM
@@ -426,93 +451,130 @@ public class BamView extends JPanel
             thisEnd = thisLength;
           
           //System.out.println("READ "+seqNames.get(i)+"  "+thisStart+".."+thisEnd);
-          iterateOverBam(inputSam, seqNames.get(i), thisStart, thisEnd, bamIndex);
+          if(!iterateOverBam(inputSam, seqNames.get(i), thisStart, thisEnd, 
+                             bamIndex, reads, load))
+            return false;
         }
         lastLen = len;
       }
     }
     else
-    {
-      String refName = (String) combo.getSelectedItem();
-      iterateOverBam(inputSam, refName, start, end, bamIndex);
-    }
+      return iterateOverBam(inputSam, refName, start, end, bamIndex, reads, load);
     
     //inputSam.close();
     //System.out.println("readFromBamPicard "+start+".."+end);
     //System.out.println("Reads in view ... "+readsInView.size());
+    return true;
   }
   
   /**
-   * Iterate over BAM file and load into the <code>List</code> of
-   * <code>SAMRecord</code>.
+   * Iterate over BAM file and load into the <code>ReadStore</code>. The <code>SAMFileReader</code> is locked
+   * while iterating as it may be shared between loads.
    * @param inputSam
    * @param refName
    * @param start
    * @param end
+   * @param reads  the <code>ReadStore</code> to add the reads to
+   * @param load   the background load this is part of or null
+   * @return false if the read was stopped because of the memory limit
    */
-  private void iterateOverBam(final SAMFileReader inputSam, 
-                              String refName, int start, int end,
-                              int bamIndex)
+  private boolean iterateOverBam(final SAMFileReader inputSam, 
+                                 String refName, int start, int end,
+                                 int bamIndex, ReadStore reads,
+                                 ReadLoad load)
   { 
-    boolean multipleBAM = false;
-    if(bamList.size() > 1)
-      multipleBAM = true;
-    
-    CloseableIterator<SAMRecord> it = inputSam.queryOverlapping(refName, start, end);
-    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
-    int checkMemAfter = 8000;
-    int cnt = 0;
-    
-    while ( it.hasNext() )
+    synchronized(inputSam)
     {
+      CloseableIterator<SAMRecord> it = inputSam.queryOverlapping(refName, start, end);
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      int checkMemAfter = 8000;
+      int cnt = 0;
+      boolean waitingShown = false;
+
       try
       {
-        cnt++;
-        SAMRecord samRecord = it.next();
-
-        if( samRecordFlagPredicate == null ||
-           !samRecordFlagPredicate.testPredicate(samRecord))
+        while ( it.hasNext() )
         {
-          if(samRecordMapQPredicate == null ||
-             samRecordMapQPredicate.testPredicate(samRecord))
+          if(load != null && load.isCancelled())
+            return true;
+
+          try
           {
-            if(multipleBAM)
-              samRecord.setAttribute("FL", bamIndex);
-            readsInView.add(samRecord);
+            cnt++;
+            SAMRecord samRecord = it.next();
+
+            if( samRecordFlagPredicate == null ||
+               !samRecordFlagPredicate.testPredicate(samRecord))
+            {
+              if(samRecordMapQPredicate == null ||
+                 samRecordMapQPredicate.testPredicate(samRecord))
+                reads.add(samRecord, bamIndex);
+            }
+
+            if(cnt > checkMemAfter)
+            {
+              cnt = 0;
+              float heapFraction =
+                (float)((float)memory.getHeapMemoryUsage().getUsed()/
+                        (float)memory.getHeapMemoryUsage().getMax());
+              logger4j.debug("Heap memory usage (used/max): "+heapFraction);
+
+              if(reads.size() > checkMemAfter*2 && !waitingShown)
+              {
+                waitingShown = true;
+                runOnEventDispatchThread(new Runnable()
+                {
+                  public void run()
+                  {
+                    if(!waitingFrame.isVisible())
+                      waitingFrame.showWaiting("loading...", mainPanel);
+                  }
+                });
+              }
+
+              if(heapFraction > 0.90) 
+              {
+                final String msg =
+                  "Using > 90 % of the maximum memory limit:"+
+                  (memory.getHeapMemoryUsage().getMax()/1000000.f)+" Mb.\n"+
+                  "Not all reads in this range have been read in. Zoom in or\n"+
+                  "consider increasing the memory for this application.";
+                runOnEventDispatchThread(new Runnable()
+                {
+                  public void run()
+                  {
+                    popFrame.show(msg, mainPanel, 15000);
+                  }
+                });
+                return false;
+              }
+            }
           }
-        }
-        
-        if(cnt > checkMemAfter)
-        {
-          cnt = 0;
-          float heapFraction =
-            (float)((float)memory.getHeapMemoryUsage().getUsed()/
-                    (float)memory.getHeapMemoryUsage().getMax());
-          logger4j.debug("Heap memory usage (used/max): "+heapFraction);
-          
-          if(readsInView.size() > checkMemAfter*2 && !waitingFrame.isVisible())
-            waitingFrame.showWaiting("loading...", mainPanel);
-          
-          if(heapFraction > 0.90) 
+          catch(Exception e)
           {
-            popFrame.show(
-              "Using > 90 % of the maximum memory limit:"+
-              (memory.getHeapMemoryUsage().getMax()/1000000.f)+" Mb.\n"+
-              "Not all reads in this range have been read in. Zoom in or\n"+
-              "consider increasing the memory for this application.",
-              mainPanel,
-              15000);
-            break;
+            System.out.println(e.getMessage());
           }
         }
       }
-      catch(Exception e)
+      finally
       {
-        System.out.println(e.getMessage());
+        it.close();
       }
     }
+    return true;
+  }
 
-    it.close();
+  /**
+   * Run on the event dispatch thread. The reads are usually loaded in the
+   * background so the waiting and memory messages are queued to be shown.
+   * @param run
+   */
+  private static void runOnEventDispatchThread(final Runnable run)
+  {
+    if(SwingUtilities.isEventDispatchThread())
+      run.run();
+    else
+      SwingUtilities.invokeLater(run);
   }
 
   private int getSequenceLength()
@@ -589,7 +651,7 @@ public class BamView extends JPanel
 	super.paintComponent(g);
 	Graphics2D g2 = (Graphics2D)g;
 
-	mouseOverSAMRecord = null;
+	mouseOverRead = -1;
     int seqLength = getSequenceLength();
 	float pixPerBase = getPixPerBaseByWidth();
 	
@@ -615,64 +677,55 @@ public class BamView extends JPanel
     if(laststart != start ||
        lastend   != end)
     {
-      synchronized (this)
+      if(readsInView == null)
+        readsInView = new ReadStore(isBasesNeeded());
+
+      if(asynchronous)
+        loadReadsInBackground(start, end, pixPerBase);
+      else
       {
-        try
+        synchronized (this)
         {
-          float heapFractionUsedBefore = (float) ((float) memory.getHeapMemoryUsage().getUsed() / 
-                                                  (float) memory.getHeapMemoryUsage().getMax());
-
-          if(readsInView == null)
-            readsInView = new Vector<SAMRecord>();
-          else
-            readsInView.clear();
-          
-          for(int i=0; i<bamList.size(); i++)
+          try
           {
-            if(!hideBamList.contains(i))
-              readFromBamPicard(start, end, i);
-          }
-          float heapFractionUsedAfter = (float) ((float) memory.getHeapMemoryUsage().getUsed() / 
-                                                 (float) memory.getHeapMemoryUsage().getMax());
+            float heapFractionUsedBefore = (float) ((float) memory.getHeapMemoryUsage().getUsed() / 
+                                                    (float) memory.getHeapMemoryUsage().getMax());
+
+            ReadStore reads = new ReadStore(isBasesNeeded());
+            readsInView = reads;
+
+            String refName = (String) combo.getSelectedItem();
+            for(int i=0; i<bamList.size(); i++)
+            {
+              if(!hideBamList.contains(i))
+                readFromBamPicard(start, end, i, refName, reads, null);
+            }
+            float heapFractionUsedAfter = (float) ((float) memory.getHeapMemoryUsage().getUsed() / 
+                                                   (float) memory.getHeapMemoryUsage().getMax());
 
-          // System.out.println("Heap Max  : "+memory.getHeapMemoryUsage().getMax());
-          // System.out.println("Heap Used : "+memory.getHeapMemoryUsage().getUsed());
-          // System.out.println("Heap memory used "+heapFractionUsedAfter);
+            // System.out.println("Heap Max  : "+memory.getHeapMemoryUsage().getMax());
+            // System.out.println("Heap Used : "+memory.getHeapMemoryUsage().getUsed());
+            // System.out.println("Heap memory used "+heapFractionUsedAfter);
 
-          if ((heapFractionUsedAfter - heapFractionUsedBefore) > 0.06
-              && !isStackView && heapFractionUsedAfter > 0.8)
+            changeToStackView = 
+              checkChangeToStackView(heapFractionUsedBefore, heapFractionUsedAfter);
+            sortReads(readsInView, pixPerBase);
+          }
+          catch (OutOfMemoryError ome)
           {
-            checkBoxStackView.setSelected(true);
-            isStackView = true;
-            changeToStackView = true;
+            readsInView = new ReadStore(false, 0);
+            JOptionPane.showMessageDialog(this, "Out of Memory");
+            return;
           }
-
-          if ((!isStackView && !isStrandStackView)
-              || pixPerBase * 1.08f >= ALIGNMENT_PIX_PER_BASE)
+          catch(IOException me)
           {
-            Collections.sort(readsInView, new SAMRecordComparator());
+            me.printStackTrace();
           }
-          else if( (isStackView || isStrandStackView) &&
-              bamList.size() > 1)
+          catch(net.sf.samtools.util.RuntimeIOException re)
           {
-            // merge multiple BAM files
-            Collections.sort(readsInView, new SAMRecordPositionComparator(BamView.this));
+            JOptionPane.showMessageDialog(this, re.getMessage());
           }
         }
-        catch (OutOfMemoryError ome)
-        {
-          JOptionPane.showMessageDialog(this, "Out of Memory");
-          readsInView.clear();
-          return;
-        }
-        catch(IOException me)
-        {
-          me.printStackTrace();
-        }
-        catch(net.sf.samtools.util.RuntimeIOException re)
-        {
-          JOptionPane.showMessageDialog(this, re.getMessage());
-        }
       }
     }
     
@@ -708,19 +761,328 @@ public class BamView extends JPanel
 	  }
 	}
 
-	if(waitingFrame.isVisible())
+	if(waitingFrame.isVisible() && currentLoad == null)
       waitingFrame.hideFrame();
 	if(changeToStackView)
-	{
-	  popFrame.show(
-          "Note :: Changed to the stack view to save memory.\n"+
-          "Currently this is using "+ 
-          (memory.getHeapMemoryUsage().getUsed()/1000000.f)+" Mb "+
-          "and the maximum\nmemory limit is "+
-          (memory.getHeapMemoryUsage().getMax()/1000000.f)+" Mb.",
-          mainPanel,
-          15000);
-	}
+	  showChangedToStackView();
+  }
+  
+  /**
+   * If the memory used by a load is large switch to the stack view.
+   * @param heapFractionUsedBefore
+   * @param heapFractionUsedAfter
+   * @return true if the view was changed to the stack view
+   */
+  private boolean checkChangeToStackView(float heapFractionUsedBefore,
+                                         float heapFractionUsedAfter)
+  {
+    if ((heapFractionUsedAfter - heapFractionUsedBefore) > 0.06
+        && !isStackView && heapFractionUsedAfter > 0.8)
+    {
+      checkBoxStackView.setSelected(true);
+      isStackView = true;
+      return true;
+    }
+    return false;
+  }
+  
+  private void showChangedToStackView()
+  {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    popFrame.show(
+        "Note :: Changed to the stack view to save memory.\n"+
+        "Currently this is using "+ 
+        (memory.getHeapMemoryUsage().getUsed()/1000000.f)+" Mb "+
+        "and the maximum\nmemory limit is "+
+        (memory.getHeapMemoryUsage().getMax()/1000000.f)+" Mb.",
+        mainPanel,
+        15000);
+  }
+  
+  /**
+   * Sort the reads for the current view.
+   * @param reads
+   * @param pixPerBase
+   */
+  private void sortReads(ReadStore reads, float pixPerBase)
+  {
+    if ((!isStackView && !isStrandStackView)
+        || pixPerBase * 1.08f >= ALIGNMENT_PIX_PER_BASE)
+    {
+      reads.sortByName();
+    }
+    else if( (isStackView || isStrandStackView) &&
+        bamList.size() > 1)
+    {
+      // merge multiple BAM files
+      reads.sortByPosition(BamView.this);
+    }
+  }
+  
+  /**
+   * The read bases and qualities are only stored when they are drawn
+   * or used to find SNPs.
+   * @return true if the read bases are needed for the current view
+   */
+  private boolean isBasesNeeded()
+  {
+    return showBaseAlignment || isSNPs || isSNPplot;
+  }
+  
+  /**
+   * Force the reads to be read again if the view now needs the read
+   * bases and these were not stored.
+   */
+  private void checkBasesLoaded()
+  {
+    if(isBasesNeeded() && readsInView != null && !readsInView.hasBases())
+    {
+      laststart = -1;
+      lastend   = -1;
+    }
+  }
+  
+  /**
+   * Start reading the given range off the event dispatch thread. Any 
+   * load still running for a previous range is cancelled. The reads
+   * already in view are drawn until the new ones replace them.
+   * @param start
+   * @param end
+   * @param pixPerBase
+   */
+  private void loadReadsInBackground(int start, int end, float pixPerBase)
+  {
+    if(currentLoad != null)
+      currentLoad.cancel();
+
+    currentLoad = new ReadLoad(start, end, pixPerBase,
+                               (String) combo.getSelectedItem());
+    currentLoad.submit();
+  }
+  
+  /**
+   * Called on the event dispatch thread when a background load has
+   * finished, to swap in the new reads and repaint.
+   * @param load
+   * @param reads
+   * @param changeToStackView
+   */
+  private void readsLoaded(ReadLoad load, ReadStore reads,
+                           boolean changeToStackView)
+  {
+    if(load != currentLoad)
+      return;
+    currentLoad = null;
+    readsInView = reads;
+
+    if(waitingFrame.isVisible())
+      waitingFrame.hideFrame();
+    if(changeToStackView)
+      showChangedToStackView();
+    repaint();
+  }
+  
+  /**
+   * Executor used to read BAM files in the background.
+   * @return
+   */
+  private ExecutorService getLoaderExecutor()
+  {
+    if(loaderExecutor == null)
+    {
+      loaderExecutor = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "BamView loader");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return loaderExecutor;
+  }
+  
+  /**
+   * A background read of a range from all the visible BAM files. There
+   * is one task per file; the last task to finish merges and sorts the 
+   * reads and hands them to the event dispatch thread.
+   */
+  private class ReadLoad
+  {
+    private final int start;
+    private final int end;
+    private final float pixPerBase;
+    private final String refName;
+    private volatile boolean cancelled = false;
+    private boolean memoryLimit = false;
+    private final boolean keepBases = isBasesNeeded();
+    private List<ReadStore> results = new Vector<ReadStore>();
+    private List<Future<?>> tasks = new Vector<Future<?>>();
+    private AtomicInteger remaining;
+    private float heapFractionUsedBefore;
+
+    ReadLoad(int start, int end, float pixPerBase, String refName)
+    {
+      this.start = start;
+      this.end = end;
+      this.pixPerBase = pixPerBase;
+      this.refName = refName;
+    }
+
+    void submit()
+    {
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      heapFractionUsedBefore = (float) memory.getHeapMemoryUsage().getUsed() / 
+                               (float) memory.getHeapMemoryUsage().getMax();
+
+      // calculate any sequence offsets here as this may need to warn the user
+      if(concatSequences && seqNames.size() > 0)
+        getSequenceOffset(seqNames.get(0));
+
+      final List<Integer> bamIndexes = new Vector<Integer>();
+      for(int i=0; i<bamList.size(); i++)
+        if(!hideBamList.contains(i))
+          bamIndexes.add(i);
+
+      if(bamIndexes.size() == 0)
+      {
+        finish();
+        return;
+      }
+
+      remaining = new AtomicInteger(bamIndexes.size());
+      for(int i=0; i<bamIndexes.size(); i++)
+      {
+        final int bamIndex = bamIndexes.get(i);
+        tasks.add(getLoaderExecutor().submit(new Runnable()
+        {
+          public void run()
+          {
+            read(bamIndex);
+          }
+        }));
+      }
+    }
+
+    boolean isCancelled()
+    {
+      return cancelled;
+    }
+
+    /**
+     * Stop this load. Running tasks stop at the next read, queued
+     * tasks are not started. Tasks are not interrupted as that would
+     * close the channel of the shared <code>SAMFileReader</code>.
+     */
+    void cancel()
+    {
+      cancelled = true;
+      for(int i=0; i<tasks.size(); i++)
+        tasks.get(i).cancel(false);
+    }
+
+    private void read(int bamIndex)
+    {
+      if(cancelled)
+        return;
+
+      ReadStore reads = new ReadStore(keepBases);
+      try
+      {
+        if(!readFromBamPicard(start, end, bamIndex, refName, reads, this))
+          memoryLimit = true;
+      }
+      catch (OutOfMemoryError ome)
+      {
+        reads = new ReadStore(keepBases, 0);
+        showMessage("Out of Memory");
+      }
+      catch(IOException me)
+      {
+        me.printStackTrace();
+      }
+      catch(net.sf.samtools.util.RuntimeIOException re)
+      {
+        showMessage(re.getMessage());
+      }
+      catch(RuntimeException re)
+      {
+        // e.g. a SAMFormatException - the other files are still shown
+        re.printStackTrace();
+        reads = new ReadStore(keepBases, 0);
+        showMessage("Problem reading "+bamList.get(bamIndex)+":\n"+re);
+      }
+      finally
+      {
+        results.add(reads);
+        if(remaining.decrementAndGet() == 0)
+          finish();
+      }
+    }
+
+    private void finish()
+    {
+      if(cancelled)
+        return;
+
+      int size = 0;
+      for(int i=0; i<results.size(); i++)
+        size += results.get(i).size();
+
+      ReadStore reads;
+      if(results.size() == 1)
+        reads = results.get(0);
+      else
+      {
+        reads = new ReadStore(keepBases, size);
+        for(int i=0; i<results.size(); i++)
+          reads.addAll(results.get(i));
+      }
+      results = null;
+
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      float heapFractionUsedAfter = (float) memory.getHeapMemoryUsage().getUsed() / 
+                                    (float) memory.getHeapMemoryUsage().getMax();
+      final boolean changeToStackView = !memoryLimit &&
+          (heapFractionUsedAfter - heapFractionUsedBefore) > 0.06 &&
+          !isStackView && heapFractionUsedAfter > 0.8;
+
+      if(!changeToStackView)
+        sortReads(reads, pixPerBase);
+      if(cancelled)
+        return;
+
+      final ReadStore loadedReads = reads;
+      SwingUtilities.invokeLater(new Runnable()
+      {
+        public void run()
+        {
+          if(changeToStackView)
+          {
+            // the view changes so load again for the stack view
+            checkBoxStackView.setSelected(true);
+            isStackView = true;
+            laststart = -1;
+            lastend = -1;
+          }
+          readsLoaded(ReadLoad.this, loadedReads, changeToStackView);
+        }
+      });
+    }
+
+    private void showMessage(final String msg)
+    {
+      SwingUtilities.invokeLater(new Runnable()
+      {
+        public void run()
+        {
+          JOptionPane.showMessageDialog(BamView.this, msg);
+        }
+      });
+    }
   }
   
   
@@ -809,30 +1171,30 @@ public class BamView extends JPanel
         {
           ypos += 11;
 
-          SAMRecord thisRead = readsInView.get(i);
+          int read = i;
           if (ypos < r.getMaxY() || ypos > r.getMinY())
-            drawSequence(g2, thisRead, ypos, refSeq, refSeqStart);
+            drawSequence(g2, read, ypos, refSeq, refSeqStart);
           drawn[i] = true;
 
-          int thisEnd = thisRead.getAlignmentEnd();
+          int thisEnd = readsInView.getAlignmentEnd(read);
           if (thisEnd == 0)
-            thisEnd = thisRead.getAlignmentStart() + thisRead.getReadLength();
+            thisEnd = readsInView.getAlignmentStart(read) + readsInView.getReadLength(read);
 
           for (int j = i + 1; j < nreads; j++)
           {
             if (!drawn[j])
             {
-              SAMRecord nextRead = readsInView.get(j);
-              int nextStart = nextRead.getAlignmentStart();
+              int nextRead = j;
+              int nextStart = readsInView.getAlignmentStart(nextRead);
               if (nextStart > thisEnd + 1)
               {
                 if (ypos < r.getMaxY() || ypos > r.getMinY())
                   drawSequence(g2, nextRead, ypos, refSeq, refSeqStart);
 
                 drawn[j] = true;
-                thisEnd = nextRead.getAlignmentEnd();
+                thisEnd = readsInView.getAlignmentEnd(nextRead);
                 if (thisEnd == 0)
-                  thisEnd = nextStart + nextRead.getReadLength();
+                  thisEnd = nextStart + readsInView.getReadLength(nextRead);
               }
               else if (ypos > r.getMaxY() || ypos < r.getMinY())
                 break;
@@ -864,37 +1226,44 @@ public class BamView extends JPanel
    * @param pixPerBase
    * @param ypos
    */
-  private void drawSequence(Graphics2D g2, SAMRecord samRecord, 
+  private void drawSequence(Graphics2D g2, int read, 
                             int ypos, String refSeq, int refSeqStart)
   {
-    if (!samRecord.getReadPairedFlag() ||  // read is not paired in sequencing
-        samRecord.getMateUnmappedFlag() )  // mate is unmapped )  // mate is unmapped 
+    if (!readsInView.getReadPairedFlag(read) ||  // read is not paired in sequencing
+        readsInView.getMateUnmappedFlag(read) )  // mate is unmapped )  // mate is unmapped 
       g2.setColor(Color.black);
     else
       g2.setColor(Color.blue);
     
+    byte[] readBases = readsInView.getReadBases(read);
+    if(readBases == null)  // bases not read in yet
+      return;
+
     Color col = g2.getColor();
     int xpos;
     int len    = 0;
     int refPos = 0;
-    String readSeq = samRecord.getReadString();
-    int offset = getSequenceOffset(samRecord.getReferenceName());
+    String readSeq = new String(readBases);
+    int offset = getSequenceOffset(readsInView.getReferenceName(read));
 
     byte[] phredQuality = null;
     if(baseQualityColour.isSelected())
-      phredQuality = samRecord.getBaseQualities();
+      phredQuality = readsInView.getBaseQualities(read);
 
     Hashtable<Integer, String> insertions = null;
-    List<AlignmentBlock> blocks = samRecord.getAlignmentBlocks();
-    for(int i=0; i<blocks.size(); i++)
+    // (reference start, read start, length) for each block
+    int[] blocks = readsInView.getAlignmentBlocks(read);
+    int nblocks = blocks.length/3;
+    for(int i=0; i<nblocks; i++)
     {
-      AlignmentBlock block = blocks.get(i);
-      int blockStart = block.getReadStart();
-      len += block.getLength();
-      for(int j=0; j<block.getLength(); j++)
+      int blockRefStart = blocks[i*3];
+      int blockStart = blocks[i*3+1];
+      int blockLength = blocks[i*3+2];
+      len += blockLength;
+      for(int j=0; j<blockLength; j++)
       {
         int readPos = blockStart-1+j;
-        xpos = block.getReferenceStart() - 1 + j + offset;
+        xpos = blockRefStart - 1 + j + offset;
         refPos = xpos - refSeqStart + 1;
 
         if(phredQuality != null)
@@ -915,10 +1284,10 @@ public class BamView extends JPanel
       }
           
       // look for insertions
-      if(markInsertions.isSelected() && i < blocks.size()-1)
+      if(markInsertions.isSelected() && i < nblocks-1)
       {
-        int blockEnd = blockStart+block.getLength();
-        int nextBlockStart = blocks.get(i+1).getReadStart();
+        int blockEnd = blockStart+blockLength;
+        int nextBlockStart = blocks[(i+1)*3+1];
         int insertSize = nextBlockStart - blockEnd;
         if(insertSize > 0)
         {
@@ -941,49 +1310,50 @@ public class BamView extends JPanel
       }
       
       // highlight
-      if(highlightSAMRecord != null &&
-         highlightSAMRecord.getReadName().equals(samRecord.getReadName()))
+      if(highlightReadName != null &&
+         highlightReadName.equals(readsInView.getReadName(read)))
       {
-        refPos =  block.getReferenceStart() + offset - refSeqStart;
+        refPos =  blockRefStart + offset - refSeqStart;
         int xstart = refPos*ALIGNMENT_PIX_PER_BASE;
-        int width  = block.getLength()*ALIGNMENT_PIX_PER_BASE;
+        int width  = blockLength*ALIGNMENT_PIX_PER_BASE;
         Color col1 = g2.getColor();
         g2.setColor(Color.red);
         g2.drawRect(xstart, ypos-BASE_HEIGHT, width, BASE_HEIGHT);        
-        if(i < blocks.size()-1)
+        if(i < nblocks-1)
         {
           int nextStart = 
-            (blocks.get(i+1).getReferenceStart() + offset - refSeqStart)*ALIGNMENT_PIX_PER_BASE;
+            (blocks[(i+1)*3] + offset - refSeqStart)*ALIGNMENT_PIX_PER_BASE;
           g2.drawLine(xstart+width, ypos-(BASE_HEIGHT/2), nextStart, ypos-(BASE_HEIGHT/2));
         }
         
         g2.setColor(col1);
       }
-      else if(i < blocks.size()-1)
+      else if(i < nblocks-1)
       {
-        refPos =  block.getReferenceStart() + offset - refSeqStart;
+        refPos =  blockRefStart + offset - refSeqStart;
         int xstart = refPos*ALIGNMENT_PIX_PER_BASE;
-        int width  = block.getLength()*ALIGNMENT_PIX_PER_BASE;
+        int width  = blockLength*ALIGNMENT_PIX_PER_BASE;
         int nextStart = 
-          (blocks.get(i+1).getReferenceStart() + offset - refSeqStart)*ALIGNMENT_PIX_PER_BASE;
+          (blocks[(i+1)*3] + offset - refSeqStart)*ALIGNMENT_PIX_PER_BASE;
         g2.drawLine(xstart+width, ypos-(BASE_HEIGHT/2), nextStart, ypos-(BASE_HEIGHT/2));
       }
     }
 
-    if(lastMousePoint != null && blocks.size() > 0)
+    if(lastMousePoint != null && nblocks > 0)
     {
-      refPos = blocks.get(0).getReferenceStart()+offset-refSeqStart;
+      refPos = blocks[0]+offset-refSeqStart;
       int xstart = refPos*ALIGNMENT_PIX_PER_BASE;
       
-      refPos = blocks.get(blocks.size()-1).getReferenceStart()+
-               blocks.get(blocks.size()-1).getLength()+offset-refSeqStart;
+      refPos = blocks[(nblocks-1)*3]+
+               blocks[(nblocks-1)*3+2]+offset-refSeqStart;
       int xend   = (refPos+len)*ALIGNMENT_PIX_PER_BASE;
 
       if(lastMousePoint.getY() > ypos-11 && lastMousePoint.getY() < ypos)
       if(lastMousePoint.getX() > xstart &&
          lastMousePoint.getX() < xend)
       {
-        mouseOverSAMRecord = samRecord;
+        mouseOverReads = readsInView;
+        mouseOverRead = read;
 
         if(insertions != null)
           mouseOverInsertion = insertions.get((int)lastMousePoint.getX());
@@ -1037,65 +1407,65 @@ public class BamView extends JPanel
     
     for(int i=0; i<readsInView.size(); i++)
     {
-      SAMRecord samRecord = readsInView.get(i);
-      SAMRecord samNextRecord = null;      
+      int read = i;
+      int nextRead = -1;      
 
-      if( !samRecord.getReadPairedFlag() ||  // read is not paired in sequencing
-          samRecord.getMateUnmappedFlag() )  // mate is unmapped
+      if( !readsInView.getReadPairedFlag(read) ||  // read is not paired in sequencing
+          readsInView.getMateUnmappedFlag(read) )  // mate is unmapped
       {
         if(isSingle)
         {
-          int ypos = getYPos(scaleHeight, samRecord.getReadString().length()); // (getHeight() - scaleHeight) - samRecord.getReadString().length();
+          int ypos = getYPos(scaleHeight, readsInView.getReadLength(read)); // (getHeight() - scaleHeight) - readsInView.getReadLength(read);
           if(ypos > r.getMaxY() || ypos < r.getMinY())
             continue;
           
           g2.setColor(Color.black);
-          drawRead(g2, samRecord, pixPerBase, ypos, baseAtStartOfView);
+          drawRead(g2, read, pixPerBase, ypos, baseAtStartOfView);
         }
         continue;
       }
 
-      int ypos = getYPos(scaleHeight, Math.abs(samRecord.getInferredInsertSize()));
+      int ypos = getYPos(scaleHeight, Math.abs(readsInView.getInferredInsertSize(read)));
       if( (ypos > r.getMaxY() || ypos < r.getMinY()) && ypos > 0 )
         continue;
       
       if(i < readsInView.size()-1)
       {
-        samNextRecord = readsInView.get(++i);
+        nextRead = ++i;
 
-        if(samRecord.getReadName().equals(samNextRecord.getReadName()))
+        if(readsInView.getReadName(read).equals(readsInView.getReadName(nextRead)))
         { 
           // draw connection between paired reads
-          if(samRecord.getAlignmentEnd() < samNextRecord.getAlignmentStart() && 
-              (samNextRecord.getAlignmentStart()-samRecord.getAlignmentEnd())*pixPerBase > 2.f)
+          if(readsInView.getAlignmentEnd(read) < readsInView.getAlignmentStart(nextRead) && 
+              (readsInView.getAlignmentStart(nextRead)-readsInView.getAlignmentEnd(read))*pixPerBase > 2.f)
           {
             g2.setColor(Color.LIGHT_GRAY);
 
             drawTranslucentLine(g2, 
-                   (int)((samRecord.getAlignmentEnd()-getBaseAtStartOfView())*pixPerBase), 
-                   (int)((samNextRecord.getAlignmentStart()-getBaseAtStartOfView())*pixPerBase), ypos);
+                   (int)((readsInView.getAlignmentEnd(read)-getBaseAtStartOfView())*pixPerBase), 
+                   (int)((readsInView.getAlignmentStart(nextRead)-getBaseAtStartOfView())*pixPerBase), ypos);
           }
           
           if(colourByCoverageColour.isSelected())
-            g2.setColor(getColourByCoverageColour(samRecord));
-          else if( samRecord.getReadNegativeStrandFlag() && // strand of the query (1 for reverse)
-              samNextRecord.getReadNegativeStrandFlag() )
+            g2.setColor(getColourByCoverageColour(read));
+          else if( readsInView.getReadNegativeStrandFlag(read) && // strand of the query (1 for reverse)
+              readsInView.getReadNegativeStrandFlag(nextRead) )
             g2.setColor(Color.red);
           else
             g2.setColor(Color.blue);
 
-          drawRead(g2, samRecord, pixPerBase, ypos, baseAtStartOfView);
-          drawRead(g2, samNextRecord, pixPerBase, ypos, baseAtStartOfView);
+          drawRead(g2, read, pixPerBase, ypos, baseAtStartOfView);
+          drawRead(g2, nextRead, pixPerBase, ypos, baseAtStartOfView);
         }
         else
         {
-          drawLoneRead(g2, samRecord, ypos, pixPerBase, baseAtStartOfView, scaleHeight);
+          drawLoneRead(g2, read, ypos, pixPerBase, baseAtStartOfView, scaleHeight);
           i--;
         }
       }
       else
       {
-        drawLoneRead(g2, samRecord, ypos, pixPerBase, baseAtStartOfView, scaleHeight);
+        drawLoneRead(g2, read, ypos, pixPerBase, baseAtStartOfView, scaleHeight);
       }
     }
     
@@ -1163,19 +1533,19 @@ public class BamView extends JPanel
     
     for(int i=0; i<readsInView.size(); i++)
     {
-      SAMRecord samRecord = readsInView.get(i);
-      int offset = getSequenceOffset(samRecord.getReferenceName());
+      int read = i;
+      int offset = getSequenceOffset(readsInView.getReferenceName(read));
 
-      int recordStart = samRecord.getAlignmentStart()+offset;
-      int recordEnd = samRecord.getAlignmentEnd()+offset;
+      int recordStart = readsInView.getAlignmentStart(read)+offset;
+      int recordEnd = readsInView.getAlignmentEnd(read)+offset;
       
       if(colourByCoverageColour.isSelected() ||
          lstStart != recordStart || lstEnd != recordEnd)
       { 
         if(colourByCoverageColour.isSelected())
-          g2.setColor(getColourByCoverageColour(samRecord));
-        else if (!samRecord.getReadPairedFlag() ||   // read is not paired in sequencing
-                  samRecord.getMateUnmappedFlag() )  // mate is unmapped )  // mate is unmapped 
+          g2.setColor(getColourByCoverageColour(read));
+        else if (!readsInView.getReadPairedFlag(read) ||   // read is not paired in sequencing
+                  readsInView.getMateUnmappedFlag(read) )  // mate is unmapped )  // mate is unmapped 
           g2.setColor(Color.black);
         else
           g2.setColor(Color.blue);
@@ -1196,7 +1566,7 @@ public class BamView extends JPanel
       
       if(ypos > r.getMaxY() || ypos < r.getMinY())
         continue;
-      drawRead(g2, samRecord, pixPerBase, ypos, baseAtStartOfView);
+      drawRead(g2, read, pixPerBase, ypos, baseAtStartOfView);
     }
   }
   
@@ -1255,21 +1625,21 @@ public class BamView extends JPanel
     
     for(int i=0; i<readsInView.size(); i++)
     {
-      SAMRecord samRecord = readsInView.get(i);
+      int read = i;
       
-      if( samRecord.getReadNegativeStrandFlag() == isStrandNegative )
+      if( readsInView.getReadNegativeStrandFlag(read) == isStrandNegative )
       {
-        int offset = getSequenceOffset(samRecord.getReferenceName());
-        int recordStart = samRecord.getAlignmentStart()+offset;
-        int recordEnd   = samRecord.getAlignmentEnd()+offset;
+        int offset = getSequenceOffset(readsInView.getReferenceName(read));
+        int recordStart = readsInView.getAlignmentStart(read)+offset;
+        int recordEnd   = readsInView.getAlignmentEnd(read)+offset;
       
         if(colourByCoverageColour.isSelected() ||
             lstStart != recordStart || lstEnd != recordEnd)
         { 
           if(colourByCoverageColour.isSelected())
-            g2.setColor(getColourByCoverageColour(samRecord));
-          else if (!samRecord.getReadPairedFlag() ||   // read is not paired in sequencing
-                    samRecord.getMateUnmappedFlag() )  // mate is unmapped 
+            g2.setColor(getColourByCoverageColour(read));
+          else if (!readsInView.getReadPairedFlag(read) ||   // read is not paired in sequencing
+                    readsInView.getMateUnmappedFlag(read) )  // mate is unmapped 
             g2.setColor(Color.black);
           else
             g2.setColor(Color.blue);
@@ -1290,7 +1660,7 @@ public class BamView extends JPanel
         
         if(ypos > r.getMaxY() || ypos < r.getMinY())
           continue;
-        drawRead(g2, samRecord, pixPerBase, ypos, baseAtStartOfView);
+        drawRead(g2, read, pixPerBase, ypos, baseAtStartOfView);
       }
     }
   }
@@ -1322,41 +1692,41 @@ public class BamView extends JPanel
     Vector<PairedRead> pairedReads = new Vector<PairedRead>();
     for(int i=0; i<readsInView.size(); i++)
     {
-      SAMRecord samRecord = readsInView.get(i);
+      int read = i;
 
-      if( !samRecord.getReadPairedFlag() ||  // read is not paired in sequencing
-          samRecord.getMateUnmappedFlag() )  // mate is unmapped
+      if( !readsInView.getReadPairedFlag(read) ||  // read is not paired in sequencing
+          readsInView.getMateUnmappedFlag(read) )  // mate is unmapped
         continue;
 
-      SAMRecord samNextRecord = null;      
+      int nextRead = -1;      
       if(i < readsInView.size()-1)
       {
-        samNextRecord = readsInView.get(++i);
+        nextRead = ++i;
         PairedRead pr = new PairedRead();
-        if(samRecord.getReadName().equals(samNextRecord.getReadName()))
+        if(readsInView.getReadName(read).equals(readsInView.getReadName(nextRead)))
         { 
-          if(samRecord.getAlignmentStart() < samNextRecord.getAlignmentStart())
+          if(readsInView.getAlignmentStart(read) < readsInView.getAlignmentStart(nextRead))
           {
-            pr.sam1 = samRecord;
-            pr.sam2 = samNextRecord;
+            pr.read1 = read;
+            pr.read2 = nextRead;
           }
           else
           {
-            pr.sam2 = samRecord;
-            pr.sam1 = samNextRecord;
+            pr.read2 = read;
+            pr.read1 = nextRead;
           }
           
         }
         else
         {
           --i;
-          pr.sam1 = samRecord;
-          pr.sam2 = null;
+          pr.read1 = read;
+          pr.read2 = -1;
         }
         pairedReads.add(pr);
       }
     }
-    Collections.sort(pairedReads, new PairedReadComparator());
+    Collections.sort(pairedReads, new PairedReadComparator(readsInView));
     
     Stroke originalStroke = new BasicStroke (1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND); 
     Stroke stroke =
@@ -1378,16 +1748,16 @@ public class BamView extends JPanel
     {
       PairedRead pr = pairedReads.get(i);
       
-      if(pr.sam1.getAlignmentStart() > lastEnd)
+      if(readsInView.getAlignmentStart(pr.read1) > lastEnd)
       {
         ypos = getHeight() - scaleHeight - 3;
         
-        if(pr.sam2 != null)
+        if(pr.read2 != -1)
         {  
-          lastEnd = pr.sam2.getAlignmentEnd();
+          lastEnd = readsInView.getAlignmentEnd(pr.read2);
         }
         else
-          lastEnd = pr.sam1.getAlignmentEnd();
+          lastEnd = readsInView.getAlignmentEnd(pr.read1);
       }
       else
         ypos = ypos - 3;
@@ -1398,45 +1768,45 @@ public class BamView extends JPanel
       g2.setStroke(originalStroke);
       g2.setColor(Color.LIGHT_GRAY);
       
-      if(pr.sam2 != null)
+      if(pr.read2 != -1)
       {
-        int offset1 = getSequenceOffset(pr.sam1.getReferenceName());
-        int offset2 = getSequenceOffset(pr.sam2.getReferenceName());
+        int offset1 = getSequenceOffset(readsInView.getReferenceName(pr.read1));
+        int offset2 = getSequenceOffset(readsInView.getReferenceName(pr.read2));
         drawTranslucentJointedLine(g2, 
-                (int)((pr.sam1.getAlignmentEnd()+offset1-getBaseAtStartOfView())*pixPerBase),
-                (int)((pr.sam2.getAlignmentStart()+offset2-getBaseAtStartOfView())*pixPerBase), ypos);
+                (int)((readsInView.getAlignmentEnd(pr.read1)+offset1-getBaseAtStartOfView())*pixPerBase),
+                (int)((readsInView.getAlignmentStart(pr.read2)+offset2-getBaseAtStartOfView())*pixPerBase), ypos);
       }
       else
       {
-        if(!pr.sam1.getMateUnmappedFlag() &&
-            pr.sam1.getMateReferenceName().equals(pr.sam1.getReferenceName()))
+        if(!readsInView.getMateUnmappedFlag(pr.read1) &&
+            readsInView.getMateReferenceName(pr.read1).equals(readsInView.getReferenceName(pr.read1)))
         {
           int prStart;
           
-          if(pr.sam1.getAlignmentStart() > pr.sam1.getMateAlignmentStart())
-            prStart = pr.sam1.getAlignmentEnd();
+          if(readsInView.getAlignmentStart(pr.read1) > readsInView.getMateAlignmentStart(pr.read1))
+            prStart = readsInView.getAlignmentEnd(pr.read1);
           else
-            prStart = pr.sam1.getAlignmentStart();
+            prStart = readsInView.getAlignmentStart(pr.read1);
           
-          int offset = getSequenceOffset(pr.sam1.getReferenceName());
+          int offset = getSequenceOffset(readsInView.getReferenceName(pr.read1));
           drawTranslucentJointedLine(g2, 
               (int)( (prStart+offset-getBaseAtStartOfView())*pixPerBase),
-              (int)( (pr.sam1.getMateAlignmentStart()+offset-getBaseAtStartOfView())*pixPerBase), ypos);
+              (int)( (readsInView.getMateAlignmentStart(pr.read1)+offset-getBaseAtStartOfView())*pixPerBase), ypos);
         }
       }
       
       if(colourByCoverageColour.isSelected())
-        g2.setColor(getColourByCoverageColour(pr.sam1));
-      else if( pr.sam1.getReadNegativeStrandFlag() && // strand of the query (1 for reverse)
-          ( pr.sam2 != null && pr.sam2.getReadNegativeStrandFlag() ) )
+        g2.setColor(getColourByCoverageColour(pr.read1));
+      else if( readsInView.getReadNegativeStrandFlag(pr.read1) && // strand of the query (1 for reverse)
+          ( pr.read2 != -1 && readsInView.getReadNegativeStrandFlag(pr.read2) ) )
         g2.setColor(Color.red);
       else
         g2.setColor(Color.blue);
       
-      drawRead(g2, pr.sam1, pixPerBase, ypos, baseAtStartOfView);
+      drawRead(g2, pr.read1, pixPerBase, ypos, baseAtStartOfView);
       
-      if(pr.sam2 != null)
-        drawRead(g2, pr.sam2, pixPerBase, ypos, baseAtStartOfView);
+      if(pr.read2 != -1)
+        drawRead(g2, pr.read2, pixPerBase, ypos, baseAtStartOfView);
     }
   }
   
@@ -1450,61 +1820,61 @@ public class BamView extends JPanel
    * @param originalStroke
    * @param stroke
    */
-  private void drawLoneRead(Graphics2D g2, SAMRecord samRecord, int ypos, 
+  private void drawLoneRead(Graphics2D g2, int read, int ypos, 
       float pixPerBase, int baseAtStartOfView, int scaleHeight)
   {
     boolean offTheTop = false;
-    int offset = getSequenceOffset(samRecord.getReferenceName());
-    int thisStart = samRecord.getAlignmentStart()+offset;
-    int thisEnd   = thisStart + samRecord.getReadString().length() -1;
+    int offset = getSequenceOffset(readsInView.getReferenceName(read));
+    int thisStart = readsInView.getAlignmentStart(read)+offset;
+    int thisEnd   = thisStart + readsInView.getReadLength(read) -1;
     
     if(ypos <= 0)
     {
       offTheTop = true;
-      ypos = samRecord.getReadString().length();
+      ypos = readsInView.getReadLength(read);
     }
     
-    if(samRecord.getInferredInsertSize() == 0)
+    if(readsInView.getInferredInsertSize(read) == 0)
     {
       offTheTop = true;
       ypos = getHeight() - scaleHeight - 5;
     }
       
-    if(samRecord.getInferredInsertSize() != 0 &&
-      Math.abs(samRecord.getMateAlignmentStart()-samRecord.getAlignmentEnd())*pixPerBase > 2.f)
+    if(readsInView.getInferredInsertSize(read) != 0 &&
+      Math.abs(readsInView.getMateAlignmentStart(read)-readsInView.getAlignmentEnd(read))*pixPerBase > 2.f)
     {
       g2.setColor(Color.LIGHT_GRAY);
       
-      if(samRecord.getAlignmentEnd() < samRecord.getMateAlignmentStart())
+      if(readsInView.getAlignmentEnd(read) < readsInView.getMateAlignmentStart(read))
       {
         int nextStart = 
-          (int)((samRecord.getMateAlignmentStart()-getBaseAtStartOfView()+offset)*pixPerBase);
+          (int)((readsInView.getMateAlignmentStart(read)-getBaseAtStartOfView()+offset)*pixPerBase);
         drawTranslucentLine(g2, 
           (int)((thisEnd-getBaseAtStartOfView())*pixPerBase), nextStart, ypos);
       }
       else
       {
         int nextStart = 
-            (int)((samRecord.getMateAlignmentStart()-getBaseAtStartOfView()+offset)*pixPerBase);
+            (int)((readsInView.getMateAlignmentStart(read)-getBaseAtStartOfView()+offset)*pixPerBase);
         drawTranslucentLine(g2, 
             (int)((thisStart-getBaseAtStartOfView())*pixPerBase), nextStart, ypos);
       }
     }
     
     if(colourByCoverageColour.isSelected())
-      g2.setColor(getColourByCoverageColour(samRecord));
+      g2.setColor(getColourByCoverageColour(read));
     else if(offTheTop)
       g2.setColor(darkOrange); 
-    else if(samRecord.getReadNegativeStrandFlag() &&
-            samRecord.getMateNegativeStrandFlag()) // strand of the query (1 for reverse)
+    else if(readsInView.getReadNegativeStrandFlag(read) &&
+            readsInView.getMateNegativeStrandFlag(read)) // strand of the query (1 for reverse)
       g2.setColor(Color.red);
     else
       g2.setColor(Color.blue);
  
-    drawRead(g2, samRecord, pixPerBase, ypos, baseAtStartOfView);
+    drawRead(g2, read, pixPerBase, ypos, baseAtStartOfView);
     
     if (isSNPs)
-      showSNPsOnReads(g2, samRecord, pixPerBase, ypos, offset);
+      showSNPsOnReads(g2, read, pixPerBase, ypos, offset);
   }
 
   
@@ -1606,18 +1976,18 @@ public class BamView extends JPanel
    * @param ypos
    * @param baseAtStartOfView
    */
-  private void drawRead(Graphics2D g2, SAMRecord thisRead,
+  private void drawRead(Graphics2D g2, int read,
 		                float pixPerBase,
 		                int ypos,
 		                int baseAtStartOfView)
   {
-    int offset = getSequenceOffset(thisRead.getReferenceName());
+    int offset = getSequenceOffset(readsInView.getReferenceName(read));
 
-    int thisStart = thisRead.getAlignmentStart()+offset-baseAtStartOfView;
-    int thisEnd   = thisRead.getAlignmentEnd()+offset-baseAtStartOfView;
+    int thisStart = readsInView.getAlignmentStart(read)+offset-baseAtStartOfView;
+    int thisEnd   = readsInView.getAlignmentEnd(read)+offset-baseAtStartOfView;
     
-    if(highlightSAMRecord != null && 
-       highlightSAMRecord.getReadName().equals(thisRead.getReadName()))
+    if(highlightReadName != null && 
+       highlightReadName.equals(readsInView.getReadName(read)))
     {
        Stroke originalStroke = g2.getStroke();
        Stroke stroke =
@@ -1631,19 +2001,18 @@ public class BamView extends JPanel
        g2.setStroke(originalStroke);
     }
 
-    if(thisRead.getCigar().getCigarElements().size() == 1)
+    if(readsInView.getCigarLength(read) == 1)
       g2.drawLine((int)( thisStart * pixPerBase), ypos,
                   (int)( thisEnd * pixPerBase), ypos);
     else
     {
-      List<AlignmentBlock> blocks = thisRead.getAlignmentBlocks();
+      int[] blocks = readsInView.getAlignmentBlocks(read);
       Color c = g2.getColor();
       int lastEnd = 0;
-      for(int i=0; i<blocks.size(); i++)
+      for(int i=0; i<blocks.length/3; i++)
       {
-        AlignmentBlock block = blocks.get(i);
-        int blockStart = block.getReferenceStart()+offset-baseAtStartOfView;
-        int blockEnd = blockStart + block.getLength() - 1;
+        int blockStart = blocks[i*3]+offset-baseAtStartOfView;
+        int blockEnd = blockStart + blocks[i*3+2] - 1;
 
         g2.drawLine((int)( blockStart * pixPerBase), ypos,
                     (int)( blockEnd * pixPerBase), ypos);
@@ -1659,7 +2028,7 @@ public class BamView extends JPanel
     }
     
     if(isOrientation)
-      drawArrow(g2, thisRead, thisStart, thisEnd, pixPerBase, ypos);
+      drawArrow(g2, read, thisStart, thisEnd, pixPerBase, ypos);
 
     // test if the mouse is over this read
     if(lastMousePoint != null)
@@ -1668,12 +2037,13 @@ public class BamView extends JPanel
       if(lastMousePoint.getX() > thisStart * pixPerBase &&
          lastMousePoint.getX() < thisEnd * pixPerBase)
       {
-        mouseOverSAMRecord = thisRead;
+        mouseOverReads = readsInView;
+        mouseOverRead = read;
       }
     }
     
     if (isSNPs)
-      showSNPsOnReads(g2, thisRead, pixPerBase, ypos, offset);
+      showSNPsOnReads(g2, read, pixPerBase, ypos, offset);
   }
   
   /**
@@ -1686,13 +2056,13 @@ public class BamView extends JPanel
    * @param ypos
    */
   private void drawArrow(Graphics2D g2,
-                         SAMRecord thisRead, 
+                         int read, 
                          int thisStart, 
                          int thisEnd, 
                          float pixPerBase, 
                          int ypos)
   {
-    if(thisRead.getReadNegativeStrandFlag())
+    if(readsInView.getReadNegativeStrandFlag(read))
     {
       int apos = ypos + 2;
       g2.drawLine((int)( (thisStart+5) * pixPerBase), apos,
@@ -1777,32 +2147,32 @@ public class BamView extends JPanel
    * @param pixPerBase
    * @param ypos
    */
-  private void showSNPsOnReads(Graphics2D g2, SAMRecord thisRead,
+  private void showSNPsOnReads(Graphics2D g2, int read,
                                float pixPerBase, int ypos, int offset)
   {
-    int thisStart = thisRead.getAlignmentStart();
-    int thisEnd   = thisRead.getAlignmentEnd();
+    int thisStart = readsInView.getAlignmentStart(read);
+    int thisEnd   = readsInView.getAlignmentEnd(read);
     
     // use alignment blocks of the contiguous alignment of
     // subsets of read bases to a reference sequence
-    List<AlignmentBlock> blocks = thisRead.getAlignmentBlocks();
+    int[] blocks = readsInView.getAlignmentBlocks(read);
+    byte[] readSeq = readsInView.getReadBases(read);
+    if(readSeq == null)  // bases not read in yet
+      return;
     try
     {
       char[] refSeq = bases.getSubSequenceC(
           new Range(thisStart+offset, thisEnd+offset), Bases.FORWARD);
-      byte[] readSeq = thisRead.getReadBases();
-
       Color col = g2.getColor();
       g2.setColor(Color.red);
 
       offset = offset - getBaseAtStartOfView();
-      for(int i=0; i<blocks.size(); i++)
+      for(int i=0; i<blocks.length/3; i++)
       {
-        AlignmentBlock block = blocks.get(i);
-        for(int j=0; j<block.getLength(); j++)
+        for(int j=0; j<blocks[i*3+2]; j++)
         {
-          int readPos = block.getReadStart()-1+j;
-          int refPos  = block.getReferenceStart()+j;
+          int readPos = blocks[i*3+1]-1+j;
+          int refPos  = blocks[i*3]+j;
 
           if (Character.toUpperCase(refSeq[refPos-thisStart]) != readSeq[readPos])
           {
@@ -2301,6 +2671,7 @@ public class BamView extends JPanel
         
         if(isSNPs)
           baseQualityColour.setSelected(false);
+        checkBasesLoaded();
         repaint();
       }
     });
@@ -2337,6 +2708,7 @@ public class BamView extends JPanel
       {
         isSNPplot = !isSNPplot;
         snpPanel.setVisible(isSNPplot);
+        checkBasesLoaded();
         repaint();
       }
     });
@@ -2452,6 +2824,7 @@ public class BamView extends JPanel
         ruler = new Ruler();
       jspView.setColumnHeaderView(ruler);
       showBaseAlignment = true;
+      checkBasesLoaded();
       baseQualityColour.setEnabled(true);
       markInsertions.setEnabled(true);
     }
@@ -2599,7 +2972,7 @@ public class BamView extends JPanel
     if(event.getButton() == MouseEvent.BUTTON3 || bases == null) 
       return;
     
-    highlightSAMRecord = null;
+    highlightReadName = null;
     if(event.getClickCount() > 1)
     {
       getSelection().clear();
@@ -2650,16 +3023,13 @@ public class BamView extends JPanel
   
   /**
    * Get the colour for the given read given to it by the coverage plot.
-   * @param samRecord
+   * @param read  index of the read in <code>readsInView</code>
    * @return
    */
-  private Color getColourByCoverageColour(SAMRecord samRecord)
+  private Color getColourByCoverageColour(int read)
   {
     LineAttributes lines[] = CoveragePanel.getLineAttributes(bamList.size());
-    int fileIndex = 0;
-    if(bamList.size()>1)
-      fileIndex = (Integer) samRecord.getAttribute("FL");
-    return lines[fileIndex].getLineColour(); 
+    return lines[readsInView.getBamIndex(read)].getLineColour(); 
   }
   
   private Selection getSelection()
@@ -2667,11 +3037,115 @@ public class BamView extends JPanel
     return selection;
   }
   
-  protected List<SAMRecord> getReadsInView()
+  protected ReadStore getReadsInView()
   {
     return readsInView;
   }
   
+  /**
+   * @return the names of the reference sequences that can be in view
+   */
+  protected List<String> getReferenceNamesInView()
+  {
+    if(concatSequences)
+      return seqNames;
+    List<String> refNames = new Vector<String>();
+    refNames.add((String) combo.getSelectedItem());
+    return refNames;
+  }
+  
+  /**
+   * @param bamIndex
+   * @return true if the BAM file is hidden from the view
+   */
+  protected boolean isBamHidden(int bamIndex)
+  {
+    return hideBamList.contains(bamIndex);
+  }
+  
+  /**
+   * The coverage files count every mapped read, so they only match the
+   * reads in view when no other reads are filtered out.
+   * @return true if reads are filtered by mapping quality or by a flag
+   *         other than read unmapped
+   */
+  protected boolean isReadFilterSet()
+  {
+    if(samRecordMapQPredicate != null)
+      return true;
+    return samRecordFlagPredicate != null &&
+           samRecordFlagPredicate.getFlag() !=
+             SAMRecordFlagPredicate.READ_UNMAPPED_FLAG;
+  }
+
+  /**
+   * Get the precomputed coverage for a BAM file. If the coverage file
+   * does not exist or is out of date it is built in the background
+   * and the coverage plot repainted when it is ready.
+   * @param bamIndex
+   * @return the coverage or null if it is not available yet
+   */
+  protected CoveragePyramid getCoveragePyramid(int bamIndex)
+  {
+    final String bam = bamList.get(bamIndex);
+    if(coveragePyramids.containsKey(bam))
+      return coveragePyramids.get(bam);
+    if(bam.startsWith("http") || coverageBuilds.contains(bam))
+      return null;
+
+    final File bamFile = new File(bam);
+    final File covFile = CoveragePyramid.getCoverageFile(bam);
+    try
+    {
+      CoveragePyramid pyramid = CoveragePyramid.open(covFile, bamFile);
+      if(pyramid != null)
+      {
+        coveragePyramids.put(bam, pyramid);
+        return pyramid;
+      }
+    }
+    catch(IOException e)
+    {
+      logger4j.warn(covFile.getPath()+": "+e.getMessage());
+    }
+
+    coverageBuilds.add(bam);
+    SwingWorker worker = new SwingWorker()
+    {
+      public Object construct()
+      {
+        try
+        {
+          logger4j.debug("Building coverage for "+bam);
+          CoveragePyramid.build(bamFile, covFile);
+          return CoveragePyramid.open(covFile, bamFile);
+        }
+        catch(IOException e)
+        {
+          logger4j.warn(covFile.getPath()+": "+e.getMessage());
+        }
+        catch(RuntimeException e)
+        {
+          logger4j.warn(bam+": "+e.getMessage());
+        }
+        return null;
+      }
+      
+      public void finished()
+      {
+        CoveragePyramid pyramid = (CoveragePyramid) get();
+        if(pyramid == null)  // leave in coverageBuilds so it is not retried
+          return;
+        coveragePyramids.put(bam, pyramid);
+        coverageBuilds.remove(bam);
+        if(coveragePanel != null && coveragePanel.isVisible())
+          coveragePanel.repaint();
+      }
+    };
+    worker.start();
+    return null;
+  }
+  
   protected int getBasesInView()
   {
     return nbasesInView;
@@ -2848,7 +3322,12 @@ public class BamView extends JPanel
       if(e.getClickCount() > 1)
         getSelection().clear(); 
       else if(e.getButton() == MouseEvent.BUTTON1)
-        highlightSAMRecord = mouseOverSAMRecord;
+      {
+        if(mouseOverRead < 0)
+          highlightReadName = null;
+        else
+          highlightReadName = mouseOverReads.getReadName(mouseOverRead);
+      }
       else
         highlightRange(e, MouseEvent.BUTTON2_DOWN_MASK);
       repaint();
@@ -2881,44 +3360,47 @@ public class BamView extends JPanel
         if(showDetails != null)
           popup.remove(showDetails);
         
-        if( mouseOverSAMRecord != null && 
-            mouseOverSAMRecord.getReadPairedFlag() &&
-           !mouseOverSAMRecord.getMateUnmappedFlag() )
+        final ReadStore reads = mouseOverReads;
+        final int read = mouseOverRead;
+        if( read >= 0 && 
+            reads.getReadPairedFlag(read) &&
+           !reads.getMateUnmappedFlag(read) )
         {
-          final SAMRecord thisSAMRecord = mouseOverSAMRecord;
           gotoMateMenuItem = new JMenuItem("Go to mate of : "+
-              thisSAMRecord.getReadName());
+              reads.getReadName(read));
           gotoMateMenuItem.addActionListener(new ActionListener()
           {
 			public void actionPerformed(ActionEvent e) 
 			{
-			  String name = thisSAMRecord.getMateReferenceName();
+			  String name = reads.getMateReferenceName(read);
 			  if(name.equals("="))
-			    name = thisSAMRecord.getReferenceName();
+			    name = reads.getReferenceName(read);
 			  int offset = getSequenceOffset(name);
 			  if(feature_display != null)
 			    feature_display.makeBaseVisible(
-			        thisSAMRecord.getMateAlignmentStart()+offset);
+			        reads.getMateAlignmentStart(read)+offset);
 			  else
 			    scrollBar.setValue(
-			        thisSAMRecord.getMateAlignmentStart()+offset-
+			        reads.getMateAlignmentStart(read)+offset-
 			        (nbasesInView/2));
 			  
-			  highlightSAMRecord = thisSAMRecord; 
+			  highlightReadName = reads.getReadName(read); 
 			}  
           });
           popup.add(gotoMateMenuItem);
         }  
           
-        if( mouseOverSAMRecord != null)
+        if( read >= 0 )
         {
-          final SAMRecord thisSAMRecord = mouseOverSAMRecord;
           showDetails = new JMenuItem("Show details of : "+
-              thisSAMRecord.getReadName());
+              reads.getReadName(read));
           showDetails.addActionListener(new ActionListener()
           {
             public void actionPerformed(ActionEvent e) 
             {
+              SAMRecord thisSAMRecord = findSAMRecord(reads, read);
+              if(thisSAMRecord == null)
+                return;
               FileViewer viewDetail = new FileViewer(thisSAMRecord.getReadName(), true, false);
               appendToDetailView(thisSAMRecord, viewDetail);
             }  
@@ -2931,6 +3413,48 @@ public class BamView extends JPanel
     }
   }
   
+  /**
+   * Read the full <code>SAMRecord</code> for a read in a 
+   * <code>ReadStore</code> back from its BAM file.
+   * @param reads
+   * @param read
+   * @return the record or null if it is not found
+   */
+  private SAMRecord findSAMRecord(final ReadStore reads, final int read)
+  {
+    try
+    {
+      String bam = bamList.get(reads.getBamIndex(read));
+      final SAMFileReader inputSam = getSAMFileReader(bam);
+      int start = reads.getAlignmentStart(read);
+      synchronized(inputSam)
+      {
+        CloseableIterator<SAMRecord> it = inputSam.queryOverlapping(
+            reads.getReferenceName(read), start, start);
+        try
+        {
+          while( it.hasNext() )
+          {
+            SAMRecord samRecord = it.next();
+            if(samRecord.getAlignmentStart() == start &&
+               samRecord.getFlags() == reads.getFlags(read) &&
+               samRecord.getReadName().equals(reads.getReadName(read)))
+              return samRecord;
+          }
+        }
+        finally
+        {
+          it.close();
+        }
+      }
+    }
+    catch(IOException e)
+    {
+      e.printStackTrace();
+    }
+    return null;
+  }
+  
   private void appendToDetailView(SAMRecord thisSAMRecord, FileViewer viewDetail)
   {
     viewDetail.appendString("Read Name             "+thisSAMRecord.getReadName()+"\n", Level.INFO);
@@ -3011,10 +3535,14 @@ public class BamView extends JPanel
     this.samRecordMapQPredicate = samRecordMapQPredicate;
   }
   
+  /**
+   * Indexes of a read and its mate in <code>readsInView</code>. 
+   * The mate is -1 if it is not in view.
+   */
   class PairedRead
   {
-    SAMRecord sam1;
-    SAMRecord sam2;
+    int read1;
+    int read2 = -1;
   } 
  
   public static void main(String[] args)
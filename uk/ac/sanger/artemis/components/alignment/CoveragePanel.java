@@ -32,6 +32,7 @@ import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.geom.GeneralPath;
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
@@ -39,8 +40,6 @@ import java.util.List;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenuItem;
 
-import net.sf.samtools.AlignmentBlock;
-import net.sf.samtools.SAMRecord;
 
   public class CoveragePanel extends AbstractGraphPanel
   {
@@ -95,10 +94,6 @@ import net.sf.samtools.SAMRecord;
       super.paintComponent(g);
       Graphics2D g2 = (Graphics2D)g;
 
-      List<SAMRecord> readsInView = jamView.getReadsInView();
-      if(readsInView == null)
-        return;
-
       int windowSize;
       if(autoWinSize)
       {
@@ -126,65 +121,37 @@ import net.sf.samtools.SAMRecord;
     
     private int drawPlot(Graphics2D g2, int nBins, int windowSize)
     {
-      List<SAMRecord> readsInView = jamView.getReadsInView();
       List<String> bamList = jamView.bamList;
-      final Hashtable<String, Integer[]> plots = new Hashtable<String, Integer[]>();
+      final Hashtable<String, float[]> plots = new Hashtable<String, float[]>();
       
-      Integer combinedCoverage[] = null;
-      if(includeCombined)
+      if(!addCoverageFromPyramids(plots, nBins, windowSize))
       {
-        combinedCoverage = new Integer[nBins];
-        for(int k=0; k<combinedCoverage.length; k++)
-          combinedCoverage[k] = 0;
-        plots.put("-1", combinedCoverage);
+        plots.clear();
+        addCoverageFromReads(plots, nBins, windowSize);
       }
       
-      int max = 0;
-      for(int i=0; i<readsInView.size(); i++)
+      float combinedCoverage[] = null;
+      if(includeCombined)
       {
-        SAMRecord thisRead = readsInView.get(i);
-        int offset = jamView.getSequenceOffset(thisRead.getReferenceName());
-        offset = offset - jamView.getBaseAtStartOfView();
-
-        String fileName;
-        if(bamList.size() > 1)
-          fileName = bamList.get((Integer) thisRead.getAttribute("FL"));
-        else
-          fileName = bamList.get(0);
-        Integer coverage[] = plots.get(fileName);
-        
-        if(coverage == null)
+        combinedCoverage = new float[nBins];
+        Enumeration<float[]> coverages = plots.elements();
+        while(coverages.hasMoreElements())
         {
-          coverage = new Integer[nBins];
-          for(int k=0; k<coverage.length; k++)
-            coverage[k] = 0;
-          plots.put(fileName, coverage);
-        }         
-        
-        List<AlignmentBlock> blocks = thisRead.getAlignmentBlocks();
-        for(int j=0; j<blocks.size(); j++)
-        {
-          AlignmentBlock block = blocks.get(j);
- 
-          for(int k=0; k<block.getLength(); k++)
-          {
-            int pos = block.getReferenceStart() + k + offset;
-            int bin = pos/windowSize;
-            if(bin < 0 || bin > nBins-1)
-              continue;
-            
-            coverage[bin]+=1;
-            if(coverage[bin] > max)
-              max = coverage[bin];
-            
-            if(includeCombined)
-            {
-              combinedCoverage[bin]+=1;
-              if(combinedCoverage[bin] > max)
-                max = combinedCoverage[bin];
-            }
-          } 
+          float coverage[] = coverages.nextElement();
+          for(int k=0; k<nBins; k++)
+            combinedCoverage[k] += coverage[k];
         }
+        plots.put("-1", combinedCoverage);
+      }
+      
+      float max = 0;
+      Enumeration<float[]> coverages = plots.elements();
+      while(coverages.hasMoreElements())
+      {
+        float coverage[] = coverages.nextElement();
+        for(int k=0; k<nBins; k++)
+          if(coverage[k] > max)
+            max = coverage[k];
       }
 
       int size = jamView.bamList.size();
@@ -200,7 +167,7 @@ import net.sf.samtools.SAMRecord;
       while(plotEum.hasMoreElements())
       {
         String fileName = (String) plotEum.nextElement();
-        Integer[] thisPlot = plots.get(fileName);
+        float[] thisPlot = plots.get(fileName);
         
         int index;
         if(fileName.equals("-1"))
@@ -216,9 +183,9 @@ import net.sf.samtools.SAMRecord;
           for(int i=1; i<thisPlot.length; i++)
           {
             int x0 = (int) ((((i-1)*(windowSize)) - windowSize/2.f)*pixPerBase);
-            int y0 = (int) (getHeight() - (((float)thisPlot[i-1]/(float)max)*getHeight()));
+            int y0 = (int) (getHeight() - ((thisPlot[i-1]/max)*getHeight()));
             int x1 = (int) (((i*(windowSize)) - windowSize/2.f)*pixPerBase);
-            int y1 = (int) (getHeight() - (((float)thisPlot[i]/(float)max)*getHeight()));
+            int y1 = (int) (getHeight() - ((thisPlot[i]/max)*getHeight()));
             
             g2.drawLine(x0, y0, x1, y1);
           }
@@ -233,14 +200,106 @@ import net.sf.samtools.SAMRecord;
           {
             float xpos = ((i*(windowSize)) - windowSize/2.f)*pixPerBase;
             shape.lineTo(xpos,
-                getHeight() - (((float)thisPlot[i]/(float)max)*getHeight()));
+                getHeight() - ((thisPlot[i]/max)*getHeight()));
           }
 
           shape.lineTo(getWidth(),getHeight());
           g2.fill(shape);
         }
       }
-      return max;
+      return Math.round(max);
+    }
+    
+    /**
+     * Count the read bases aligned in each window from the reads in view.
+     * @param plots  the coverage plot for each BAM file
+     * @param nBins
+     * @param windowSize
+     */
+    private void addCoverageFromReads(Hashtable<String, float[]> plots,
+                                      int nBins, int windowSize)
+    {
+      ReadStore readsInView = jamView.getReadsInView();
+      if(readsInView == null)
+        return;
+      List<String> bamList = jamView.bamList;
+      
+      for(int i=0; i<readsInView.size(); i++)
+      {
+        int offset = jamView.getSequenceOffset(readsInView.getReferenceName(i));
+        offset = offset - jamView.getBaseAtStartOfView();
+
+        String fileName = bamList.get(readsInView.getBamIndex(i));
+        float coverage[] = plots.get(fileName);
+        
+        if(coverage == null)
+        {
+          coverage = new float[nBins];
+          plots.put(fileName, coverage);
+        }         
+        
+        // (reference start, read start, length) for each block
+        int[] blocks = readsInView.getAlignmentBlocks(i);
+        for(int j=0; j<blocks.length; j+=3)
+        {
+          for(int k=0; k<blocks[j+2]; k++)
+          {
+            int pos = blocks[j] + k + offset;
+            int bin = pos/windowSize;
+            if(bin < 0 || bin > nBins-1)
+              continue;
+            
+            coverage[bin]+=1;
+          } 
+        }
+      }
+    }
+    
+    /**
+     * Use the precomputed coverage of each BAM file when the windows are
+     * at least as large as its finest bins.
+     * @param plots  the coverage plot for each BAM file
+     * @param nBins
+     * @param windowSize
+     * @return false if the coverage is not available for all the BAM files
+     */
+    private boolean addCoverageFromPyramids(Hashtable<String, float[]> plots,
+                                            int nBins, int windowSize)
+    {
+      // the coverage files are not filtered, so use the reads in view
+      if(windowSize < CoveragePyramid.BIN_SIZES[0] || jamView.isReadFilterSet())
+        return false;
+      
+      List<String> bamList = jamView.bamList;
+      List<String> refNames = jamView.getReferenceNamesInView();
+      int baseAtStartOfView = jamView.getBaseAtStartOfView();
+      try
+      {
+        for(int i=0; i<bamList.size(); i++)
+        {
+          if(jamView.isBamHidden(i))
+            continue;
+          CoveragePyramid pyramid = jamView.getCoveragePyramid(i);
+          if(pyramid == null)
+            return false;
+          
+          float coverage[] = new float[nBins];
+          plots.put(bamList.get(i), coverage);
+          for(int j=0; j<refNames.size(); j++)
+          {
+            String refName = refNames.get(j);
+            int offset = jamView.getSequenceOffset(refName);
+            pyramid.addCoverage(refName, start-offset, end-offset,
+                offset-baseAtStartOfView, windowSize, coverage);
+          }
+        }
+      }
+      catch(IOException e)
+      {
+        e.printStackTrace();
+        return false;
+      }
+      return true;
     }
     
     private AlphaComposite makeComposite(float alpha)
@@ -0,0 +1,464 @@
+/* CoveragePyramid.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ **/
+
+package uk.ac.sanger.artemis.components.alignment;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.samtools.AlignmentBlock;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileReader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceRecord;
+import net.sf.samtools.SAMFileReader.ValidationStringency;
+import net.sf.samtools.util.CloseableIterator;
+
+/**
+ * Precomputed coverage of a BAM file at several resolutions. The mean
+ * depth is stored for bins of 64 bases, 4 kb and 256 kb for each
+ * reference sequence. This is built once by streaming through the BAM
+ * and saved in a file next to it (<i>file.bam</i>.cov) so that coverage
+ * can be drawn at any zoom without reading the alignments.
+ * <p>
+ * File format (big-endian): the mean depth of each bin as a float, for
+ * each level of each reference, followed by the index:
+ * <pre>
+ *   int magic, int version, long bam length, long bam last modified,
+ *   int number of levels, int bin size (for each level),
+ *   int number of references, then for each reference:
+ *     UTF name, int length, (long offset, int number of bins) for each level
+ * </pre>
+ * and finally the long offset of the index.
+ */
+class CoveragePyramid
+{
+  /** bin sizes of the levels, finest first */
+  static final int BIN_SIZES[] = { 64, 4096, 262144 };
+  private static final int MAGIC = 0x41434f56;  // ACOV
+  private static final int VERSION = 1;
+  /** number of bins read from the file at a time */
+  private static final int TILE_SIZE = 4096;
+  private static final int MAX_TILES = 256;
+
+  private final File covFile;
+  private final int binSizes[];
+  private final Hashtable<String, RefIndex> refs = new Hashtable<String, RefIndex>();
+  private RandomAccessFile raf;
+
+  /** most recently used tiles of bins */
+  private final Map<String, float[]> tiles =
+    new LinkedHashMap<String, float[]>(MAX_TILES, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+    protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest)
+    {
+      return size() > MAX_TILES;
+    }
+  };
+
+  private CoveragePyramid(final File covFile, final RandomAccessFile raf,
+                          final int binSizes[])
+  {
+    this.covFile = covFile;
+    this.raf = raf;
+    this.binSizes = binSizes;
+  }
+
+  /**
+   * @param bam
+   * @return the file used to store the coverage for the given BAM
+   */
+  static File getCoverageFile(final String bam)
+  {
+    return new File(bam + ".cov");
+  }
+
+  /**
+   * Open a coverage file.
+   * @param covFile
+   * @param bamFile  the BAM the coverage was built from
+   * @return the coverage or null if the file does not exist or is
+   *         out of date with the BAM
+   * @throws IOException
+   */
+  static CoveragePyramid open(final File covFile, final File bamFile)
+         throws IOException
+  {
+    if(!covFile.exists())
+      return null;
+
+    final RandomAccessFile raf = new RandomAccessFile(covFile, "r");
+    try
+    {
+      if(raf.length() < 8)
+        return close(raf);
+      raf.seek(raf.length()-8);
+      raf.seek(raf.readLong());
+
+      if(raf.readInt() != MAGIC || raf.readInt() != VERSION ||
+         raf.readLong() != bamFile.length() ||
+         raf.readLong() != bamFile.lastModified())
+        return close(raf);
+
+      final int binSizes[] = new int[raf.readInt()];
+      for(int i=0; i<binSizes.length; i++)
+        binSizes[i] = raf.readInt();
+
+      final CoveragePyramid pyramid = new CoveragePyramid(covFile, raf, binSizes);
+      int nrefs = raf.readInt();
+      for(int i=0; i<nrefs; i++)
+      {
+        RefIndex ref = new RefIndex(raf.readUTF(), raf.readInt(), binSizes.length);
+        for(int j=0; j<binSizes.length; j++)
+        {
+          ref.offsets[j] = raf.readLong();
+          ref.nbins[j] = raf.readInt();
+        }
+        pyramid.refs.put(ref.name, ref);
+      }
+      return pyramid;
+    }
+    catch(IOException e)
+    {
+      close(raf);
+      throw e;
+    }
+  }
+
+  private static CoveragePyramid close(final RandomAccessFile raf)
+          throws IOException
+  {
+    raf.close();
+    return null;
+  }
+
+  /**
+   * Stream through a BAM file to calculate the coverage and write it
+   * to a coverage file. The BAM must be sorted by coordinate.
+   * @param bamFile
+   * @param covFile
+   * @throws IOException
+   */
+  static void build(final File bamFile, final File covFile) throws IOException
+  {
+    final SAMFileReader inputSam = new SAMFileReader(bamFile);
+    inputSam.setValidationStringency(ValidationStringency.SILENT);
+    final SAMFileHeader header = inputSam.getFileHeader();
+    final List<SAMSequenceRecord> sequences =
+      header.getSequenceDictionary().getSequences();
+    final RefIndex refIndexes[] = new RefIndex[sequences.size()];
+
+    final File tmpFile = new File(covFile.getPath() + ".tmp");
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    final CloseableIterator<SAMRecord> it = inputSam.iterator();
+    boolean done = false;
+    try
+    {
+      long offset = 0;
+      int lastRef = -1;
+      long sums[] = null;
+      while(it.hasNext())
+      {
+        SAMRecord samRecord = it.next();
+        int ref = samRecord.getReferenceIndex();
+        if(ref < 0 || samRecord.getReadUnmappedFlag())
+          continue;
+
+        if(ref != lastRef)
+        {
+          if(lastRef >= 0)
+            offset = writeRef(out, offset, refIndexes[lastRef], sums);
+          if(refIndexes[ref] != null)
+            throw new IOException(bamFile.getName()+" is not sorted by coordinate");
+          SAMSequenceRecord seq = sequences.get(ref);
+          refIndexes[ref] = new RefIndex(seq.getSequenceName(),
+              seq.getSequenceLength(), BIN_SIZES.length);
+          sums = new long[getNumberOfBins(seq.getSequenceLength(), BIN_SIZES[0])];
+          lastRef = ref;
+        }
+
+        List<AlignmentBlock> blocks = samRecord.getAlignmentBlocks();
+        for(int i=0; i<blocks.size(); i++)
+        {
+          AlignmentBlock block = blocks.get(i);
+          addBlock(sums, block.getReferenceStart(), block.getLength());
+        }
+      }
+      if(lastRef >= 0)
+        offset = writeRef(out, offset, refIndexes[lastRef], sums);
+
+      // references with no reads
+      for(int i=0; i<refIndexes.length; i++)
+      {
+        if(refIndexes[i] == null)
+        {
+          SAMSequenceRecord seq = sequences.get(i);
+          refIndexes[i] = new RefIndex(seq.getSequenceName(),
+              seq.getSequenceLength(), BIN_SIZES.length);
+          offset = writeRef(out, offset, refIndexes[i],
+              new long[getNumberOfBins(seq.getSequenceLength(), BIN_SIZES[0])]);
+        }
+      }
+
+      // index
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(bamFile.length());
+      out.writeLong(bamFile.lastModified());
+      out.writeInt(BIN_SIZES.length);
+      for(int i=0; i<BIN_SIZES.length; i++)
+        out.writeInt(BIN_SIZES[i]);
+      out.writeInt(refIndexes.length);
+      for(int i=0; i<refIndexes.length; i++)
+      {
+        out.writeUTF(refIndexes[i].name);
+        out.writeInt(refIndexes[i].length);
+        for(int j=0; j<BIN_SIZES.length; j++)
+        {
+          out.writeLong(refIndexes[i].offsets[j]);
+          out.writeInt(refIndexes[i].nbins[j]);
+        }
+      }
+      out.writeLong(offset);
+      done = true;
+    }
+    finally
+    {
+      it.close();
+      inputSam.close();
+      out.close();
+      if(!done)
+        tmpFile.delete();
+    }
+
+    covFile.delete();
+    if(!tmpFile.renameTo(covFile))
+      throw new IOException("Failed to write "+covFile.getPath());
+  }
+
+  /**
+   * Add the bases of an alignment block to the bins of the finest level.
+   */
+  private static void addBlock(final long sums[], final int refStart,
+                               final int length)
+  {
+    int pos = refStart-1;
+    final int endPos = pos+length;
+    while(pos < endPos)
+    {
+      int bin = pos/BIN_SIZES[0];
+      if(bin >= sums.length)
+        return;
+      int binEnd = Math.min((bin+1)*BIN_SIZES[0], endPos);
+      sums[bin] += binEnd-pos;
+      pos = binEnd;
+    }
+  }
+
+  /**
+   * Write the mean depth of each level for a reference.
+   * @return the offset after the data written
+   */
+  private static long writeRef(final DataOutputStream out, long offset,
+                               final RefIndex ref, long sums[])
+          throws IOException
+  {
+    for(int level=0; level<BIN_SIZES.length; level++)
+    {
+      if(level > 0)
+      {
+        int factor = BIN_SIZES[level]/BIN_SIZES[level-1];
+        long coarser[] = new long[getNumberOfBins(ref.length, BIN_SIZES[level])];
+        for(int i=0; i<sums.length; i++)
+          coarser[i/factor] += sums[i];
+        sums = coarser;
+      }
+
+      ref.offsets[level] = offset;
+      ref.nbins[level] = sums.length;
+      for(int i=0; i<sums.length; i++)
+      {
+        int binLength = Math.min(BIN_SIZES[level], ref.length-i*BIN_SIZES[level]);
+        // a reference of length 0 still has one (empty) bin
+        if(binLength > 0)
+          out.writeFloat((float)sums[i]/(float)binLength);
+        else
+          out.writeFloat(0.f);
+      }
+      offset += sums.length*4L;
+    }
+    return offset;
+  }
+
+  private static int getNumberOfBins(final int length, final int binSize)
+  {
+    return Math.max(1, (length+binSize-1)/binSize);
+  }
+
+  /**
+   * @param windowSize
+   * @return the coarsest level with bins no larger than the window
+   *         or -1 if the window is smaller than the finest bins
+   */
+  int getLevel(final int windowSize)
+  {
+    for(int i=binSizes.length-1; i>=0; i--)
+      if(binSizes[i] <= windowSize)
+        return i;
+    return -1;
+  }
+
+  /**
+   * @param refName
+   * @return true if there is coverage for the reference
+   */
+  boolean contains(final String refName)
+  {
+    return refs.containsKey(refName);
+  }
+
+  /**
+   * Add the coverage of a reference sequence to the windows of a plot.
+   * A window holds the number of read bases aligned within it, as
+   * counted from the reads by <code>CoveragePanel</code>.
+   * @param refName  reference sequence
+   * @param start    first base of the reference in view
+   * @param end      last base of the reference in view
+   * @param offset   added to a reference position to give the position
+   *                 in the plot
+   * @param windowSize
+   * @param plot     the windows to add to
+   * @throws IOException
+   */
+  synchronized void addCoverage(final String refName, int start, int end,
+                                final int offset, final int windowSize,
+                                final float plot[]) throws IOException
+  {
+    final RefIndex ref = refs.get(refName);
+    final int level = getLevel(windowSize);
+    if(ref == null || level < 0)
+      return;
+
+    if(start < 1)
+      start = 1;
+    if(end > ref.length)
+      end = ref.length;
+
+    final int binSize = binSizes[level];
+    final int firstBin = (start-1)/binSize;
+    final int lastBin  = Math.min((end-1)/binSize, ref.nbins[level]-1);
+    for(int bin=firstBin; bin<=lastBin; bin++)
+    {
+      float depth = getDepth(ref, level, bin);
+      if(depth == 0.f)
+        continue;
+
+      // spread the bin over the plot windows it overlaps
+      int pos = Math.max(bin*binSize+1, start);
+      int binEnd = Math.min((bin+1)*binSize, end);
+      while(pos <= binEnd)
+      {
+        int plotPos = pos+offset;
+        int window = plotPos/windowSize;
+        int windowEnd = (window+1)*windowSize-1-offset;
+        if(windowEnd > binEnd)
+          windowEnd = binEnd;
+        if(window >= 0 && window < plot.length)
+          plot[window] += depth*(windowEnd-pos+1);
+        pos = windowEnd+1;
+      }
+    }
+  }
+
+  /**
+   * Get the mean depth of a bin, reading the tile it is in from the
+   * file if it is not cached.
+   */
+  private float getDepth(final RefIndex ref, final int level, final int bin)
+          throws IOException
+  {
+    final int tile = bin/TILE_SIZE;
+    final String key = ref.name+":"+level+":"+tile;
+    float depths[] = tiles.get(key);
+    if(depths == null)
+    {
+      if(raf == null)
+        raf = new RandomAccessFile(covFile, "r");
+      int first = tile*TILE_SIZE;
+      int n = Math.min(TILE_SIZE, ref.nbins[level]-first);
+      byte buff[] = new byte[n*4];
+      raf.seek(ref.offsets[level]+first*4L);
+      raf.readFully(buff);
+      depths = new float[n];
+      for(int i=0; i<n; i++)
+      {
+        int j = i*4;
+        depths[i] = Float.intBitsToFloat(
+            ((buff[j] & 0xff) << 24) | ((buff[j+1] & 0xff) << 16) |
+            ((buff[j+2] & 0xff) << 8) | (buff[j+3] & 0xff));
+      }
+      tiles.put(key, depths);
+    }
+    return depths[bin-tile*TILE_SIZE];
+  }
+
+  /**
+   * Close the coverage file. It is opened again if more tiles are read.
+   */
+  synchronized void close() throws IOException
+  {
+    if(raf != null)
+      raf.close();
+    raf = null;
+  }
+
+  /**
+   * Location of the levels of a reference sequence in the file.
+   */
+  private static class RefIndex
+  {
+    final String name;
+    final int length;
+    final long offsets[];
+    final int nbins[];
+
+    RefIndex(final String name, final int length, final int nlevels)
+    {
+      this.name = name;
+      this.length = length;
+      this.offsets = new long[nlevels];
+      this.nbins = new int[nlevels];
+    }
+  }
+}
@@ -31,19 +31,26 @@ import uk.ac.sanger.artemis.components.alignment.BamView.PairedRead;
 
   class PairedReadComparator implements Comparator<Object>
   {
+    private ReadStore reads;
+    
+    public PairedReadComparator(ReadStore reads)
+    {
+      this.reads = reads;
+    }
+    
     public int compare(Object o1, Object o2) 
     {
       PairedRead pr1 = (PairedRead) o1;
       PairedRead pr2 = (PairedRead) o2;
       
-      int start1 = pr1.sam1.getAlignmentStart();
-      if(pr1.sam1.getAlignmentEnd() < start1)
-        start1 = pr1.sam1.getAlignmentEnd();
+      int start1 = reads.getAlignmentStart(pr1.read1);
+      if(reads.getAlignmentEnd(pr1.read1) < start1)
+        start1 = reads.getAlignmentEnd(pr1.read1);
       
-      int start2 = pr2.sam1.getAlignmentStart();
-      if(pr2.sam1.getAlignmentEnd() < start2)
-        start2 = pr1.sam1.getAlignmentEnd();
+      int start2 = reads.getAlignmentStart(pr2.read1);
+      if(reads.getAlignmentEnd(pr2.read1) < start2)
+        start2 = reads.getAlignmentEnd(pr1.read1);
         
       return start1-start2;
     }
-  }
\ No newline at end of file
+  }
@@ -0,0 +1,590 @@
+/* ReadStore.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ **/
+
+package uk.ac.sanger.artemis.components.alignment;
+
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+import net.sf.samtools.CigarElement;
+import net.sf.samtools.CigarOperator;
+import net.sf.samtools.SAMRecord;
+
+/**
+ * Compact store of the reads in view. Rather than holding a
+ * <code>SAMRecord</code> for each read the fields used for drawing
+ * are kept in primitive arrays, indexed by read. The CIGAR operations
+ * are packed into an int as in the BAM format (length<<4 | op).
+ * The read bases and qualities are only kept when the store is created
+ * to hold them, i.e. when the bases are to be drawn or SNPs found.
+ */
+class ReadStore
+{
+  private int size = 0;
+
+  private int[] starts;
+  private int[] ends;
+  private int[] mateStarts;
+  private int[] insertSizes;
+  private int[] readLengths;
+  private short[] flags;
+  private byte[] mapqs;
+  private byte[] bamIndexes;
+  private int[] refIndexes;
+  private int[] mateRefIndexes;
+  private String[] names;
+
+  private int[] cigarStarts;
+  private int[] cigarCounts;
+  private int[] cigarOps;
+  private int cigarSize = 0;
+
+  private byte[][] readBases;
+  private byte[][] baseQualities;
+  private final boolean keepBases;
+
+  /** reference sequence names indexed by refIndexes */
+  private Vector<String> refNames = new Vector<String>();
+  private Hashtable<String, Integer> refNameIndex = new Hashtable<String, Integer>();
+
+  /**
+   * @param keepBases  true if the read bases and qualities are to be stored
+   */
+  ReadStore(final boolean keepBases)
+  {
+    this(keepBases, 1024);
+  }
+
+  /**
+   * @param keepBases  true if the read bases and qualities are to be stored
+   * @param capacity   initial number of reads
+   */
+  ReadStore(final boolean keepBases, int capacity)
+  {
+    this.keepBases = keepBases;
+    if(capacity < 16)
+      capacity = 16;
+    allocate(capacity);
+    cigarOps = new int[capacity];
+  }
+
+  private void allocate(final int capacity)
+  {
+    starts = grow(starts, capacity);
+    ends = grow(ends, capacity);
+    mateStarts = grow(mateStarts, capacity);
+    insertSizes = grow(insertSizes, capacity);
+    readLengths = grow(readLengths, capacity);
+    cigarStarts = grow(cigarStarts, capacity);
+    cigarCounts = grow(cigarCounts, capacity);
+    refIndexes = grow(refIndexes, capacity);
+    mateRefIndexes = grow(mateRefIndexes, capacity);
+
+    short[] s = new short[capacity];
+    if(flags != null)
+      System.arraycopy(flags, 0, s, 0, size);
+    flags = s;
+
+    byte[] b = new byte[capacity];
+    if(mapqs != null)
+      System.arraycopy(mapqs, 0, b, 0, size);
+    mapqs = b;
+    b = new byte[capacity];
+    if(bamIndexes != null)
+      System.arraycopy(bamIndexes, 0, b, 0, size);
+    bamIndexes = b;
+
+    String[] n = new String[capacity];
+    if(names != null)
+      System.arraycopy(names, 0, n, 0, size);
+    names = n;
+
+    if(keepBases)
+    {
+      byte[][] bb = new byte[capacity][];
+      if(readBases != null)
+        System.arraycopy(readBases, 0, bb, 0, size);
+      readBases = bb;
+      bb = new byte[capacity][];
+      if(baseQualities != null)
+        System.arraycopy(baseQualities, 0, bb, 0, size);
+      baseQualities = bb;
+    }
+  }
+
+  private int[] grow(final int[] old, final int capacity)
+  {
+    int[] arr = new int[capacity];
+    if(old != null)
+      System.arraycopy(old, 0, arr, 0, size);
+    return arr;
+  }
+
+  private int getRefIndex(final String refName)
+  {
+    if(refName == null)
+      return -1;
+    Integer index = refNameIndex.get(refName);
+    if(index == null)
+    {
+      index = refNames.size();
+      refNames.add(refName);
+      refNameIndex.put(refName, index);
+    }
+    return index;
+  }
+
+  /**
+   * Add a read to the store.
+   * @param samRecord
+   * @param bamIndex  index of the BAM file the read is from
+   */
+  void add(final SAMRecord samRecord, final int bamIndex)
+  {
+    if(size == starts.length)
+      allocate(size*2);
+
+    starts[size] = samRecord.getAlignmentStart();
+    ends[size] = samRecord.getAlignmentEnd();
+    mateStarts[size] = samRecord.getMateAlignmentStart();
+    insertSizes[size] = samRecord.getInferredInsertSize();
+    readLengths[size] = samRecord.getReadLength();
+    flags[size] = (short) samRecord.getFlags();
+    mapqs[size] = (byte) samRecord.getMappingQuality();
+    bamIndexes[size] = (byte) bamIndex;
+    refIndexes[size] = getRefIndex(samRecord.getReferenceName());
+    mateRefIndexes[size] = getRefIndex(samRecord.getMateReferenceName());
+    names[size] = samRecord.getReadName();
+
+    final List<CigarElement> elements = samRecord.getCigar().getCigarElements();
+    final int ncigar = elements.size();
+    if(cigarSize + ncigar > cigarOps.length)
+    {
+      int[] ops = new int[Math.max(cigarOps.length*2, cigarSize+ncigar)];
+      System.arraycopy(cigarOps, 0, ops, 0, cigarSize);
+      cigarOps = ops;
+    }
+    cigarStarts[size] = cigarSize;
+    cigarCounts[size] = ncigar;
+    for(int i=0; i<ncigar; i++)
+    {
+      CigarElement element = elements.get(i);
+      cigarOps[cigarSize++] =
+        (element.getLength() << 4) | CigarOperator.enumToBinary(element.getOperator());
+    }
+
+    if(keepBases)
+    {
+      readBases[size] = samRecord.getReadBases();
+      baseQualities[size] = samRecord.getBaseQualities();
+    }
+    size++;
+  }
+
+  /**
+   * Add all the reads from another store.
+   * @param reads
+   */
+  void addAll(final ReadStore reads)
+  {
+    if(size + reads.size > starts.length)
+      allocate(size + reads.size);
+    if(cigarSize + reads.cigarSize > cigarOps.length)
+    {
+      int[] ops = new int[cigarSize + reads.cigarSize];
+      System.arraycopy(cigarOps, 0, ops, 0, cigarSize);
+      cigarOps = ops;
+    }
+
+    for(int i=0; i<reads.size; i++)
+    {
+      starts[size] = reads.starts[i];
+      ends[size] = reads.ends[i];
+      mateStarts[size] = reads.mateStarts[i];
+      insertSizes[size] = reads.insertSizes[i];
+      readLengths[size] = reads.readLengths[i];
+      flags[size] = reads.flags[i];
+      mapqs[size] = reads.mapqs[i];
+      bamIndexes[size] = reads.bamIndexes[i];
+      refIndexes[size] = getRefIndex(reads.getReferenceName(i));
+      mateRefIndexes[size] = getRefIndex(reads.getMateReferenceName(i));
+      names[size] = reads.names[i];
+
+      cigarStarts[size] = cigarSize;
+      cigarCounts[size] = reads.cigarCounts[i];
+      System.arraycopy(reads.cigarOps, reads.cigarStarts[i],
+                       cigarOps, cigarSize, reads.cigarCounts[i]);
+      cigarSize += reads.cigarCounts[i];
+
+      if(keepBases)
+      {
+        readBases[size] = reads.getReadBases(i);
+        baseQualities[size] = reads.getBaseQualities(i);
+      }
+      size++;
+    }
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  void clear()
+  {
+    size = 0;
+    cigarSize = 0;
+    if(keepBases)
+    {
+      readBases = new byte[readBases.length][];
+      baseQualities = new byte[baseQualities.length][];
+    }
+  }
+
+  /**
+   * @return true if the read bases and qualities are stored
+   */
+  boolean hasBases()
+  {
+    return keepBases;
+  }
+
+  int getAlignmentStart(int i)
+  {
+    return starts[i];
+  }
+
+  int getAlignmentEnd(int i)
+  {
+    return ends[i];
+  }
+
+  int getMateAlignmentStart(int i)
+  {
+    return mateStarts[i];
+  }
+
+  int getInferredInsertSize(int i)
+  {
+    return insertSizes[i];
+  }
+
+  int getReadLength(int i)
+  {
+    return readLengths[i];
+  }
+
+  int getMappingQuality(int i)
+  {
+    return mapqs[i] & 0xff;
+  }
+
+  int getFlags(int i)
+  {
+    return flags[i] & 0xffff;
+  }
+
+  int getBamIndex(int i)
+  {
+    return bamIndexes[i];
+  }
+
+  String getReadName(int i)
+  {
+    return names[i];
+  }
+
+  String getReferenceName(int i)
+  {
+    if(refIndexes[i] < 0)
+      return null;
+    return refNames.get(refIndexes[i]);
+  }
+
+  String getMateReferenceName(int i)
+  {
+    if(mateRefIndexes[i] < 0)
+      return null;
+    return refNames.get(mateRefIndexes[i]);
+  }
+
+  /**
+   * @return the bases or null if the bases are not stored
+   */
+  byte[] getReadBases(int i)
+  {
+    if(!keepBases)
+      return null;
+    return readBases[i];
+  }
+
+  /**
+   * @return the base qualities or null if these are not stored
+   */
+  byte[] getBaseQualities(int i)
+  {
+    if(!keepBases)
+      return null;
+    return baseQualities[i];
+  }
+
+  private boolean isFlagSet(int i, int flag)
+  {
+    return (flags[i] & flag) != 0;
+  }
+
+  boolean getReadPairedFlag(int i)
+  {
+    return isFlagSet(i, 0x1);
+  }
+
+  boolean getProperPairFlag(int i)
+  {
+    return isFlagSet(i, 0x2);
+  }
+
+  boolean getReadUnmappedFlag(int i)
+  {
+    return isFlagSet(i, 0x4);
+  }
+
+  boolean getMateUnmappedFlag(int i)
+  {
+    return isFlagSet(i, 0x8);
+  }
+
+  boolean getReadNegativeStrandFlag(int i)
+  {
+    return isFlagSet(i, 0x10);
+  }
+
+  boolean getMateNegativeStrandFlag(int i)
+  {
+    return isFlagSet(i, 0x20);
+  }
+
+  /**
+   * @return the number of CIGAR operations for the read
+   */
+  int getCigarLength(int i)
+  {
+    return cigarCounts[i];
+  }
+
+  /**
+   * @return the CIGAR string for the read
+   */
+  String getCigarString(int i)
+  {
+    if(cigarCounts[i] == 0)
+      return SAMRecord.NO_ALIGNMENT_CIGAR;
+    StringBuffer buff = new StringBuffer();
+    for(int j=cigarStarts[i]; j<cigarStarts[i]+cigarCounts[i]; j++)
+    {
+      buff.append(cigarOps[j] >>> 4);
+      buff.append((char)CigarOperator.enumToCharacter(
+          CigarOperator.binaryToEnum(cigarOps[j] & 0xf)));
+    }
+    return buff.toString();
+  }
+
+  /**
+   * Get the blocks of the read that align to the reference without gaps,
+   * as in <code>SAMRecord.getAlignmentBlocks()</code>.
+   * @param i
+   * @return  an array of (reference start, read start, length) for each
+   *          block, with 1-based start positions
+   */
+  int[] getAlignmentBlocks(int i)
+  {
+    int nblocks = 0;
+    for(int j=cigarStarts[i]; j<cigarStarts[i]+cigarCounts[i]; j++)
+      if(isAlignmentOp(cigarOps[j] & 0xf))
+        nblocks++;
+
+    int[] blocks = new int[nblocks*3];
+    int readBase = 1;
+    int refBase  = starts[i];
+    int n = 0;
+    for(int j=cigarStarts[i]; j<cigarStarts[i]+cigarCounts[i]; j++)
+    {
+      int len = cigarOps[j] >>> 4;
+      CigarOperator op = CigarOperator.binaryToEnum(cigarOps[j] & 0xf);
+      if(isAlignmentOp(cigarOps[j] & 0xf))
+      {
+        blocks[n++] = refBase;
+        blocks[n++] = readBase;
+        blocks[n++] = len;
+      }
+      if(op.consumesReadBases())
+        readBase += len;
+      if(op.consumesReferenceBases())
+        refBase += len;
+    }
+    return blocks;
+  }
+
+  /**
+   * M, = and X operations
+   */
+  private static boolean isAlignmentOp(int op)
+  {
+    return op == 0 || op == 7 || op == 8;
+  }
+
+  /**
+   * Sort by read name and then start, so that the reads of a pair
+   * are next to each other. Reads of a pair then share the same name
+   * <code>String</code>.
+   */
+  void sortByName()
+  {
+    sort(null);
+    for(int i=1; i<size; i++)
+      if(names[i] != names[i-1] && names[i].equals(names[i-1]))
+        names[i] = names[i-1];
+  }
+
+  /**
+   * Sort by start position, adding the given offset for the reference
+   * sequence of each read when sequences are concatenated.
+   * @param bamView
+   */
+  void sortByPosition(final BamView bamView)
+  {
+    final int offsets[] = new int[refNames.size()];
+    for(int i=0; i<offsets.length; i++)
+      offsets[i] = bamView.getSequenceOffset(refNames.get(i));
+    sort(offsets);
+  }
+
+  private int compare(final int[] offsets, int a, int b)
+  {
+    if(offsets == null)
+    {
+      int cmp = names[a].compareTo(names[b]);
+      if(cmp != 0)
+        return cmp;
+      return starts[a] < starts[b] ? -1 : (starts[a] > starts[b] ? 1 : 0);
+    }
+
+    int startA = starts[a];
+    if(refIndexes[a] >= 0)
+      startA += offsets[refIndexes[a]];
+    int startB = starts[b];
+    if(refIndexes[b] >= 0)
+      startB += offsets[refIndexes[b]];
+    return startA < startB ? -1 : (startA > startB ? 1 : 0);
+  }
+
+  /**
+   * Stable merge sort of the read order which is then applied to
+   * each of the arrays.
+   */
+  private void sort(final int[] offsets)
+  {
+    int order[] = new int[size];
+    for(int i=0; i<size; i++)
+      order[i] = i;
+    int tmp[] = new int[size];
+
+    for(int width=1; width<size; width*=2)
+    {
+      for(int lo=0; lo<size-width; lo+=width*2)
+      {
+        int mid = lo+width;
+        int hi = Math.min(lo+width*2, size);
+        int i = lo, j = mid, k = lo;
+        while(i < mid && j < hi)
+        {
+          if(compare(offsets, order[j], order[i]) < 0)
+            tmp[k++] = order[j++];
+          else
+            tmp[k++] = order[i++];
+        }
+        while(i < mid)
+          tmp[k++] = order[i++];
+        while(j < hi)
+          tmp[k++] = order[j++];
+        System.arraycopy(tmp, lo, order, lo, hi-lo);
+      }
+    }
+    tmp = null;
+    permute(order);
+  }
+
+  private void permute(final int[] order)
+  {
+    int capacity = starts.length;
+    starts = permute(starts, order, capacity);
+    ends = permute(ends, order, capacity);
+    mateStarts = permute(mateStarts, order, capacity);
+    insertSizes = permute(insertSizes, order, capacity);
+    readLengths = permute(readLengths, order, capacity);
+    cigarStarts = permute(cigarStarts, order, capacity);
+    cigarCounts = permute(cigarCounts, order, capacity);
+    refIndexes = permute(refIndexes, order, capacity);
+    mateRefIndexes = permute(mateRefIndexes, order, capacity);
+
+    short[] s = new short[capacity];
+    for(int i=0; i<size; i++)
+      s[i] = flags[order[i]];
+    flags = s;
+
+    byte[] b = new byte[capacity];
+    for(int i=0; i<size; i++)
+      b[i] = mapqs[order[i]];
+    mapqs = b;
+    b = new byte[capacity];
+    for(int i=0; i<size; i++)
+      b[i] = bamIndexes[order[i]];
+    bamIndexes = b;
+
+    String[] n = new String[capacity];
+    for(int i=0; i<size; i++)
+      n[i] = names[order[i]];
+    names = n;
+
+    if(keepBases)
+    {
+      byte[][] bb = new byte[capacity][];
+      for(int i=0; i<size; i++)
+        bb[i] = readBases[order[i]];
+      readBases = bb;
+      bb = new byte[capacity][];
+      for(int i=0; i<size; i++)
+        bb[i] = baseQualities[order[i]];
+      baseQualities = bb;
+    }
+  }
+
+  private int[] permute(final int[] arr, final int[] order, final int capacity)
+  {
+    int[] newArr = new int[capacity];
+    for(int i=0; i<size; i++)
+      newArr[i] = arr[order[i]];
+    return newArr;
+  }
+}
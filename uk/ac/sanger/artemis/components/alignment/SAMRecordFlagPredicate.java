@@ -89,6 +89,14 @@ public class SAMRecordFlagPredicate implements SAMRecordPredicate
     return isFlagSet(samRecord.getFlags());
   }
   
+  /**
+   *  @return the flags that are filtered out
+   **/
+  protected int getFlag()
+  {
+    return flag;
+  }
+  
   protected boolean isFlagSet(int thisFlag)
   {
     for(int i=0; i<FLAGS.length; i++)
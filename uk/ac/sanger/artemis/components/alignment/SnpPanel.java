@@ -33,7 +33,6 @@ import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.geom.GeneralPath;
-import java.util.List;
 
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
@@ -43,8 +42,6 @@ import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.Bases;
 import uk.ac.sanger.artemis.util.OutOfRangeException;
 
-import net.sf.samtools.AlignmentBlock;
-import net.sf.samtools.SAMRecord;
 
   public class SnpPanel extends AbstractGraphPanel
   {
@@ -100,8 +97,8 @@ import net.sf.samtools.SAMRecord;
       if(bases == null)
         return;
       
-      List<SAMRecord> readsInView = bamView.getReadsInView();
-      if(readsInView == null)
+      ReadStore readsInView = bamView.getReadsInView();
+      if(readsInView == null || !readsInView.hasBases())
         return;
       
       int windowSize;
@@ -133,7 +130,7 @@ import net.sf.samtools.SAMRecord;
     private int drawPlot(Graphics2D g2, int nBins, int windowSize)
     {
       //lines = CoveragePanel.getLineAttributes(bamView.bamList.size());
-      List<SAMRecord> readsInView = bamView.getReadsInView();
+      ReadStore readsInView = bamView.getReadsInView();
       
       int snpCount[] = new int[nBins];
       for(int i=0; i<snpCount.length; i++)
@@ -142,8 +139,7 @@ import net.sf.samtools.SAMRecord;
       int max = 0;
       for(int i=0; i<readsInView.size(); i++)
       {
-        SAMRecord thisRead = readsInView.get(i);
-        max = calculateSNPs(thisRead, windowSize, nBins, snpCount, max);
+        max = calculateSNPs(readsInView, i, windowSize, nBins, snpCount, max);
       }
 
       g2.setColor(Color.red);
@@ -189,37 +185,37 @@ import net.sf.samtools.SAMRecord;
     /**
      * Display the SNPs for the given read.
      * @param g2
-     * @param thisRead
+     * @param reads
+     * @param thisRead  index of the read in reads
      * @param pixPerBase
      * @param ypos
      */
-    private int calculateSNPs(SAMRecord thisRead,
+    private int calculateSNPs(ReadStore reads, int thisRead,
                                int windowSize, 
                                int nBins,
                                int[] snpCount,
                                int max)
     {
-      int thisStart = thisRead.getAlignmentStart();
-      int thisEnd   = thisRead.getAlignmentEnd();
-      int offset    = bamView.getSequenceOffset(thisRead.getReferenceName());
+      int thisStart = reads.getAlignmentStart(thisRead);
+      int thisEnd   = reads.getAlignmentEnd(thisRead);
+      int offset    = bamView.getSequenceOffset(reads.getReferenceName(thisRead));
       // use alignment blocks of the contiguous alignment of
       // subsets of read bases to a reference sequence
-      List<AlignmentBlock> blocks = thisRead.getAlignmentBlocks();
-      byte[] phredQuality = thisRead.getBaseQualities();
+      int[] blocks = reads.getAlignmentBlocks(thisRead);
+      byte[] phredQuality = reads.getBaseQualities(thisRead);
       try
       {
         char[] refSeq = bases.getSubSequenceC(
             new Range(thisStart+offset, thisEnd+offset), Bases.FORWARD);
-        byte[] readSeq = thisRead.getReadBases();
+        byte[] readSeq = reads.getReadBases(thisRead);
 
         offset = offset - bamView.getBaseAtStartOfView();
-        for(int i=0; i<blocks.size(); i++)
+        for(int i=0; i<blocks.length; i+=3)
         {
-          AlignmentBlock block = blocks.get(i);
-          for(int j=0; j<block.getLength(); j++)
+          for(int j=0; j<blocks[i+2]; j++)
           {
-            int readPos = block.getReadStart()-1+j;
-            int refPos  = block.getReferenceStart()+j;
+            int readPos = blocks[i+1]-1+j;
+            int refPos  = blocks[i]+j;
 
             if (Character.toUpperCase(refSeq[refPos-thisStart]) != readSeq[readPos])
             {
@@ -202,13 +202,17 @@ class IOUtils
         String basesStr = entryGroup.getBases().getSubSequence(marker.getRange(), direction);
         if (vcfReaders[i] instanceof BCFReader)
         {
-          BCFReaderIterator it = ((BCFReader) vcfReaders[i]).query(chr, sbeg, send);
-          VCFRecord record;
-          while ((record = it.next()) != null)
+          // the reader is shared with the VCFview background reads
+          synchronized(vcfReaders[i])
           {
-            int basePosition = record.getPos() + vcfView.getSequenceOffset(record.getChrom());
-            if(vcfView.showVariant(record, features, basePosition) )
-              basesStr = getSeqsVariation(record, basesStr, sbeg, marker.isForwardMarker(), vcf_v4);
+            BCFReaderIterator it = ((BCFReader) vcfReaders[i]).query(chr, sbeg, send);
+            VCFRecord record;
+            while ((record = it.next()) != null)
+            {
+              int basePosition = record.getPos() + vcfView.getSequenceOffset(record.getChrom());
+              if(vcfView.showVariant(record, features, basePosition) )
+                basesStr = getSeqsVariation(record, basesStr, sbeg, marker.isForwardMarker(), vcf_v4);
+            }
           }
         }
           
@@ -285,13 +289,16 @@ class IOUtils
             
             if (vcfReaders[i] instanceof BCFReader)
             {
-              BCFReaderIterator it = ((BCFReader) vcfReaders[i]).query(chr, sbeg, send);
-              VCFRecord record;
-              while ((record = it.next()) != null)
+              synchronized(vcfReaders[i])
               {
-                int basePosition = record.getPos() + vcfView.getSequenceOffset(record.getChrom());
-                if(vcfView.showVariant(record, features, basePosition) )
-                  segBases = getSeqsVariation(record, segBases, sbeg, f.isForwardFeature(), vcf_v4);
+                BCFReaderIterator it = ((BCFReader) vcfReaders[i]).query(chr, sbeg, send);
+                VCFRecord record;
+                while ((record = it.next()) != null)
+                {
+                  int basePosition = record.getPos() + vcfView.getSequenceOffset(record.getChrom());
+                  if(vcfView.showVariant(record, features, basePosition) )
+                    segBases = getSeqsVariation(record, segBases, sbeg, f.isForwardFeature(), vcf_v4);
+                }
               }
             }
             buff.append(segBases);
@@ -63,9 +63,9 @@ public class MultipleAlleleVariant
   {
     String alt = record.getAlt().toString();
     String alleles[] = alt.toLowerCase().split(",");
-    String pl;
-    if ((pl = record.getFormatValue("PL")) != null && pl.split(",").length == 3 &&
-         pl.split(",")[1].equals("0")) 
+    int pl[];
+    if ((pl = record.getFormatInts(0, "PL")) != null && pl.length == 3 &&
+         pl[1] == 0) 
     {
       // include ref
       String[] temp = new String[alleles.length+1];
@@ -341,6 +341,7 @@ public class TabixReader extends AbstractVCFReader
 				for (int j = 0; j < chunks.length; ++j)
 					if (less64(min_off, chunks[j].v))
 						off[n_off++] = new TPair64(chunks[j]);
+		if (n_off == 0) return null; // every chunk ends before the linear index offset
 		Arrays.sort(off, 0, n_off);
 		// resolve completely contained adjacent blocks
 		for (i = 1, l = 0; i < n_off; ++i) {
@@ -394,7 +395,7 @@ public class TabixReader extends AbstractVCFReader
 		}
 	}
 	
-	  protected String[] getSeqNames()
+	  public String[] getSeqNames()
 	  {
 	    return mSeq;
 	  }
@@ -403,4 +404,12 @@ public class TabixReader extends AbstractVCFReader
 	  {
 	    return mFn;
 	  }
+
+	  /**
+	   * Close the data file.
+	   */
+	  public void close() throws IOException
+	  {
+	    mFp.close();
+	  }
 }
@@ -236,27 +236,15 @@ public class VCFFilter extends JFrame
       if(record.getQuality() < VCFFilter.MIN_QUALITY)
         return false;
       
-      try
-      {
-        if(VCFFilter.MIN_DP > 0 && Integer.parseInt(record.getInfoValue("DP")) < VCFFilter.MIN_DP)
-          return false;
-      }
-      catch(NullPointerException npe){}
-    
-      try
-      {
-        if(VCFFilter.MIN_MQ > 0 && Float.parseFloat(record.getInfoValue("MQ")) < VCFFilter.MIN_MQ)
-          return false;
-      }
-      catch(NullPointerException npe){}
+      // values are NaN, so pass, if they are missing
+      if(VCFFilter.MIN_DP > 0 && record.getInfoNumber("DP") < VCFFilter.MIN_DP)
+        return false;
 
-      try
-      {
-        if(VCFFilter.MIN_AF1 > 0 && Float.parseFloat(record.getInfoValue("AF1")) < VCFFilter.MIN_AF1)
-          return false;
-      }
-      catch(NullPointerException npe){}
-      
+      if(VCFFilter.MIN_MQ > 0 && record.getInfoNumber("MQ") < VCFFilter.MIN_MQ)
+        return false;
+
+      if(VCFFilter.MIN_AF1 > 0 && record.getInfoNumber("AF1") < VCFFilter.MIN_AF1)
+        return false;
       
       try
       {
@@ -32,6 +32,15 @@ import uk.ac.sanger.artemis.io.RangeVector;
 import uk.ac.sanger.artemis.sequence.AminoAcidSequence;
 import uk.ac.sanger.artemis.sequence.Bases;
 
+/**
+ * A record from a VCF or BCF file.  A record parsed from a line of a VCF
+ * file keeps the line and the positions of its tabs, and only takes the
+ * ID, REF, FILTER, INFO, FORMAT and sample fields out of the line when
+ * they are asked for.  The INFO field and each sample are split into
+ * their values the first time a value is looked up and the values are
+ * cached, so that looking them up again each time the record is drawn
+ * does not split the strings again.
+ */
 class VCFRecord
 {
   private String chrom;
@@ -45,7 +54,32 @@ class VCFRecord
   private String format;
   private String data[][];
   private short synFlag = -1;
+  /** the base position and feature change count synFlag was worked out for */
+  private int synBasePosition;
+  private int synFeatureChanges;
   protected static Pattern MULTI_ALLELE_PATTERN = Pattern.compile("^[AGCT]+,[AGCT,]+$");
+
+  /** the line the record was parsed from (null for BCF records) */
+  private String line;
+  /** the positions of the tabs in the line */
+  private int tabs[];
+
+  /** INFO keys, in the order they are in the INFO field */
+  private String infoKeys[];
+  /** start and end of the value of each INFO key in the INFO field, or -1 if the key has no value */
+  private int infoBounds[];
+  private String infoValues[];
+  private float infoNumbers[];
+  private boolean infoNumberDecoded[];
+
+  private String formatKeys[];
+  /** for each sample the start of each of its values in the line, followed by one past its end */
+  private int sampleBounds[][];
+  private String sampleValues[][];
+  private int sampleInts[][][];
+
+  /** marks values that have been looked at and are not integers */
+  private static final int NOT_NUMERIC[] = new int[0];
   
 
   /**
@@ -54,8 +88,8 @@ class VCFRecord
    */
   public String toString()
   {
-    return chrom+"\t"+pos+"\t"+ID+"\t"+ref+"\t"+var.toString()+"\t"+quality+
-           "\t"+filter+"\t"+info+"\t"+format+"\t"+getSampleDataString();
+    return chrom+"\t"+pos+"\t"+getID()+"\t"+getRef()+"\t"+var.toString()+"\t"+quality+
+           "\t"+getFilter()+"\t"+getInfo()+"\t"+getFormat()+"\t"+getSampleDataString();
   }
  
   
@@ -67,42 +101,48 @@ class VCFRecord
   protected static VCFRecord parse(String line)
   {
     VCFRecord rec = new VCFRecord();
-    String parts[] = line.split("\\t");
-
-    rec.chrom = parts[0];
-    rec.pos   = Integer.parseInt(parts[1]);
-    rec.ID    = parts[2];
-    rec.ref   = parts[3];
-    rec.var   = new VariantBase(rec, parts[4]);
+    rec.line = line;
+
+    int ntabs = 0;
+    for(int i = line.indexOf('\t'); i > -1; i = line.indexOf('\t', i+1))
+      ntabs++;
+    rec.tabs = new int[ntabs];
+    for(int i = line.indexOf('\t'), j = 0; i > -1; i = line.indexOf('\t', i+1))
+      rec.tabs[j++] = i;
+
+    rec.chrom = rec.getField(0);
+    rec.pos   = Integer.parseInt(rec.getField(1));
+    rec.var   = new VariantBase(rec, rec.getField(4));
     
     try
     {
-      rec.quality = Float.parseFloat(parts[5]);
+      rec.quality = Float.parseFloat(rec.getField(5));
     }
     catch(NumberFormatException e)
     {
       rec.quality = 0.f;
     }
-    
-    rec.filter  = parts[6];
-    rec.info    = parts[7];
-    
-    if(parts.length > 9)
-    {
-      rec.format  = parts[8].trim();
-      int nsamples = parts.length-9;
-      int nfmt = rec.format.split(":").length;
-      
-      rec.data = new String[nsamples][nfmt];
-      for(int i=0; i<nsamples; i++)
-      {
-        String data[] = parts[9+i].split(":");
-        rec.data[i] = data;
-      }
-    }
     return rec;
   }
   
+  /**
+   * Return a tab-delimited field of the line this record was parsed from.
+   */
+  private String getField(int index)
+  {
+    int start = (index == 0 ? 0 : tabs[index-1]+1);
+    int end   = (index < tabs.length ? tabs[index] : line.length());
+    return line.substring(start, end);
+  }
+  
+  /**
+   * True if the line has a FORMAT field and at least one sample.
+   */
+  private boolean hasSampleFields()
+  {
+    return line != null && tabs.length > 8;
+  }
+  
   /**
    * For example DP or MQ
    * @param key
@@ -110,26 +150,270 @@ class VCFRecord
    */
   protected String getInfoValue(String key)
   {
-    String parts[] = info.split(";");
-    for(int i=0; i<parts.length; i++)
-      if(parts[i].startsWith(key+"="))
-        return parts[i].substring(key.length()+1);
-    return null;
+    int idx = getInfoIndex(key);
+    if(idx < 0 || infoBounds[2*idx] < 0)
+      return null;
+    if(infoValues[idx] == null)
+      infoValues[idx] = info.substring(infoBounds[2*idx], infoBounds[2*idx+1]);
+    return infoValues[idx];
   }
   
+  /**
+   * Return the value of an INFO key as a number.
+   * @param key
+   * @return the value or NaN if the key is missing or its value
+   * is not a number
+   */
+  protected float getInfoNumber(String key)
+  {
+    int idx = getInfoIndex(key);
+    if(idx < 0)
+      return Float.NaN;
+    if(!infoNumberDecoded[idx])
+    {
+      infoNumberDecoded[idx] = true;
+      String value = getInfoValue(key);
+      try
+      {
+        infoNumbers[idx] = (value == null ? Float.NaN : Float.parseFloat(value));
+      }
+      catch(NumberFormatException e)
+      {
+        infoNumbers[idx] = Float.NaN;
+      }
+    }
+    return infoNumbers[idx];
+  }
+  
+  /**
+   * Return the index of an INFO key, splitting the INFO field the first
+   * time this is called.
+   * @param key
+   * @return the index or -1 if the key is not in the INFO field
+   */
+  private int getInfoIndex(String key)
+  {
+    if(infoKeys == null)
+      splitInfo();
+    for(int i=0; i<infoKeys.length; i++)
+      if(infoKeys[i].equals(key))
+        return i;
+    return -1;
+  }
+  
+  private void splitInfo()
+  {
+    String info = getInfo();
+    int nkeys = 0;
+    if(info != null)
+    {
+      nkeys = 1;
+      for(int i = info.indexOf(';'); i > -1; i = info.indexOf(';', i+1))
+        nkeys++;
+    }
+
+    infoKeys = new String[nkeys];
+    infoBounds = new int[nkeys*2];
+    infoValues = new String[nkeys];
+    infoNumbers = new float[nkeys];
+    infoNumberDecoded = new boolean[nkeys];
+
+    int start = 0;
+    for(int i=0; i<nkeys; i++)
+    {
+      int end = info.indexOf(';', start);
+      if(end < 0)
+        end = info.length();
+      int eq = info.indexOf('=', start);
+      if(eq > -1 && eq < end)
+      {
+        infoKeys[i] = info.substring(start, eq);
+        infoBounds[2*i]   = eq+1;
+        infoBounds[2*i+1] = end;
+      }
+      else
+      {
+        infoKeys[i] = info.substring(start, end);
+        infoBounds[2*i]   = -1;
+        infoBounds[2*i+1] = -1;
+      }
+      start = end+1;
+    }
+  }
+  
+  /**
+   * Return the value of a FORMAT key for the first sample.
+   * @param key
+   * @return
+   */
   protected String getFormatValue(String key)
   {
-    String fmts[] = getFormat().split(":");
-    for(int i=0; i<fmts.length; i++)
+    return getFormatValue(0, key);
+  }
+  
+  /**
+   * Return the value of a FORMAT key for a sample.
+   * @param sample the index of the sample
+   * @param key
+   * @return the value or null if the sample does not have a value for the key
+   */
+  protected String getFormatValue(int sample, String key)
+  {
+    int idx = getFormatIndex(key);
+    if(idx < 0 || sample >= getNumberOfSamples())
+      return null;
+
+    if(data != null)
+      return (idx < data[sample].length ? data[sample][idx] : null);
+
+    int bounds[] = getSampleBounds(sample);
+    if(idx >= bounds.length-1)
+      return null;
+
+    if(sampleValues == null)
+      sampleValues = new String[getNumberOfSamples()][];
+    if(sampleValues[sample] == null)
+      sampleValues[sample] = new String[bounds.length-1];
+    if(sampleValues[sample][idx] == null)
+      sampleValues[sample][idx] = line.substring(bounds[idx], bounds[idx+1]-1);
+    return sampleValues[sample][idx];
+  }
+  
+  /**
+   * Return the value of a FORMAT key for a sample as integers, e.g.
+   * the genotype likelihoods (PL).  The values are decoded once and the
+   * same array is returned each time.
+   * @param sample the index of the sample
+   * @param key
+   * @return the comma separated integers of the value or null if there 
+   * is no value or it is not a list of integers
+   */
+  protected int[] getFormatInts(int sample, String key)
+  {
+    int idx = getFormatIndex(key);
+    if(idx < 0 || sample >= getNumberOfSamples())
+      return null;
+
+    if(sampleInts == null)
+      sampleInts = new int[getNumberOfSamples()][][];
+    if(sampleInts[sample] == null)
+      sampleInts[sample] = new int[formatKeys.length][];
+    if(sampleInts[sample][idx] == null)
+      sampleInts[sample][idx] = parseInts(getFormatValue(sample, key));
+
+    int values[] = sampleInts[sample][idx];
+    return (values == NOT_NUMERIC ? null : values);
+  }
+  
+  /**
+   * Parse a comma separated list of integers.
+   * @param value
+   * @return the integers or NOT_NUMERIC
+   */
+  private static int[] parseInts(String value)
+  {
+    if(value == null || value.length() == 0)
+      return NOT_NUMERIC;
+
+    int n = 1;
+    for(int i = value.indexOf(','); i > -1; i = value.indexOf(',', i+1))
+      n++;
+
+    int ints[] = new int[n];
+    int idx = 0;
+    int pos = 0;
+    while(idx < n)
     {
-      if(fmts[i].equals(key))
+      boolean negative = false;
+      if(pos < value.length() && value.charAt(pos) == '-')
+      {
+        negative = true;
+        pos++;
+      }
+
+      int start = pos;
+      int v = 0;
+      char c;
+      while(pos < value.length() && (c = value.charAt(pos)) != ',')
       {
-        String vals[] = getSampleDataString().split(":");
-        if(vals.length == fmts.length)
-          return vals[i];
+        if(c < '0' || c > '9')
+          return NOT_NUMERIC;
+        v = v*10 + (c - '0');
+        pos++;
       }
+      if(pos == start)
+        return NOT_NUMERIC;
+
+      ints[idx++] = (negative ? -v : v);
+      pos++;
+    }
+    return ints;
+  }
+  
+  /**
+   * Return the index of a FORMAT key, splitting the FORMAT field the 
+   * first time this is called.
+   * @param key
+   * @return the index or -1 if the key is not in the FORMAT field
+   */
+  private int getFormatIndex(String key)
+  {
+    if(formatKeys == null)
+    {
+      String format = getFormat();
+      if(format == null)
+        return -1;
+      formatKeys = format.split(":");
     }
-    return null;
+
+    for(int i=0; i<formatKeys.length; i++)
+      if(formatKeys[i].equals(key))
+        return i;
+    return -1;
+  }
+  
+  /**
+   * Find where the values of a sample start in the line.
+   * @param sample
+   * @return
+   */
+  private int[] getSampleBounds(int sample)
+  {
+    if(sampleBounds == null)
+      sampleBounds = new int[getNumberOfSamples()][];
+
+    if(sampleBounds[sample] == null)
+    {
+      int start = tabs[8+sample]+1;
+      int end   = (9+sample < tabs.length ? tabs[9+sample] : line.length());
+
+      int nvalues = 1;
+      for(int i=start; i<end; i++)
+        if(line.charAt(i) == ':')
+          nvalues++;
+
+      int bounds[] = new int[nvalues+1];
+      bounds[0] = start;
+      int idx = 1;
+      for(int i=start; i<end; i++)
+        if(line.charAt(i) == ':')
+          bounds[idx++] = i+1;
+      bounds[nvalues] = end+1;
+      sampleBounds[sample] = bounds;
+    }
+    return sampleBounds[sample];
+  }
+  
+  /**
+   * @return the number of samples
+   */
+  protected int getNumberOfSamples()
+  {
+    if(data != null)
+      return data.length;
+    if(hasSampleFields())
+      return tabs.length-8;
+    return 0;
   }
   
   /**
@@ -139,7 +423,11 @@ class VCFRecord
   protected String getSampleDataString()
   {
     if(data == null)
+    {
+      if(hasSampleFields())
+        return line.substring(tabs[8]+1);
       return "";
+    }
     StringBuffer buff = new StringBuffer();
     for(int i=0; i<data.length; i++)       // loop over samples
     {
@@ -155,6 +443,22 @@ class VCFRecord
     return buff.toString();
   }
 
+  /**
+   * @return a rough estimate of the memory used by the record in bytes
+   */
+  protected int getSizeEstimate()
+  {
+    if(line != null)
+      return 2*line.length() + 4*tabs.length + 128;
+
+    int size = 256;
+    if(data != null)
+      for(int i=0; i<data.length; i++)
+        for(int j=0; j<data[i].length; j++)
+          size += 48 + (data[i][j] == null ? 0 : 2*data[i][j].length());
+    return size;
+  }
+
   /**
    * @return the chrom
    */
@@ -192,6 +496,8 @@ class VCFRecord
    */
   protected String getID()
   {
+    if(ID == null && line != null)
+      ID = getField(2);
     return ID;
   }
 
@@ -208,6 +514,8 @@ class VCFRecord
    */
   protected String getRef()
   {
+    if(ref == null && line != null)
+      ref = getField(3);
     return ref;
   }
 
@@ -256,6 +564,8 @@ class VCFRecord
    */
   protected String getFilter()
   {
+    if(filter == null && line != null)
+      filter = getField(6);
     return filter;
   }
 
@@ -272,6 +582,8 @@ class VCFRecord
    */
   protected String getInfo()
   {
+    if(info == null && line != null)
+      info = getField(7);
     return info;
   }
 
@@ -281,6 +593,7 @@ class VCFRecord
   protected void setInfo(String info)
   {
     this.info = info;
+    this.infoKeys = null;
   }
 
   /**
@@ -288,6 +601,8 @@ class VCFRecord
    */
   protected String getFormat()
   {
+    if(format == null && hasSampleFields())
+      format = getField(8).trim();
     return format;
   }
 
@@ -297,6 +612,8 @@ class VCFRecord
   protected void setFormat(String format)
   {
     this.format = format;
+    this.formatKeys = null;
+    this.sampleInts = null;
   }
 
   /**
@@ -304,6 +621,18 @@ class VCFRecord
    */
   protected String[][] getData()
   {
+    if(data == null && hasSampleFields())
+    {
+      String samples[][] = new String[getNumberOfSamples()][];
+      for(int i=0; i<samples.length; i++)
+      {
+        int bounds[] = getSampleBounds(i);
+        samples[i] = new String[bounds.length-1];
+        for(int j=0; j<samples[i].length; j++)
+          samples[i][j] = line.substring(bounds[j], bounds[j+1]-1);
+      }
+      data = samples;
+    }
     return data;
   }
 
@@ -313,21 +642,32 @@ class VCFRecord
   protected void setData(String[][] data)
   {
     this.data = data;
+    this.sampleValues = null;
+    this.sampleInts = null;
   }
 
 
-  
   /**
    * @param features
    * @param basePosition
+   * @param featureChanges  count of the changes to the features and bases
+   *                        made since the VCFview was opened
    * 0 if non-synonymous;
    * 1 if synonymous;  
    * 2 if non-synonymous and creates a stop codon
    */
-  protected short getSynFlag(FeatureVector features, int basePosition)
+  protected short getSynFlag(FeatureVector features, int basePosition,
+                             int featureChanges)
   {
-    if(synFlag == -1)
+    // records are cached between repaints so work this out again
+    // if the record has moved or the features or bases have changed
+    if(synFlag == -1 || basePosition != synBasePosition ||
+       featureChanges != synFeatureChanges)
+    {
       this.synFlag = isSynonymous(features, basePosition);
+      this.synBasePosition = basePosition;
+      this.synFeatureChanges = featureChanges;
+    }
     return synFlag;
   }
 
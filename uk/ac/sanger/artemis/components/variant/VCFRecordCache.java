@@ -0,0 +1,350 @@
+/* VCFRecordCache.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis.components.variant;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import uk.ac.sanger.artemis.components.variant.BCFReader.BCFReaderIterator;
+
+/**
+ * Cache of the records read from VCF and BCF files, so that repainting
+ * the same region does not read and parse the file again.  Records are
+ * read in bins of BIN_SIZE bases for each file and chromosome, and the
+ * least recently used bins are dropped when the records take up more
+ * than MAX_BYTES.  When the region looked up moves along a chromosome
+ * the next region in that direction is read in the background.
+ * <p>
+ * The readers are not thread safe so they are always used while
+ * synchronized on the reader.
+ */
+class VCFRecordCache
+{
+  /** number of bases in a bin (the tabix linear index interval) */
+  private static final int BIN_SIZE = 1 << 14;
+
+  /** rough limit on the memory used by the cached records */
+  private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+  private static final VCFRecord[] EMPTY_BIN = new VCFRecord[0];
+
+  private static ExecutorService prefetchExecutor;
+
+  /** bins, least recently used first */
+  private final LinkedHashMap<BinKey, VCFRecord[]> bins =
+    new LinkedHashMap<BinKey, VCFRecord[]>(64, 0.75f, true);
+  private final Map<BinKey, Integer> binBytes = new HashMap<BinKey, Integer>();
+  private long bytes = 0;
+
+  /** bins waiting to be read in the background */
+  private final Set<BinKey> pending = new HashSet<BinKey>();
+
+  /** the last region looked up for each file and chromosome */
+  private final Map<BinKey, int[]> lastRegion = new HashMap<BinKey, int[]>();
+
+  /** incremented by clear() so that bins read before it are not cached */
+  private int generation = 0;
+
+  /**
+   * Return the records that start in a region.
+   * @param reader
+   * @param chr chromosome name
+   * @param sbeg start of the region
+   * @param send end of the region
+   * @return the records in the order they are in the file
+   * @throws IOException
+   */
+  protected List<VCFRecord> getRecords(final AbstractVCFReader reader,
+                                       final String chr,
+                                       final int sbeg, final int send)
+         throws IOException
+  {
+    final List<VCFRecord> records = new Vector<VCFRecord>();
+    for(int bin = getBin(sbeg); bin <= getBin(send); bin++)
+    {
+      VCFRecord binRecords[] = getBin(new BinKey(reader, chr, bin));
+      for(int i=0; i<binRecords.length; i++)
+      {
+        int pos = binRecords[i].getPos();
+        if(pos >= sbeg && pos <= send)
+          records.add(binRecords[i]);
+      }
+    }
+
+    prefetch(reader, chr, sbeg, send);
+    return records;
+  }
+
+  /**
+   * Drop all the cached records and the bins waiting to be read in the
+   * background.  Bins that are being read when this is called are not
+   * added to the cache.
+   */
+  protected synchronized void clear()
+  {
+    bins.clear();
+    binBytes.clear();
+    bytes = 0;
+    pending.clear();
+    lastRegion.clear();
+    generation++;
+  }
+
+  private static int getBin(final int pos)
+  {
+    return (pos < 1 ? 0 : (pos-1) / BIN_SIZE);
+  }
+
+  /**
+   * Return the records in a bin, reading them if they are not cached.
+   * @param key
+   * @return
+   * @throws IOException
+   */
+  private VCFRecord[] getBin(final BinKey key) throws IOException
+  {
+    VCFRecord records[] = getCachedBin(key);
+    if(records != null)
+      return records;
+
+    synchronized(key.reader)
+    {
+      // may have been read in the background while waiting for the reader
+      records = getCachedBin(key);
+      if(records != null)
+        return records;
+
+      final int thisGeneration = getGeneration();
+      records = readBin(key);
+      putBin(key, records, thisGeneration);
+      return records;
+    }
+  }
+
+  private synchronized VCFRecord[] getCachedBin(final BinKey key)
+  {
+    return bins.get(key);
+  }
+
+  private synchronized int getGeneration()
+  {
+    return generation;
+  }
+
+  /**
+   * Add a bin to the cache unless the cache has been cleared since the
+   * bin was read.
+   */
+  private synchronized void putBin(final BinKey key, final VCFRecord records[],
+                                   final int binGeneration)
+  {
+    if(binGeneration != generation)
+      return;
+
+    int size = 64;
+    for(int i=0; i<records.length; i++)
+      size += records[i].getSizeEstimate();
+
+    bins.put(key, records);
+    binBytes.put(key, new Integer(size));
+    pending.remove(key);
+    bytes += size;
+
+    final Iterator<BinKey> it = bins.keySet().iterator();
+    while(bytes > MAX_BYTES && bins.size() > 1 && it.hasNext())
+    {
+      BinKey eldest = it.next();
+      if(eldest.equals(key))
+        continue;
+      it.remove();
+      bytes -= binBytes.remove(eldest).intValue();
+    }
+  }
+
+  /**
+   * Read the records that start in a bin.
+   * @param key
+   * @return
+   * @throws IOException
+   */
+  private VCFRecord[] readBin(final BinKey key) throws IOException
+  {
+    final int beg = key.bin * BIN_SIZE + 1;
+    final int end = beg + BIN_SIZE - 1;
+    final List<VCFRecord> records = new Vector<VCFRecord>();
+
+    if(key.reader instanceof BCFReader)
+    {
+      BCFReaderIterator it = ((BCFReader)key.reader).query(key.chr, beg, end);
+      VCFRecord record;
+      while((record = it.next()) != null)
+        records.add(record);
+    }
+    else
+    {
+      TabixReader.Iterator iter =
+        ((TabixReader)key.reader).query(key.chr+":"+beg+"-"+end);
+      if(iter != null)
+      {
+        String s;
+        while((s = iter.next()) != null)
+        {
+          VCFRecord record = VCFRecord.parse(s);
+          // records overlapping the bin that start in an earlier one
+          if(record.getPos() >= beg && record.getPos() <= end)
+            records.add(record);
+        }
+      }
+    }
+
+    if(records.size() == 0)
+      return EMPTY_BIN;
+    return records.toArray(new VCFRecord[records.size()]);
+  }
+
+  /**
+   * If the region has moved along from the last one looked up on the same
+   * chromosome, read the bins for the next region in that direction in
+   * the background.
+   */
+  private void prefetch(final AbstractVCFReader reader, final String chr,
+                        final int sbeg, final int send)
+  {
+    final int width = send - sbeg + 1;
+    final int nextBeg;
+    final int prefetchGeneration;
+    synchronized(this)
+    {
+      prefetchGeneration = generation;
+      final BinKey regionKey = new BinKey(reader, chr, -1);
+      final int last[] = lastRegion.get(regionKey);
+      lastRegion.put(regionKey, new int[] { sbeg, send });
+
+      if(last == null || last[0] == sbeg)
+        return;
+      else if(sbeg > last[0])
+        nextBeg = send + 1;
+      else
+        nextBeg = sbeg - width;
+    }
+
+    final List<BinKey> keys = new Vector<BinKey>();
+    for(int bin = getBin(nextBeg); bin <= getBin(nextBeg + width - 1); bin++)
+    {
+      BinKey key = new BinKey(reader, chr, bin);
+      synchronized(this)
+      {
+        if(!bins.containsKey(key) && pending.add(key))
+          keys.add(key);
+      }
+    }
+
+    if(keys.size() == 0)
+      return;
+
+    getPrefetchExecutor().execute(new Runnable()
+    {
+      public void run()
+      {
+        for(int i=0; i<keys.size(); i++)
+        {
+          // the queued bins were dropped by clear()
+          if(getGeneration() != prefetchGeneration)
+            return;
+          try
+          {
+            getBin(keys.get(i));
+          }
+          catch(IOException e)
+          {
+            VCFview.logger4j.warn(e.getMessage());
+            synchronized(VCFRecordCache.this)
+            {
+              pending.remove(keys.get(i));
+            }
+          }
+        }
+      }
+    });
+  }
+
+  private static synchronized ExecutorService getPrefetchExecutor()
+  {
+    if(prefetchExecutor == null)
+    {
+      prefetchExecutor = Executors.newSingleThreadExecutor(
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "VCFview prefetch");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return prefetchExecutor;
+  }
+
+  /**
+   * A bin of a chromosome in a file.
+   */
+  private static class BinKey
+  {
+    private final AbstractVCFReader reader;
+    private final String chr;
+    private final int bin;
+
+    BinKey(final AbstractVCFReader reader, final String chr, final int bin)
+    {
+      this.reader = reader;
+      this.chr = chr;
+      this.bin = bin;
+    }
+
+    public boolean equals(final Object obj)
+    {
+      if(!(obj instanceof BinKey))
+        return false;
+      final BinKey key = (BinKey) obj;
+      return key.reader == reader && key.bin == bin && key.chr.equals(chr);
+    }
+
+    public int hashCode()
+    {
+      return (System.identityHashCode(reader) * 31 + chr.hashCode()) * 31 + bin;
+    }
+  }
+}
@@ -42,6 +42,8 @@ import java.awt.event.ItemListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -78,8 +80,14 @@ import net.sf.samtools.util.BlockCompressedInputStream;
 import org.apache.log4j.Level;
 
 import uk.ac.sanger.artemis.Entry;
+import uk.ac.sanger.artemis.EntryChangeEvent;
+import uk.ac.sanger.artemis.EntryChangeListener;
 import uk.ac.sanger.artemis.EntryGroup;
+import uk.ac.sanger.artemis.EntryGroupChangeEvent;
+import uk.ac.sanger.artemis.EntryGroupChangeListener;
 import uk.ac.sanger.artemis.Feature;
+import uk.ac.sanger.artemis.FeatureChangeEvent;
+import uk.ac.sanger.artemis.FeatureChangeListener;
 import uk.ac.sanger.artemis.FeatureKeyPredicate;
 import uk.ac.sanger.artemis.FeatureVector;
 import uk.ac.sanger.artemis.Options;
@@ -94,7 +102,6 @@ import uk.ac.sanger.artemis.components.FeatureDisplay;
 import uk.ac.sanger.artemis.components.FileViewer;
 import uk.ac.sanger.artemis.components.MessageDialog;
 import uk.ac.sanger.artemis.components.alignment.FileSelectionDialog;
-import uk.ac.sanger.artemis.components.variant.BCFReader.BCFReaderIterator;
 import uk.ac.sanger.artemis.editor.MultiLineToolTipUI;
 import uk.ac.sanger.artemis.io.EmblStreamFeature;
 import uk.ac.sanger.artemis.io.EntryInformation;
@@ -108,18 +115,26 @@ import uk.ac.sanger.artemis.io.RangeVector;
 import uk.ac.sanger.artemis.sequence.Bases;
 import uk.ac.sanger.artemis.sequence.MarkerRange;
 import uk.ac.sanger.artemis.sequence.NoSequenceException;
+import uk.ac.sanger.artemis.sequence.SequenceChangeEvent;
+import uk.ac.sanger.artemis.sequence.SequenceChangeListener;
 import uk.ac.sanger.artemis.util.Document;
 import uk.ac.sanger.artemis.util.DocumentFactory;
 import uk.ac.sanger.artemis.util.OutOfRangeException;
 
 
 public class VCFview extends JPanel
-             implements DisplayAdjustmentListener, SelectionChangeListener
+             implements DisplayAdjustmentListener, SelectionChangeListener,
+                        EntryGroupChangeListener, EntryChangeListener,
+                        FeatureChangeListener, SequenceChangeListener
 {
   private static final long serialVersionUID = 1L;
   private JScrollBar scrollBar;
   private JPanel vcfPanel;
   private AbstractVCFReader vcfReaders[];
+  /** records read from vcfReaders */
+  private VCFRecordCache recordCache = new VCFRecordCache();
+  /** incremented when the features or bases change */
+  private int featureChanges = 0;
   private List<String> vcfFiles;
   private String header[];
   private FeatureDisplay feature_display;
@@ -195,7 +210,14 @@ public class VCFview extends JPanel
     else if(reference != null)
       this.entryGroup = getReference(reference);
     if(entryGroup != null)
+    {
       this.seqLength = entryGroup.getSequenceEntry().getBases().getLength();
+      entryGroup.addEntryGroupChangeListener(this);
+      entryGroup.addEntryChangeListener(this);
+      entryGroup.addFeatureChangeListener(this);
+      entryGroup.getSequenceEntry().getBases().addSequenceChangeListener(this,
+          Bases.MIN_PRIORITY);
+    }
     
     try
     {
@@ -245,6 +267,13 @@ public class VCFview extends JPanel
     if(feature_display == null)
     {
       vcfPanel.add(scrollBar, BorderLayout.SOUTH);
+      frame.addWindowListener(new WindowAdapter()
+      {
+        public void windowClosed(WindowEvent e)
+        {
+          VCFview.this.dispose();
+        }
+      });
       frame.pack();
       frame.setVisible(true);
       selection = new Selection(null);
@@ -425,6 +454,7 @@ public class VCFview extends JPanel
         for (int i = 0; i < vcfFileList.size(); i++)
           header[i+oldSize] = readHeader(vcfFileList.get(i), i+oldSize);
 
+        clearRecordCache();
         setDisplay();
         repaint();
         jspView.revalidate();
@@ -839,44 +869,16 @@ public class VCFview extends JPanel
                           float pixPerBase, 
                           FeatureVector features) 
   {
-    String s;
-    
-    if(vcfReaders[i] instanceof BCFReader)
+    try
     {
-      try
-      {
-        BCFReader bcfReader = (BCFReader)vcfReaders[i];
-        BCFReaderIterator it = bcfReader.query(chr, sbeg, send);
-        VCFRecord bcfRecord;
-        while((bcfRecord = it.next()) != null)
-          drawVariantCall(g, bcfRecord, start, i, pixPerBase, features);
-      }
-      catch (IOException e)
-      {
-        logger4j.warn(e.getMessage());
-        e.printStackTrace();
-      }
-      
+      List<VCFRecord> records = recordCache.getRecords(vcfReaders[i], chr, sbeg, send);
+      for(int j=0; j<records.size(); j++)
+        drawVariantCall(g, records.get(j), start, i, pixPerBase, features);
     }
-    else
+    catch (IOException e)
     {
-      TabixReader.Iterator iter = 
-        ((TabixReader)vcfReaders[i]).query(chr+":"+sbeg+"-"+send); // get the iterator
-      if (iter == null)
-        return;
-      try
-      {
-        while ((s = iter.next()) != null)
-        {
-          VCFRecord vcfRecord = VCFRecord.parse(s);
-          drawVariantCall(g, vcfRecord, start, i, pixPerBase, features);
-        }
-      }
-      catch (IOException e)
-      {
-        logger4j.warn(e.getMessage());
-        e.printStackTrace();
-      }
+      logger4j.warn(e.getMessage());
+      e.printStackTrace();
     }
   }
   
@@ -977,7 +979,7 @@ public class VCFview extends JPanel
         record.getAlt().length() == 1 && 
         record.getRef().length() == 1)
     {
-      isSyn = record.getSynFlag(features, basePosition);
+      isSyn = record.getSynFlag(features, basePosition, featureChanges);
       if(isSyn == 2)
         markAsNewStop = true;
     }
@@ -989,7 +991,7 @@ public class VCFview extends JPanel
          record.getRef().length() == 1)
     {
       if(isSyn == -1)
-        isSyn = record.getSynFlag(features, basePosition);
+        isSyn = record.getSynFlag(features, basePosition, featureChanges);
       
       if( (!showSynonymous && isSyn == 1) ||
           (!showNonSynonymous && (isSyn == 0 || isSyn == 2) ) )
@@ -1073,7 +1075,7 @@ public class VCFview extends JPanel
       return getVariantColour(record.getAlt().toString());
     else if(colourScheme == SYN_COLOUR_SCHEME)  // synonymous / non-synonymous
     {
-      short synFlag = record.getSynFlag(features, basePosition);
+      short synFlag = record.getSynFlag(features, basePosition, featureChanges);
       if(synFlag == 1)
         return Color.red;
       else if(synFlag == 0 || synFlag == 2)
@@ -1200,41 +1202,15 @@ public class VCFview extends JPanel
                             Point mousePoint, FeatureVector features,
                             int start, float pixPerBase) 
   {
-    if(vcfReaders[i] instanceof BCFReader)
+    try
     {
-      try
-      {
-        BCFReader bcfReader = (BCFReader)vcfReaders[i];
-        BCFReaderIterator it = bcfReader.query(chr, sbeg, send);
-        VCFRecord bcfRecord;
-        while((bcfRecord = it.next()) != null)
-          isMouseOver(mousePoint, bcfRecord, features, i, start, pixPerBase);
-      }
-      catch (IOException e)
-      {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      }
+      List<VCFRecord> records = recordCache.getRecords(vcfReaders[i], chr, sbeg, send);
+      for(int j=0; j<records.size(); j++)
+        isMouseOver(mousePoint, records.get(j), features, i, start, pixPerBase);
     }
-    else
+    catch (IOException e)
     {
-      TabixReader.Iterator iter = 
-        ((TabixReader)vcfReaders[i]).query(chr+":"+sbeg+"-"+send); // get the iterator
-      if (iter == null)
-        return;
-      try
-      { 
-        String s;
-        while ((s = iter.next()) != null)
-        {
-          VCFRecord vcfRecord = VCFRecord.parse(s);
-          isMouseOver(mousePoint, vcfRecord, features, i, start, pixPerBase);
-        }
-      }
-      catch (IOException e)
-      {
-        e.printStackTrace();
-      }
+      e.printStackTrace();
     }
   }
   
@@ -1562,6 +1538,54 @@ public class VCFview extends JPanel
    {
      repaint();
    }
+
+   public void entryGroupChanged(EntryGroupChangeEvent event)
+   {
+     featureChanges++;
+     repaint();
+   }
+
+   public void entryChanged(EntryChangeEvent event)
+   {
+     featureChanges++;
+     repaint();
+   }
+
+   public void featureChanged(FeatureChangeEvent event)
+   {
+     featureChanges++;
+     repaint();
+   }
+
+   public void sequenceChanged(SequenceChangeEvent event)
+   {
+     featureChanges++;
+     repaint();
+   }
+
+   /**
+    * Drop the cached records, e.g. when the VCF files change.
+    */
+   protected void clearRecordCache()
+   {
+     recordCache.clear();
+   }
+
+   /**
+    * Remove the listeners added to the entry group and sequence and drop
+    * the cached records.  Call this when the view is closed or replaced.
+    */
+   public void dispose()
+   {
+     if(entryGroup != null)
+     {
+       entryGroup.removeEntryGroupChangeListener(this);
+       entryGroup.removeEntryChangeListener(this);
+       entryGroup.removeFeatureChangeListener(this);
+       entryGroup.getSequenceEntry().getBases().removeSequenceChangeListener(this);
+     }
+     clearRecordCache();
+   }
    
   public static void main(String args[])
   {
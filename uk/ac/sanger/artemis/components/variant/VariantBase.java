@@ -63,9 +63,9 @@ public class VariantBase
       return true;
 
     // look at probability of each genotype (PL) information as well
-    String pl;
-    if ((pl = record.getFormatValue("PL")) != null && pl.split(",").length == 3 &&
-         pl.split(",")[1].equals("0")) // middle value is zero, e.g.
+    int pl[];
+    if ((pl = record.getFormatInts(0, "PL")) != null && pl.length == 3 &&
+         pl[1] == 0) // middle value is zero, e.g.
       return true;
 
     return false;
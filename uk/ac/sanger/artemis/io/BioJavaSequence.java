@@ -106,6 +106,11 @@ public class BioJavaSequence implements Sequence
     return getSubSequence(start,end).toCharArray();
   }
 
+  public void getCharSubSequence (int start, int end, char[] dst, int dst_offset)
+  {
+    getSubSequence(start,end).getChars(0, end-start+1, dst, dst_offset);
+  }
+
 
   public void setFromChar(final char[] seqString)
         throws ReadOnlyException, IllegalSymbolException
@@ -0,0 +1,208 @@
+/* BucketFeatureIndex.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 1998,1999,2000,2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ **/
+
+package uk.ac.sanger.artemis.io;
+
+import java.util.*;
+
+/**
+ *  The original FeatureTree range index.  Features are stored in TreeSet
+ *  buckets by length and each bucket is scanned back by the maximum
+ *  feature length of that bucket.  Kept for comparison with
+ *  IntervalFeatureIndex - select it with -Dfeature_index=bucket.
+ *
+ *  @author Kim Rutherford
+ **/
+
+public class BucketFeatureIndex implements FeatureIndex {
+  /**
+   *  Create a new (empty) BucketFeatureIndex.
+   *  @param comparator the Comparator used to order each bucket.
+   **/
+  public BucketFeatureIndex (final Comparator comparator) {
+    this.comparator = comparator;
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void add (final Feature feature) {
+    final TreeSet bucket = getBucket (feature);
+    bucket.add (feature);
+    bucket_of_feature.put (feature, bucket);
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void remove (final Feature feature) {
+    final TreeSet bucket = (TreeSet) bucket_of_feature.remove (feature);
+
+    if (bucket != null) {
+      bucket.remove (feature);
+    }
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void clear () {
+    rbtree_buckets.clear ();
+    bucket_of_feature.clear ();
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void getFeaturesInRange (final Range range,
+                                  final FeatureVector features_in_range) {
+    for (int i = 0 ;
+         i < rbtree_buckets.size () && rbtree_buckets.elementAt (i) != null ;
+         ++i) {
+      getFeaturesInRange ((TreeSet) rbtree_buckets.elementAt (i),
+                          features_in_range, range,
+                          (int) Math.pow (BUCKET_MULTIPLIER, i + 1));
+    }
+  }
+
+  /**
+   *  Find the sub-tree which has a first base that is >= the given base.
+   **/
+  private static SortedSet findByBase (final TreeSet tree, final int base) {
+    final ComparableFeature test_feature = new ComparableFeature () {
+      public void set (final Key k, final Location l,
+                       final QualifierVector qv) {}
+      public void setKey (final Key _) {}
+      public void setLocation (final Location _) {}
+      public void setLocation (final Location _, Entry entry) {}
+      public void setQualifiers (final QualifierVector _) {}
+      public void setQualifier (final Qualifier _) {}
+      public void removeQualifierByName (final String _) {}
+      private final Key dummy_key = new Key ("_dummy_key_");
+      public Key getKey () {return dummy_key;}
+      public Location getLocation () {return null;}
+      public QualifierVector getQualifiers () {return null;}
+      public Qualifier getQualifierByName (final String _) {return null;}
+      public int getFirstBase () {return base;}
+      public int getLastBase () {return base;}
+      public long getNumericID () {return -1;}
+      public Entry getEntry () {return null;}
+      public Feature copy () {return null;}
+      public void setUserData (final Object _) {}
+      public Object getUserData () {return null;}
+      public boolean isReadOnly () {return false;}
+    };
+
+    return tree.tailSet (test_feature);
+  }
+
+  /**
+   *  Add to features_in_range all the features in the given TreeSet which are
+   *  within the given Range.
+   *  @param max_feature_length the maximum length in bases of the features in
+   *    the TreeSet.
+   **/
+  private void getFeaturesInRange (final TreeSet tree,
+                                   final FeatureVector features_in_range,
+                                   final Range range,
+                                   final int max_feature_length) {
+    // find the leftmost node in the range
+    final SortedSet tail_set =
+      findByBase (tree, range.getStart () - max_feature_length);
+
+    final Iterator tail_set_iterator = tail_set.iterator ();
+
+    // now loop over all the features that could possibly be in the range
+    // (ie. those between range.getStart () - max_feature_length and
+    // range.getEnd ())
+    while (tail_set_iterator.hasNext ()) {
+      final Feature this_feature = (Feature) tail_set_iterator.next ();
+
+      if (this_feature.getFirstBase () > range.getEnd ()) {
+        return;
+      }
+
+      if (this_feature.getLocation ().getTotalRange ().overlaps (range)) {
+        features_in_range.add (this_feature);
+      }
+    }
+  }
+
+  /**
+   *  Features are stored in buckets.
+   *  Bucket 0 will hold a reference to all features that are less than
+   *  BUCKET_MULTIPLIER in length.  Bucket 1 will hold those from
+   *  BUCKET_MULTIPLIER to BUCKET_MULTIPLIER*BUCKET_MULTIPLIER-1 (inclusive)
+   *  in length.  Bucket 2 will hold those from BUCKET_MULTIPLIER^2 to
+   *  BUCKET_MULTIPLIER^3-1 (inclusive) in length.  etc.
+   **/
+  private TreeSet getBucket (final Feature feature) {
+    final int feature_length =
+      feature.getLocation ().getTotalRange ().getCount ();
+
+    final int feature_bucket;
+
+    if (feature_length <= BUCKET_MULTIPLIER) {
+      feature_bucket = 0;
+    } else {
+      // subtract 0.5 to feature_length to make sure that rounding errors go
+      // in out favour
+      feature_bucket =
+        (int) (Math.log (feature_length + 0.5) / Math.log (BUCKET_MULTIPLIER));
+    }
+
+    // make the bucket we need and all smaller buckets
+    while (rbtree_buckets.size () <= feature_bucket) {
+      rbtree_buckets.addElement (new TreeSet (comparator));
+    }
+
+    return (TreeSet) rbtree_buckets.elementAt (feature_bucket);
+  }
+
+  /**
+   *  The maximum number of buckets.
+   **/
+  private final int BUCKET_COUNT = 10;
+
+  /**
+   *  See comment on getBucket().
+   **/
+  private final int BUCKET_MULTIPLIER = 4;
+
+  /**
+   *  See comment above.
+   **/
+  private final Vector rbtree_buckets = new Vector (BUCKET_COUNT);
+
+  /**
+   *  Maps each Feature to the bucket it was added to so that remove () still
+   *  works after the length of the Feature has changed.
+   **/
+  private final IdentityHashMap bucket_of_feature = new IdentityHashMap ();
+
+  /**
+   *  The Comparator that was passed to the constructor.
+   **/
+  private final Comparator comparator;
+}
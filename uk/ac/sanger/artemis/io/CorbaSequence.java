@@ -81,6 +81,11 @@ public class CorbaSequence implements Sequence {
     return dst;
   }
 
+  public void getCharSubSequence (int start, int end, char[] dst, int dst_offset)
+  {
+    sequence.getChars(start-1, end, dst, dst_offset);
+  }
+
   public char charAt(int i)
   {
     return sequence.charAt(i);
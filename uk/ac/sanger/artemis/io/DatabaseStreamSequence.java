@@ -0,0 +1,128 @@
+/* DatabaseStreamSequence.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import uk.ac.sanger.artemis.chado.GmodDAO;
+
+/**
+ *  The residues of a chado feature, read from the database in blocks of
+ *  BLOCK_SIZE bases when the entry is read.  Each block is packed as it
+ *  arrives, so the residues are never held as one byte or char array.  A
+ *  failure to read the residues is a ReadFormatException while the entry
+ *  is read, rather than an error later when the bases are drawn.
+ **/
+public class DatabaseStreamSequence extends StreamSequence
+{
+  /** number of bases read from the database at a time */
+  private static final int BLOCK_SIZE = 1 << 20;
+
+  private final String header;
+
+  /**
+   *  @param dao       the data access object to read the residues with
+   *  @param featureId the feature_id of the feature with the residues
+   *  @param header    the name to use when writing the sequence as FASTA
+   *  @param len       the length of the residues
+   **/
+  public DatabaseStreamSequence(final GmodDAO dao, final int featureId,
+                                final String header, final int len)
+      throws ReadFormatException
+  {
+    this.header = header;
+
+    setSequencePackingCapacity(len);
+    char residues[] = new char[Math.min(len, BLOCK_SIZE)];
+    for(int fmin=0; fmin<len; fmin+=BLOCK_SIZE)
+    {
+      final int fmax = Math.min(fmin + BLOCK_SIZE, len);
+      if(fmax - fmin < residues.length)
+        residues = new char[fmax - fmin];
+      readResidues(dao, featureId, fmin, fmax, residues);
+      appendChar(residues);
+    }
+    setCounts();
+  }
+
+  /**
+   *  Read the residues fmin..fmax (interbase) into the residues array.
+   **/
+  private static void readResidues(final GmodDAO dao, final int featureId,
+                                   final int fmin, final int fmax,
+                                   final char residues[])
+      throws ReadFormatException
+  {
+    final byte bytes[];
+    try
+    {
+      bytes = dao.getResiduesByFeatureIdAndRange(featureId, fmin, fmax);
+    }
+    catch(RuntimeException e)
+    {
+      throw new ReadFormatException("failed to read residues " + (fmin+1) +
+                                    ".." + fmax + " of feature_id=" +
+                                    featureId + ": " + e.getMessage());
+    }
+
+    if(bytes == null || bytes.length != fmax - fmin)
+      throw new ReadFormatException("failed to read residues " + (fmin+1) +
+                                    ".." + fmax + " of feature_id=" +
+                                    featureId);
+
+    for(int i=0; i<bytes.length; i++)
+      residues[i] = Character.toLowerCase((char)bytes[i]);
+  }
+
+  public StreamSequence copy()
+  {
+    return new FastaStreamSequence(new String(getCharSequence()), header);
+  }
+
+  public int getFormatType()
+  {
+    return StreamSequenceFactory.FASTA_FORMAT;
+  }
+
+  /**
+   *  Write the sequence in FASTA format.
+   **/
+  public void writeToStream(final Writer writer) throws IOException
+  {
+    writer.write(">" + header + "\n");
+    final int length = length();
+    final int chunk = 60*1000;
+    for(int start=1; start<=length; start+=chunk)
+    {
+      final char bases[] =
+        getCharSubSequence(start, Math.min(start+chunk-1, length));
+      for(int i=0; i<bases.length; i+=60)
+      {
+        writer.write(bases, i, Math.min(60, bases.length-i));
+        writer.write('\n');
+      }
+    }
+  }
+}
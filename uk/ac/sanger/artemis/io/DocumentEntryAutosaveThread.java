@@ -25,12 +25,13 @@
 
 package uk.ac.sanger.artemis.io;
 
-import uk.ac.sanger.artemis.util.*;
 import java.io.*;
 
 /**
- *  This is a Thread that automatically saves a DocumentEntry to a backup file
- *  called #entry_name# every 120 seconds.
+ *  This is a Thread that keeps the journal of changes to a
+ *  SimpleDocumentEntry compact by writing snapshots of the entry (see
+ *  DocumentEntryJournal).  The changes themselves are written to the
+ *  journal as they are made, so that they can be recovered after a crash.
  *
  *  @author Kim Rutherford <kmr@sanger.ac.uk>
  *  @version $Id: DocumentEntryAutosaveThread.java,v 1.8 2008-08-01 12:50:16 tjc Exp $
@@ -40,115 +41,57 @@ public class DocumentEntryAutosaveThread extends Thread {
   /**
    *  Create a new DocumentEntryAutosaveThread with MIN_PRIORITY.
    **/
-  public DocumentEntryAutosaveThread (final DocumentEntry document_entry) {
+  public DocumentEntryAutosaveThread (final SimpleDocumentEntry document_entry) {
     this.document_entry = document_entry;
 
     setPriority (Thread.MIN_PRIORITY);
+    setDaemon (true);
   }
 
   /**
-   *  The length of time (in seconds) to sleep for.
+   *  The length of time (in milliseconds) to sleep for between checks.
    **/
-  private final static int SLEEP_TIME = 2 * 60 * 1000;
+  private final static int SLEEP_TIME = 10 * 1000;
 
   /**
-   *  The main code for DocumentEntryAutosaveThread.  Attempts to autosave the
-   *  DocumentEntry every 2 minutes if it has unsaved changes.
+   *  The main code for DocumentEntryAutosaveThread.  Checks every 10
+   *  seconds whether the journal of the DocumentEntry needs a new snapshot.
    **/
   public void run () {
-    java.util.Date last_save_time = null;
-
-    // Set to true the first time we save.
-    boolean have_saved = false;
-
-    try {
-      // sleep for 240 seconds before starting - there is no point in attempting
-      // to save straight away
-      Thread.sleep (240000);
-    } catch (InterruptedException _) {
-    }
-
     while (true) {
-      final String entry_name = document_entry.getName ();
-
-      if (entry_name == null) {
-        continue;
+      try {
+        Thread.sleep (SLEEP_TIME);
+      } catch (InterruptedException _) {
       }
 
-      final File save_file;
-
-      if(document_entry.getDocument() instanceof RemoteFileDocument ||
-          isMac())
-        save_file = new File(System.getProperty("user.dir")+
-                             System.getProperty("file.separator")+
-                             "#" + entry_name + "#");
-      else
-        save_file = new File ("#" + entry_name + "#");
-
-      final java.util.Date last_change_time =
-        document_entry.getLastChangeTime ();
-
-      // only save if there are unsaved changes and we haven't autosaved
-      // since the last change
-      if (document_entry.hasUnsavedChanges () &&
-          (last_save_time == null ||
-           last_change_time != null &&
-           last_change_time.after (last_save_time))) {
-        final Document save_document = new FileDocument (save_file);
-        try {
-          final Writer out_file = save_document.getWriter ();
-          document_entry.writeToStream (out_file);
-          out_file.close ();
-          have_saved = true;
-        } catch (IOException e) {
-          System.err.println ("warning: could not auto save to: " +
-                              save_document.getName () +
-                              " (will try again later)");
-        } catch (java.util.ConcurrentModificationException e) {
-          // this Exception means that the tree that stores the features has
-          // changed since we started writing.  since this thread doesn't
-          // change the tree, this exception is harmless, so we ignore it
-          // and try again later
-        }
-        catch(NullPointerException npe)
-        {
-          break;
-        }
-      } else {
-        if (have_saved) {
-          // auto save file isn't needed now so turn it into a backup file
-          final File new_name;
+      if (document_entry.line_groups == null) {
+        // the entry has been disposed of
+        break;
+      }
 
-          if(document_entry.getDocument() instanceof RemoteFileDocument ||
-             isMac())
-            new_name = new File (System.getProperty("user.dir")+
-                                 System.getProperty("file.separator")+
-                                 entry_name + "~");
-          else
-            new_name = new File (entry_name + "~");
+      final DocumentEntryJournal journal = document_entry.getJournal ();
 
-          save_file.renameTo (new_name);
-        } else {
-          // the file wasn't made by us so leave it
-        }
+      if (journal == null || !journal.needsCompaction ()) {
+        continue;
       }
 
-      last_save_time = last_change_time;
-
       try {
-        Thread.sleep (SLEEP_TIME);
-      } catch (InterruptedException _) {
+        journal.compact ();
+      } catch (IOException e) {
+        System.err.println ("warning: could not auto save " +
+                            document_entry.getName () + ": " +
+                            e.getMessage () + " (will try again later)");
+      }
+      catch(NullPointerException npe)
+      {
+        // the entry has been disposed of
+        break;
       }
     }
   }
 
-  private boolean isMac() 
-  {
-    return System.getProperty("mrj.version") != null;
-  }
-  
   /**
    *  The DocumentEntry we will save.
    **/
-  private DocumentEntry document_entry;
+  private SimpleDocumentEntry document_entry;
 }
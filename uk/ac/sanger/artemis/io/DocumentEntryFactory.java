@@ -119,6 +119,9 @@ abstract public class DocumentEntryFactory
     case LineGroup.GFF_FEATURE:
     case LineGroup.GFF_MISC:
       {
+        if (IndexedGFFDocumentEntry.isIndexed (document))
+          return new IndexedGFFDocumentEntry (document);
+
         final SimpleDocumentEntry document_entry =
           new GFFDocumentEntry (document, listener);
         return document_entry;
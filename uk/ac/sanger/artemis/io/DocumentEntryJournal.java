@@ -0,0 +1,1011 @@
+/* DocumentEntryJournal.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+
+import javax.swing.JOptionPane;
+
+import uk.ac.sanger.artemis.util.Document;
+import uk.ac.sanger.artemis.util.FileDocument;
+
+/**
+ *  An append-only journal of the changes made to a SimpleDocumentEntry, so
+ *  that unsaved changes can be recovered after a crash without writing the
+ *  whole entry every few minutes.
+ *  <p>
+ *  Each added, changed or deleted feature is appended to the journal as it
+ *  happens.  From time to time the journal is compacted by writing a
+ *  snapshot of the whole entry (see compact()) and starting a new journal.
+ *  The list of features for the snapshot is taken on the event dispatch
+ *  thread but their text is written in the background.  A feature that
+ *  changes while the snapshot is written is also in the new journal, so
+ *  replaying the journal over the snapshot always gives the latest text.
+ *  <p>
+ *  The files are #entry_name.hash#.snapshot.N, #entry_name.hash#.journal.N
+ *  and #entry_name.hash#.lock in ~/.artemis/journals, where hash is made
+ *  from the full path of the entry file so that entries with the same name
+ *  in different directories have different journals.  The lock file holds
+ *  the full path and is locked while the entry is open.  If an entry is
+ *  read while there are journal files that are not locked, Artemis must
+ *  have stopped without saving.  recover() then replays them into
+ *  #entry_name.hash# and asks the user whether the entry should be read
+ *  from there instead.
+ *  <p>
+ *  Nothing is journaled in script mode or if the nojournal system property
+ *  is set (e.g. -Dnojournal for tests).
+ **/
+public class DocumentEntryJournal
+{
+  /** compact if there have been this many changes since the last snapshot */
+  private static final int MAX_RECORDS = 2000;
+
+  /** time (ms) between snapshots while the entry is changing */
+  private static final long SNAPSHOT_TIME = 10 * 60 * 1000;
+
+  /** minimum time (ms) between snapshots for changes that are not in the
+   *  journal, e.g. to the header or the bases */
+  private static final long UNJOURNALED_SNAPSHOT_TIME = 2 * 60 * 1000;
+
+  private static final String SNAPSHOT = ".snapshot.";
+  private static final String JOURNAL = ".journal.";
+  private static final String LOCK = ".lock";
+
+  /** generation numbers are unique in this JVM so that the files of an
+   *  old and a new journal for the same entry can not clash */
+  private static int next_generation = 1;
+
+  private final SimpleDocumentEntry entry;
+
+  /** #entry_name.hash# */
+  private final String file_name;
+
+  /** the id of each feature in the journal and the snapshot */
+  private final IdentityHashMap<Feature, Integer> ids =
+    new IdentityHashMap<Feature, Integer>();
+  private int next_id = 1;
+
+  private int generation;
+  private Writer journal_writer;
+  private int record_count = 0;
+  private long last_record_time = 0;
+  private long last_capture_time = 0;
+  private boolean have_snapshot = false;
+
+  /** true if there has been a change that is not in the journal */
+  private boolean unjournaled = false;
+  private boolean closed = false;
+
+  private final RandomAccessFile lock_file;
+  private final FileLock lock;
+
+  /**
+   *  Start a journal for an entry.
+   *  @return the new journal or null if it could not be started, e.g.
+   *    because the same entry is being journaled by another Artemis.
+   **/
+  static DocumentEntryJournal open(final SimpleDocumentEntry entry)
+  {
+    if(!isEnabled())
+      return null;
+
+    final String key = getKey(entry);
+    final String file_name = getFileName(entry.getName(), key);
+    RandomAccessFile lock_file = null;
+    try
+    {
+      if(!getDirectory().isDirectory() && !getDirectory().mkdirs())
+        throw new IOException("could not create " + getDirectory());
+      lock_file = new RandomAccessFile(getFile(file_name + LOCK), "rw");
+      final FileLock lock = lock_file.getChannel().tryLock();
+      if(lock != null)
+      {
+        lock_file.setLength(0);
+        lock_file.writeUTF(key);
+        return new DocumentEntryJournal(entry, file_name, lock_file, lock);
+      }
+    }
+    catch(IOException e)
+    {
+    }
+    catch(OverlappingFileLockException e)
+    {
+    }
+
+    System.err.println("warning: could not start a journal for: " +
+                       entry.getName());
+    try
+    {
+      if(lock_file != null)
+        lock_file.close();
+    }
+    catch(IOException e) {}
+    return null;
+  }
+
+  private DocumentEntryJournal(final SimpleDocumentEntry entry,
+                               final String file_name,
+                               final RandomAccessFile lock_file,
+                               final FileLock lock)
+      throws IOException
+  {
+    this.entry = entry;
+    this.file_name = file_name;
+    this.lock_file = lock_file;
+    this.lock = lock;
+
+    // anything left from before was recovered when the entry was read
+    deleteFiles(file_name, Integer.MAX_VALUE);
+    generation = nextGeneration();
+    journal_writer = openJournal(generation);
+  }
+
+  /**
+   *  Record that a feature has been added to the entry.
+   **/
+  public synchronized void featureAdded(final Feature feature)
+  {
+    writeRecord('A', feature);
+  }
+
+  /**
+   *  Record that a feature has changed.
+   **/
+  public synchronized void featureChanged(final Feature feature)
+  {
+    writeRecord('C', feature);
+  }
+
+  /**
+   *  Record that a feature has been removed from the entry.
+   **/
+  public synchronized void featureDeleted(final Feature feature)
+  {
+    final Integer id = ids.remove(feature);
+    if(id == null || journal_writer == null)
+      return;
+
+    try
+    {
+      journal_writer.write("@D " + id + "\n@E\n");
+      journal_writer.flush();
+      recorded();
+    }
+    catch(IOException e)
+    {
+      journalFailed(e);
+    }
+  }
+
+  private void writeRecord(final char type, final Feature feature)
+  {
+    // features not in the entry (e.g. copied when added) are not written
+    // with it, and anything else left out is picked up by the next snapshot
+    if(journal_writer == null || entry.isFakeFeature(feature))
+      return;
+    if(!(feature instanceof StreamFeature) || feature.getEntry() != entry)
+    {
+      unjournaled = true;
+      return;
+    }
+
+    try
+    {
+      final StringWriter text = new StringWriter();
+      ((StreamFeature) feature).writeToStream(text);
+
+      journal_writer.write("@" + type + " " + getId(feature) + "\n");
+      writeLines(journal_writer, text.toString());
+      journal_writer.write("@E\n");
+      journal_writer.flush();
+      recorded();
+    }
+    catch(IOException e)
+    {
+      journalFailed(e);
+    }
+  }
+
+  private void recorded()
+  {
+    record_count++;
+    last_record_time = System.currentTimeMillis();
+  }
+
+  private void journalFailed(final IOException e)
+  {
+    System.err.println("warning: could not write to the journal: " +
+                       file_name + JOURNAL + generation + " " + e.getMessage());
+    try
+    {
+      if(journal_writer != null)
+        journal_writer.close();
+    }
+    catch(IOException ioe) {}
+    // the journal is incomplete so it is only useful after the next snapshot
+    journal_writer = null;
+    have_snapshot = false;
+  }
+
+  private Integer getId(final Feature feature)
+  {
+    Integer id = ids.get(feature);
+    if(id == null)
+    {
+      id = new Integer(next_id++);
+      ids.put(feature, id);
+    }
+    return id;
+  }
+
+  /**
+   *  Return true if a snapshot should be written now, i.e. if there is no
+   *  snapshot yet, there have been many changes or it is some time since
+   *  the last one.
+   **/
+  public synchronized boolean needsCompaction()
+  {
+    if(closed)
+      return false;
+    if(!have_snapshot)
+      return true;
+
+    final long now = System.currentTimeMillis();
+    if(record_count >= MAX_RECORDS ||
+       (record_count > 0 && now - last_capture_time > SNAPSHOT_TIME))
+      return true;
+
+    // changes that did not make a record, e.g. to the header or bases
+    final java.util.Date last_change_time = entry.getLastChangeTime();
+    if(last_change_time != null &&
+       last_change_time.getTime() > Math.max(last_record_time,
+                                             last_capture_time) + 1000)
+      unjournaled = true;
+    return unjournaled &&
+      now - last_capture_time > UNJOURNALED_SNAPSHOT_TIME;
+  }
+
+  /**
+   *  Write a snapshot of the entry, start a new journal and delete the
+   *  older files.
+   *  @exception IOException thrown if the snapshot could not be written
+   **/
+  public void compact() throws IOException
+  {
+    compact(false);
+  }
+
+  /**
+   *  Write the first snapshot of an entry on this thread rather than the
+   *  event dispatch thread.  This is only safe while no other thread can
+   *  change the entry, i.e. from its constructor.
+   *  @return true if the snapshot was written
+   *  @exception IOException thrown if the snapshot could not be written
+   **/
+  boolean compactNow() throws IOException
+  {
+    compact(true);
+    synchronized(this)
+    {
+      return have_snapshot;
+    }
+  }
+
+  private void compact(final boolean on_this_thread) throws IOException
+  {
+    final Capture capture = new Capture();
+    if(on_this_thread)
+      capture.run();
+    else
+      runOnEventThread(capture);
+    if(capture.groups == null)
+      return;
+
+    final File tmp_file = getFile(file_name + SNAPSHOT + capture.generation +
+                                  ".tmp");
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(tmp_file), "UTF-8"));
+    try
+    {
+      writeSnapshot(writer, capture);
+      writer.close();
+    }
+    catch(IOException e)
+    {
+      writer.close();
+      tmp_file.delete();
+      throw e;
+    }
+
+    synchronized(this)
+    {
+      if(closed)
+      {
+        tmp_file.delete();
+        return;
+      }
+      if(!tmp_file.renameTo(getFile(file_name + SNAPSHOT + capture.generation)))
+      {
+        tmp_file.delete();
+        throw new IOException("could not rename " + tmp_file);
+      }
+      deleteFiles(file_name, capture.generation);
+      if(journal_writer != null)
+        have_snapshot = true;
+    }
+  }
+
+  /**
+   *  Write the line groups of the entry in the same order as
+   *  SimpleDocumentEntry.writeToStream(), with each feature of the feature
+   *  table in a separate block.
+   **/
+  private void writeSnapshot(final Writer writer, final Capture capture)
+      throws IOException
+  {
+    final LineGroup groups[] = capture.groups;
+    for(int i = 0; i < groups.length; i++)
+    {
+      if(groups[i] instanceof FeatureTable)
+      {
+        writer.write("@T\n");
+        for(int j = 0; j < capture.features.length; j++)
+        {
+          writer.write("@F " + capture.feature_ids[j] + "\n");
+          writeLines(writer, getFeatureText(capture.features[j]));
+        }
+        continue;
+      }
+
+      writer.write("@L\n");
+      final Writer line_writer = new LineWriter(writer);
+      if(entry instanceof GFFDocumentEntry &&
+         groups[i] instanceof FastaStreamSequence)
+        LineGroup.writeStartOfGFFEntry(line_writer);
+      groups[i].writeToStream(line_writer);
+      line_writer.flush();
+    }
+
+    if(groups.length > 2 ||
+       (groups.length == 2 &&
+        !(groups[1] instanceof RawStreamSequence) &&
+        !(groups[1] instanceof FastaStreamSequence)))
+    {
+      if(entry instanceof PublicDBDocumentEntry)
+      {
+        writer.write("@L\n");
+        final Writer line_writer = new LineWriter(writer);
+        LineGroup.writeEndOfEMBLEntry(line_writer);
+        line_writer.flush();
+      }
+    }
+  }
+
+  /**
+   *  Return the text of a feature.  If it fails because the feature is
+   *  being changed at the same time try again on the event dispatch thread.
+   **/
+  private String getFeatureText(final StreamFeature feature)
+      throws IOException
+  {
+    try
+    {
+      final StringWriter text = new StringWriter();
+      feature.writeToStream(text);
+      return text.toString();
+    }
+    catch(RuntimeException e)
+    {
+      final String text[] = new String[1];
+      runOnEventThread(new Runnable()
+      {
+        public void run()
+        {
+          try
+          {
+            final StringWriter writer = new StringWriter();
+            feature.writeToStream(writer);
+            text[0] = writer.toString();
+          }
+          catch(IOException ioe)
+          {
+            text[0] = "";
+          }
+        }
+      });
+      return text[0];
+    }
+  }
+
+  /**
+   *  Delete the files of the journal, e.g. after the entry is saved or
+   *  closed.  Nothing more is recorded.
+   **/
+  public synchronized void close()
+  {
+    if(closed)
+      return;
+    closed = true;
+
+    try
+    {
+      if(journal_writer != null)
+        journal_writer.close();
+    }
+    catch(IOException e) {}
+    journal_writer = null;
+    ids.clear();
+
+    deleteFiles(file_name, Integer.MAX_VALUE);
+    try
+    {
+      lock.release();
+      lock_file.close();
+    }
+    catch(IOException e) {}
+    getFile(file_name + LOCK).delete();
+  }
+
+  public synchronized String toString()
+  {
+    return "DocumentEntryJournal " + file_name + " generation=" + generation +
+           " records=" + record_count;
+  }
+
+  /**
+   *  The state of the entry when a snapshot is started.  This is run on
+   *  the event dispatch thread.
+   **/
+  private class Capture implements Runnable
+  {
+    private LineGroup groups[];
+    private StreamFeature features[];
+    private Integer feature_ids[];
+    private int generation;
+
+    public void run()
+    {
+      synchronized(DocumentEntryJournal.this)
+      {
+        if(closed)
+          return;
+
+        final LineGroupVector line_groups = entry.line_groups;
+        final Vector<StreamFeature> feature_list = new Vector<StreamFeature>();
+        final Vector<Integer> id_list = new Vector<Integer>();
+        groups = new LineGroup[line_groups.size()];
+        for(int i = 0; i < groups.length; i++)
+        {
+          groups[i] = line_groups.elementAt(i);
+          if(!(groups[i] instanceof FeatureTable))
+            continue;
+
+          final FeatureEnumeration feature_enum =
+            ((FeatureTable) groups[i]).features();
+          while(feature_enum.hasMoreFeatures())
+          {
+            final Feature feature = feature_enum.nextFeature();
+            if(entry.isFakeFeature(feature) ||
+               !(feature instanceof StreamFeature))
+              continue;
+            feature_list.add((StreamFeature) feature);
+            id_list.add(getId(feature));
+          }
+        }
+        features = feature_list.toArray(new StreamFeature[feature_list.size()]);
+        feature_ids = id_list.toArray(new Integer[id_list.size()]);
+
+        // changes from now on go in the journal of the new snapshot
+        try
+        {
+          if(journal_writer != null)
+            journal_writer.close();
+        }
+        catch(IOException e) {}
+
+        generation = nextGeneration();
+        try
+        {
+          journal_writer = openJournal(generation);
+        }
+        catch(IOException e)
+        {
+          journal_writer = null;
+          journalFailed(e);
+          groups = null;
+          return;
+        }
+        finally
+        {
+          DocumentEntryJournal.this.generation = generation;
+        }
+        record_count = 0;
+        unjournaled = false;
+        last_capture_time = System.currentTimeMillis();
+      }
+    }
+  }
+
+  private Writer openJournal(final int generation) throws IOException
+  {
+    return new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(getFile(file_name + JOURNAL + generation)),
+        "UTF-8"));
+  }
+
+  private static synchronized int nextGeneration()
+  {
+    return next_generation++;
+  }
+
+  private static void runOnEventThread(final Runnable runnable)
+  {
+    if(EventQueue.isDispatchThread())
+      runnable.run();
+    else
+    {
+      try
+      {
+        EventQueue.invokeAndWait(runnable);
+      }
+      catch(InterruptedException e)
+      {
+        throw new Error("internal error - unexpected exception: " + e);
+      }
+      catch(java.lang.reflect.InvocationTargetException e)
+      {
+        final Throwable cause = e.getCause();
+        if(cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        throw new Error("internal error - unexpected exception: " + cause);
+      }
+    }
+  }
+
+  /**
+   *  Return the full path of the file of an entry, or its name if it was
+   *  not read from a file.
+   **/
+  private static String getKey(final SimpleDocumentEntry entry)
+  {
+    final Document document = entry.getDocument();
+    if(document instanceof FileDocument)
+      return ((FileDocument) document).getFile().getAbsolutePath();
+    return entry.getName();
+  }
+
+  /**
+   *  Return the start of the names of the journal files of an entry.
+   **/
+  private static String getFileName(final String entry_name, final String key)
+  {
+    return "#" + entry_name + "." + Integer.toHexString(key.hashCode()) + "#";
+  }
+
+  /**
+   *  Replay the journal files left for an entry by an Artemis that did not
+   *  stop cleanly into #entry_name.hash# and ask the user whether to read
+   *  the entry from there.  If the user says no the file is kept.
+   *  @param entry the entry that is being read
+   *  @return the file to read the entry from or null if there is nothing to
+   *    recover or the user chose not to
+   **/
+  public static File recover(final SimpleDocumentEntry entry)
+  {
+    if(!isEnabled())
+      return null;
+
+    final String entry_name = entry.getName();
+    final String key = getKey(entry);
+    final String file_name = getFileName(entry_name, key);
+    final File lock_file_name = getFile(file_name + LOCK);
+    if(!lock_file_name.exists())
+      return null;
+
+    // check the journal is not in use and is for this entry
+    try
+    {
+      final RandomAccessFile lock_file =
+        new RandomAccessFile(lock_file_name, "rw");
+      try
+      {
+        final FileLock lock = lock_file.getChannel().tryLock();
+        if(lock == null)
+          return null;
+        try
+        {
+          if(!key.equals(lock_file.readUTF()))
+            return null;
+        }
+        finally
+        {
+          lock.release();
+        }
+      }
+      finally
+      {
+        lock_file.close();
+      }
+    }
+    catch(IOException e)
+    {
+      return null;
+    }
+    catch(OverlappingFileLockException e)
+    {
+      return null;
+    }
+
+    final File recovered = getFile(file_name);
+    try
+    {
+      if(!replay(file_name, recovered))
+        return null;
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not recover unsaved changes to " +
+                         entry_name + ": " + e.getMessage());
+      return null;
+    }
+    finally
+    {
+      deleteFiles(file_name, Integer.MAX_VALUE);
+      lock_file_name.delete();
+    }
+
+    if(confirmRecovery(entry_name, recovered))
+      return recovered;
+
+    System.err.println("warning: unsaved changes to " + entry_name +
+                       " from an earlier session have been recovered to: " +
+                       recovered);
+    return null;
+  }
+
+  /**
+   *  Ask the user whether the entry should be read with the recovered
+   *  changes.  In script mode, or if there is no display, the answer is no.
+   **/
+  private static boolean confirmRecovery(final String entry_name,
+                                         final File recovered)
+  {
+    final String message =
+      "Artemis stopped before the changes to " + entry_name +
+      " were saved.\nOpen " + entry_name + " with the unsaved changes?\n" +
+      "If not the changes are kept in " + recovered + " ";
+
+    if(UI.mode == UI.UIMode.CONSOLE)
+      return UI.booleanUserInput("Recover unsaved changes", message);
+    if(UI.mode != UI.UIMode.SWING || GraphicsEnvironment.isHeadless())
+      return false;
+
+    return JOptionPane.showConfirmDialog(null, message,
+        "Recover Unsaved Changes", JOptionPane.YES_NO_OPTION,
+        JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION;
+  }
+
+  /**
+   *  Write the latest snapshot with the journals since then applied to it.
+   *  @return false if there is no snapshot
+   **/
+  private static boolean replay(final String file_name, final File out_file)
+      throws IOException
+  {
+    final int generations[] = getGenerations(file_name, SNAPSHOT);
+    if(generations.length == 0)
+      return false;
+    final int snapshot_generation = generations[generations.length - 1];
+
+    // the blocks of the snapshot other than the features, with null at
+    // the position of the feature table
+    final Vector<String> blocks = new Vector<String>();
+    final LinkedHashMap<Integer, String> features =
+      new LinkedHashMap<Integer, String>();
+
+    BufferedReader reader = openReader(getFile(file_name + SNAPSHOT +
+                                               snapshot_generation));
+    try
+    {
+      String line = reader.readLine();
+      while(line != null)
+      {
+        if(line.equals("@T"))
+        {
+          blocks.add(null);
+          line = reader.readLine();
+          continue;
+        }
+
+        final StringBuffer text = new StringBuffer();
+        final String start = line;
+        while((line = reader.readLine()) != null && !line.startsWith("@"))
+          appendLine(text, line);
+
+        if(start.startsWith("@F "))
+          features.put(Integer.valueOf(start.substring(3)), text.toString());
+        else
+          blocks.add(text.toString());
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+
+    final int journals[] = getGenerations(file_name, JOURNAL);
+    for(int i = 0; i < journals.length; i++)
+    {
+      if(journals[i] < snapshot_generation)
+        continue;
+
+      reader = openReader(getFile(file_name + JOURNAL + journals[i]));
+      try
+      {
+        String line;
+        while((line = reader.readLine()) != null)
+        {
+          if(line.length() < 4 || line.charAt(0) != '@')
+            continue;
+
+          final char type = line.charAt(1);
+          final Integer id = Integer.valueOf(line.substring(3));
+          final StringBuffer text = new StringBuffer();
+          boolean complete = false;
+          while((line = reader.readLine()) != null)
+          {
+            if(line.equals("@E"))
+            {
+              complete = true;
+              break;
+            }
+            appendLine(text, line);
+          }
+
+          // ignore a record that was being written when Artemis stopped
+          if(!complete)
+            break;
+
+          if(type == 'D')
+            features.remove(id);
+          else
+          {
+            // a changed feature goes back in the same place
+            features.put(id, text.toString());
+          }
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(out_file), "UTF-8"));
+    try
+    {
+      for(int i = 0; i < blocks.size(); i++)
+      {
+        if(blocks.get(i) != null)
+        {
+          writer.write(blocks.get(i));
+          continue;
+        }
+
+        final Iterator<String> it = features.values().iterator();
+        while(it.hasNext())
+          writer.write(it.next());
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+    return true;
+  }
+
+  private static void appendLine(final StringBuffer text, final String line)
+  {
+    if(line.startsWith("|"))
+      text.append(line.substring(1));
+    else
+      text.append(line);
+    text.append('\n');
+  }
+
+  private static BufferedReader openReader(final File file) throws IOException
+  {
+    return new BufferedReader(new InputStreamReader(
+        new FileInputStream(file), "UTF-8"));
+  }
+
+  /**
+   *  Return the generations of the snapshot or journal files, in order.
+   **/
+  private static int[] getGenerations(final String file_name,
+                                      final String type)
+  {
+    final String prefix = file_name + type;
+    final String names[] = getDirectory().list();
+    if(names == null)
+      return new int[0];
+
+    final Vector<Integer> generations = new Vector<Integer>();
+    for(int i = 0; i < names.length; i++)
+    {
+      if(!names[i].startsWith(prefix))
+        continue;
+      try
+      {
+        generations.add(Integer.valueOf(names[i].substring(prefix.length())));
+      }
+      catch(NumberFormatException e)
+      {
+        // e.g. an unfinished snapshot
+      }
+    }
+
+    final int result[] = new int[generations.size()];
+    for(int i = 0; i < result.length; i++)
+      result[i] = generations.get(i).intValue();
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   *  Delete the snapshot (including unfinished ones) and journal files
+   *  before a generation.
+   **/
+  private static void deleteFiles(final String file_name, final int generation)
+  {
+    final String names[] = getDirectory().list();
+    if(names == null)
+      return;
+
+    final String types[] = { SNAPSHOT, JOURNAL };
+    for(int i = 0; i < names.length; i++)
+    {
+      for(int j = 0; j < types.length; j++)
+      {
+        final String prefix = file_name + types[j];
+        if(!names[i].startsWith(prefix))
+          continue;
+
+        String number = names[i].substring(prefix.length());
+        if(number.endsWith(".tmp"))
+          number = number.substring(0, number.length() - 4);
+        try
+        {
+          if(Integer.parseInt(number) < generation)
+            getFile(names[i]).delete();
+        }
+        catch(NumberFormatException e) {}
+      }
+    }
+  }
+
+  /**
+   *  Return false in script mode or if the nojournal system property is set.
+   **/
+  private static boolean isEnabled()
+  {
+    return UI.mode != UI.UIMode.SCRIPT &&
+           System.getProperty("nojournal") == null;
+  }
+
+  private static File getDirectory()
+  {
+    return new File(System.getProperty("user.home"),
+                    ".artemis" + File.separator + "journals");
+  }
+
+  private static File getFile(final String name)
+  {
+    return new File(getDirectory(), name);
+  }
+
+  /**
+   *  Write text with each line starting with "|", so that it can not be
+   *  mistaken for the "@" lines that start each block.
+   **/
+  private static void writeLines(final Writer writer, final String text)
+      throws IOException
+  {
+    final Writer line_writer = new LineWriter(writer);
+    line_writer.write(text);
+    line_writer.flush();
+  }
+
+  /**
+   *  A Writer that starts each line with "|" and ends the text with a
+   *  new line when flushed.
+   **/
+  private static class LineWriter extends Writer
+  {
+    private final Writer writer;
+    private boolean line_start = true;
+
+    LineWriter(final Writer writer)
+    {
+      this.writer = writer;
+    }
+
+    public void write(final char cbuf[], final int off, final int len)
+        throws IOException
+    {
+      int start = off;
+      final int end = off + len;
+      for(int i = off; i < end; i++)
+      {
+        if(line_start)
+        {
+          writer.write(cbuf, start, i - start);
+          writer.write('|');
+          start = i;
+          line_start = false;
+        }
+        if(cbuf[i] == '\n')
+          line_start = true;
+      }
+      writer.write(cbuf, start, end - start);
+    }
+
+    /**
+     *  End the last line, but do not flush the underlying Writer.
+     **/
+    public void flush() throws IOException
+    {
+      if(!line_start)
+      {
+        writer.write('\n');
+        line_start = true;
+      }
+    }
+
+    public void close() throws IOException
+    {
+      flush();
+    }
+  }
+}
@@ -62,7 +62,7 @@ public class EmblStreamSequence extends StreamSequence
    **/
   public EmblStreamSequence(final Sequence sequence) 
   {
-    setFromChar(((StreamSequence)sequence).getCharSequence());
+    setFromSequence(sequence);
   }
 
   /**
@@ -215,8 +215,6 @@ public class EmblStreamSequence extends StreamSequence
       throws IOException 
   {
 
-    final String sequence = toString();
-
     // first count A,C,G,T and other bases
 
     final int SEQUENCE_LINE_BASE_COUNT = 60;
@@ -235,37 +233,51 @@ public class EmblStreamSequence extends StreamSequence
     else
       writer.write("\n");
 
-    int line_length_so_far = 0;
     final int BLOCK_LENGTH = 10;
+    final int LINE_WIDTH = 80;
+    final int sequence_length = length();
+
+    // the bases are decoded a chunk at a time and each line is built
+    // in line_chars
+    final char[] chunk = new char[Math.min(sequence_length, WRITE_CHUNK_SIZE)];
+    final char[] line_chars = new char[LINE_WIDTH + 20];
+    int chunk_start = 0;
+    int chunk_end = 0;
  
-    for(int i = 0 ; i < length() ; i += SEQUENCE_LINE_BASE_COUNT) 
+    for(int i = 0 ; i < sequence_length ; i += SEQUENCE_LINE_BASE_COUNT) 
     {
+      if(i >= chunk_end)
+      {
+        chunk_start = i;
+        chunk_end = Math.min(sequence_length, i + chunk.length);
+        getCharSubSequence(chunk_start + 1, chunk_end, chunk, 0);
+      }
+
       // get the bases in chunks of at most 60
       final int this_line_length;
 
-      if(length() - i < SEQUENCE_LINE_BASE_COUNT) 
-        this_line_length = length() - i;
+      if(sequence_length - i < SEQUENCE_LINE_BASE_COUNT) 
+        this_line_length = sequence_length - i;
       else 
         this_line_length = SEQUENCE_LINE_BASE_COUNT;
 
-      writer.write("    ");
-      line_length_so_far += 4;
+      int line_length_so_far = 0;
+      for(int k = 0; k < 4; k++)
+        line_chars[line_length_so_far++] = ' ';
 
       for(int j = 0 ; j < this_line_length ; j += BLOCK_LENGTH)
       {
         final int this_block_length;
-        writer.write(' ');
+        line_chars[line_length_so_far++] = ' ';
 
         if(this_line_length - j < BLOCK_LENGTH) 
-        {
           this_block_length = this_line_length - j;
-          forceReset();
-        }
         else 
           this_block_length = BLOCK_LENGTH;
 
-        writer.write(getCharSubSequence(i + j + 1, i + j + this_block_length));
-        line_length_so_far += this_block_length + 1;
+        System.arraycopy(chunk, i + j - chunk_start,
+                         line_chars, line_length_so_far, this_block_length);
+        line_length_so_far += this_block_length;
       }
 
       // the base counter to write at the end of each line
@@ -274,16 +286,15 @@ public class EmblStreamSequence extends StreamSequence
 
       // now pad the line with spaces
       final int count_width = string_base_count.length();
-      final int LINE_WIDTH = 80;
 
-      for(int char_index = 0 ;
-           char_index < LINE_WIDTH - count_width - line_length_so_far ;
-           ++char_index) 
-        writer.write(' ');
+      while(line_length_so_far < LINE_WIDTH - count_width)
+        line_chars[line_length_so_far++] = ' ';
 
-      writer.write(string_base_count);
-      line_length_so_far = 0;
-      writer.write("\n");
+      string_base_count.getChars(0, count_width,
+                                 line_chars, line_length_so_far);
+      line_length_so_far += count_width;
+      line_chars[line_length_so_far++] = '\n';
+      writer.write(line_chars, 0, line_length_so_far);
     }
   }
 
@@ -0,0 +1,710 @@
+/* EntrySnapshot.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import uk.ac.sanger.artemis.util.LinePushBackReader;
+import uk.ac.sanger.artemis.util.OutOfRangeException;
+import uk.ac.sanger.artemis.util.SnapshotFile;
+import uk.ac.sanger.artemis.util.StringVector;
+
+/**
+ *  A binary copy of an EMBL or GenBank entry, written next to the entry
+ *  file as .file_name.snap, so that the entry can be opened again without
+ *  parsing the text.  The snapshot records the size and modification time
+ *  of the file it was made from and is only used while they still match.
+ *
+ *  The snapshot holds the packed bases of the sequence, the key, location
+ *  and qualifiers of each feature and the text of the other lines.  Each
+ *  distinct string is stored once, in a table at the end of the file.  The
+ *  snapshot is memory mapped when it is read and the LineGroups are made
+ *  from it by a LineGroupSource, so the entry is built in the usual way.
+ *  The snapshot ends with a CRC32 of everything after the header so that
+ *  a damaged snapshot isn't used.
+ *
+ *  Snapshots are only read and written when the entry_snapshots option is
+ *  set.
+ **/
+class EntrySnapshot
+{
+  private static final int MAGIC   = 0x41534e50;
+  private static final int VERSION = 2;
+
+  /** magic, version, entry type, file length, file time, table offset */
+  private static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 8 + 8;
+
+  /** The entry types. */
+  private static final byte EMBL    = 0;
+  private static final byte GENBANK = 1;
+
+  /** The kinds of LineGroup in the snapshot. */
+  private static final byte MISC     = 0;
+  private static final byte FEATURE  = 1;
+  private static final byte SEQUENCE = 2;
+  private static final byte END      = 3;
+
+  /** How a Location is stored. */
+  private static final byte LOCATION_RANGES = 0;
+  private static final byte LOCATION_STRING = 1;
+
+  /** Stored in place of a string table index for a null String. */
+  private static final int NULL_STRING = -1;
+
+  /** Where the snapshots are kept. */
+  private static final SnapshotFile SNAPSHOT_FILE =
+    new SnapshotFile("entry_snapshots", ".snap");
+
+  private EntrySnapshot()
+  {
+  }
+
+  /**
+   *  Return true if the entry_snapshots option is set.
+   **/
+  static boolean isEnabled()
+  {
+    return SNAPSHOT_FILE.isEnabled();
+  }
+
+  /**
+   *  Return a LineGroupSource that reads the given entry from its snapshot
+   *  or null if there is no snapshot that matches the entry file.  The
+   *  whole snapshot is read here so that if it turns out to be corrupt it
+   *  can be deleted and the text of the entry read instead.
+   *  @param entry The entry being read.
+   *  @param reader The text of the entry.  It is closed with the source.
+   **/
+  static LineGroupSource makeLineGroupSource(final SimpleDocumentEntry entry,
+                                             final LinePushBackReader reader)
+  {
+    // a recovered entry is not the same as its file
+    final File file = SnapshotFile.getFile(entry.getDocument());
+    if(file == null || !isEnabled() || entry.isRecovered())
+      return null;
+
+    final File snapshot_file = getSnapshotFile(file);
+    if(!snapshot_file.exists())
+      return null;
+
+    try
+    {
+      final ByteBuffer buffer = SnapshotFile.map(snapshot_file);
+      if(!isCurrent(buffer, file, getEntryType(entry)))
+        return null;
+      checkCRC(buffer);
+      return new SnapshotLineGroupSource(buffer, entry, reader);
+    }
+    catch(ReadFormatException e)
+    {
+      deleteCorrupt(snapshot_file, e);
+      return null;
+    }
+    catch(InvalidRelationException e)
+    {
+      deleteCorrupt(snapshot_file, e);
+      return null;
+    }
+    catch(RuntimeException e)
+    {
+      // a truncated or garbled snapshot runs off the end of the buffer or
+      // gives bad string table indexes
+      deleteCorrupt(snapshot_file, e);
+      return null;
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not read " + snapshot_file +
+                         ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   *  Delete a snapshot that could not be read so that a new one is written.
+   **/
+  private static void deleteCorrupt(final File snapshot_file,
+                                    final Exception e)
+  {
+    System.err.println("warning: ignoring corrupt snapshot " + snapshot_file +
+                       ": " + e);
+    snapshot_file.delete();
+  }
+
+  /**
+   *  Write a snapshot of the given entry unless there is already one that
+   *  matches the entry file.  Nothing is written if the entry contains
+   *  anything that can't be stored in a snapshot.
+   **/
+  static void update(final SimpleDocumentEntry entry)
+  {
+    final File file = SnapshotFile.getFile(entry.getDocument());
+    if(file == null || !isEnabled() || entry.isRecovered() ||
+       !canWrite(entry))
+      return;
+
+    final File snapshot_file = getSnapshotFile(file);
+    final byte entry_type = getEntryType(entry);
+    try
+    {
+      if(snapshot_file.exists() && isCurrent(snapshot_file, file, entry_type))
+        return;
+      write(entry, entry_type, file, snapshot_file);
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not write " + snapshot_file +
+                         ": " + e.getMessage());
+    }
+  }
+
+  /**
+   *  Return the snapshot file for an entry file.
+   **/
+  static File getSnapshotFile(final File file)
+  {
+    return SNAPSHOT_FILE.getSnapshotFile(file);
+  }
+
+  private static byte getEntryType(final SimpleDocumentEntry entry)
+  {
+    if(entry instanceof GenbankDocumentEntry)
+      return GENBANK;
+    return EMBL;
+  }
+
+  /**
+   *  Return true if every LineGroup of the entry can be stored.
+   **/
+  private static boolean canWrite(final SimpleDocumentEntry entry)
+  {
+    final Class feature_class;
+    final Class sequence_class;
+    if(entry.getClass() == GenbankDocumentEntry.class)
+    {
+      feature_class  = GenbankStreamFeature.class;
+      sequence_class = GenbankStreamSequence.class;
+    }
+    else if(entry.getClass() == EmblDocumentEntry.class)
+    {
+      feature_class  = EmblStreamFeature.class;
+      sequence_class = EmblStreamSequence.class;
+    }
+    else
+      return false;
+
+    final LineGroupVector line_groups = entry.line_groups;
+    for(int i = 0; i < line_groups.size(); i++)
+    {
+      final LineGroup line_group = line_groups.elementAt(i);
+      if(line_group instanceof FeatureTable)
+      {
+        final FeatureEnumeration features =
+          ((FeatureTable)line_group).features();
+        while(features.hasMoreFeatures())
+          if(features.nextFeature().getClass() != feature_class)
+            return false;
+      }
+      else if(line_group instanceof StreamSequence)
+      {
+        if(line_group.getClass() != sequence_class)
+          return false;
+      }
+      else if(!(line_group instanceof MiscLineGroup))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   *  Return true if the snapshot header matches the entry file.
+   **/
+  private static boolean isCurrent(final File snapshot_file, final File file,
+                                   final byte entry_type)
+      throws IOException
+  {
+    final DataInputStream in =
+      new DataInputStream(new FileInputStream(snapshot_file));
+    try
+    {
+      return in.readInt() == MAGIC &&
+             in.readInt() == VERSION &&
+             in.readByte() == entry_type &&
+             in.readLong() == file.length() &&
+             in.readLong() == file.lastModified();
+    }
+    catch(java.io.EOFException e)
+    {
+      return false;
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  private static boolean isCurrent(final ByteBuffer buffer, final File file,
+                                   final byte entry_type)
+  {
+    return buffer.limit() >= HEADER_SIZE &&
+           buffer.getInt() == MAGIC &&
+           buffer.getInt() == VERSION &&
+           buffer.get() == entry_type &&
+           buffer.getLong() == file.length() &&
+           buffer.getLong() == file.lastModified();
+  }
+
+  /**
+   *  Check the CRC32 at the end of the snapshot against the bytes between
+   *  the header and the CRC.  The position of the buffer isn't changed.
+   **/
+  private static void checkCRC(final ByteBuffer buffer)
+      throws ReadFormatException
+  {
+    final int crc_position = buffer.limit() - 4;
+    if(crc_position < HEADER_SIZE)
+      throw new ReadFormatException("snapshot is truncated");
+
+    final ByteBuffer body = buffer.duplicate();
+    body.position(HEADER_SIZE);
+    body.limit(crc_position);
+
+    final CRC32 crc = new CRC32();
+    final byte[] bytes = new byte[65536];
+    while(body.hasRemaining())
+    {
+      final int length = Math.min(bytes.length, body.remaining());
+      body.get(bytes, 0, length);
+      crc.update(bytes, 0, length);
+    }
+
+    if(buffer.getInt(crc_position) != (int)crc.getValue())
+      throw new ReadFormatException("snapshot checksum does not match");
+  }
+
+  /**
+   *  Write the snapshot of the entry.
+   **/
+  private static void write(final SimpleDocumentEntry entry,
+                            final byte entry_type, final File file,
+                            final File snapshot_file)
+      throws IOException
+  {
+    SnapshotFile.write(snapshot_file, new SnapshotFile.Contents()
+    {
+      public void writeTo(final FileOutputStream file_out) throws IOException
+      {
+        final CRC32 crc = new CRC32();
+        final DataOutputStream out =
+          new DataOutputStream(new CheckedOutputStream(
+              new BufferedOutputStream(file_out, 65536), crc));
+        final StringTable strings = new StringTable();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(entry_type);
+        out.writeLong(file.length());
+        out.writeLong(file.lastModified());
+        out.writeLong(0);   // the string table offset is filled in below
+        crc.reset();
+
+        final LineGroupVector line_groups = entry.line_groups;
+        for(int i = 0; i < line_groups.size(); i++)
+        {
+          final LineGroup line_group = line_groups.elementAt(i);
+          if(line_group instanceof FeatureTable)
+          {
+            final FeatureEnumeration features =
+              ((FeatureTable)line_group).features();
+            while(features.hasMoreFeatures())
+              writeFeature(out, strings, features.nextFeature());
+          }
+          else if(line_group instanceof StreamSequence)
+            writeSequence(out, strings, (StreamSequence)line_group);
+          else
+          {
+            final StringWriter text = new StringWriter();
+            line_group.writeToStream(text);
+            out.writeByte(MISC);
+            out.writeInt(strings.indexOf(text.toString()));
+          }
+        }
+        out.writeByte(END);
+
+        final long table_offset = out.size();
+        strings.writeTo(out);
+        out.writeInt((int)crc.getValue());
+        out.flush();
+        file_out.getChannel().position(HEADER_SIZE - 8);
+        out.writeLong(table_offset);
+        out.flush();
+      }
+    });
+  }
+
+  private static void writeFeature(final DataOutputStream out,
+                                   final StringTable strings,
+                                   final Feature feature)
+      throws IOException
+  {
+    out.writeByte(FEATURE);
+    out.writeInt(strings.indexOf(feature.getKey().getKeyString()));
+
+    // store the ranges if they are plain Ranges (not FuzzyRange etc.) and
+    // give back the same location, otherwise the location text is stored
+    // and parsed when it is read
+    final Location location = feature.getLocation();
+    final RangeVector ranges = location.getRanges();
+    final String location_string = location.toString();
+    if(hasPlainRanges(ranges) &&
+       new Location(ranges, location.isComplement()).toString().equals(
+                                                          location_string))
+    {
+      out.writeByte(LOCATION_RANGES);
+      out.writeBoolean(location.isComplement());
+      out.writeInt(ranges.size());
+      for(int i = 0; i < ranges.size(); i++)
+      {
+        final Range range = (Range)ranges.elementAt(i);
+        out.writeInt(range.getStart());
+        out.writeInt(range.getEnd());
+      }
+    }
+    else
+    {
+      out.writeByte(LOCATION_STRING);
+      out.writeInt(strings.indexOf(location_string));
+    }
+
+    final QualifierVector qualifiers = feature.getQualifiers();
+    out.writeInt(qualifiers.size());
+    for(int i = 0; i < qualifiers.size(); i++)
+    {
+      final Qualifier qualifier = (Qualifier)qualifiers.elementAt(i);
+      out.writeInt(strings.indexOf(qualifier.getName()));
+
+      final StringVector values = qualifier.getValues();
+      if(values == null)
+      {
+        out.writeInt(-1);
+        continue;
+      }
+      out.writeInt(values.size());
+      for(int j = 0; j < values.size(); j++)
+        out.writeInt(strings.indexOf((String)values.elementAt(j)));
+    }
+  }
+
+  private static boolean hasPlainRanges(final RangeVector ranges)
+  {
+    if(ranges.size() == 0)
+      return false;
+    for(int i = 0; i < ranges.size(); i++)
+      if(ranges.elementAt(i).getClass() != Range.class)
+        return false;
+    return true;
+  }
+
+  private static void writeSequence(final DataOutputStream out,
+                                    final StringTable strings,
+                                    final StreamSequence sequence)
+      throws IOException
+  {
+    final String header;
+    if(sequence instanceof GenbankStreamSequence)
+      header = ((GenbankStreamSequence)sequence).getHeader();
+    else
+      header = ((EmblStreamSequence)sequence).getHeader();
+
+    final int packed_length = (sequence.length() + 1) >> 1;
+
+    out.writeByte(SEQUENCE);
+    out.writeInt(strings.indexOf(header));
+    out.writeInt(sequence.length());
+    out.writeInt(sequence.getACount());
+    out.writeInt(sequence.getCCount());
+    out.writeInt(sequence.getGCount());
+    out.writeInt(sequence.getTCount());
+    out.writeInt(packed_length);
+    out.write(sequence.getPackedBases(), 0, packed_length);
+  }
+
+  /**
+   *  The distinct strings of a snapshot, numbered in the order they are
+   *  first seen.
+   **/
+  private static class StringTable
+  {
+    private final HashMap<String, Integer> indexes =
+      new HashMap<String, Integer>();
+    private final Vector<String> strings = new Vector<String>();
+
+    int indexOf(final String string)
+    {
+      if(string == null)
+        return NULL_STRING;
+
+      final Integer index = indexes.get(string);
+      if(index != null)
+        return index.intValue();
+
+      indexes.put(string, new Integer(strings.size()));
+      strings.add(string);
+      return strings.size() - 1;
+    }
+
+    void writeTo(final DataOutputStream out) throws IOException
+    {
+      out.writeInt(strings.size());
+      for(int i = 0; i < strings.size(); i++)
+      {
+        final byte[] bytes = strings.elementAt(i).getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+  /**
+   *  Makes the LineGroups of an entry from a mapped snapshot.  They are
+   *  all made by the constructor and then handed out in order.
+   **/
+  private static class SnapshotLineGroupSource implements LineGroupSource
+  {
+    private final ByteBuffer buffer;
+    private final SimpleDocumentEntry entry;
+    private final LinePushBackReader reader;
+    private final byte entry_type;
+    private final String[] strings;
+
+    /** Keys made so far, by string table index. */
+    private final Key[] keys;
+
+    /** The LineGroups that haven't been returned yet. */
+    private final LinkedList<LineGroup> line_groups =
+      new LinkedList<LineGroup>();
+
+    /**
+     *  @param buffer The snapshot, positioned after the header.
+     **/
+    SnapshotLineGroupSource(final ByteBuffer buffer,
+                            final SimpleDocumentEntry entry,
+                            final LinePushBackReader reader)
+        throws IOException, InvalidRelationException
+    {
+      this.buffer = buffer;
+      this.entry  = entry;
+      this.reader = reader;
+      this.entry_type = getEntryType(entry);
+
+      final int body_start = buffer.position() + 8;
+      buffer.position((int)buffer.getLong());
+      strings = readStrings();
+      keys = new Key[strings.length];
+      buffer.position(body_start);
+
+      readLineGroups();
+    }
+
+    public LineGroup readNextLineGroup()
+    {
+      if(line_groups.size() == 0)
+        return null;
+      return line_groups.removeFirst();
+    }
+
+    private void readLineGroups()
+        throws IOException, InvalidRelationException
+    {
+      while(true)
+      {
+        final byte type = buffer.get();
+        switch(type)
+        {
+          case FEATURE:
+            line_groups.add(readFeature());
+            break;
+          case SEQUENCE:
+            line_groups.add(readSequence());
+            break;
+          case END:
+            return;
+          case MISC:
+            final LinePushBackReader misc_reader =
+              new LinePushBackReader(new StringReader(getString()));
+            LineGroup line_group;
+            while((line_group =
+                   LineGroup.readNextLineGroup(misc_reader, entry)) != null)
+              line_groups.add(line_group);
+            break;
+          default:
+            throw new ReadFormatException("unknown line group type in " +
+                                          "snapshot: " + type);
+        }
+      }
+    }
+
+    public void close() throws IOException
+    {
+      reader.close();
+    }
+
+    private PublicDBStreamFeature readFeature()
+        throws IOException, InvalidRelationException
+    {
+      final int key_index = buffer.getInt();
+      if(keys[key_index] == null)
+        keys[key_index] = new Key(strings[key_index]);
+
+      final Location location;
+      if(buffer.get() == LOCATION_RANGES)
+      {
+        final boolean complement = buffer.get() != 0;
+        final int range_count = buffer.getInt();
+        final RangeVector ranges = new RangeVector();
+        try
+        {
+          for(int i = 0; i < range_count; i++)
+            ranges.add(new Range(buffer.getInt(), buffer.getInt()));
+        }
+        catch(OutOfRangeException e)
+        {
+          throw new ReadFormatException("bad range in snapshot: " +
+                                        e.getMessage());
+        }
+        location = new Location(ranges, complement);
+      }
+      else
+      {
+        try
+        {
+          location = new Location(getString());
+        }
+        catch(LocationParseException e)
+        {
+          throw new ReadFormatException(e.getMessage());
+        }
+      }
+
+      final int qualifier_count = buffer.getInt();
+      final QualifierVector qualifiers = new QualifierVector();
+      for(int i = 0; i < qualifier_count; i++)
+      {
+        final String name = getString();
+        final int value_count = buffer.getInt();
+        if(value_count < 0)
+        {
+          qualifiers.add(new Qualifier(name));
+          continue;
+        }
+
+        final StringVector values = new StringVector();
+        for(int j = 0; j < value_count; j++)
+          values.add(getString());
+        qualifiers.add(new Qualifier(name, values));
+      }
+
+      if(entry_type == GENBANK)
+        return new GenbankStreamFeature(keys[key_index], location, qualifiers);
+      return new EmblStreamFeature(keys[key_index], location, qualifiers);
+    }
+
+    private StreamSequence readSequence() throws ReadFormatException
+    {
+      final String header = getString();
+      final int length  = buffer.getInt();
+      final int a_count = buffer.getInt();
+      final int c_count = buffer.getInt();
+      final int g_count = buffer.getInt();
+      final int t_count = buffer.getInt();
+      final byte[] packed = new byte[checkLength(buffer.getInt(), 1)];
+      buffer.get(packed);
+
+      final StreamSequence sequence;
+      if(entry_type == GENBANK)
+      {
+        sequence = new GenbankStreamSequence("");
+        ((GenbankStreamSequence)sequence).setHeader(header);
+      }
+      else
+      {
+        sequence = new EmblStreamSequence("");
+        ((EmblStreamSequence)sequence).setHeader(header);
+      }
+      sequence.setFromPacked(packed, length,
+                             a_count, c_count, g_count, t_count);
+      return sequence;
+    }
+
+    private String getString()
+    {
+      final int index = buffer.getInt();
+      if(index == NULL_STRING)
+        return null;
+      return strings[index];
+    }
+
+    /**
+     *  Check that a count of items of the given size read from the
+     *  snapshot fits in what is left of it, so that a corrupt count
+     *  doesn't make a huge array.
+     **/
+    private int checkLength(final int count, final int item_size)
+        throws ReadFormatException
+    {
+      if(count < 0 || count > buffer.remaining() / item_size)
+        throw new ReadFormatException("bad length in snapshot: " + count);
+      return count;
+    }
+
+    private String[] readStrings() throws IOException
+    {
+      final String[] strings = new String[checkLength(buffer.getInt(), 4)];
+      byte[] bytes = new byte[256];
+      for(int i = 0; i < strings.length; i++)
+      {
+        final int length = checkLength(buffer.getInt(), 1);
+        if(length > bytes.length)
+          bytes = new byte[Math.max(length, 2 * bytes.length)];
+        buffer.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, "UTF-8");
+      }
+      return strings;
+    }
+  }
+}
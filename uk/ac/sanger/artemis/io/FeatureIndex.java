@@ -0,0 +1,60 @@
+/* FeatureIndex.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ **/
+
+package uk.ac.sanger.artemis.io;
+
+/**
+ *  The range index used by a FeatureTree to answer overlap queries.  The
+ *  FeatureTree takes care of locking so implementations need not be thread
+ *  safe.
+ *
+ *  @see BucketFeatureIndex
+ *  @see IntervalFeatureIndex
+ **/
+
+public interface FeatureIndex {
+  /**
+   *  Add the given Feature to the index using its current total range.
+   **/
+  void add (final Feature feature);
+
+  /**
+   *  Remove the given Feature from the index.  The Feature is found by
+   *  identity so this works even if its location has changed since it was
+   *  added.
+   **/
+  void remove (final Feature feature);
+
+  /**
+   *  Remove all features from the index.
+   **/
+  void clear ();
+
+  /**
+   *  Add to features_in_range all the features in the index which overlap
+   *  the given Range.
+   **/
+  void getFeaturesInRange (final Range range,
+                           final FeatureVector features_in_range);
+}
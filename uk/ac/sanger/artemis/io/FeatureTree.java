@@ -26,6 +26,7 @@
 package uk.ac.sanger.artemis.io;
 
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  *  A tree that stores StreamFeature objects ordered with a StreamFeatureComparator
@@ -37,103 +38,76 @@ import java.util.*;
 
 public class FeatureTree extends TreeSet {
   /**
-   *  Create a new (empty) FeatureTree.
+   *  Create a new (empty) FeatureTree.  The range index is an
+   *  IntervalFeatureIndex unless the feature_index system property is set
+   *  to "bucket".
    **/
   public FeatureTree (final Comparator comparator) {
-    super (comparator);
-
-    this.comparator = comparator;
+    this (comparator, makeDefaultIndex (comparator));
   }
 
   /**
-   *  Wrapper for TreeSet.add () which sets size_of_largest_feature_seen.
+   *  Create a new (empty) FeatureTree that answers range queries with the
+   *  given FeatureIndex.
    **/
-  public synchronized boolean add (final Object element) {
-    final Feature this_feature = (Feature) element;
-
-    getBucket (this_feature).add (this_feature);
+  public FeatureTree (final Comparator comparator, final FeatureIndex index) {
+    super (comparator);
 
-    return super.add (element);
+    this.index = index;
   }
 
   /**
-   *  Wrapper for TreeSet.() which removes the Feature from
-   *  rbtree_buckets.
+   *  Wrapper for TreeSet.add () which also adds the Feature to the range
+   *  index.
    **/
-  public synchronized boolean remove (Object element) {
+  public boolean add (final Object element) {
     final Feature this_feature = (Feature) element;
 
-    getBucket (this_feature).remove (this_feature);
-
-    return super.remove (element);
+    lock.writeLock ().lock ();
+    try {
+      final boolean added = super.add (element);
+      if (added) {
+        index.add (this_feature);
+      }
+      return added;
+    } finally {
+      lock.writeLock ().unlock ();
+    }
   }
 
   /**
-   *  Find the sub-tree which has a first base that is >= the given base.
+   *  Wrapper for TreeSet.remove () which removes the Feature from the range
+   *  index.
    **/
-  private static SortedSet findByBase (final TreeSet tree, final int base) {
-    final ComparableFeature test_feature = new ComparableFeature () {
-      public void set (final Key k, final Location l,
-                       final QualifierVector qv) {}
-      public void setKey (final Key _) {}
-      public void setLocation (final Location _) {}
-      public void setLocation (final Location _, Entry entry) {}
-      public void setQualifiers (final QualifierVector _) {}
-      public void setQualifier (final Qualifier _) {}
-      public void removeQualifierByName (final String _) {}
-      private final Key dummy_key = new Key ("_dummy_key_");
-      public Key getKey () {return dummy_key;}
-      public Location getLocation () {return null;}
-      public QualifierVector getQualifiers () {return null;}
-      public Qualifier getQualifierByName (final String _) {return null;}
-      public int getFirstBase () {return base;}
-      public int getLastBase () {return base;}
-      public long getNumericID () {return -1;}
-      public Entry getEntry () {return null;}
-      public Feature copy () {return null;}
-      public void setUserData (final Object _) {}
-      public Object getUserData () {return null;}
-      public boolean isReadOnly () {return false;}
-    };
+  public boolean remove (Object element) {
+    final Feature this_feature = (Feature) element;
 
-    return tree.tailSet (test_feature);
+    lock.writeLock ().lock ();
+    try {
+      index.remove (this_feature);
+      return super.remove (element);
+    } finally {
+      lock.writeLock ().unlock ();
+    }
   }
 
   /**
-   *  Add to features_in_range all the features in the given TreeSet which are
-   *  within the given Range.
-   *  @param max_feature_length the maximum length in bases of the features in
-   *    the TreeSet.
+   *  Wrapper for TreeSet.clear () which also clears the range index.
    **/
-  private void getFeaturesInRange (final TreeSet tree,
-                                   final FeatureVector features_in_range,
-                                   final Range range,
-                                   final int max_feature_length) {
-    // find the leftmost node in the range
-    final SortedSet tail_set =
-      findByBase (tree, range.getStart () - max_feature_length);
-
-    final Iterator tail_set_iterator = tail_set.iterator ();
-
-    // now loop over all the features that could possibly be in the range
-    // (ie. those between range.getStart () - max_feature_length and
-    // range.getEnd ())
-    while (tail_set_iterator.hasNext ()) {
-      final Feature this_feature = (Feature) tail_set_iterator.next ();
-
-      if (this_feature.getFirstBase () > range.getEnd ()) {
-        return;
-      }
-      
-      if (this_feature.getLocation ().getTotalRange ().overlaps (range)) {
-        features_in_range.add (this_feature);
-      }
+  public void clear () {
+    lock.writeLock ().lock ();
+    try {
+      index.clear ();
+      super.clear ();
+    } finally {
+      lock.writeLock ().unlock ();
     }
   }
 
   /**
    *  Return a vector containing the references of the Feature objects within
-   *  the given range.
+   *  the given range.  Queries only take a read lock so several can run at
+   *  once.
    *  @param range Return features that overlap this range - ie the start of
    *    the feature is less than or equal to the end of the range and the end
    *    of the feature is greater than or equal to the start of the range.
@@ -141,21 +115,38 @@ public class FeatureTree extends TreeSet {
    *    object is a copy - changes will not effect the FeatureTree object
    *    itself.
    **/
-  public synchronized FeatureVector getFeaturesInRange (final Range range) {
+  public FeatureVector getFeaturesInRange (final Range range) {
     // this default size will cover many common cases
     final FeatureVector return_features = new FeatureVector();
 
-    for (int i = 0 ;
-         i < rbtree_buckets.size () && rbtree_buckets.elementAt (i) != null ;
-         ++i) {
-      getFeaturesInRange ((TreeSet) rbtree_buckets.elementAt (i),
-                          return_features, range,
-                          (int) Math.pow (BUCKET_MULTIPLIER, i + 1));
+    lock.readLock ().lock ();
+    try {
+      index.getFeaturesInRange (range, return_features);
+    } finally {
+      lock.readLock ().unlock ();
     }
-    
+
     return return_features;
   }
 
+  /**
+   *  Return the FeatureIndex used for range queries.
+   **/
+  public FeatureIndex getIndex () {
+    return index;
+  }
+
+  /**
+   *  Make the index used by the one argument constructor.
+   **/
+  private static FeatureIndex makeDefaultIndex (final Comparator comparator) {
+    if ("bucket".equals (System.getProperty ("feature_index"))) {
+      return new BucketFeatureIndex (comparator);
+    } else {
+      return new IntervalFeatureIndex ();
+    }
+  }
+
   /**
    *  Returns an enumeration of the Feature objects in this FeatureTree.  The
    *  returned Enumeration object will generate all features in this object in
@@ -220,53 +211,13 @@ public class FeatureTree extends TreeSet {
   }
 
   /**
-   *  Features are stored in buckets.
-   *  Bucket 0 will hold a reference to all features that are less than
-   *  BUCKET_MULTIPLIER in length.  Bucket 1 will hold those from
-   *  BUCKET_MULTIPLIER to BUCKET_MULTIPLIER*BUCKET_MULTIPLIER-1 (inclusive)
-   *  in length.  Bucket 2 will hold those from BUCKET_MULTIPLIER^2 to
-   *  BUCKET_MULTIPLIER^3-1 (inclusive) in length.  etc.
-   **/
-  private TreeSet getBucket (final Feature feature) {
-    final int feature_length =
-      feature.getLocation ().getTotalRange ().getCount ();
-
-    final int feature_bucket;
-
-    if (feature_length <= BUCKET_MULTIPLIER) {
-      feature_bucket = 0;
-    } else {
-      // subtract 0.5 to feature_length to make sure that rounding errors go
-      // in out favour
-      feature_bucket =
-        (int) (Math.log (feature_length + 0.5) / Math.log (BUCKET_MULTIPLIER));
-    }
-
-    // make the bucket we need and all smaller buckets
-    while (rbtree_buckets.size () <= feature_bucket) {
-      rbtree_buckets.addElement (new TreeSet (comparator));
-    }
-
-    return (TreeSet) rbtree_buckets.elementAt (feature_bucket);
-  }
-
-  /**
-   *  The maximum number of buckets.
-   **/
-  private final int BUCKET_COUNT = 10;
-
-  /**
-   *  See comment on getBucket().
-   **/
-  private final int BUCKET_MULTIPLIER = 4;
-
-  /**
-   *  See comment above.
+   *  The index used by getFeaturesInRange ().
    **/
-  private final Vector rbtree_buckets = new Vector (BUCKET_COUNT);
+  private final FeatureIndex index;
 
   /**
-   *  The Comparator that was passed to the constructor.
+   *  Guards index and the underlying TreeSet.  Range queries share the read
+   *  lock, add () and remove () take the write lock.
    **/
-  private Comparator comparator;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock ();
 }
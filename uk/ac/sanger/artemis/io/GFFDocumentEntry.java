@@ -76,6 +76,18 @@ public class GFFDocumentEntry extends SimpleDocumentEntry
     combineGeneFeatures();
     super.in_constructor = false;
     finished_constructor = true;
+    journalRecoveredChanges();
+  }
+
+  /**
+   *  The snapshot of recovered changes is written once the gene features
+   *  have been combined, so that it has the features that later changes
+   *  are journaled against.
+   **/
+  protected void journalRecoveredChanges()
+  {
+    if(finished_constructor)
+      super.journalRecoveredChanges();
   }
 
   /**
@@ -164,6 +176,15 @@ public class GFFDocumentEntry extends SimpleDocumentEntry
     return new FastaStreamSequence(sequence);
   }
 
+  /**
+   *  Parse the GFF feature lines on several threads.
+   **/
+  protected LineGroupSource
+    makeLineGroupSource(final LinePushBackReader pushback_reader)
+  {
+    return new GFFLineGroupSource(pushback_reader, this);
+  }
+
   private void combineGeneFeatures()
   {
     final FeatureVector original_features = getAllFeatures();
@@ -172,7 +193,9 @@ public class GFFDocumentEntry extends SimpleDocumentEntry
     Hashtable chado_gene = new Hashtable();
     try
     {
-      // find the genes
+      // find the genes and index the features by the ID's in their
+      // Parent (or, failing that, Derives_from) qualifier
+      final Hashtable children = new Hashtable();
       for(int i = 0 ; i < original_features.size() ; ++i) 
       {
         this_feature = original_features.featureAt(i);
@@ -194,95 +217,61 @@ public class GFFDocumentEntry extends SimpleDocumentEntry
             ((GFFStreamFeature)this_feature).setChadoGene(gene);
           }
         }
-      }
 
-      // find the transcripts
-      Hashtable transcripts_lookup = new Hashtable();
-      for(int i = 0 ; i < original_features.size() ; ++i) 
-      {
-        this_feature = original_features.featureAt(i);
-        
-        // transcript 
         Qualifier parent_qualifier = this_feature.getQualifierByName("Parent");
-        
+        if(parent_qualifier == null)
+          parent_qualifier = this_feature.getQualifierByName("Derives_from");
         if(parent_qualifier == null)
           continue;
 
-        StringVector parents = parent_qualifier.getValues();
+        final StringVector parents = parent_qualifier.getValues();
         for(int j=0; j<parents.size(); j++)
         {
-          String parent = (String)parents.get(j);
-          
-          if(chado_gene.containsKey(parent))
+          final String parent = (String)parents.get(j);
+          Vector parent_children = (Vector)children.get(parent);
+          if(parent_children == null)
           {
-            // store transcript
-            ChadoCanonicalGene gene = (ChadoCanonicalGene)chado_gene.get(parent);
-            gene.addTranscript(this_feature);
-            ((GFFStreamFeature)this_feature).setChadoGene(gene);
-            
-            // store the transcript ID with its ChadoCanonicalGene object
-            transcripts_lookup.put((String)this_feature.getQualifierByName("ID").getValues().get(0),
-                                   gene);
-            continue;
+            parent_children = new Vector();
+            children.put(parent, parent_children);
           }
+          if(parent_children.size() == 0 ||
+             parent_children.lastElement() != this_feature)
+            parent_children.add(this_feature);
         }
       }
-      
-      
-      // find exons & protein
-      String key;
-      for(int i = 0 ; i < original_features.size() ; ++i) 
+
+      // add the transcripts of each gene and then the exons, UTRs and
+      // protein of each transcript
+      final Enumeration gene_ids = chado_gene.keys();
+      while(gene_ids.hasMoreElements())
       {
-        this_feature = original_features.featureAt(i);
-        // exons
-        key = this_feature.getKey().getKeyString();
-        //if(!key.equals("exon") && !key.equals("polypeptide") &&
-        //   !key.endsWith("prime_UTR"))
-        //  continue;
-        
-        final Qualifier parent_qualifier  = this_feature.getQualifierByName("Parent");
-        final Qualifier derives_qualifier = this_feature.getQualifierByName("Derives_from");
-        if(parent_qualifier == null && derives_qualifier == null)
-          continue;    
-          
-        final Qualifier featureRelationship = 
-          this_feature.getQualifierByName("feature_relationship_rank");
-        // compare this features parent_id's to transcript id's in the 
-        // chado gene hash to decide if it is part of it
-        final StringVector parent_id;
-        
-        if(parent_qualifier != null)
-          parent_id = parent_qualifier.getValues();
-        else
-          parent_id = derives_qualifier.getValues();
-        
-        for(int j=0; j<parent_id.size(); j++)
+        final String gene_id = (String)gene_ids.nextElement();
+        final Vector transcripts = (Vector)children.get(gene_id);
+        if(transcripts == null)
+          continue;
+
+        final ChadoCanonicalGene gene = (ChadoCanonicalGene)chado_gene.get(gene_id);
+        for(int i = 0 ; i < transcripts.size() ; ++i) 
         {
-          final String parent = (String)parent_id.get(j);
-         
-          if(transcripts_lookup.containsKey(parent))
-          {
-            final ChadoCanonicalGene gene = (ChadoCanonicalGene)transcripts_lookup.get(parent);
-            ((GFFStreamFeature)this_feature).setChadoGene(gene);
-            
-            if(parent_qualifier == null)
-            {
-              //((GFFStreamFeature)this_feature).setVisible(false);
-              gene.addProtein(parent, this_feature);
-            }
-            else if(key.equals("three_prime_UTR"))
-              gene.add3PrimeUtr(parent, this_feature);
-            else if(key.equals("five_prime_UTR"))
-              gene.add5PrimeUtr(parent, this_feature);
-            else if(key.equals(DatabaseDocument.EXONMODEL) || key.equals("exon") || 
-                    featureRelationship != null ||
-                    key.equals("pseudogenic_exon"))
-              gene.addSplicedFeatures(parent, this_feature);
-            else
-              gene.addOtherFeatures(parent, this_feature);
-          }
-        } 
-          
+          final Feature transcript = (Feature)transcripts.get(i);
+          if(transcript.getQualifierByName("Parent") == null)
+            continue;
+
+          gene.addTranscript(transcript);
+          ((GFFStreamFeature)transcript).setChadoGene(gene);
+
+          final Qualifier idQualifier = transcript.getQualifierByName("ID");
+          if(idQualifier == null)
+            continue;
+          final String transcript_id = (String)idQualifier.getValues().get(0);
+          final Vector transcript_children = (Vector)children.get(transcript_id);
+          if(transcript_children == null)
+            continue;
+
+          for(int j = 0 ; j < transcript_children.size() ; ++j)
+            addToTranscript(gene, transcript_id,
+                            (Feature)transcript_children.get(j));
+        }
       }
   
       //
@@ -374,6 +363,37 @@ public class GFFDocumentEntry extends SimpleDocumentEntry
     }
   }
   
+  /**
+   *  Add a child feature of a transcript to a gene model.
+   *  @param gene the gene model
+   *  @param transcript_id the ID of the transcript
+   *  @param this_feature the exon, UTR, protein or other child feature
+   **/
+  private void addToTranscript(final ChadoCanonicalGene gene,
+                               final String transcript_id,
+                               final Feature this_feature)
+          throws InvalidRelationException
+  {
+    final String key = this_feature.getKey().getKeyString();
+    final Qualifier featureRelationship = 
+      this_feature.getQualifierByName("feature_relationship_rank");
+
+    ((GFFStreamFeature)this_feature).setChadoGene(gene);
+
+    if(this_feature.getQualifierByName("Parent") == null)
+      gene.addProtein(transcript_id, this_feature);
+    else if(key.equals("three_prime_UTR"))
+      gene.add3PrimeUtr(transcript_id, this_feature);
+    else if(key.equals("five_prime_UTR"))
+      gene.add5PrimeUtr(transcript_id, this_feature);
+    else if(key.equals(DatabaseDocument.EXONMODEL) || key.equals("exon") || 
+            featureRelationship != null ||
+            key.equals("pseudogenic_exon"))
+      gene.addSplicedFeatures(transcript_id, this_feature);
+    else
+      gene.addOtherFeatures(transcript_id, this_feature);
+  }
+
   /**
    * Get 'similarity', polypeptide_domain qualifiers
    * @param fv
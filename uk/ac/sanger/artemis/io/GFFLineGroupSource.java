@@ -0,0 +1,309 @@
+/* GFFLineGroupSource.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import uk.ac.sanger.artemis.util.LinePushBackReader;
+
+/**
+ *  Reads the LineGroups of a GFF entry, parsing the feature lines in
+ *  chunks on a pool of worker threads.  Lines are still read and
+ *  classified in order on the calling thread and the features are
+ *  returned in file order, so the entry ends up the same as when it is
+ *  read with LineGroup.readNextLineGroup().  Anything that is not a GFF
+ *  feature line (## lines, the FASTA sequence) is read in the usual way.
+ **/
+class GFFLineGroupSource implements LineGroupSource
+{
+  /** Number of feature lines given to a worker at a time. */
+  private static final int CHUNK_SIZE = 2000;
+
+  private static final int PARSE_THREADS =
+    Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  /** Maximum number of chunks read ahead of the caller. */
+  private static final int MAX_PENDING = 2 * PARSE_THREADS;
+
+  private static ExecutorService parseExecutor;
+
+  private final LinePushBackReader reader;
+  private final Entry entry;
+
+  /** Chunks of feature lines being parsed, in file order. */
+  private final LinkedList<Future<GFFStreamFeature[]>> pending =
+    new LinkedList<Future<GFFStreamFeature[]>>();
+
+  /** The parsed chunk currently being handed out. */
+  private GFFStreamFeature[] current;
+  private int current_index;
+
+  /**
+   *  Set when the next line of the reader is not a GFF feature line, so
+   *  the next LineGroup must be read by LineGroup.readNextLineGroup().
+   **/
+  private boolean at_other_line = false;
+
+  /**
+   *  @param reader The GFF text to read.
+   *  @param entry The Entry that the LineGroups are being read for.
+   **/
+  GFFLineGroupSource(final LinePushBackReader reader, final Entry entry)
+  {
+    this.reader = reader;
+    this.entry  = entry;
+  }
+
+  /**
+   *  Return the next LineGroup of the entry or null if there are no more.
+   **/
+  public LineGroup readNextLineGroup()
+      throws IOException, InvalidRelationException
+  {
+    while(true)
+    {
+      if(current != null && current_index < current.length)
+      {
+        final GFFStreamFeature feature = current[current_index];
+        current[current_index++] = null;
+        feature.renumber();
+        return feature;
+      }
+      current = null;
+
+      if(!at_other_line)
+        readChunks();
+
+      if(pending.size() > 0)
+      {
+        current = getChunk(pending.removeFirst());
+        current_index = 0;
+        continue;
+      }
+
+      at_other_line = false;
+      return LineGroup.readNextLineGroup(reader, entry);
+    }
+  }
+
+  /**
+   *  Close the reader.
+   **/
+  public void close() throws IOException
+  {
+    for(int i = 0; i < pending.size(); i++)
+      pending.get(i).cancel(false);
+    pending.clear();
+    reader.close();
+  }
+
+  /**
+   *  Read chunks of feature lines and submit them for parsing until there
+   *  are MAX_PENDING waiting or a line that isn't a GFF feature is found.
+   **/
+  private void readChunks() throws IOException
+  {
+    while(pending.size() < MAX_PENDING && !at_other_line)
+    {
+      final String[] lines = new String[CHUNK_SIZE];
+      final int[] line_numbers = new int[CHUNK_SIZE];
+      int count = 0;
+
+      while(count < CHUNK_SIZE)
+      {
+        final String line = reader.readLine();
+        if(line == null)
+          break;
+
+        if(isBlank(line))
+          continue;
+
+        if(LineGroup.getLineType(line) != LineGroup.GFF_FEATURE)
+        {
+          reader.pushBack(line);
+          at_other_line = true;
+          break;
+        }
+
+        lines[count] = line;
+        line_numbers[count] = reader.getLineNumber();
+        ++count;
+      }
+
+      if(count == 0)
+      {
+        at_other_line = true;
+        return;
+      }
+
+      final ParseChunk chunk = new ParseChunk(lines, line_numbers, count);
+      if(PARSE_THREADS < 2 || (pending.size() == 0 && at_other_line))
+      {
+        // nothing to overlap with so parse it here
+        pending.add(new ParsedChunk(chunk.call()));
+        return;
+      }
+      pending.add(getParseExecutor().submit(chunk));
+    }
+  }
+
+  /**
+   *  Wait for a chunk to be parsed and return its features.
+   **/
+  private GFFStreamFeature[] getChunk(final Future<GFFStreamFeature[]> future)
+      throws IOException
+  {
+    try
+    {
+      return future.get();
+    }
+    catch(InterruptedException e)
+    {
+      throw new IOException("interrupted while reading GFF: " + e);
+    }
+    catch(ExecutionException e)
+    {
+      final Throwable cause = e.getCause();
+      if(cause instanceof IOException)
+        throw (IOException)cause;
+      if(cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if(cause instanceof Error)
+        throw (Error)cause;
+      throw new Error("internal error - unexpected exception: " + cause);
+    }
+  }
+
+  private static boolean isBlank(final String line)
+  {
+    for(int i = 0; i < line.length(); ++i)
+    {
+      final char letter = line.charAt(i);
+      if(letter != ' ' && letter != '\t')
+        return false;
+    }
+    return true;
+  }
+
+  private static synchronized ExecutorService getParseExecutor()
+  {
+    if(parseExecutor == null)
+    {
+      parseExecutor = Executors.newFixedThreadPool(PARSE_THREADS,
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "GFF parser");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return parseExecutor;
+  }
+
+  /**
+   *  Parses a chunk of GFF feature lines.
+   **/
+  private static class ParseChunk implements Callable<GFFStreamFeature[]>
+  {
+    private final String[] lines;
+    private final int[] line_numbers;
+    private final int count;
+
+    ParseChunk(final String[] lines, final int[] line_numbers, final int count)
+    {
+      this.lines = lines;
+      this.line_numbers = line_numbers;
+      this.count = count;
+    }
+
+    public GFFStreamFeature[] call() throws ReadFormatException
+    {
+      final GFFStreamFeature[] features = new GFFStreamFeature[count];
+      for(int i = 0; i < count; i++)
+      {
+        try
+        {
+          features[i] = new GFFStreamFeature(lines[i]);
+        }
+        catch(ReadFormatException exception)
+        {
+          // re-throw the exception with the line number added
+          throw new ReadFormatException(exception.getMessage(),
+                                        line_numbers[i]);
+        }
+        lines[i] = null;
+      }
+      return features;
+    }
+  }
+
+  /**
+   *  A chunk that was parsed on the reading thread.
+   **/
+  private static class ParsedChunk implements Future<GFFStreamFeature[]>
+  {
+    private final GFFStreamFeature[] features;
+
+    ParsedChunk(final GFFStreamFeature[] features)
+    {
+      this.features = features;
+    }
+
+    public GFFStreamFeature[] get()
+    {
+      return features;
+    }
+
+    public GFFStreamFeature[] get(long timeout,
+                                  java.util.concurrent.TimeUnit unit)
+    {
+      return features;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+      return false;
+    }
+
+    public boolean isCancelled()
+    {
+      return false;
+    }
+
+    public boolean isDone()
+    {
+      return true;
+    }
+  }
+}
@@ -61,13 +61,6 @@ public class GFFStreamFeature extends SimpleDocumentFeature
   private static org.apache.log4j.Logger logger4j = 
     org.apache.log4j.Logger.getLogger(GFFStreamFeature.class);
   
-  /**
-   *  This is the line of GFF input that was read to get this
-   *  GFFStreamFeature.  A GFFStreamFeature that was created from multiple GFF
-   *  lines will have a gff_lines variable that contains multiple line.
-   **/
-  StringVector gff_lines = null;
-
   /** store for spliced features containing id and range of each segment */
   private Hashtable id_range_store;
   
@@ -323,33 +316,84 @@ public class GFFStreamFeature extends SimpleDocumentFeature
                                     " " + end_base_string);
     }
 
-    // start of qualifier parsing and setting
-    try 
+    final Hashtable attributes;
+    if(line_bits.size() == 9) 
     {
-      final boolean complement_flag;
+      final String rest_of_line = (String)line_bits.elementAt(8); 
 
-      if(((String)line_bits.elementAt(6)).equals("+")) 
-        complement_flag = false;
-      else if(((String)line_bits.elementAt(6)).equals("-"))
-        complement_flag = true;
-      else 
-      {
-        // must be unstranded
-        complement_flag = false;
+      // parse the rest of the line as ACeDB format attributes
+      attributes = parseAttributes(rest_of_line);
+    }
+    else
+      attributes = null;
 
-        // best we can do
-        //final String note_string = "this feature is unstranded";
-        //setQualifier(new Qualifier("note", note_string));
-      }
+    String seqname = (String)line_bits.elementAt(0);
+    if(seqname.equals("null"))
+      seqname = null;
+    else
+      seqname = decode(seqname);
 
-      if(line_bits.size() == 9) 
-      {
-        final String rest_of_line = (String)line_bits.elementAt(8); 
+    // must be unstranded unless the strand is "+" or "-"
+    final boolean complement_flag = ((String)line_bits.elementAt(6)).equals("-");
 
-        // parse the rest of the line as ACeDB format attributes
-        final Hashtable attributes = parseAttributes(rest_of_line);
-//      final String type = (String)line_bits.elementAt(2);
+    setFields(seqname, (String)line_bits.elementAt(1),
+              new Key((String)line_bits.elementAt(2)),
+              start_base, end_base, complement_flag,
+              (String)line_bits.elementAt(5), (String)line_bits.elementAt(7),
+              attributes, line);
+  }
 
+  /**
+   *  Create a new GFFStreamFeature from the columns of a GFF line that have
+   *  already been split up, e.g. for a feature read from a database.
+   *  @param seqname The sequence name or null
+   *  @param source The source column
+   *  @param key The type column
+   *  @param start_base The start column
+   *  @param end_base The end column
+   *  @param complement_flag true if the strand column is "-"
+   *  @param score The score column, "." if there is no score
+   *  @param phase The phase column, "." if there is no phase
+   *  @param attributes Each key is an attribute name and each value is a
+   *    StringVector of the unescaped attribute values, which is zero length
+   *    if the attribute has no value.  The timelastmodified value is the
+   *    time in milliseconds, as in a GFF line.
+   **/
+  public GFFStreamFeature(final String seqname, final String source,
+                          final Key key,
+                          final int start_base, final int end_base,
+                          final boolean complement_flag,
+                          final String score, final String phase,
+                          final Hashtable attributes)
+      throws ReadFormatException 
+  {
+    super(null);
+
+    if(attributes != null && attributes.get("timelastmodified") != null)
+      setTimeLastModified((StringVector)attributes.get("timelastmodified"));
+
+    setFields(seqname, source, key, start_base, end_base, complement_flag,
+              score, phase, attributes, null);
+  }
+
+  /**
+   *  Set the key, location and qualifiers from the columns of a GFF line.
+   *  @param line The line the columns came from, used in error messages,
+   *    or null
+   **/
+  private void setFields(final String seqname, final String source,
+                         final Key key,
+                         final int start_base, final int end_base,
+                         final boolean complement_flag,
+                         final String score, final String phase,
+                         final Hashtable attributes, final String line)
+      throws ReadFormatException 
+  {
+    // start of qualifier parsing and setting
+    try 
+    {
+      if(attributes != null) 
+      {
         for(final java.util.Enumeration attribute_enum = attributes.keys();
             attribute_enum.hasMoreElements();)
         {
@@ -377,32 +421,20 @@ public class GFFStreamFeature extends SimpleDocumentFeature
         }
       }
 
-      /*if( !((String)line_bits.elementAt(0)).equals("null") )
-      {
-        final Qualifier gff_seqname =
-          new Qualifier("gff_seqname", decode((String)line_bits.elementAt(0)));
-
-        setQualifier(gff_seqname);
-      }*/
-      if( !((String)line_bits.elementAt(0)).equals("null") )
-        setGffSeqName( decode((String)line_bits.elementAt(0)) );
+      if(seqname != null)
+        setGffSeqName(seqname);
       
-      final Key key = new Key((String)line_bits.elementAt(2));
       setKey(key);
-
-      /*final Qualifier source_qualifier =
-        new Qualifier("gff_source", (String)line_bits.elementAt(1));
-      setQualifier(source_qualifier);*/
-      this.setGffSource((String)line_bits.elementAt(1));
+      this.setGffSource(source);
       
-      if( !((String)line_bits.elementAt(5)).equals(".") )
+      if( !score.equals(".") )
       {
         final Qualifier score_qualifier =
-          new Qualifier("score", (String)line_bits.elementAt(5));
+          new Qualifier("score", score);
         setQualifier(score_qualifier);
       }
       
-      String frame = (String)line_bits.elementAt(7);
+      String frame = phase;
 
       if(frame.equals ("0"))
         frame = "1";
@@ -424,7 +456,8 @@ public class GFFStreamFeature extends SimpleDocumentFeature
       if(start_base > end_base) 
         throw new ReadFormatException("start position is greater than end " +
                                       "position: " + start_base + " > " +
-                                      end_base+"\n"+line);
+                                      end_base +
+                                      (line == null ? "" : "\n" + line));
 
       if(start_base < 0)
         throw new ReadFormatException("start position must be positive: " +
@@ -446,8 +479,6 @@ public class GFFStreamFeature extends SimpleDocumentFeature
     {
       throw new Error("internal error - unexpected exception: " + e);
     }
-
-    this.gff_lines = new StringVector(line);
   }
 
   /**
@@ -731,8 +762,6 @@ public class GFFStreamFeature extends SimpleDocumentFeature
     throw new ReadOnlyException();
   }
 
-  protected static Hashtable contig_ranges;
-
   /**
    *  Write this Feature to the given stream.
    *  @param writer The stream to write to.
@@ -745,7 +774,8 @@ public class GFFStreamFeature extends SimpleDocumentFeature
     final RangeVector ranges = getLocation().getRanges();
     final int ranges_size = ranges.size();
 
-//  final Hashtable contig_ranges = SimpleDocumentEntry.getContigRanges();
+    final Hashtable contig_ranges = (getEntry() instanceof SimpleDocumentEntry ?
+        ((SimpleDocumentEntry)getEntry()).getContigRanges() : null);
     for(int i = 0; i < ranges_size; ++i) 
     {
       Range this_range = (Range)ranges.elementAt(i);
@@ -1178,20 +1208,7 @@ public class GFFStreamFeature extends SimpleDocumentFeature
       }
       
       if(att_name.equals("timelastmodified"))
-      {
-        try
-        {
-          this.timelastmodified = 
-                  new Timestamp( Long.parseLong((String)att_values.get(0)) );
-          SimpleDateFormat date_format = 
-                  new SimpleDateFormat("dd.MM.yyyy hh:mm:ss z");
-          att_values.set(0,date_format.format(timelastmodified));
-        }
-        catch(NumberFormatException e)
-        {
-          att_values.set(0,(String)att_values.get(0));
-        }
-      }
+        setTimeLastModified(att_values);
       
       if(attributes.get(att_name) != null) 
         ((StringVector)attributes.get(att_name)).add(att_values);
@@ -1202,6 +1219,26 @@ public class GFFStreamFeature extends SimpleDocumentFeature
     return attributes;
   }
 
+  /**
+   *  Set the time last modified from the first of the timelastmodified
+   *  values and replace that value with the formatted date.
+   **/
+  private void setTimeLastModified(final StringVector att_values)
+  {
+    try
+    {
+      this.timelastmodified = 
+              new Timestamp( Long.parseLong((String)att_values.get(0)) );
+      SimpleDateFormat date_format = 
+              new SimpleDateFormat("dd.MM.yyyy hh:mm:ss z");
+      att_values.set(0,date_format.format(timelastmodified));
+    }
+    catch(NumberFormatException e)
+    {
+      att_values.set(0,(String)att_values.get(0));
+    }
+  }
+
   /**
    * Get the feature time last modified timestamp.
    * @return
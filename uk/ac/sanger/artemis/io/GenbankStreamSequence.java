@@ -62,7 +62,7 @@ public class GenbankStreamSequence extends StreamSequence
    **/
   public GenbankStreamSequence(final Sequence sequence) 
   {
-    setFromChar(((StreamSequence)sequence).getCharSequence());
+    setFromSequence(sequence);
   }
 
   /**
@@ -242,33 +242,41 @@ public class GenbankStreamSequence extends StreamSequence
   
     writer.write(line_buffer + "\nORIGIN\n");
 
-    for(int i = 0 ; i < length() ; i += SEQUENCE_LINE_BASE_COUNT) 
+    final int sequence_length = length();
+
+    // the bases are decoded a chunk at a time
+    final char[] chunk = new char[Math.min(sequence_length, WRITE_CHUNK_SIZE)];
+    int chunk_start = 0;
+    int chunk_end = 0;
+
+    for(int i = 0 ; i < sequence_length ; i += SEQUENCE_LINE_BASE_COUNT) 
     {
+      if(i >= chunk_end)
+      {
+        chunk_start = i;
+        chunk_end = Math.min(sequence_length, i + chunk.length);
+        getCharSubSequence(chunk_start + 1, chunk_end, chunk, 0);
+      }
+
       // get the bases in chunks of at most 60
       final int this_line_length;
 
-      if(length() - i < SEQUENCE_LINE_BASE_COUNT)
-        this_line_length = length() - i;
+      if(sequence_length - i < SEQUENCE_LINE_BASE_COUNT)
+        this_line_length = sequence_length - i;
       else 
         this_line_length = SEQUENCE_LINE_BASE_COUNT;
 
       line_buffer.setLength(0);
-      line_buffer.ensureCapacity(90);
 
       // the base counter to write at the end of each line
       final int base_count = i + 1;
-
       final String string_base_count = String.valueOf(base_count);
 
-      // now pad the line with spaces
-      final int LINE_WIDTH = 80;
-
       final int MAX_COUNT_WIDTH = 9;
 
       appendAndPad(line_buffer, MAX_COUNT_WIDTH, string_base_count);
 
       final int BLOCK_LENGTH = 10;
-      final int BLOCK_COUNT  = 6;
 
       for(int j = 0 ; j < this_line_length ; j += BLOCK_LENGTH) 
       {
@@ -281,13 +289,10 @@ public class GenbankStreamSequence extends StreamSequence
         else 
           this_block_length = BLOCK_LENGTH;
 
-        line_buffer.append(getCharSubSequence(i + j + 1, i + j + this_block_length));
-
-//sequence.substring(i + j,
-//                                            i + j + this_block_length));
+        line_buffer.append(chunk, i + j - chunk_start, this_block_length);
       }
    
-      line_buffer.append("\n");
+      line_buffer.append('\n');
       writer.write(line_buffer.toString());
     }
   }
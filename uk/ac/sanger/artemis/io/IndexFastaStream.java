@@ -25,7 +25,11 @@ package uk.ac.sanger.artemis.io;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
 
 import javax.swing.JOptionPane;
 
@@ -41,12 +45,58 @@ import uk.ac.sanger.artemis.util.FileDocument;
 import uk.ac.sanger.artemis.util.ReadOnlyException;
 import uk.ac.sanger.artemis.util.URLDocument;
 
+/**
+ *  A read only sequence read from a FASTA file that has a samtools .fai
+ *  index.  When the file has several sequences they are shown end to end
+ *  as one sequence, in the order of the index, and the bases are read in
+ *  pages of PAGE_SIZE bases as they are needed.  Only the most recently
+ *  used pages are kept, so the heap used does not depend on the size of
+ *  the assembly.  As sequence positions are ints only the contigs that
+ *  fit in the first Integer.MAX_VALUE bases are shown together.
+ **/
 public class IndexFastaStream extends StreamSequence 
 {
+  /** The number of bases read from the file at a time. */
+  private static final int PAGE_SIZE = 1 << 16;
+
+  /** The number of pages to keep. */
+  private static final int MAX_PAGES = 256;
+
   private IndexedFastaSequenceFile indexSeqFile;
   private FastaSequenceIndex fastaIndex;
   private int len;
   private String contig;
+
+  /** The names and lengths of the sequences in the index. */
+  private String contigNames[] = new String[0];
+  private int contigLengths[] = new int[0];
+
+  /** 
+   *  The (0-based) start of each sequence when they are all shown end
+   *  to end.
+   **/
+  private long contigStarts[] = new long[0];
+
+  /** The first and last sequence of the sequence being shown. */
+  private int firstContig;
+  private int lastContig;
+
+  /**
+   *  The range of each sequence being shown keyed by name, or null if only
+   *  one sequence is shown.  A new Hashtable is made when the sequences
+   *  shown change.
+   **/
+  private Hashtable contig_ranges = null;
+
+  /** Pages of bases (in lower case) by page number. */
+  private final Map<Integer, byte[]> pages =
+    new LinkedHashMap<Integer, byte[]>(16, 0.75f, true)
+    {
+      protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest)
+      {
+        return size() > MAX_PAGES;
+      }
+    };
   
   public IndexFastaStream(Entry entry)
   {
@@ -80,9 +130,40 @@ public class IndexFastaStream extends StreamSequence
             "\n"+ie.getMessage(), 
             "Error", JOptionPane.ERROR_MESSAGE);
       }
+      readIndex();
     }
     
-    setContigByIndex(0);
+    if(contigNames.length > 1)
+      setAllContigs();
+    else
+      setContigByIndex(0);
+  }
+
+  /**
+   *  Read the names and lengths of the sequences from the .fai index.
+   **/
+  private void readIndex()
+  {
+    final Vector<String> names = new Vector<String>();
+    final Vector<Integer> lengths = new Vector<Integer>();
+    final Iterator it = fastaIndex.iterator();
+    while(it.hasNext())
+    {
+      final String fields[] = it.next().toString().split(";");
+      names.add(fields[0].substring(6).trim());
+      lengths.add(Integer.valueOf(fields[2].substring(5).trim()));
+    }
+
+    contigNames = names.toArray(new String[names.size()]);
+    contigLengths = new int[names.size()];
+    contigStarts = new long[names.size()];
+    long start = 0;
+    for(int i=0; i<contigLengths.length; i++)
+    {
+      contigLengths[i] = lengths.get(i).intValue();
+      contigStarts[i] = start;
+      start += contigLengths[i];
+    }
   }
   
   /**
@@ -140,14 +221,104 @@ public class IndexFastaStream extends StreamSequence
     ReferenceSequenceFileFactory.FASTA_EXTENSIONS.add(".ffn");
   }
   
-  public void setContigByIndex(int seqIndex) 
+  /**
+   *  Show just one of the sequences in the file.
+   *  @param seqIndex the index of the sequence in the .fai
+   **/
+  public synchronized void setContigByIndex(int seqIndex) 
   {
-    /*ReferenceSequence ref = getReferenceSequence(seqIndex);
-    len = ref.length();
-    contig = ref.getName();*/
-    
-    len = getLengthByIndex(seqIndex);
-    contig = getContigByIndex(seqIndex);
+    setContigs(seqIndex, seqIndex);
+  }
+
+  /**
+   *  Show all the sequences in the file end to end (as many as will fit
+   *  in Integer.MAX_VALUE bases).
+   **/
+  public synchronized void setAllContigs()
+  {
+    int last = 0;
+    while(last + 1 < contigNames.length &&
+          contigStarts[last + 1] + contigLengths[last + 1] <= Integer.MAX_VALUE)
+      last++;
+
+    if(last < contigNames.length - 1)
+      System.err.println("warning: only the first " + (last + 1) + " of " +
+                         contigNames.length + " sequences can be shown " +
+                         "together");
+    setContigs(0, last);
+  }
+
+  private void setContigs(final int first, final int last)
+  {
+    firstContig = first;
+    lastContig  = last;
+    len = (int)(contigStarts[last] + contigLengths[last] - contigStarts[first]);
+    contig = contigNames[first];
+    pages.clear();
+    contig_ranges = makeContigRanges();
+  }
+
+  /**
+   *  Returns true if more than one sequence is being shown.
+   **/
+  public boolean isConcatenated()
+  {
+    return lastContig > firstContig;
+  }
+
+  /**
+   *  Return the names of the sequences in the .fai index.
+   **/
+  public Vector<String> getContigNames()
+  {
+    final Vector<String> names = new Vector<String>(contigNames.length);
+    for(int i=0; i<contigNames.length; i++)
+      names.add(contigNames[i]);
+    return names;
+  }
+
+  /**
+   *  Return the position (1-based) of the first base of a sequence in the
+   *  sequence that is being shown, or -1 if it isn't being shown.
+   *  @param seqIndex the index of the sequence in the .fai
+   **/
+  public synchronized int getContigStart(final int seqIndex)
+  {
+    if(seqIndex < firstContig || seqIndex > lastContig)
+      return -1;
+    return (int)(contigStarts[seqIndex] - contigStarts[firstContig]) + 1;
+  }
+
+  /**
+   *  Return the range of each sequence that is being shown, keyed by the
+   *  sequence name, or null if only one sequence is being shown.  The same
+   *  object is returned until setContigByIndex() or setAllContigs() is
+   *  called.
+   **/
+  public synchronized Hashtable getContigRanges()
+  {
+    return contig_ranges;
+  }
+
+  private Hashtable makeContigRanges()
+  {
+    if(!isConcatenated())
+      return null;
+    final Hashtable contig_ranges = new Hashtable();
+    for(int i = firstContig; i <= lastContig; i++)
+    {
+      final int start = getContigStart(i);
+      try
+      {
+        contig_ranges.put(contigNames[i],
+                          new Range(start, start + contigLengths[i] - 1));
+      }
+      catch(uk.ac.sanger.artemis.util.OutOfRangeException e)
+      {
+        throw new Error("internal error - unexpected exception: " + e);
+      }
+    }
+    return contig_ranges;
   }
 
   /**
@@ -158,46 +329,115 @@ public class IndexFastaStream extends StreamSequence
    **/
   public String getSubSequence(int start, int end) 
   {
-    byte b[] = indexSeqFile.getSubsequenceAt(contig, start, end).getBases();
-    return new String(b).toLowerCase();
+    if(end < start)
+      return "";
+    return new String(getCharSubSequence(start, end));
   }
   
   public char[] getCharSubSequence(int start, int end) 
   {
-    return getSubSequence(start, end).toCharArray();
+    if(end > len)
+      end = len;
+    if(end < start)
+      return new char[0];
+    final char dst[] = new char[end-start+1];
+    getCharSubSequence(start, end, dst, 0);
+    return dst;
   }
-  
-  private int getLengthByIndex(int seqIndex)
+
+  public synchronized void getCharSubSequence(int start, int end, char[] dst, int dst_offset)
   {
-    Iterator it = fastaIndex.iterator();
-    int i = 0;
-    while(it.hasNext())
+    int pos = start - 1;
+    while(pos < end)
     {
-      Object obj = it.next();
-      if(i == seqIndex)
+      final int page_index = pos / PAGE_SIZE;
+      final byte page[] = getPage(page_index);
+      final int page_start = page_index * PAGE_SIZE;
+      final int page_end = Math.min(end, page_start + page.length);
+      for(int i = pos; i < page_end; i++)
+        dst[dst_offset++] = (char)page[i - page_start];
+      if(page_end <= pos)
+        break;
+      pos = page_end;
+    }
+  }
+
+  public synchronized char charAt(final int i)
+  {
+    final int pos = i - 1;
+    return (char)getPage(pos / PAGE_SIZE)[pos % PAGE_SIZE];
+  }
+
+  public char[] getCharSequence()
+  {
+    return getCharSubSequence(1, length());
+  }
+
+  /**
+   *  Return a page of bases, reading it from the file if it isn't cached.
+   **/
+  private byte[] getPage(final int page_index)
+  {
+    final Integer key = Integer.valueOf(page_index);
+    byte page[] = pages.get(key);
+    if(page == null)
+    {
+      page = readPage(page_index);
+      pages.put(key, page);
+    }
+    return page;
+  }
+
+  /**
+   *  Read the bases of a page, which may span the end of one sequence and
+   *  the start of the next.
+   **/
+  private byte[] readPage(final int page_index)
+  {
+    final int page_start = page_index * PAGE_SIZE;
+    final byte page[] = new byte[Math.min(PAGE_SIZE, len - page_start)];
+    final long global_start = contigStarts[firstContig] + page_start;
+
+    int contig_index = findContig(global_start);
+    int count = 0;
+    while(count < page.length)
+    {
+      final long local_start =
+        global_start + count - contigStarts[contig_index];
+      final int n = (int)Math.min(page.length - count,
+                                  contigLengths[contig_index] - local_start);
+      if(n > 0)
       {
-        String size = obj.toString().split(";")[2].substring(5).trim();
-        return Integer.parseInt(size);
+        final byte b[] = indexSeqFile.getSubsequenceAt(
+            contigNames[contig_index], local_start + 1,
+            local_start + n).getBases();
+        for(int i=0; i<n; i++)
+          page[count++] = (byte)Character.toLowerCase((char)b[i]);
       }
-      i++;
+      contig_index++;
     }
-    return -1;
+    return page;
   }
-  
-  private String getContigByIndex(int seqIndex)
+
+  /**
+   *  Return the index of the sequence containing the given (0-based)
+   *  position of the end to end sequences.
+   **/
+  private int findContig(final long global_pos)
   {
-    Iterator it = fastaIndex.iterator();
-    int i = 0;
-    while(it.hasNext())
+    int lo = 0;
+    int hi = contigStarts.length - 1;
+    while(lo < hi)
     {
-      Object obj = it.next();
-      if(i == seqIndex)
-        return obj.toString().split(";")[0].substring(6).trim();
-      i++;
+      final int mid = (lo + hi + 1) >>> 1;
+      if(contigStarts[mid] <= global_pos)
+        lo = mid;
+      else
+        hi = mid - 1;
     }
-    return null;
+    return lo;
   }
-  
+
   public ReferenceSequence getReferenceSequence(int seqIndex)
   {
     int i = 0;
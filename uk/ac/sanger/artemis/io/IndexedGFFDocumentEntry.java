@@ -0,0 +1,460 @@
+/* IndexedGFFDocumentEntry.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import uk.ac.sanger.artemis.components.variant.TabixReader;
+import uk.ac.sanger.artemis.util.Document;
+import uk.ac.sanger.artemis.util.FileDocument;
+import uk.ac.sanger.artemis.util.OutOfRangeException;
+import uk.ac.sanger.artemis.util.ReadOnlyException;
+
+/**
+ *  A read-only DocumentEntry for a bgzip compressed GFF3 file that has a
+ *  tabix index (file.gff.gz and file.gff.gz.tbi).  No features are read
+ *  when the entry is opened.  getFeaturesInRange() reads the features of
+ *  the requested region from the file and the most recently used regions
+ *  are kept, so very large annotation files can be shown as an overlay
+ *  without reading them into memory.  features(), getAllFeatures() and
+ *  getFeatureCount() only see an empty entry.
+ *
+ *  When the entry is shown with an indexed FASTA file that has several
+ *  contigs end to end (see setContigSequence()) each region is read from
+ *  the sequence of its contig; otherwise the first sequence in the index
+ *  is used.
+ **/
+public class IndexedGFFDocumentEntry extends ReadOnlyEntry
+    implements DocumentEntry
+{
+  /** The size (in bases) of the regions that are read and cached. */
+  private static final int TILE_SIZE = 100000;
+
+  /** The number of regions to keep. */
+  private static final int MAX_TILES = 64;
+
+  private final Document document;
+  private final TabixReader reader;
+  private final EntryInformation entry_information =
+    new GFFEntryInformation();
+
+  /** The sequence this entry is shown with, or null. */
+  private IndexFastaStream contig_sequence = null;
+
+  /** The contig ranges of contig_sequence when the tiles were read. */
+  private Hashtable tile_contig_ranges = null;
+
+  /** true once the file has been closed by dispose() */
+  private boolean disposed = false;
+
+  /**
+   *  true if the last range asked for was too long to read, so that the
+   *  warning is only printed once while zoomed out.
+   **/
+  private boolean range_too_long = false;
+
+  /** Regions that have been read, in order of access. */
+  private final Map<String, Tile> tiles =
+    new LinkedHashMap<String, Tile>(16, 0.75f, true)
+    {
+      protected boolean removeEldestEntry(Map.Entry<String, Tile> eldest)
+      {
+        return size() > MAX_TILES;
+      }
+    };
+
+  /**
+   *  Create a new IndexedGFFDocumentEntry that reads from the given
+   *  Document.
+   *  @param document A FileDocument for a file that has a tabix index.
+   *  @exception IOException thrown if the index can't be read.
+   **/
+  public IndexedGFFDocumentEntry(final Document document)
+      throws IOException
+  {
+    this.document = document;
+    this.reader =
+      new TabixReader(((FileDocument)document).getFile().getAbsolutePath());
+  }
+
+  /**
+   *  Return true if the given Document is a bgzip compressed file with a
+   *  tabix index next to it.
+   **/
+  public static boolean isIndexed(final Document document)
+  {
+    if(!(document instanceof FileDocument))
+      return false;
+    final File file = ((FileDocument)document).getFile();
+    return file.getName().endsWith(".gz") &&
+           new File(file.getAbsolutePath() + ".tbi").exists();
+  }
+
+  /**
+   *  Set the sequence this entry is shown with.  While it shows several
+   *  contigs end to end the features are moved to the position of their
+   *  contig.
+   **/
+  public synchronized void setContigSequence(final IndexFastaStream sequence)
+  {
+    contig_sequence = sequence;
+  }
+
+  /**
+   *  Return the features that overlap the given range, reading the regions
+   *  that are not in the cache.  Nothing is returned (and a warning is
+   *  printed) if the range covers more bases than can be cached.
+   **/
+  public synchronized FeatureVector getFeaturesInRange(final Range range)
+      throws OutOfRangeException
+  {
+    final FeatureVector features = new FeatureVector();
+    if(disposed)
+      return features;
+
+    final String[] seq_names = reader.getSeqNames();
+    final Hashtable contig_ranges =
+      (contig_sequence == null ? null : contig_sequence.getContigRanges());
+
+    // the tiles were read for other contigs
+    if(contig_ranges != tile_contig_ranges)
+    {
+      tiles.clear();
+      tile_contig_ranges = contig_ranges;
+    }
+
+    for(int i = 0; i < seq_names.length; i++)
+    {
+      final int offset;
+      int start = range.getStart();
+      int end   = range.getEnd();
+
+      if(contig_ranges != null)
+      {
+        final Range contig_range = (Range)contig_ranges.get(seq_names[i]);
+        if(contig_range == null ||
+           contig_range.getStart() > end || contig_range.getEnd() < start)
+          continue;
+        offset = contig_range.getStart() - 1;
+        start = Math.max(start, contig_range.getStart()) - offset;
+        end   = Math.min(end, contig_range.getEnd()) - offset;
+      }
+      else if(i == 0)
+        offset = 0;
+      else
+        break;
+
+      final int first_tile = (start - 1) / TILE_SIZE;
+      final int last_tile  = (end - 1) / TILE_SIZE;
+      if(last_tile - first_tile + 1 > MAX_TILES)
+      {
+        if(!range_too_long)
+          System.err.println("warning: " + getName() + " is not shown " +
+                             "for more than " + (MAX_TILES * TILE_SIZE) +
+                             " bases - zoom in to see its features");
+        range_too_long = true;
+        return new FeatureVector();
+      }
+
+      for(int tile_index = first_tile; tile_index <= last_tile; tile_index++)
+      {
+        final Tile tile = getTile(i, tile_index, offset);
+        if(tile_index == first_tile)
+          addOverlapping(tile.spanning, start, end, offset, features);
+        addOverlapping(tile.features, start, end, offset, features);
+      }
+    }
+    range_too_long = false;
+    return features;
+  }
+
+  /**
+   *  Add the features from the given vector that overlap start..end (in
+   *  the coordinates of the GFF sequence).
+   **/
+  private static void addOverlapping(final FeatureVector from,
+                                     final int start, final int end,
+                                     final int offset,
+                                     final FeatureVector to)
+  {
+    for(int i = 0; i < from.size(); i++)
+    {
+      final Feature feature = from.featureAt(i);
+      if(feature.getFirstBase() - offset <= end &&
+         feature.getLastBase() - offset >= start)
+        to.add(feature);
+    }
+  }
+
+  /**
+   *  Return the given region of a sequence, reading it if it isn't cached.
+   **/
+  private Tile getTile(final int tid, final int tile_index, final int offset)
+  {
+    final String key = tid + ":" + tile_index;
+    Tile tile = tiles.get(key);
+    if(tile == null)
+    {
+      tile = readTile(tid, tile_index, offset);
+      tiles.put(key, tile);
+    }
+    return tile;
+  }
+
+  /**
+   *  Read the features overlapping a region.  Features that start before
+   *  the region are kept separately so that a feature is only returned
+   *  once when several regions are needed.
+   **/
+  private Tile readTile(final int tid, final int tile_index, final int offset)
+  {
+    final Tile tile = new Tile();
+    final int tile_start = tile_index * TILE_SIZE;
+
+    try
+    {
+      final TabixReader.Iterator iter =
+        reader.query(tid, tile_start, tile_start + TILE_SIZE);
+      if(iter == null)
+        return tile;
+
+      String line;
+      while((line = iter.next()) != null)
+      {
+        final GFFStreamFeature feature = makeFeature(line, offset);
+        if(feature == null)
+          continue;
+
+        if(feature.getFirstBase() - offset <= tile_start)
+          tile.spanning.add(feature);
+        else
+          tile.features.add(feature);
+      }
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not read " + getName() + ": " + e);
+    }
+    return tile;
+  }
+
+  /**
+   *  Make a feature from a GFF line and move it to the position of its
+   *  contig.  Returns null if the line can't be read.
+   **/
+  private GFFStreamFeature makeFeature(final String line, final int offset)
+  {
+    try
+    {
+      final GFFStreamFeature feature = new GFFStreamFeature(line);
+      if(offset != 0)
+      {
+        final Location location = feature.getLocation();
+        final Range new_range =
+          new Range(feature.getFirstBase() + offset,
+                    feature.getLastBase() + offset);
+        feature.setLocation(new Location(new RangeVector(new_range),
+                                         location.isComplement()));
+      }
+      feature.setDocumentEntry(this);
+      return feature;
+    }
+    catch(ReadFormatException e)
+    {
+      System.err.println("warning: " + e.getMessage());
+    }
+    catch(OutOfRangeException e)
+    {
+      throw new Error("internal error - unexpected exception: " + e);
+    }
+    catch(ReadOnlyException e)
+    {
+      throw new Error("internal error - unexpected exception: " + e);
+    }
+    return null;
+  }
+
+  /**
+   *  Return the name of the Document.
+   **/
+  public String getName()
+  {
+    return document.getName();
+  }
+
+  /**
+   *  Returns null - the GFF header is not read.
+   **/
+  public String getHeaderText()
+  {
+    return null;
+  }
+
+  /**
+   *  Returns 0 - features are only read by getFeaturesInRange().
+   **/
+  public int getFeatureCount()
+  {
+    return 0;
+  }
+
+  /**
+   *  Returns null - features are only read by getFeaturesInRange().
+   **/
+  public Feature getFeatureAtIndex(final int i)
+  {
+    return null;
+  }
+
+  /**
+   *  Returns -1 - features are only read by getFeaturesInRange().
+   **/
+  public int indexOf(final Feature feature)
+  {
+    return -1;
+  }
+
+  /**
+   *  Returns true if and only if the given feature was read from this entry.
+   **/
+  public boolean contains(final Feature feature)
+  {
+    return feature.getEntry() == this;
+  }
+
+  /**
+   *  Returns an empty enumeration - features are only read by
+   *  getFeaturesInRange().
+   **/
+  public FeatureEnumeration features()
+  {
+    return new FeatureEnumeration()
+    {
+      public boolean hasMoreFeatures()
+      {
+        return false;
+      }
+
+      public Feature nextFeature() throws NoSuchElementException
+      {
+        throw new NoSuchElementException();
+      }
+    };
+  }
+
+  /**
+   *  Returns an empty vector - features are only read by
+   *  getFeaturesInRange().
+   **/
+  public FeatureVector getAllFeatures()
+  {
+    return new FeatureVector();
+  }
+
+  /**
+   *  Returns null - this entry has no sequence.
+   **/
+  public Sequence getSequence()
+  {
+    return null;
+  }
+
+  public EntryInformation getEntryInformation()
+  {
+    return entry_information;
+  }
+
+  /**
+   *  Always throws a ReadOnlyException exception for objects of this class.
+   **/
+  public void save(final Document document) throws IOException
+  {
+    throw new ReadOnlyException("Save is not implemented for this entry");
+  }
+
+  /**
+   *  Always throws a ReadOnlyException exception for objects of this class.
+   **/
+  public void writeToStream(final Writer writer) throws IOException
+  {
+    throw new ReadOnlyException("Save is not implemented for this entry");
+  }
+
+  /**
+   *  Does nothing - this entry can't be changed.
+   **/
+  public void setDirtyFlag()
+  {
+  }
+
+  /**
+   *  Returns null - this entry can't be changed.
+   **/
+  public Date getLastChangeTime()
+  {
+    return null;
+  }
+
+  public Document getDocument()
+  {
+    return document;
+  }
+
+  /**
+   *  Drop the features that have been read and close the file.
+   **/
+  public synchronized void dispose()
+  {
+    tiles.clear();
+    if(disposed)
+      return;
+    disposed = true;
+    try
+    {
+      reader.close();
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not close " + getName() + ": " + e);
+    }
+  }
+
+  /**
+   *  The features read for one region.
+   **/
+  private static class Tile
+  {
+    /** Features that start in the region. */
+    final FeatureVector features = new FeatureVector();
+    /** Features that start before the region and overlap it. */
+    final FeatureVector spanning = new FeatureVector();
+  }
+}
@@ -0,0 +1,279 @@
+/* IntervalFeatureIndex.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ **/
+
+package uk.ac.sanger.artemis.io;
+
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ *  An augmented interval tree of Feature objects.  The tree is a treap
+ *  ordered by the first base of each feature and each node records the
+ *  largest last base in its sub-tree, so an overlap query visits only the
+ *  sub-trees that can contain a hit.  This makes getFeaturesInRange ()
+ *  O(log n + k) regardless of how long the longest feature is.
+ **/
+
+public class IntervalFeatureIndex implements FeatureIndex {
+  /**
+   *  Create a new (empty) IntervalFeatureIndex.
+   **/
+  public IntervalFeatureIndex () {
+
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void add (final Feature feature) {
+    if (nodes.containsKey (feature)) {
+      return;
+    }
+
+    final Range range = feature.getLocation ().getTotalRange ();
+    final Node node = new Node (feature, range.getStart (), range.getEnd (),
+                                next_order++, random.nextInt ());
+    root = insert (root, node);
+    nodes.put (feature, node);
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void remove (final Feature feature) {
+    final Node node = (Node) nodes.remove (feature);
+
+    if (node != null) {
+      root = delete (root, node);
+    }
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.
+   **/
+  public void clear () {
+    root = null;
+    nodes.clear ();
+  }
+
+  /**
+   *  See the FeatureIndex interface for details.  Features are added in
+   *  order of their first base.
+   **/
+  public void getFeaturesInRange (final Range range,
+                                  final FeatureVector features_in_range) {
+    search (root, range.getStart (), range.getEnd (), features_in_range);
+  }
+
+  /**
+   *  Return the number of features in this index.
+   **/
+  public int size () {
+    return nodes.size ();
+  }
+
+  /**
+   *  Add the features of the sub-tree at node that overlap start..end.
+   **/
+  private static void search (Node node, final int start, final int end,
+                              final FeatureVector features_in_range) {
+    while (node != null && node.max_end >= start) {
+      search (node.left, start, end, features_in_range);
+
+      if (node.start > end) {
+        // everything to the right starts even later
+        return;
+      }
+
+      if (node.end >= start) {
+        features_in_range.add (node.feature);
+      }
+
+      node = node.right;
+    }
+  }
+
+  /**
+   *  Insert new_node into the sub-tree at node and return the new root of
+   *  the sub-tree.
+   **/
+  private static Node insert (final Node node, final Node new_node) {
+    if (node == null) {
+      return new_node;
+    }
+
+    if (new_node.compareTo (node) < 0) {
+      node.left = insert (node.left, new_node);
+      if (node.left.priority > node.priority) {
+        return rotateRight (node);
+      }
+    } else {
+      node.right = insert (node.right, new_node);
+      if (node.right.priority > node.priority) {
+        return rotateLeft (node);
+      }
+    }
+
+    node.update ();
+    return node;
+  }
+
+  /**
+   *  Remove old_node from the sub-tree at node and return the new root of
+   *  the sub-tree.
+   **/
+  private static Node delete (final Node node, final Node old_node) {
+    if (node == null) {
+      return null;
+    }
+
+    if (node == old_node) {
+      return merge (node.left, node.right);
+    }
+
+    if (old_node.compareTo (node) < 0) {
+      node.left = delete (node.left, old_node);
+    } else {
+      node.right = delete (node.right, old_node);
+    }
+
+    node.update ();
+    return node;
+  }
+
+  /**
+   *  Join two sub-trees where every node of left sorts before every node of
+   *  right.
+   **/
+  private static Node merge (final Node left, final Node right) {
+    if (left == null) {
+      return right;
+    }
+
+    if (right == null) {
+      return left;
+    }
+
+    if (left.priority > right.priority) {
+      left.right = merge (left.right, right);
+      left.update ();
+      return left;
+    } else {
+      right.left = merge (left, right.left);
+      right.update ();
+      return right;
+    }
+  }
+
+  private static Node rotateRight (final Node node) {
+    final Node new_root = node.left;
+    node.left = new_root.right;
+    new_root.right = node;
+    node.update ();
+    new_root.update ();
+    return new_root;
+  }
+
+  private static Node rotateLeft (final Node node) {
+    final Node new_root = node.right;
+    node.right = new_root.left;
+    new_root.left = node;
+    node.update ();
+    new_root.update ();
+    return new_root;
+  }
+
+  /**
+   *  A node of the tree.  The start and end are those of the feature when it
+   *  was added so that the tree stays consistent if the feature is changed
+   *  before it is removed.
+   **/
+  private static class Node {
+    Node (final Feature feature, final int start, final int end,
+          final long order, final int priority) {
+      this.feature = feature;
+      this.start = start;
+      this.end = end;
+      this.max_end = end;
+      this.order = order;
+      this.priority = priority;
+    }
+
+    /**
+     *  Order by start then by insertion order.
+     **/
+    int compareTo (final Node other) {
+      if (start != other.start) {
+        return start < other.start ? -1 : 1;
+      }
+      if (order != other.order) {
+        return order < other.order ? -1 : 1;
+      }
+      return 0;
+    }
+
+    /**
+     *  Recalculate max_end from the children.
+     **/
+    void update () {
+      int new_max_end = end;
+      if (left != null && left.max_end > new_max_end) {
+        new_max_end = left.max_end;
+      }
+      if (right != null && right.max_end > new_max_end) {
+        new_max_end = right.max_end;
+      }
+      max_end = new_max_end;
+    }
+
+    final Feature feature;
+    final int start;
+    final int end;
+    final long order;
+    final int priority;
+    int max_end;
+    Node left;
+    Node right;
+  }
+
+  /**
+   *  The root of the tree.
+   **/
+  private Node root = null;
+
+  /**
+   *  Maps each Feature to its Node.
+   **/
+  private final IdentityHashMap nodes = new IdentityHashMap ();
+
+  /**
+   *  Used to break ties between features with the same first base.
+   **/
+  private long next_order = 0;
+
+  /**
+   *  Source of the treap priorities.
+   **/
+  private final Random random = new Random (1);
+}
@@ -41,7 +41,7 @@ import uk.ac.sanger.artemis.util.LinePushBackReader;
  *
  */
 
-abstract class LineGroup
+public abstract class LineGroup
     extends EMBLObject
 {
 
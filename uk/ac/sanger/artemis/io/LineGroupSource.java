@@ -0,0 +1,48 @@
+/* LineGroupSource.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.IOException;
+
+/**
+ *  A source of the LineGroups (features, sequence and other lines) of an
+ *  entry that makes them in its own way, e.g. directly from a database or
+ *  by parsing the text on several threads, rather than with
+ *  LineGroup.readNextLineGroup().
+ *  @see uk.ac.sanger.artemis.util.Document#getLineGroupSource()
+ *  @see SimpleDocumentEntry#makeLineGroupSource
+ **/
+public interface LineGroupSource
+{
+  /**
+   *  Return the next LineGroup of the entry or null if there are no more.
+   **/
+  LineGroup readNextLineGroup() throws IOException, InvalidRelationException;
+
+  /**
+   *  Release anything held by this source.  Called after the last
+   *  LineGroup has been read.
+   **/
+  void close() throws IOException;
+}
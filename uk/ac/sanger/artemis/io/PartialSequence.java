@@ -125,6 +125,16 @@ public class PartialSequence implements Sequence
     return subSequence;
   }
 
+  public void getCharSubSequence(int this_start, int this_end,
+                                 char[] dst, int dst_offset)
+  {
+    final int subSeqLength = this_end-this_start+1;
+    System.arraycopy(sequence, this_start-start, dst, dst_offset, subSeqLength);
+
+    if(isComplement())
+      Bases.reverseComplement(dst, dst_offset, subSeqLength);
+  }
+
   
   public int getGCount()
   {
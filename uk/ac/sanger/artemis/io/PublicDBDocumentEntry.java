@@ -85,6 +85,7 @@ public class PublicDBDocumentEntry extends SimpleDocumentEntry
       throws IOException, EntryInformationException 
   {
     super(entry_information, document, listener);
+    EntrySnapshot.update(this);
   }
 
   /**
@@ -636,7 +637,17 @@ public class PublicDBDocumentEntry extends SimpleDocumentEntry
     else 
       return new GenbankStreamSequence (sequence);
   }
-  
+
+  /**
+   *  Read the entry from its binary snapshot if there is one that is up to
+   *  date (see EntrySnapshot).
+   **/
+  protected LineGroupSource
+    makeLineGroupSource(final LinePushBackReader pushback_reader)
+  {
+    return EntrySnapshot.makeLineGroupSource(this, pushback_reader);
+  }
+
   public static Object[] getDatabaseQualifiersToRemove()  
   {
     initDatabaseMappings();
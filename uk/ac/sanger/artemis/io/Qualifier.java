@@ -42,8 +42,12 @@ public class Qualifier
   /** The name that was passed to the constructor. */
   private String name;
 
-  /** The values that were passed to the constructor. */
-  private StringVector values;
+  /**
+   *  The values that were passed to the constructor or null if there are
+   *  none.  These are kept in an array of the exact size rather than a
+   *  StringVector because there are usually only one or two.
+   **/
+  private String[] values;
 
   public Qualifier()
   {
@@ -100,7 +104,7 @@ public class Qualifier
    **/
   private void initialise (final String name, final StringVector values) 
   {
-    this.name = name;
+    this.name = StringPool.getName(name);
     if(values == null) 
       this.values = null;
     else
@@ -108,8 +112,10 @@ public class Qualifier
       if(values.size() == 0)
         throw new Error ("internal error - zero length values vector");
 
-      this.values = values.copy ();
-//    this.values = values;
+      this.values = new String[values.size()];
+      for(int i = 0; i < this.values.length; ++i)
+        this.values[i] =
+          StringPool.getValue(this.name, (String)values.elementAt(i));
     }
   }
 
@@ -132,7 +138,13 @@ public class Qualifier
     if(values == null)
       return null;
     else
-      return values.copy();
+    {
+      final StringVector copy = new StringVector();
+      copy.ensureCapacity(values.length);
+      for(int i = 0; i < values.length; ++i)
+        copy.add(values[i]);
+      return copy;
+    }
   }
 
   /**
@@ -141,21 +153,19 @@ public class Qualifier
   public void addValues(final StringVector new_values) 
   {
     if(values == null) 
-    {
-      values = new StringVector ();
-      values.add ((String)null);
-    }
+      values = new String[] { null };
+
     if(new_values == null) 
     {
       // if new_values is null then we have a qualifier with no value (like
       // /pseudo).  we add one null value for each occurrence of the
       // qualifier.
-      values.add ((String)null);
+      appendValue(null);
     }
     else
     {
       for(int i = 0 ; i < new_values.size() ; ++i) 
-        values.add(new_values.elementAt(i));
+        appendValue((String)new_values.elementAt(i));
     }
   }
 
@@ -165,9 +175,20 @@ public class Qualifier
   public void addValue(final String new_value)
   {
     if(values == null) 
-      values = new StringVector();
+      values = new String[0];
     
-    values.add(new_value);
+    appendValue(new_value);
+  }
+
+  /**
+   *  Add a value to the end of the values array.
+   **/
+  private void appendValue(final String new_value)
+  {
+    final String[] new_values = new String[values.length + 1];
+    System.arraycopy(values, 0, new_values, 0, values.length);
+    new_values[values.length] = StringPool.getValue(name, new_value);
+    values = new_values;
   }
 
   /**
@@ -177,10 +198,23 @@ public class Qualifier
    **/
   protected void removeValue(final String value) 
   {
-    values.remove(value);
-
-    if(values.size() == 0) 
-      values = null;
+    for(int i = 0; i < values.length; ++i)
+    {
+      if(value == null ? values[i] == null : value.equals(values[i]))
+      {
+        if(values.length == 1)
+          values = null;
+        else
+        {
+          final String[] new_values = new String[values.length - 1];
+          System.arraycopy(values, 0, new_values, 0, i);
+          System.arraycopy(values, i + 1, new_values, i,
+                           values.length - i - 1);
+          values = new_values;
+        }
+        return;
+      }
+    }
   }
 
   /**
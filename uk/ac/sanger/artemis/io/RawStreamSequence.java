@@ -72,7 +72,7 @@ public class RawStreamSequence extends StreamSequence
    **/
   public RawStreamSequence(final Sequence sequence) 
   {
-    this(new String(sequence.getCharSubSequence(1, sequence.length())));
+    setFromSequence(sequence);
 
     if(sequence instanceof RawStreamSequence) 
     {
@@ -173,8 +173,7 @@ public class RawStreamSequence extends StreamSequence
   public void writeToStream(final Writer writer)
       throws IOException 
   {
-    final StringBuffer line_buffer = new StringBuffer(90);
-    final String sequence = new String(getCharSequence());
+    final int sequence_length = length();
 
     final int SEQUENCE_LINE_BASE_COUNT = 60;
 
@@ -191,7 +190,12 @@ public class RawStreamSequence extends StreamSequence
 
     int i = 0;
 
-    while(i < sequence.length()) 
+    // the bases are decoded a chunk at a time
+    final char[] chunk = new char[Math.min(sequence_length, WRITE_CHUNK_SIZE)];
+    int chunk_start = 0;
+    int chunk_end = 0;
+
+    while(i < sequence_length) 
     {
       if(header_counter < header_positions.length) 
       {
@@ -218,8 +222,8 @@ public class RawStreamSequence extends StreamSequence
 
       int this_line_length;
 
-      if(sequence.length() - i < SEQUENCE_LINE_BASE_COUNT) 
-        this_line_length = sequence.length() - i;
+      if(sequence_length - i < SEQUENCE_LINE_BASE_COUNT) 
+        this_line_length = sequence_length - i;
       else 
         this_line_length = SEQUENCE_LINE_BASE_COUNT;
 
@@ -229,11 +233,15 @@ public class RawStreamSequence extends StreamSequence
           this_line_length = header_positions_sorted[header_counter] - i;
       }
 
-      line_buffer.setLength(0);
-      line_buffer.append(sequence.substring(i, i + this_line_length));
-      line_buffer.append("\n");
+      if(i + this_line_length > chunk_end)
+      {
+        chunk_start = i;
+        chunk_end = Math.min(sequence_length, i + chunk.length);
+        getCharSubSequence(chunk_start + 1, chunk_end, chunk, 0);
+      }
 
-      writer.write(line_buffer.toString());
+      writer.write(chunk, i - chunk_start, this_line_length);
+      writer.write('\n');
 
       if((i / SEQUENCE_LINE_BASE_COUNT) % 100 == 0) 
         Thread.yield();
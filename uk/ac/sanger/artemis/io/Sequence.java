@@ -46,6 +46,16 @@ public interface Sequence
   String getSubSequence(int start, int end);
   char[] getCharSubSequence(int start, int end);
 
+  /**
+   *  Copy the given range of bases into a buffer supplied by the caller,
+   *  so that no new array is allocated.
+   *  @param start The start base of the range.
+   *  @param end The end base of the range (must be within the sequence).
+   *  @param dst The buffer to copy into.
+   *  @param dst_offset The index in dst of the first base.
+   **/
+  void getCharSubSequence(int start, int end, char[] dst, int dst_offset);
+
   char charAt(int i);
 
   /**
@@ -77,6 +77,12 @@ abstract public class SimpleDocumentEntry
    *  made to setDirtyFlag().
    **/
   private Thread autosave_thread = null;
+
+  /**
+   *  The journal of the changes since the last save, or null if there
+   *  are none.  Started by setDirtyFlag().
+   **/
+  private DocumentEntryJournal journal = null;
                                                                                                                
   /**
    *  The Date when this Entry last changed or null if this Entry
@@ -90,6 +96,25 @@ abstract public class SimpleDocumentEntry
    **/
   protected boolean in_constructor = false;
 
+  /**
+   *  True if this entry was read from the changes recovered from the
+   *  journal of an earlier session rather than from its Document.
+   **/
+  private boolean recovered = false;
+
+  /**
+   *  The file the recovered changes were read from, until they are in a
+   *  journal snapshot (see journalRecoveredChanges()).
+   **/
+  private File recovered_file = null;
+
+  /**
+   *  The range of each contig that the GFF features of this entry were
+   *  moved to, keyed by contig name, or null if they were not moved.  The
+   *  features are moved back by these ranges when they are written.
+   **/
+  private Hashtable contig_ranges = null;
+
   /**
    *  Create a new SimpleDocumentEntry from the given Document.
    *  @param entry_information The EntryInformation object of the new Entry.
@@ -114,16 +139,35 @@ abstract public class SimpleDocumentEntry
     if(read_listener != null)
       addReadListener(read_listener);
 
-    final LinePushBackReader pushback_reader =
-              getDocument().getLinePushBackReader();
+    // unsaved changes from a session that didn't stop cleanly
+    if(getName() != null)
+      recovered_file = DocumentEntryJournal.recover(this);
+    recovered = (recovered_file != null);
+
+    LineGroupSource line_group_source = null;
+    if(!recovered)
+      line_group_source = getDocument().getLineGroupSource();
+    final LinePushBackReader pushback_reader;
+    if(line_group_source == null)
+    {
+      if(recovered)
+        pushback_reader =
+          new FileDocument(recovered_file).getLinePushBackReader();
+      else
+        pushback_reader = getDocument().getLinePushBackReader();
+      line_group_source = makeLineGroupSource(pushback_reader);
+    }
+    else
+      pushback_reader = null;
 
     LineGroup new_line_group;
 
     boolean isGFF = false;
     final int MAX_LOOP = 9999;
     
-    while((new_line_group =
-            LineGroup.readNextLineGroup(pushback_reader, this)) != null) 
+    while((new_line_group = (line_group_source == null ?
+            LineGroup.readNextLineGroup(pushback_reader, this) :
+            line_group_source.readNextLineGroup())) != null) 
     {       
       if(new_line_group instanceof SimpleDocumentFeature)
       {
@@ -159,11 +203,15 @@ abstract public class SimpleDocumentEntry
       else 
         addLineGroup(new_line_group);
       
-      if(new_line_group instanceof IndexFastaStream)
+      if(new_line_group instanceof IndexFastaStream ||
+         new_line_group instanceof TwoBitStreamSequence)
         break;
     }
 
-    pushback_reader.close();
+    if(line_group_source == null)
+      pushback_reader.close();
+    else
+      line_group_source.close();
     
     // we added some features above hence:
     last_change_time = null;
@@ -255,36 +303,9 @@ abstract public class SimpleDocumentEntry
         // adjust feature coordinates
         if(isGFF && contig_ranges != null)
         {
-          final FeatureVector gff_regions = getAllFeatures();
-          Enumeration gff_features  = gff_regions.elements();
-          while(gff_features.hasMoreElements())
-          {
-            final GFFStreamFeature feature = (GFFStreamFeature)gff_features.nextElement();
-            //Qualifier seqname = feature.getQualifierByName("gff_seqname");
-            //String name = (String)(seqname.getValues()).elementAt(0);
-            final String name = feature.getGffSeqName();
-            if(name == null)
-              continue;
-            if(contig_ranges.containsKey(name))
-            {
-              try
-              {
-                Range new_range = (Range)contig_ranges.get(name);
-                final Location loc = feature.getLocation();
-                int start = feature.getFirstBase()+new_range.getStart()-1;
-                int end   = feature.getLastBase()+new_range.getStart()-1;
-                final Range feat_range = new Range(start, end);
-                final RangeVector location_ranges = new RangeVector(feat_range);
-                feature.setLocation(new Location(location_ranges, loc.isComplement()));
-              }
-              catch(OutOfRangeException e)
-              {
-                throw new Error("internal error - unexpected exception: " + e);
-              }
-            }
-          }
+          moveToContigs(contig_ranges);
           // store so these can be used when writing out
-          GFFStreamFeature.contig_ranges = contig_ranges;
+          this.contig_ranges = contig_ranges;
         }
 
         addFakeFeatures();
@@ -292,6 +313,132 @@ abstract public class SimpleDocumentEntry
     }
 
     this.in_constructor = false;
+
+    if(recovered)
+    {
+      // the recovered changes haven't been saved to the Document yet
+      setDirtyFlag();
+      journalRecoveredChanges();
+    }
+  }
+
+  /**
+   *  Write a journal snapshot of the recovered changes, then delete the
+   *  file they were read from.  Until then that file is the only copy of
+   *  them, as recover() deleted the old journal.  If the snapshot can't be
+   *  written the file is kept.  This is called at the end of the
+   *  constructor; a subclass that changes the features after that should
+   *  call it again when it has finished.
+   **/
+  protected void journalRecoveredChanges()
+  {
+    if(recovered_file == null)
+      return;
+
+    final File recovered_file = this.recovered_file;
+    this.recovered_file = null;
+    final DocumentEntryJournal entry_journal = getJournal();
+    try
+    {
+      if(entry_journal != null && entry_journal.compactNow())
+      {
+        recovered_file.delete();
+        return;
+      }
+    }
+    catch(IOException e)
+    {
+      System.err.println("warning: could not journal the recovered " +
+                         "changes to " + getName() + ": " + e.getMessage());
+    }
+    System.err.println("warning: the recovered changes to " + getName() +
+                       " are kept in: " + recovered_file);
+  }
+
+  /**
+   *  Return true if this entry was read from the changes recovered from
+   *  the journal of an earlier session rather than from its Document.
+   **/
+  boolean isRecovered()
+  {
+    return recovered;
+  }
+
+  /**
+   *  Move the GFF features of an entry that has no sequence of its own onto
+   *  the contigs of the sequence it is shown with, e.g. an indexed FASTA
+   *  file that has several sequences shown end to end.  This does nothing
+   *  if the features have been moved already.
+   *  @param contig_ranges the range of each contig keyed by name, or null
+   *    if the sequence has only one contig
+   **/
+  public synchronized void setContigRanges(final Hashtable contig_ranges)
+  {
+    if(contig_ranges == null || this.contig_ranges != null ||
+       getSequence() != null)
+      return;
+
+    final boolean was_in_constructor = in_constructor;
+    in_constructor = true;  // the features haven't really changed
+    try
+    {
+      moveToContigs(contig_ranges);
+    }
+    finally
+    {
+      in_constructor = was_in_constructor;
+    }
+    this.contig_ranges = contig_ranges;
+  }
+
+  /**
+   *  Return the range of each contig that the GFF features of this entry
+   *  were moved to, keyed by contig name, or null if they were not moved.
+   **/
+  public synchronized Hashtable getContigRanges()
+  {
+    return contig_ranges;
+  }
+
+  /**
+   *  Move the GFF features of this entry to the position of the contig
+   *  named in their seqname column.
+   *  @param contig_ranges the range of each contig keyed by name
+   **/
+  private void moveToContigs(final Hashtable contig_ranges)
+  {
+    final FeatureVector gff_regions = getAllFeatures();
+    Enumeration gff_features  = gff_regions.elements();
+    while(gff_features.hasMoreElements())
+    {
+      final GFFStreamFeature feature = (GFFStreamFeature)gff_features.nextElement();
+      //Qualifier seqname = feature.getQualifierByName("gff_seqname");
+      //String name = (String)(seqname.getValues()).elementAt(0);
+      final String name = feature.getGffSeqName();
+      if(name == null)
+        continue;
+      if(contig_ranges.containsKey(name))
+      {
+        try
+        {
+          Range new_range = (Range)contig_ranges.get(name);
+          final Location loc = feature.getLocation();
+          int start = feature.getFirstBase()+new_range.getStart()-1;
+          int end   = feature.getLastBase()+new_range.getStart()-1;
+          final Range feat_range = new Range(start, end);
+          final RangeVector location_ranges = new RangeVector(feat_range);
+          feature.setLocation(new Location(location_ranges, loc.isComplement()));
+        }
+        catch(OutOfRangeException e)
+        {
+          throw new Error("internal error - unexpected exception: " + e);
+        }
+        catch(ReadOnlyException e)
+        {
+          throw new Error("internal error - unexpected exception: " + e);
+        }
+      }
+    }
   }
 
   /**
@@ -1177,6 +1324,28 @@ abstract public class SimpleDocumentEntry
     out_file.close();
 
     last_change_time = null;
+    closeJournal();
+  }
+
+  /**
+   *  Return the journal of the changes since the last save, or null if
+   *  the changes are not being journaled.
+   **/
+  public synchronized DocumentEntryJournal getJournal()
+  {
+    return journal;
+  }
+
+  /**
+   *  Stop journaling and delete the journal files.
+   **/
+  private synchronized void closeJournal()
+  {
+    if(journal != null)
+    {
+      journal.close();
+      journal = null;
+    }
   }
 
 
@@ -1211,11 +1380,20 @@ abstract public class SimpleDocumentEntry
     }
     else
     {
-       if(autosave_thread == null && getName() != null) 
+       if(getName() != null)
        {
-         // this is the first change so start autosaving
-         autosave_thread = new DocumentEntryAutosaveThread(this);
-         autosave_thread.start();
+         synchronized(this)
+         {
+           if(journal == null)
+             journal = DocumentEntryJournal.open(this);
+         }
+
+         if(autosave_thread == null)
+         {
+           // this is the first change so start autosaving
+           autosave_thread = new DocumentEntryAutosaveThread(this);
+           autosave_thread.start();
+         }
        }
 
       final java.util.Calendar calendar = java.util.Calendar.getInstance();
@@ -1266,6 +1444,18 @@ abstract public class SimpleDocumentEntry
   protected abstract StreamSequence
     makeNativeSequence(final Sequence sequence);
 
+  /**
+   *  Return a LineGroupSource that reads the LineGroups of this entry from
+   *  the given reader, or null if they should be read with
+   *  LineGroup.readNextLineGroup().  This is called from the constructor,
+   *  before the fields of a subclass are set.
+   **/
+  protected LineGroupSource
+    makeLineGroupSource(final LinePushBackReader pushback_reader)
+  {
+    return null;
+  }
+
   /**
    *  Add the elements of fake_fasta_features to the feature table.
    **/
@@ -1277,6 +1467,15 @@ abstract public class SimpleDocumentEntry
       feature_table.add(fake_fasta_features.featureAt(i));
   }
 
+  /**
+   *  Return true if the feature was added for a FASTA record and is not
+   *  written with the entry.
+   **/
+  boolean isFakeFeature(final Feature feature)
+  {
+    return fake_fasta_features.contains(feature);
+  }
+
   /**
    *  Remove the elements of fake_fasta_features from the feature table.
    **/
@@ -1307,6 +1506,7 @@ abstract public class SimpleDocumentEntry
 
   public void dispose()
   {
+    closeJournal();
     for(int i=0; i<line_groups.size(); i++)
       line_groups.removeElementAt(i);
     line_groups = null;
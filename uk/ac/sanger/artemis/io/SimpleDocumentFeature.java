@@ -27,6 +27,8 @@ package uk.ac.sanger.artemis.io;
 
 import uk.ac.sanger.artemis.util.*;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  *  SimpleDocumentFeature class
  *
@@ -103,7 +105,7 @@ abstract class SimpleDocumentFeature extends LineGroup
   /**
    *  This is incremented each time a constructor is called.
    **/
-  private static long id_counter = 0;
+  private static final AtomicLong id_counter = new AtomicLong ();
 
   /**
    *  Set the value of this object.
@@ -411,6 +413,15 @@ abstract class SimpleDocumentFeature extends LineGroup
     return id;
   }
 
+  /**
+   *  Give this feature the next unique identifier, as if it had just been
+   *  created.  Features that are parsed on other threads are renumbered in
+   *  the order they were read so that they sort the same way.
+   **/
+  void renumber () {
+    id = id_counter.getAndIncrement ();
+  }
+
   /**
    *  Return the Key of this Feature, as passed to the constructor.
    **/
@@ -530,5 +541,5 @@ abstract class SimpleDocumentFeature extends LineGroup
   /**
    *  A unique identifier for this feature.
    **/
-  private final long id = id_counter++;
+  private long id = id_counter.getAndIncrement ();
 }
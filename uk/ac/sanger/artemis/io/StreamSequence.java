@@ -77,6 +77,13 @@ public abstract class StreamSequence
   private int sequence_length;
   private char bases[];
 
+  /**
+   *  The number of bases decoded at a time when a sequence is written or
+   *  copied.  This is a multiple of the 60 bases of a sequence line so
+   *  that a line never spans two chunks.
+   **/
+  protected static final int WRITE_CHUNK_SIZE = 60 * 1024;
+
   /**
    *  Return a the given range of bases as a String.  Returns an empty
    *  sequence if the end position is less than the start position.
@@ -177,6 +184,21 @@ public abstract class StreamSequence
     return this_dst;
   }
 
+  public void getCharSubSequence(final int start, final int end,
+                                 final char[] dst, final int dst_offset)
+  {
+    int count = dst_offset;
+    for(int i = start; i <= end; i++)
+    {
+      final byte currStorageUnit = sequencePacked[(i - 1) >> 1];
+      // odd positions are in the high four bits
+      if((i & 1) == 1)
+        dst[count++] = bases[(currStorageUnit >> 4) & 0x000F];
+      else
+        dst[count++] = bases[currStorageUnit & 0x000F];
+    }
+  }
+
   public char[] getCharSequence()
   {
     char dst[] = new char[length()];
@@ -308,6 +330,60 @@ public abstract class StreamSequence
     sequence_length = newlength;
   }
 
+  /**
+   *  Set this sequence to hold the bases of the given Sequence.  The bases
+   *  are copied WRITE_CHUNK_SIZE at a time so that the whole sequence is
+   *  never held in a char array.
+   **/
+  protected void setFromSequence(final Sequence sequence)
+  {
+    final int len = sequence.length();
+    sequence_length = 0;
+    sequencePacked = new byte[(len + 1) >> 1];
+
+    char[] chunk = new char[Math.min(len, WRITE_CHUNK_SIZE)];
+    for(int start = 1; start <= len; start += WRITE_CHUNK_SIZE)
+    {
+      final int end = Math.min(len, start + WRITE_CHUNK_SIZE - 1);
+      if(end - start + 1 < chunk.length)
+        chunk = new char[end - start + 1];
+      sequence.getCharSubSequence(start, end, chunk, 0);
+      appendChar(chunk);
+    }
+
+    if(bases == null)
+      bases = Packing.bases;
+    a_count = c_count = t_count = g_count = 0;
+    setCounts();
+  }
+
+  /**
+   *  Return the packed bases of this sequence (two bases per byte).  The
+   *  array may be longer than needed.  Used by EntrySnapshot.
+   **/
+  byte[] getPackedBases()
+  {
+    return sequencePacked;
+  }
+
+  /**
+   *  Set this sequence from bases packed by another StreamSequence and the
+   *  base counts of that sequence.  Used by EntrySnapshot.
+   **/
+  void setFromPacked(final byte[] packed, final int length,
+                     final int a_count, final int c_count,
+                     final int g_count, final int t_count)
+  {
+    this.sequencePacked  = packed;
+    this.sequence_length = length;
+    this.a_count = a_count;
+    this.c_count = c_count;
+    this.g_count = g_count;
+    this.t_count = t_count;
+    if(bases == null)
+      bases = Packing.bases;
+  }
+
   protected void setSequencePackingCapacity(final int n)
   {
     int numBytes  = Math.round( n/2.f );
@@ -27,6 +27,7 @@ package uk.ac.sanger.artemis.io;
 
 import uk.ac.sanger.artemis.util.LinePushBackReader;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -54,6 +55,9 @@ abstract public class StreamSequenceFactory
   
   final public static int INDEXED_FASTA_FORMAT = 5;
 
+  /** The tag used for sequence read from a memory mapped .2bit file. */
+  final public static int TWO_BIT_FORMAT = 6;
+
   /** 
    *  Read a StreamSequence object from a LinePushBackReader object.
    **/
@@ -69,6 +73,10 @@ abstract public class StreamSequenceFactory
         return new EmblStreamSequence(in_stream);
       case FASTA_FORMAT:
       {
+        final File two_bit_file =
+          TwoBitStreamSequence.getTwoBitFile(entry);
+        if(two_bit_file != null)
+          return new TwoBitStreamSequence(two_bit_file);
         if(IndexFastaStream.isIndexed(entry))
           return new IndexFastaStream(entry);
         return new FastaStreamSequence(in_stream);
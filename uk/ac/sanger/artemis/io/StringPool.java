@@ -0,0 +1,108 @@
+/* StringPool.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  Shared copies of the qualifier names and of the values of the
+ *  qualifiers that take a value from a small controlled vocabulary, e.g.
+ *  /codon_start=1 or /colour=2, so that each is held once.  The pool is
+ *  never cleared so other values, which may be different in every
+ *  feature, are not put in it.  It also stops growing when it is full;
+ *  after that only strings that are already in it are shared.
+ **/
+class StringPool
+{
+  /** The maximum number of strings in the pool. */
+  private static final int MAX_SIZE = 50000;
+
+  /** Longer strings are not shared. */
+  private static final int MAX_LENGTH = 40;
+
+  /** The qualifiers whose values are shared. */
+  private static final HashSet<String> CONTROLLED_QUALIFIERS =
+    new HashSet<String>();
+
+  static
+  {
+    final String[] names =
+    {
+      "codon_start", "transl_table", "colour", "color", "mol_type",
+      "organelle", "direction", "strand", "evidence", "pseudogene",
+      "rpt_type", "ncRNA_class", "regulatory_class", "isObsolete"
+    };
+    for(int i = 0; i < names.length; i++)
+      CONTROLLED_QUALIFIERS.add(names[i]);
+  }
+
+  private static final ConcurrentHashMap<String, String> pool =
+    new ConcurrentHashMap<String, String>(1024);
+
+  private StringPool()
+  {
+  }
+
+  /**
+   *  Return the shared copy of the given qualifier name.
+   **/
+  static String getName(final String name)
+  {
+    return get(name);
+  }
+
+  /**
+   *  Return the shared copy of a value of the named qualifier, or the
+   *  value itself if the values of that qualifier are not shared.
+   **/
+  static String getValue(final String name, final String value)
+  {
+    if(name == null || !CONTROLLED_QUALIFIERS.contains(name))
+      return value;
+    return get(value);
+  }
+
+  /**
+   *  Return the shared copy of the given string, or the string itself if
+   *  it is not shared.
+   **/
+  private static String get(final String string)
+  {
+    if(string == null || string.length() > MAX_LENGTH)
+      return string;
+
+    final String shared = pool.get(string);
+    if(shared != null)
+      return shared;
+
+    if(pool.size() >= MAX_SIZE)
+      return string;
+
+    final String previous = pool.putIfAbsent(string, string);
+    if(previous == null)
+      return string;
+    return previous;
+  }
+}
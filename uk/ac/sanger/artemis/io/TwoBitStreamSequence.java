@@ -0,0 +1,466 @@
+/* TwoBitStreamSequence.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+
+import javax.swing.JOptionPane;
+
+import uk.ac.sanger.artemis.util.FileDocument;
+import uk.ac.sanger.artemis.util.ReadOnlyException;
+
+/**
+ *  A read only sequence backed by a memory mapped UCSC .2bit file. Bases
+ *  are stored at 2 bits each and runs of N are kept in a separate table,
+ *  so the heap used does not depend on the length of the sequence.
+ *  The .2bit file is used in place of a FASTA file when it is found
+ *  next to it (<i>file.fa</i>.2bit or <i>file</i>.2bit) e.g. made
+ *  by faToTwoBit. Other IUPAC codes are read as n, as faToTwoBit
+ *  stores them as N.
+ **/
+public class TwoBitStreamSequence extends StreamSequence
+{
+  private static final int SIGNATURE = 0x1A412743;
+  /** 2 bit codes T=0, C=1, A=2, G=3 */
+  private static final char CODES[] = { 't', 'c', 'a', 'g' };
+
+  private final File twoBitFile;
+  private final Vector<String> contigs = new Vector<String>();
+  private final Vector<Long> contigOffsets = new Vector<Long>();
+  private final ByteOrder byteOrder;
+
+  private int contigIndex = -1;
+  private int len;
+  private MappedByteBuffer packed;
+  /** 0-based starts and sizes of the runs of N */
+  private int nStarts[];
+  private int nSizes[];
+  /** base counts, calculated when first asked for */
+  private int counts[];
+
+  /**
+   *  Open a .2bit file and select the first sequence in it.
+   *  @param twoBitFile
+   **/
+  public TwoBitStreamSequence(final File twoBitFile) throws IOException
+  {
+    this.twoBitFile = twoBitFile;
+    final RandomAccessFile raf = new RandomAccessFile(twoBitFile, "r");
+    try
+    {
+      final FileChannel channel = raf.getChannel();
+      final ByteBuffer header = ByteBuffer.allocate(16);
+      channel.read(header, 0);
+      header.flip();
+      if(header.limit() < 16)
+        throw new IOException(twoBitFile.getName()+" is not a .2bit file");
+
+      if(header.getInt(0) == SIGNATURE)
+        byteOrder = ByteOrder.BIG_ENDIAN;
+      else
+      {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if(header.getInt(0) != SIGNATURE)
+          throw new IOException(twoBitFile.getName()+" is not a .2bit file");
+        byteOrder = ByteOrder.LITTLE_ENDIAN;
+      }
+      header.order(byteOrder);
+
+      if(header.getInt(4) != 0)
+        throw new IOException(twoBitFile.getName()+
+            ": unsupported .2bit version "+header.getInt(4));
+      if(header.getInt(12) != 0)
+        throw new IOException(twoBitFile.getName()+
+            ": reserved field in the .2bit header is not zero");
+
+      final int nseqs = header.getInt(8);
+      raf.seek(16);
+      for(int i=0; i<nseqs; i++)
+      {
+        byte name[] = new byte[raf.readUnsignedByte()];
+        raf.readFully(name);
+        contigs.add(new String(name));
+        contigOffsets.add(new Long(readUnsignedInt(raf)));
+      }
+    }
+    finally
+    {
+      raf.close();
+    }
+
+    setContigByIndex(0);
+  }
+
+  /**
+   *  Find the .2bit file for the FASTA file of an entry.  A .2bit file that
+   *  is older than the FASTA file is not used, as the FASTA file may have
+   *  been edited since the .2bit file was made.
+   *  @param entry
+   *  @return the file or null if there is not an up to date one
+   **/
+  public static File getTwoBitFile(final Entry entry)
+  {
+    if(!(entry instanceof DocumentEntry) ||
+       !(((DocumentEntry) entry).getDocument() instanceof FileDocument))
+      return null;
+
+    final File fasta =
+      ((FileDocument) ((DocumentEntry) entry).getDocument()).getFile();
+    File twoBit = new File(fasta.getPath() + ".2bit");
+    if(twoBit.exists())
+      return checkUpToDate(twoBit, fasta);
+
+    final String name = fasta.getName();
+    final int index = name.lastIndexOf('.');
+    if(index > 0)
+    {
+      twoBit = new File(fasta.getParentFile(), name.substring(0, index) + ".2bit");
+      if(twoBit.exists())
+        return checkUpToDate(twoBit, fasta);
+    }
+    return null;
+  }
+
+  /**
+   *  @return the .2bit file or null if it is older than the FASTA file
+   **/
+  private static File checkUpToDate(final File twoBit, final File fasta)
+  {
+    if(twoBit.lastModified() >= fasta.lastModified())
+      return twoBit;
+
+    System.err.println("warning: not using " + twoBit.getPath() +
+                       " as it is older than " + fasta.getPath());
+    return null;
+  }
+
+  /**
+   *  Select a sequence in the .2bit file.
+   *  @param seqIndex
+   **/
+  public void setContigByIndex(final int seqIndex)
+  {
+    if(seqIndex == contigIndex)
+      return;
+
+    try
+    {
+      final RandomAccessFile raf = new RandomAccessFile(twoBitFile, "r");
+      try
+      {
+        final FileChannel channel = raf.getChannel();
+        final long offset = contigOffsets.get(seqIndex).longValue();
+        ByteBuffer buff = map(channel, offset, 8);
+        // the sizes and counts are unsigned
+        final long dnaSize = buff.getInt(0) & 0xffffffffL;
+        final long nBlockCount = buff.getInt(4) & 0xffffffffL;
+        if(dnaSize > Integer.MAX_VALUE)
+          throw new IOException(contigs.get(seqIndex)+" is too long ("+
+                                dnaSize+" bases)");
+        if(offset+8+nBlockCount*8+4 > channel.size())
+          throw new IOException(contigs.get(seqIndex)+
+                                ": N block count is past the end of the file");
+
+        final int nStarts[] = new int[(int)nBlockCount];
+        final int nSizes[] = new int[(int)nBlockCount];
+        buff = map(channel, offset+8, nBlockCount*8+4);
+        for(int i=0; i<nStarts.length; i++)
+          nStarts[i] = buff.getInt(i*4);
+        for(int i=0; i<nSizes.length; i++)
+          nSizes[i] = buff.getInt((nStarts.length+i)*4);
+        final long maskBlockCount = buff.getInt(nStarts.length*8) & 0xffffffffL;
+
+        // skip the mask blocks (lower case) and reserved word
+        final long packedOffset = offset+8+nBlockCount*8+4+maskBlockCount*8+4;
+        final long packedSize = (dnaSize+3)/4;
+        if(packedOffset+packedSize > channel.size())
+          throw new IOException(contigs.get(seqIndex)+
+                                ": sequence is past the end of the file");
+        packed = channel.map(FileChannel.MapMode.READ_ONLY,
+                             packedOffset, packedSize);
+
+        this.len = (int)dnaSize;
+        this.nStarts = nStarts;
+        this.nSizes = nSizes;
+        this.counts = null;
+        this.contigIndex = seqIndex;
+      }
+      finally
+      {
+        // the mapping stays valid after the channel is closed
+        raf.close();
+      }
+    }
+    catch(IOException e)
+    {
+      throw new RuntimeException(twoBitFile.getName()+": "+e.getMessage());
+    }
+  }
+
+  private MappedByteBuffer map(final FileChannel channel, final long offset,
+                               final long size) throws IOException
+  {
+    final MappedByteBuffer buff =
+      channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    buff.order(byteOrder);
+    return buff;
+  }
+
+  private long readUnsignedInt(final RandomAccessFile raf) throws IOException
+  {
+    long value = raf.readInt() & 0xffffffffL;
+    if(byteOrder == ByteOrder.LITTLE_ENDIAN)
+      value = Integer.reverseBytes((int)value) & 0xffffffffL;
+    return value;
+  }
+
+  /**
+   *  @return the names of the sequences in the .2bit file
+   **/
+  public Vector<String> getContigNames()
+  {
+    return contigs;
+  }
+
+  /**
+   *  Return the base at the given position (1-based).
+   **/
+  public char charAt(final int i)
+  {
+    if(isN(i-1))
+      return 'n';
+    final int b = packed.get((i-1) >> 2);
+    return CODES[(b >> (6 - (((i-1) & 3) << 1))) & 3];
+  }
+
+  /**
+   *  Return a the given range of bases as a String.
+   **/
+  public String getSubSequence(final int start, final int end)
+  {
+    if(end < start)
+      return "";
+    return new String(getCharSubSequence(start, end));
+  }
+
+  /**
+   *  Return a the given range of bases read from the mapped file.
+   **/
+  public char[] getCharSubSequence(final int start, int end)
+  {
+    if(end > len)
+      end = len;
+    if(end < start)
+      return new char[0];
+
+    final char dst[] = new char[end-start+1];
+    getCharSubSequence(start, end, dst, 0);
+    return dst;
+  }
+
+  /**
+   *  Decode the given range of bases from the mapped file into dst.
+   **/
+  public void getCharSubSequence(final int start, final int end,
+                                 final char[] dst, final int dst_offset)
+  {
+    final int dstEnd = dst_offset+end-start+1;
+    int pos = start-1;
+    int count = dst_offset;
+
+    // bases up to the first whole byte
+    while((pos & 3) != 0 && count < dstEnd)
+    {
+      dst[count++] = CODES[(packed.get(pos >> 2) >> (6 - ((pos & 3) << 1))) & 3];
+      pos++;
+    }
+
+    // four bases from each byte
+    while(count + 4 <= dstEnd)
+    {
+      final int b = packed.get(pos >> 2);
+      dst[count++] = CODES[(b >> 6) & 3];
+      dst[count++] = CODES[(b >> 4) & 3];
+      dst[count++] = CODES[(b >> 2) & 3];
+      dst[count++] = CODES[b & 3];
+      pos += 4;
+    }
+
+    while(count < dstEnd)
+    {
+      dst[count++] = CODES[(packed.get(pos >> 2) >> (6 - ((pos & 3) << 1))) & 3];
+      pos++;
+    }
+
+    // overlay the runs of N
+    final int startPos = start-1;
+    final int endPos = end-1;
+    for(int i=findNBlock(startPos); i<nStarts.length && nStarts[i] <= endPos; i++)
+    {
+      final int nStart = Math.max(nStarts[i], startPos);
+      final int nEnd = Math.min(nStarts[i]+nSizes[i]-1, endPos);
+      for(int j=nStart; j<=nEnd; j++)
+        dst[dst_offset+j-startPos] = 'n';
+    }
+  }
+
+  public char[] getCharSequence()
+  {
+    return getCharSubSequence(1, len);
+  }
+
+  /**
+   *  @return the index of the first run of N that ends at or after
+   *  the given 0-based position
+   **/
+  private int findNBlock(final int pos)
+  {
+    int lo = 0;
+    int hi = nStarts.length;
+    while(lo < hi)
+    {
+      final int mid = (lo+hi) >>> 1;
+      if(nStarts[mid]+nSizes[mid]-1 < pos)
+        lo = mid+1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  private boolean isN(final int pos)
+  {
+    final int i = findNBlock(pos);
+    return i < nStarts.length && nStarts[i] <= pos;
+  }
+
+  /**
+   *  Returns the length of the sequence in bases.
+   **/
+  public int length()
+  {
+    return len;
+  }
+
+  public int getACount()
+  {
+    return getCounts()[2];
+  }
+
+  public int getCCount()
+  {
+    return getCounts()[1];
+  }
+
+  public int getGCount()
+  {
+    return getCounts()[3];
+  }
+
+  public int getTCount()
+  {
+    return getCounts()[0];
+  }
+
+  /**
+   *  Count the bases (indexed by their 2 bit code) the first time
+   *  they are needed, so that opening the sequence is quick.
+   **/
+  private synchronized int[] getCounts()
+  {
+    if(counts != null)
+      return counts;
+
+    final int newCounts[] = new int[4];
+    final int nbytes = len/4;
+    for(int i=0; i<nbytes; i++)
+    {
+      final int b = packed.get(i);
+      newCounts[(b >> 6) & 3]++;
+      newCounts[(b >> 4) & 3]++;
+      newCounts[(b >> 2) & 3]++;
+      newCounts[b & 3]++;
+    }
+    for(int pos=nbytes*4; pos<len; pos++)
+      newCounts[(packed.get(pos >> 2) >> (6 - ((pos & 3) << 1))) & 3]++;
+
+    // runs of N are stored as T
+    for(int i=0; i<nStarts.length; i++)
+      newCounts[0] -= nSizes[i];
+    counts = newCounts;
+    return counts;
+  }
+
+  public StreamSequence copy()
+  {
+    try
+    {
+      final TwoBitStreamSequence copy = new TwoBitStreamSequence(twoBitFile);
+      copy.setContigByIndex(contigIndex);
+      return copy;
+    }
+    catch(IOException e)
+    {
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+
+  public int getFormatType()
+  {
+    return StreamSequenceFactory.TWO_BIT_FORMAT;
+  }
+
+  public void setFromChar(final char dna[])
+  {
+    JOptionPane.showMessageDialog(null,"Read only sequence.",
+        "Warning", JOptionPane.WARNING_MESSAGE);
+    throw new RuntimeException(new ReadOnlyException());
+  }
+
+  /**
+   *  Write the selected sequence in FASTA format.
+   **/
+  public void writeToStream(final Writer writer) throws IOException
+  {
+    writer.write(">" + contigs.get(contigIndex) + "\n");
+    final int chunk = 60*1000;
+    for(int start=1; start<=len; start+=chunk)
+    {
+      final char bases[] = getCharSubSequence(start, Math.min(start+chunk-1, len));
+      for(int i=0; i<bases.length; i+=60)
+      {
+        writer.write(bases, i, Math.min(60, bases.length-i));
+        writer.write('\n');
+      }
+    }
+  }
+}
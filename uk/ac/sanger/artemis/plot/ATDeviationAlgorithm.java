@@ -27,7 +27,6 @@ package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.sequence.*;
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 
 /**
  *  Objects of this class have one useful method - getValues (), which takes a
@@ -39,7 +38,7 @@ import uk.ac.sanger.artemis.io.Range;
  *  @version $Id: ATDeviationAlgorithm.java,v 1.1 2004-06-09 09:51:14 tjc Exp $
  **/
 
-public class ATDeviationAlgorithm extends BaseAlgorithm {
+public class ATDeviationAlgorithm extends SlidingWindowAlgorithm {
   /**
    *  Create a new ATDeviationAlgorithm object
    *  @param strand The strand to do the calculation on.
@@ -52,43 +51,18 @@ public class ATDeviationAlgorithm extends BaseAlgorithm {
 
   /**
    *  Return the value of (A content - T content)/(A content + T content)
-   *  between the given pair of bases.
-   *  @param start The start base (included in the range).
-   *  @param end The end base (included in the range).
+   *  of a window.
+   *  @param counts The number of times each base occurs in the window.
+   *  @param window_size The number of bases in the window.
    *  @param values The one return value for this algorithm is returned in
    *    this array.
    **/
-  public void getValues (int start, int end, final float [] values) {
-    final String sequence;
-
-    try {
-      sequence = getStrand ().getSubSequence (new Range (start, end));
-    } catch (OutOfRangeException e) {
-      throw new Error ("internal error - unexpected exception: " + e);
-    }
-
-    float a_count = 0;
-    float t_count = 0;
-
-    for (int i = 0 ; i < sequence.length () ; ++i) {
-      final char this_char = sequence.charAt (i);
-
-      if (this_char == 'a') {
-        ++a_count;
-      }
-
-      if (this_char == 't') {
-        ++t_count;
-      }
-    }
+  protected void getValues (final int [] counts, final int window_size,
+                            final float [] values) {
+    final float a_count = counts['a'];
+    final float t_count = counts['t'];
 
     if (a_count + t_count > 0) {
-//        if (start == 1) {
-//        System.out.println ("start: " + start + " end: " + end +
-//                            " returning: " +
-//                            (a_count - t_count) / (a_count + t_count));
-        
-//        }
       values[0] = (a_count - t_count) / (a_count + t_count);
     } else {
       values[0] = 0;
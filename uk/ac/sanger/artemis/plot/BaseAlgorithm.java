@@ -211,10 +211,93 @@ public abstract class BaseAlgorithm extends Algorithm
    **/
   public abstract void getValues (int start, int end, final float [] values);
 
+  /**
+   *  Calculate the values for a run of windows of the same size, each
+   *  starting step_size bases after the last.  This version calls
+   *  getValues (int, int, float []) for each window; algorithms that can
+   *  work out a window from the previous one should override it (see
+   *  SlidingWindowAlgorithm).
+   *  @param start The first base of the first window.
+   *  @param window_size The number of bases in each window.
+   *  @param step_size The distance between the starts of the windows.
+   *  @param window_count The number of windows.
+   *  @param values values[value_index][i] is set to the value_index'th
+   *    value of window i.  There should be getValueCount () arrays, each at
+   *    least window_count long.
+   **/
+  public void getValues (final int start, final int window_size,
+                         final int step_size, final int window_count,
+                         final float [][] values) {
+    final float [] window_values = new float [getValueCount ()];
+
+    for (int i = 0 ; i < window_count ; ++i) {
+      final int window_start = start + i * step_size;
+      getValues (window_start, window_start + window_size - 1, window_values);
+
+      for (int value_index = 0 ; value_index < window_values.length ;
+           ++value_index) {
+        values[value_index][i] = window_values[value_index];
+      }
+    }
+  }
+
   /**
    *  Return the number of values a call to getValues () will return.
    **/
   public abstract int getValueCount ();
+
+  /**
+   *  Return true if the values of a window depend only on the bases in the
+   *  window, so that values calculated away from a change to the sequence
+   *  are still correct afterwards.  Algorithms that also use something
+   *  calculated from the whole sequence (such as its length or average GC
+   *  content) return false.
+   **/
+  public boolean isWindowLocal () {
+    return true;
+  }
+
+  /**
+   *  Copy the bases between a pair of bases on the strand of this algorithm
+   *  into a buffer that is reused between calls, rather than allocating a
+   *  new String or array for each window.  Each thread has its own buffer.
+   *  @param start The start base (included in the range).
+   *  @param end The end base (included in the range).
+   *  @return A buffer holding the end - start + 1 bases at its start.  The
+   *    buffer may be longer than the range.
+   **/
+  protected char [] getSubSequence (final int start, final int end) {
+    final char [] buffer = getBuffer (end - start + 1);
+    getStrand ().getSubSequenceC (start, end, buffer);
+    return buffer;
+  }
+
+  /**
+   *  As getSubSequence (int, int) but the bases are always taken from the
+   *  forward strand.
+   **/
+  protected char [] getRawSubSequence (final int start, final int end) {
+    final char [] buffer = getBuffer (end - start + 1);
+    getStrand ().getRawSubSequenceC (start, end, buffer);
+    return buffer;
+  }
+
+  /**
+   *  Return this thread's buffer, making it at least length long.
+   **/
+  private char [] getBuffer (final int length) {
+    char [] buffer = buffers.get ();
+    if (buffer == null || buffer.length < length) {
+      buffer = new char [length];
+      buffers.set (buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   *  The buffers used by getSubSequence () and getRawSubSequence ().
+   **/
+  private final ThreadLocal<char []> buffers = new ThreadLocal<char []> ();
   
   /**
    *  The Bases we will do the calculation on.
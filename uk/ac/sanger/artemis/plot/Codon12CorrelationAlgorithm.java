@@ -26,7 +26,6 @@
 package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 
 import java.awt.*;
@@ -101,22 +100,13 @@ public class Codon12CorrelationAlgorithm extends BaseAlgorithm
     else
       start += (end - start + 1) % 3;
 
-    final char[] sub_sequence_raw;
-
-    try 
-    {
-      sub_sequence_raw = getStrand().getRawSubSequenceC(new Range(start, end));
-    } 
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence_raw = getRawSubSequence(start, end);
 
     final float gc_counts[] = new float[3];
 
     // the first index is the position the second is the base (t,c,a,g)
     final int[][] positional_base_counts = new int[4][3];
-    final int sub_sequence_length = sub_sequence_raw.length;
+    final int sub_sequence_length = end - start + 1;
 
     if(getStrand().isForwardStrand())
     {
@@ -198,6 +188,14 @@ public class Codon12CorrelationAlgorithm extends BaseAlgorithm
   }
 
    
+  /**
+   *  The frames of the values depend on the length of the sequence.
+   **/
+  public boolean isWindowLocal()
+  {
+    return false;
+  }
+
   /**
    *  Return the number of values a call to getValues () will return - three
    *  in this case.
@@ -35,7 +35,6 @@ import uk.ac.sanger.artemis.*;
 import uk.ac.sanger.artemis.sequence.*;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 
 /**
  *  Objects of this class have one useful method - getValues (), which takes a
@@ -93,23 +92,14 @@ public class CodonUsageAlgorithm extends BaseAlgorithm {
     else 
       start += (end - start + 1) % 3;
 
-    final char[] sequence;
-
-    try 
-    {
-      sequence = getStrand ().getRawSubSequenceC(new Range (start, end));
-    }
-    catch (OutOfRangeException e)
-    {
-      throw new Error ("internal error - unexpected exception: " + e);
-    }
+    final char[] sequence = getRawSubSequence (start, end);
 
     float[] totals = { 0, 0, 0 };
 
     // a count of the number of codons we have seen
     int codon_count = 0;
 
-    final int sub_sequence_length = sequence.length;
+    final int sub_sequence_length = end - start + 1;
 
     if(getStrand ().isForwardStrand ()) 
     {
@@ -23,7 +23,6 @@
 package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 
 /**
@@ -54,7 +53,6 @@ public class CumulativeGCSkewAlgorithm extends BaseAlgorithm
   public void getValues(int start, int end, final float [] values) 
   {
     final String sequence;
-    String subseq;
 
 // try sliding window code here
 
@@ -66,21 +64,15 @@ public class CumulativeGCSkewAlgorithm extends BaseAlgorithm
 
     for(int window = 0 ; window < end ; window += leap)
     {
-      try
-      {
-	subseq = getStrand().getSubSequence(new Range(window, window+leap));
-      }
-      catch(OutOfRangeException e) 
-      {
-        throw new Error("internal error - unexpected exception: " + e);
-      }
+      final char[] subseq = getSubSequence(window, window+leap);
+      final int subseq_length = leap+1;
 
       g_count = 0;
       c_count = 0;
     
-      for(int i = 0 ; i < subseq.length() ; ++i) 
+      for(int i = 0 ; i < subseq_length ; ++i) 
       {
-        final char this_char = subseq.charAt(i);
+        final char this_char = subseq[i];
 
         if(this_char == 'g')
           ++g_count;
@@ -27,7 +27,6 @@ package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.sequence.*;
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 
 /**
  *  Objects of this class have one useful method - getValues (), which takes a
@@ -39,7 +38,7 @@ import uk.ac.sanger.artemis.io.Range;
  *  @version $Id: GCDeviationAlgorithm.java,v 1.1 2004-06-09 09:51:27 tjc Exp $
  **/
 
-public class GCDeviationAlgorithm extends BaseAlgorithm {
+public class GCDeviationAlgorithm extends SlidingWindowAlgorithm {
   /**
    *  Create a new GCDeviationAlgorithm object
    *  @param strand The strand to do the calculation on.
@@ -52,40 +51,18 @@ public class GCDeviationAlgorithm extends BaseAlgorithm {
 
   /**
    *  Return the value of (G content - C content)/(G content + C content)
-   *  between the given pair of bases.
-   *  @param start The start base (included in the range).
-   *  @param end The end base (included in the range).
+   *  of a window.
+   *  @param counts The number of times each base occurs in the window.
+   *  @param window_size The number of bases in the window.
    *  @param values The one return value for this algorithm is returned in
    *    this array.
    **/
-  public void getValues (int start, int end, final float [] values) {
-    final String sequence;
-
-    try {
-      sequence = getStrand ().getSubSequence (new Range (start, end));
-    } catch (OutOfRangeException e) {
-      throw new Error ("internal error - unexpected exception: " + e);
-    }
-
-    float g_count = 0;
-    float c_count = 0;
-
-    for (int i = 0 ; i < sequence.length () ; ++i) {
-      final char this_char = sequence.charAt (i);
-
-      if (this_char == 'g') {
-        ++g_count;
-      }
-
-      if (this_char == 'c') {
-        ++c_count;
-      }
-    }
+  protected void getValues (final int [] counts, final int window_size,
+                            final float [] values) {
+    final float g_count = counts['g'];
+    final float c_count = counts['c'];
 
     if (c_count + g_count > 0) {
-//        System.out.println ("start: " + start + " end: " + end +
-//                            " returning: " +
-//                            (g_count - c_count) / (g_count + c_count));
       values[0] = (g_count - c_count) / (g_count + c_count);
     } else {
       values[0] = 0;
@@ -27,7 +27,6 @@ package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.sequence.*;
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 
 import java.awt.*;
 
@@ -52,11 +51,6 @@ public class GCFrameAlgorithm extends BaseAlgorithm
     setScalingFlag(true);
   }
 
-  /**
-   *  This is used as temporary storage by getValues().
-   **/
-  private int gc_counts [] = new int [getValueCount()];
-
   /**
    *  Return the percent gc between a pair of bases in each of the three
    *  frames.
@@ -88,21 +82,12 @@ public class GCFrameAlgorithm extends BaseAlgorithm
     else
       start += (end - start + 1) % 3;
 
-    for(int i = 0; i < getValueCount(); ++i)
-      gc_counts[i] = 0;
-    
-    final char[] sub_sequence;
+    // local so that windows can be calculated on several threads at once
+    final int gc_counts[] = new int[getValueCount()];
 
-    try 
-    {
-      sub_sequence = getStrand().getRawSubSequenceC(new Range(start, end));
-    } 
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence = getRawSubSequence(start, end);
 
-    final int sub_sequence_length = sub_sequence.length;
+    final int sub_sequence_length = end - start + 1;
 
     if(getStrand().isForwardStrand()) 
     {
@@ -151,6 +136,14 @@ public class GCFrameAlgorithm extends BaseAlgorithm
   }
 
 
+  /**
+   *  The frames of the values depend on the length of the sequence.
+   **/
+  public boolean isWindowLocal()
+  {
+    return false;
+  }
+
   /**
    *  Return the number of values a call to getValues() will return - three
    *  in this case.
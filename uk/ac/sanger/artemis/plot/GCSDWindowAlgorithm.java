@@ -26,7 +26,6 @@
 package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 
 import uk.ac.sanger.artemis.sequence.*;
 
@@ -42,7 +41,7 @@ import uk.ac.sanger.artemis.sequence.*;
  *  @version $Id: GCSDWindowAlgorithm.java,v 1.4 2009-03-17 17:47:42 tjc Exp $
  **/
 
-public class GCSDWindowAlgorithm extends BaseAlgorithm {
+public class GCSDWindowAlgorithm extends SlidingWindowAlgorithm {
   /**
    *  Create a new GCSDWindowAlgorithm object.
    *  @param strand The strand to do the calculation on.
@@ -54,54 +53,23 @@ public class GCSDWindowAlgorithm extends BaseAlgorithm {
   }
 
   /**
-   *  Return the percent GC between a pair of bases if the GC content of the
-   *  range is more than 2.5 standard deviations from the average GC content
+   *  Return the percent GC of a window if the GC content of the
+   *  window is more than 2.5 standard deviations from the average GC content
    *  of the sequence.  It returns the average GC content of the sequence
    *  otherwise.
-   *  @param start The start base (included in the range).
-   *  @param end The end base (included in the range).
+   *  @param counts The number of times each base occurs in the window.
+   *  @param window_size The number of bases in the window.
    *  @param values The one return value for this algorithm is returned in
    *    this array.
    **/
-  public void getValues (int start, int end, float [] values) {
-    final int window_size = end - start + 1;
+  protected void getValues (final int [] counts, final int window_size,
+                            final float [] values) {
 
-    final float standard_deviation;
+    final float standard_deviation = getStandardDeviation (window_size);
 
-    if (window_size > getDefaultMaxWindowSize ().intValue ()) {
-      standard_deviation = calculateSD (window_size);
-    } else {
-      if (standard_deviations[window_size - 1] < 0) {
-        // set the cached value
-        standard_deviation = calculateSD (window_size);
-        standard_deviations[window_size - 1] = standard_deviation;
-
-        //       System.err.println ("SD: " + standard_deviation);
-      } else {
-        standard_deviation = standard_deviations[window_size - 1];
-      }
-    }
-
-    final String sequence;
-
-    try {
-      sequence = getStrand ().getSubSequence (new Range (start, end));
-    } catch (OutOfRangeException e) {
-      throw new Error ("internal error - unexpected exception: " + e);
-    }
+    final float gc_count = counts['g'] + counts['c'];
 
-    float gc_count = 0;
-
-    for (int i = 0 ; i < sequence.length () ; ++i) {
-      final char this_char = sequence.charAt (i);
-//      System.out.println (this_char);
-
-      if (this_char == 'g' || this_char == 'c') {
-        ++gc_count;
-      }
-    }
-
-    final float gc_content = gc_count/sequence.length () * 100;
+    final float gc_content = gc_count/window_size * 100;
 
     final float gc_average =
       getStrand ().getBases ().getAverageGCPercent ();
@@ -113,6 +81,26 @@ public class GCSDWindowAlgorithm extends BaseAlgorithm {
     }
   }
 
+  /**
+   *  Return the standard deviation of the GC content for the given window
+   *  size, from the cache if it has been calculated.  Synchronized because
+   *  the plot tiles are calculated on several threads.
+   **/
+  private synchronized float getStandardDeviation (final int window_size) {
+    if (window_size > getDefaultMaxWindowSize ().intValue ()) {
+      return calculateSD (window_size);
+    }
+
+    if (standard_deviations[window_size - 1] < 0) {
+      // set the cached value
+      standard_deviations[window_size - 1] = calculateSD (window_size);
+
+      //       System.err.println ("SD: " + standard_deviations[window_size - 1]);
+    }
+
+    return standard_deviations[window_size - 1];
+  }
+
   /**
    *  Calculate and return the standard deviation of the GC content of the
    *  Bases object of the Strand that was passed to the constructor.
@@ -180,6 +168,13 @@ public class GCSDWindowAlgorithm extends BaseAlgorithm {
                               gc_average * gc_average) * 100;
   }
 
+  /**
+   *  The values use the average GC content and its standard deviation.
+   **/
+  public boolean isWindowLocal () {
+    return false;
+  }
+
   /**
    *  Return the number of values a call to getValues () will return - one
    *  in this case.
@@ -26,7 +26,6 @@
 package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 
 import uk.ac.sanger.artemis.sequence.*;
 
@@ -40,7 +39,7 @@ import uk.ac.sanger.artemis.sequence.*;
  *  @version $Id: GCWindowAlgorithm.java,v 1.4 2009-03-17 17:47:42 tjc Exp $
  **/
 
-public class GCWindowAlgorithm extends BaseAlgorithm {
+public class GCWindowAlgorithm extends SlidingWindowAlgorithm {
   /**
    *  Create a new GCWindowAlgorithm object.
    *  @param strand The strand to do the calculation on.
@@ -52,35 +51,17 @@ public class GCWindowAlgorithm extends BaseAlgorithm {
   }
 
   /**
-   *  Return the percent GC between a pair of bases.
-   *  @param start The start base (included in the range).
-   *  @param end The end base (included in the range).
+   *  Return the percent GC of a window.
+   *  @param counts The number of times each base occurs in the window.
+   *  @param window_size The number of bases in the window.
    *  @param values The one return value for this algorithm is returned in
    *    this array.
    **/
-  public void getValues (int start, int end, final float [] values) {
-    final String sequence;
+  protected void getValues (final int [] counts, final int window_size,
+                            final float [] values) {
+    final float gc_count = counts['g'] + counts['c'];
 
-    try {
-      sequence = getStrand ().getSubSequence (new Range (start, end));
-    } catch (OutOfRangeException e) {
-      throw new Error ("internal error - unexpected exception: " + e);
-    }
-
-    float gc_count = 0;
-
-    for (int i = 0 ; i < sequence.length () ; ++i) {
-      final char this_char = sequence.charAt (i);
-//      System.out.println (this_char);
-
-      if (this_char == 'g' || this_char == 'c') {
-        ++gc_count;
-      }
-    }
-
-//    System.out.println ("start: " + start + " end: " + end + " returning: " + gc_count/sequence.length ()); 
-
-    values[0] = gc_count/sequence.length () * 100;
+    values[0] = gc_count/window_size * 100;
   }
 
   /**
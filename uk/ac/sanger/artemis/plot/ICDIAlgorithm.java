@@ -26,7 +26,6 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 
 /**
@@ -85,7 +84,6 @@ public class ICDIAlgorithm extends BaseAlgorithm
 //      System.out.println("Revcomp, so new start:"+start+"new end:"+end);
     }
     
-    final String sub_sequence;
     
     // add 1 or 2 if necessary to make the range a multiple of 3
     if(getStrand().isForwardStrand())
@@ -93,19 +91,13 @@ public class ICDIAlgorithm extends BaseAlgorithm
     else
       start += (end - start + 1) % 3;
 
-    try 
-    {
-      sub_sequence = getStrand().getSubSequence(new Range(start, end));
-    } 
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence = getSubSequence(start, end);
+    final int sub_sequence_length = end - start + 1;
 
     float exp = 0;
     float rscu = 0;  // can simplify
 
-    final char[] sequence_forward_raw = sub_sequence.toCharArray();
+    final char[] sequence_forward_raw = sub_sequence;
     int[][][][] obs_value = new int[4][4][4][4];
     float[] icdi = new float[3];
     
@@ -132,7 +124,7 @@ public class ICDIAlgorithm extends BaseAlgorithm
     int next_f_base_index = 0;
     int last_f_base_index = 0;
 
-    for(int i = 0 ; i < sequence_forward_raw.length - 5 ; i+=3) 
+    for(int i = 0 ; i < sub_sequence_length - 5 ; i+=3) 
     {
       for(int frame = 0; frame < 3; frame++) 
       {
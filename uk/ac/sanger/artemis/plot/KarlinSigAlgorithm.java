@@ -69,21 +69,12 @@ public class KarlinSigAlgorithm extends BaseAlgorithm {
     // add 1 or 2 if necessary to make the range a multiple of 3
     end -= (end - start + 1) % 3;
 
-    final char[] sub_sequence;
-
-    try {
-      // reset
-      if(end-start > 1000)
-        ((uk.ac.sanger.artemis.io.StreamSequence)(getStrand().getBases().getSequence())).forceReset();
-      sub_sequence = getStrand().getRawSubSequenceC(new Range (start, end));
-    } catch (OutOfRangeException e) {
-      throw new Error ("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence = getRawSubSequence (start, end);
 
     final float [][] global_relative_abundance_values =
       getGlobalRelativeAbundance ();
     final float [][] subseq_relative_abundance_values =
-      getRelativeAbundance (sub_sequence);
+      getRelativeAbundance (sub_sequence, end - start + 1);
 
     float signature_difference = 0;
 
@@ -100,6 +91,13 @@ public class KarlinSigAlgorithm extends BaseAlgorithm {
     values [0] = (float) signature_difference / 16f ;
   }
 
+  /**
+   *  The values use the dinucleotide abundance of the whole sequence.
+   **/
+  public boolean isWindowLocal () {
+    return false;
+  }
+
   /**
    *  Return the number of values a call to getValues () will return - three
    *  in this case.
@@ -195,23 +193,25 @@ public class KarlinSigAlgorithm extends BaseAlgorithm {
    *  Return a 4x4 array containing the relative abundance values for each
    *  dinucleotide pair.  Indexed by base (t,c,a,g).  The value for the
    *  dinucleotide "TT" is stored in global_signature[0][0], "TC" is stored in
-   *  [0][1], etc.
+   *  [0][1], etc.  The reverse strand is read by complementing the forward
+   *  bases from the end rather than by making a reverse complemented copy.
+   *  @param sequence_forward_raw Holds the bases at its start.
+   *  @param length The number of bases to use.
    **/
-  private float [][] getRelativeAbundance (final char [] sequence_forward_raw) {
+  private float [][] getRelativeAbundance (final char [] sequence_forward_raw,
+                                           final int length) {
     final float [][] return_value = new float [4][4];
 
-    final char [] sequence_reverse_raw =
-      Bases.reverseComplement (sequence_forward_raw);
-
     final int [] base_counts = new int [4];
     final int [][] dinucleotide_base_counts = new int [4][4];
 
     int this_f_base_index = Bases.getIndexOfBase (sequence_forward_raw[0]);
     int next_f_base_index = 0;
-    int this_r_base_index = Bases.getIndexOfBase (sequence_reverse_raw[0]);
+    int this_r_base_index =
+      Bases.getIndexOfBase (Bases.complement (sequence_forward_raw[length - 1]));
     int next_r_base_index = 0;
 
-    for (int i = 0 ; i < sequence_forward_raw.length - 1 ; ++i) 
+    for (int i = 0 ; i < length - 1 ; ++i) 
     {
       next_f_base_index = Bases.getIndexOfBase (sequence_forward_raw[i + 1]);
 
@@ -222,7 +222,8 @@ public class KarlinSigAlgorithm extends BaseAlgorithm {
         // ignore Ns
       }
 
-      next_r_base_index = Bases.getIndexOfBase (sequence_reverse_raw[i + 1]);
+      next_r_base_index =
+        Bases.getIndexOfBase (Bases.complement (sequence_forward_raw[length - i - 2]));
 
       if (this_r_base_index < 4 && next_r_base_index < 4) {
         ++base_counts[this_r_base_index];
@@ -253,13 +254,13 @@ public class KarlinSigAlgorithm extends BaseAlgorithm {
       {
         final float dinucleotide_frequency =
           1f * dinucleotide_base_counts[first_base_index][second_base_index] /
-          (sequence_reverse_raw.length - 1) / 2;
+          (length - 1) / 2;
         final float first_base_frequency =
           1f * base_counts[first_base_index] /
-          sequence_reverse_raw.length / 2;
+          length / 2;
         final float second_base_frequency =
           1f * base_counts[second_base_index] /
-          sequence_reverse_raw.length / 2;
+          length / 2;
 
         return_value[first_base_index][second_base_index] =
           dinucleotide_frequency /
@@ -273,16 +274,18 @@ public class KarlinSigAlgorithm extends BaseAlgorithm {
   /**
    *  Return the relative abundance values for the complete sequence.  Indexed
    *  by base (t,c,a,g).  The value for the dinucleotide "TT" is stored in
-   *  global_signature[0][0], "TC" is stored in [0][1], etc.
+   *  global_signature[0][0], "TC" is stored in [0][1], etc.  Synchronized
+   *  because the plot tiles are calculated on several threads.
    **/
-  private float [][] getGlobalRelativeAbundance () {
+  private synchronized float [][] getGlobalRelativeAbundance () {
     if (global_relative_abundance_values == null) {
       try {
         final Range whole_range =
           new Range (1, getStrand ().getSequenceLength ());
         final char[] sequence =
           getStrand().getRawSubSequenceC(whole_range);
-        global_relative_abundance_values = getRelativeAbundance (sequence);
+        global_relative_abundance_values =
+          getRelativeAbundance (sequence, sequence.length);
       } catch (OutOfRangeException e) {
         throw new Error ("internal error - unexpected exception: " + e);
       }
@@ -26,7 +26,6 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 
 /**
@@ -86,7 +85,6 @@ public class MRIAlgorithm extends BaseAlgorithm
 //      System.out.println("Revcomp, so new start:"+start+"new end:"+end);
     }
     
-    final String sub_sequence;
     
     // add 1 or 2 if necessary to make the range a multiple of 3
     if(getStrand().isForwardStrand())
@@ -94,20 +92,14 @@ public class MRIAlgorithm extends BaseAlgorithm
     else
       start += (end - start + 1) % 3;
 
-    try 
-    {
-      sub_sequence = getStrand().getSubSequence(new Range(start, end));
-    }
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence = getSubSequence(start, end);
+    final int sub_sequence_length = end - start + 1;
 
     final float [][][][] exp_value = new float [4][4][4][4];  // 3D for bases, 1 for frame
     final float [][][][] uncorr_exp_value = new float [4][4][4][4];
 
     final char [] sequence_raw;
-    sequence_raw = sub_sequence.toCharArray();
+    sequence_raw = sub_sequence;
 
     int [][][][] obs_value = new int [4][4][4][4];
     float [] chi_square = new float [3];
@@ -140,17 +132,17 @@ public class MRIAlgorithm extends BaseAlgorithm
     float GCfreq = 0; // GC/length
 
 // get GC content
-    for(int c = 0 ; c < sequence_raw.length; c++) 
+    for(int c = 0 ; c < sub_sequence_length; c++) 
     {
       char this_base = sequence_raw[c];
       if(this_base == 'g' || this_base == 'c') 
         GC++;
     }
 
-    GCfreq = (float)GC/sequence_raw.length;
+    GCfreq = (float)GC/sub_sequence_length;
 
     chi_square = new float [3];
-    for(int i = 0 ; i < sequence_raw.length - 5 ; i+=3) 
+    for(int i = 0 ; i < sub_sequence_length - 5 ; i+=3) 
     {
       for(int frame = 0; frame < 3; frame++) 
       {
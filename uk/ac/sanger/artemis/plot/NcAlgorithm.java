@@ -26,7 +26,6 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 
 /**
@@ -82,7 +81,6 @@ public class NcAlgorithm extends BaseAlgorithm
       end = new_end;
       start = new_start;
     }
-    final String sub_sequence;
     
     // add 1 or 2 if necessary to make the range a multiple of 3
     if(getStrand().isForwardStrand())
@@ -90,17 +88,11 @@ public class NcAlgorithm extends BaseAlgorithm
     else
       start += (end - start + 1) % 3;
 
-    try 
-    {
-      sub_sequence = getStrand().getSubSequence(new Range(start, end));
-    } 
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence = getSubSequence(start, end);
+    final int sub_sequence_length = end - start + 1;
 
     final char[] sequence_raw;
-    sequence_raw = sub_sequence.toCharArray();
+    sequence_raw = sub_sequence;
 
     float[][][][] p = new float [4][4][4][4]; // holds p
     float[][][][] obs_value = new float [4][4][4][4];
@@ -153,7 +145,7 @@ public class NcAlgorithm extends BaseAlgorithm
     int next_f_base_index = 0;
     int last_f_base_index = 0;
 
-    for(int i = 0 ; i < sequence_raw.length - 5 ; i+=3) 
+    for(int i = 0 ; i < sub_sequence_length - 5 ; i+=3) 
     {
       for(int frame = 0; frame < 3; frame++) 
       {
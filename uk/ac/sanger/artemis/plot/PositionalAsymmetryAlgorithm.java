@@ -25,7 +25,6 @@
 package uk.ac.sanger.artemis.plot;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 import java.lang.Math.*;
 
@@ -76,16 +75,8 @@ public class PositionalAsymmetryAlgorithm extends BaseAlgorithm
 //      System.out.println("Revcomp, so new start:"+start+"new end:"+end);
     }
     
-    final String sequence;
-
-    try 
-    {
-      sequence = getStrand().getSubSequence(new Range(start, end));
-    }
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sequence = getSubSequence(start, end);
+    final int sequence_length = end - start + 1;
 
     float g_count = 0;
     float c_count = 0;
@@ -102,9 +93,9 @@ public class PositionalAsymmetryAlgorithm extends BaseAlgorithm
     float t_chi= 0; 
     float chi_total = 0;
 
-    for(int i = 0; i < sequence.length(); ++i) 
+    for(int i = 0; i < sequence_length; ++i) 
     {
-      char this_char = sequence.charAt(i);
+      char this_char = sequence[i];
 
       if(this_char == 'g') 
         ++g_count;
@@ -123,9 +114,9 @@ public class PositionalAsymmetryAlgorithm extends BaseAlgorithm
     
     for(int frame = 0; frame < 3; ++frame) 
     { 
-      for(int i = frame; i < sequence.length(); i=i+3) 
+      for(int i = frame; i < sequence_length; i=i+3) 
       {
-        char this_char = sequence.charAt(i);
+        char this_char = sequence[i];
 	if(this_char == 'g') 
           ++g_pos[frame];
         else if(this_char == 'c') 
@@ -171,7 +162,7 @@ public class PositionalAsymmetryAlgorithm extends BaseAlgorithm
     chi_total = a_chi + c_chi + g_chi + t_chi;
          
     
-//    System.out.println ("start: " + start + " end: " + end + " returning: " + gc_count/sequence.length()); 
+//    System.out.println ("start: " + start + " end: " + end + " returning: " + gc_count/sequence_length); 
 
     values[0] = chi_total;
   }
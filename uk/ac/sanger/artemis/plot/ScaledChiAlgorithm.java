@@ -26,7 +26,6 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 import uk.ac.sanger.artemis.util.*;
-import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.sequence.*;
 
 /**
@@ -85,7 +84,6 @@ public class ScaledChiAlgorithm extends BaseAlgorithm
 //      System.out.println("Revcomp, so new start:"+start+"new end:"+end);
     }
     
-    final String sub_sequence;
     
     // add 1 or 2 if necessary to make the range a multiple of 3
     if(getStrand().isForwardStrand())
@@ -93,14 +91,8 @@ public class ScaledChiAlgorithm extends BaseAlgorithm
     else
       start += (end - start + 1) % 3;
       
-    try 
-    {
-      sub_sequence = getStrand().getSubSequence(new Range(start, end));
-    }
-    catch(OutOfRangeException e) 
-    {
-      throw new Error("internal error - unexpected exception: " + e);
-    }
+    final char[] sub_sequence = getSubSequence(start, end);
+    final int sub_sequence_length = end - start + 1;
 
 //    System.out.println("start:"+start+"end:"+end);
 //    System.out.println(sub_sequence);
@@ -108,7 +100,7 @@ public class ScaledChiAlgorithm extends BaseAlgorithm
     final float[][][][] exp_value = new float[4][4][4][4];  // 3D for bases, 1 for frame
 
     final char[] sequence_raw;
-    sequence_raw = sub_sequence.toCharArray();
+    sequence_raw = sub_sequence;
 
     int[][][][] obs_value = new int [4][4][4][4];
     float[] chi_square = new float [3];
@@ -136,7 +128,7 @@ public class ScaledChiAlgorithm extends BaseAlgorithm
     int last_f_base_index = 0;
 
     chi_square = new float [3];
-    for(int i = 0 ; i < sequence_raw.length - 5 ; i+=3) 
+    for(int i = 0 ; i < sub_sequence_length - 5 ; i+=3) 
     {
       for(int frame = 0; frame < 3; frame++) 
       {
@@ -0,0 +1,141 @@
+/* SlidingWindowAlgorithm.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.plot;
+
+import java.util.Arrays;
+
+import uk.ac.sanger.artemis.sequence.Strand;
+
+/**
+ *  Base class for algorithms whose value for a window depends only on how
+ *  many times each base occurs in it (e.g. GC content).  The counts are
+ *  kept as the window slides along, so each new window only reads the
+ *  bases that enter and leave it, i.e. the cost is proportional to the
+ *  step size rather than the window size.
+ **/
+public abstract class SlidingWindowAlgorithm extends BaseAlgorithm
+{
+  /** counts are indexed by character */
+  private static final int COUNTS_SIZE = 128;
+
+  /** the most bases read into the buffer at once */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   *  Create a new SlidingWindowAlgorithm object.
+   *  @param strand The strand to do the calculation on.
+   *  @param algorithm_name A String used to identify this algorithm to the
+   *    user.
+   *  @param algorithm_short_name A String used to identify this algorithm
+   *    internally.
+   **/
+  public SlidingWindowAlgorithm(final Strand strand,
+                                final String algorithm_name,
+                                final String algorithm_short_name)
+  {
+    super(strand, algorithm_name, algorithm_short_name);
+  }
+
+  /**
+   *  Calculate the values for one window from the base counts.
+   *  @param counts counts[c] is the number of times the character c
+   *    (e.g. 'g') occurs in the window.
+   *  @param window_size The number of bases in the window.
+   *  @param values The results are returned in this array.
+   **/
+  protected abstract void getValues(final int[] counts, final int window_size,
+                                    final float[] values);
+
+  /**
+   *  Return the value of the function between a pair of bases.
+   *  @param start The start base (included in the range).
+   *  @param end The end base (included in the range).
+   *  @param values The results are returned in this array.
+   **/
+  public void getValues(int start, int end, final float[] values)
+  {
+    final int[] counts = new int[COUNTS_SIZE];
+    addBases(start, end, counts, 1);
+    getValues(counts, end - start + 1, values);
+  }
+
+  /**
+   *  Calculate the values for a run of windows, updating the base counts
+   *  from one window to the next.
+   **/
+  public void getValues(final int start, final int window_size,
+                        final int step_size, final int window_count,
+                        final float[][] values)
+  {
+    final int[] counts = new int[COUNTS_SIZE];
+    final float[] window_values = new float[getValueCount()];
+
+    for(int i = 0; i < window_count; ++i)
+    {
+      final int window_start = start + i * step_size;
+
+      if(i == 0 || step_size >= window_size)
+      {
+        if(i > 0)
+          Arrays.fill(counts, 0);
+        addBases(window_start, window_start + window_size - 1, counts, 1);
+      }
+      else
+      {
+        // remove the bases that have left the window and add the new ones
+        addBases(window_start - step_size, window_start - 1, counts, -1);
+        addBases(window_start + window_size - step_size,
+                 window_start + window_size - 1, counts, 1);
+      }
+
+      getValues(counts, window_size, window_values);
+
+      for(int value_index = 0; value_index < window_values.length;
+          ++value_index)
+        values[value_index][i] = window_values[value_index];
+    }
+  }
+
+  /**
+   *  Add increment to the count of each base between start and end.
+   **/
+  private void addBases(final int start, final int end,
+                        final int[] counts, final int increment)
+  {
+    for(int chunk_start = start; chunk_start <= end;
+        chunk_start += CHUNK_SIZE)
+    {
+      final int chunk_end = Math.min(end, chunk_start + CHUNK_SIZE - 1);
+      final char[] bases = getSubSequence(chunk_start, chunk_end);
+      final int length = chunk_end - chunk_start + 1;
+
+      for(int i = 0; i < length; ++i)
+      {
+        final char this_char = bases[i];
+        if(this_char < COUNTS_SIZE)
+          counts[this_char] += increment;
+      }
+    }
+  }
+}
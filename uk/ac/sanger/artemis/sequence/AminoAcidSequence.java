@@ -94,23 +94,39 @@ public class AminoAcidSequence
   public static AminoAcidSequence getTranslation(final char[] bases,
                                                  final boolean unknown_is_x)
   {
-//  this is set in Splash.java
-//  setGeneCode();
-//
-    final StringBuffer aa_buffer = new StringBuffer();
-    final int number_of_codons = bases.length / 3;
+    return getTranslation(bases, bases.length, unknown_is_x);
+  }
 
-    for(int i = 0 ; i < number_of_codons * 3 ; i += 3)
+  /**
+   *  Translate the first length bases of a buffer into the corresponding
+   *  single letter amino acid codes.  This allows the bases to be held in a
+   *  reused buffer.
+   *  @param bases The buffer holding the bases.
+   *  @param length The number of bases to translate.  If this is not a
+   *    multiple of three the last codon is incomplete and will not be
+   *    translated.
+   *  @param unknown_is_x If this parameter is true codons that contain
+   *    ambiguous bases will be translated as 'x', if false they will be
+   *    translated as '.'
+   *  @return The translated sequence in one letter abbreviated form.
+   **/
+  public static AminoAcidSequence getTranslation(final char[] bases,
+                                                 final int length,
+                                                 final boolean unknown_is_x)
+  {
+    final char[] aa_chars = new char[length / 3];
+
+    for(int i = 0 ; i < aa_chars.length ; ++i)
     {
-      final char aa = getCodonTranslation(bases[i],
-                                          bases[i+1],
-                                          bases[i+2]);
+      final char aa = getCodonTranslation(bases[i*3],
+                                          bases[i*3+1],
+                                          bases[i*3+2]);
       if(aa == '.' && unknown_is_x)
-        aa_buffer.append ('x');
+        aa_chars[i] = 'x';
       else
-        aa_buffer.append (aa);
+        aa_chars[i] = aa;
     }
-    return new AminoAcidSequence(aa_buffer.toString());
+    return new AminoAcidSequence(new String(aa_chars));
   }
 
   /**
@@ -157,20 +173,40 @@ public class AminoAcidSequence
   public static AminoAcidSequence getSpacedTranslation(final char bases[],
                                                final boolean unknown_is_x)
   { 
-    final StringBuffer aa_buffer = new StringBuffer();
-    final int number_of_codons = bases.length / 3;
-    for(int i = 0 ; i < number_of_codons * 3 ; i += 3)
+    return getSpacedTranslation(bases, bases.length, unknown_is_x);
+  }
+
+  /**
+   *  Translate the first length bases of a buffer into the corresponding
+   *  single letter amino acid codes and appending 2 spaces after each amino
+   *  acid character.
+   *  @param bases The buffer holding the bases.
+   *  @param length The number of bases to translate.
+   *  @param unknown_is_x If this parameter is true codons that contain
+   *    ambiguous bases will be translated as 'x', if false they will be
+   *    translated as '.'
+   *  @return The translated sequence in one letter abbreviated form.
+   **/
+  public static AminoAcidSequence getSpacedTranslation(final char bases[],
+                                               final int length,
+                                               final boolean unknown_is_x)
+  {
+    final int number_of_codons = length / 3;
+    final char[] aa_chars = new char[number_of_codons * 3];
+
+    for(int i = 0 ; i < number_of_codons ; ++i)
     {
-      final char aa = getCodonTranslation(bases[i],
-                                          bases[i+1],
-                                          bases[i+2]);
+      final char aa = getCodonTranslation(bases[i*3],
+                                          bases[i*3+1],
+                                          bases[i*3+2]);
       if(aa == '.' && unknown_is_x)
-        aa_buffer.append('x');
+        aa_chars[i*3] = 'x';
       else
-        aa_buffer.append(aa);
-      aa_buffer.append("  ");
+        aa_chars[i*3] = aa;
+      aa_chars[i*3+1] = ' ';
+      aa_chars[i*3+2] = ' ';
     }
-    return new AminoAcidSequence(aa_buffer.toString());
+    return new AminoAcidSequence(new String(aa_chars));
   }
 
   /**
@@ -373,7 +409,9 @@ public class AminoAcidSequence
                                final Marker search_start_marker,
                                final boolean search_backwards) 
   {
-    final String bases_string = bases.toString();
+    // read the bases through a view rather than copying the whole sequence
+    final CharSequence bases_string =
+      new SubSequenceView(bases, 1, bases.getLength(), Bases.FORWARD);
 
     // search the bases_string forward for the pattern_string and its
     // complement
@@ -511,14 +549,14 @@ public class AminoAcidSequence
    *  Search for this AminoAcidSequence in the given String of bases.  The
    *  String is treated as a sequence of bases and this AminoAcidSequence is
    *  searched for in each of the three reading frames.
-   *  @param bases_string Search this String for the amino acid sequence.
+   *  @param bases_string Search these bases for the amino acid sequence.
    *  @param start_index This is the index in bases_string where the search
    *    should start.
    *  @param search_backwards If true the search will move from last base to
    *    first base, otherwise first to last.
    *  @return The index of the match or -1 if there is no match.
    **/
-  public int searchFor(final String bases_string,
+  public int searchFor(final CharSequence bases_string,
                        final int start_index,
                        final boolean search_backwards) 
   {
@@ -532,12 +570,12 @@ public class AminoAcidSequence
    *  Search forward for this AminoAcidSequence in the given String of bases.
    *  The String is treated as a sequence of bases and this AminoAcidSequence
    *  is searched for in each of the three reading frames.
-   *  @param bases_string Search this String for the amino acid sequence.
+   *  @param bases_string Search these bases for the amino acid sequence.
    *  @param start_index This is the index in bases_string where the search
    *    should start.
    *  @return The index of the match or -1 if there is no match.
    **/
-  public int searchForwardFor(final String bases_string,
+  public int searchForwardFor(final CharSequence bases_string,
                               final int start_index) 
   {
     final int pattern_base_length = length() * 3;
@@ -578,12 +616,12 @@ public class AminoAcidSequence
    *  Search backward for this AminoAcidSequence in the given String of bases.
    *  The String is treated as a sequence of bases and this AminoAcidSequence
    *  is searched for in each of the three reading frames.
-   *  @param bases_string Search this String for the amino acid sequence.
+   *  @param bases_string Search these bases for the amino acid sequence.
    *  @param start_index This is the index in bases_string where the search
    *    should start.
    *  @return The index of the match or -1 if there is no match.
    **/
-  public int searchBackwardFor(final String bases_string,
+  public int searchBackwardFor(final CharSequence bases_string,
                                int start_index) 
   {
     if(bases_string.length() - start_index < length() * 3) 
@@ -624,14 +662,14 @@ public class AminoAcidSequence
    *  Search for this AminoAcidSequence in the reverse complement of the given
    *  String of bases.  The String is treated as a sequence of bases and this
    *  AminoAcidSequence is searched for in each of the three reading frames.
-   *  @param bases_string Search this String for the amino acid sequence.
+   *  @param bases_string Search these bases for the amino acid sequence.
    *  @param start_index This is the index in bases_string where the search
    *    should start.
    *  @param search_backwards If true the search will move from last base to
    *    first base, otherwise first to last.
    *  @return The index of the match or -1 if there is no match.
    **/
-  public int reverseComplementSearchFor(final String bases_string,
+  public int reverseComplementSearchFor(final CharSequence bases_string,
                                         final int start_index,
                                         final boolean search_backwards) 
   {
@@ -646,12 +684,12 @@ public class AminoAcidSequence
    *  the given String of bases.  The String is treated as a sequence of bases
    *  and this AminoAcidSequence is searched for in each of the three reading
    *  frames.
-   *  @param bases_string Search this String for the amino acid sequence.
+   *  @param bases_string Search these bases for the amino acid sequence.
    *  @param start_index This is the index in bases_string where the search
    *    should start.
    *  @return The index of the match or -1 if there is no match.
    **/
-  public int reverseComplementSearchForwardFor(final String bases_string,
+  public int reverseComplementSearchForwardFor(final CharSequence bases_string,
                                                final int start_index) 
   {
     final int pattern_base_length = length() * 3;
@@ -698,12 +736,12 @@ public class AminoAcidSequence
    *  the given String of bases.  The String is treated as a sequence of bases
    *  and this AminoAcidSequence is searched for in each of the three reading
    *  frames.
-   *  @param bases_string Search this String for the amino acid sequence.
+   *  @param bases_string Search these bases for the amino acid sequence.
    *  @param start_index This is the index in bases_string where the search
    *    should start.
    *  @return The index of the match or -1 if there is no match.
    **/
-  public int reverseComplementSearchBackwardFor(final String bases_string,
+  public int reverseComplementSearchBackwardFor(final CharSequence bases_string,
                                                 int start_index) 
   {
     if(bases_string.length() - start_index < length() * 3) 
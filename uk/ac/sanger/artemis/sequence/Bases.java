@@ -29,13 +29,18 @@ import uk.ac.sanger.artemis.Feature;
 import uk.ac.sanger.artemis.util.*;
 import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.io.EmblStreamSequence;
+import uk.ac.sanger.artemis.io.IndexFastaStream;
 import uk.ac.sanger.artemis.io.Sequence;
 import uk.ac.sanger.artemis.io.StreamSequence;
+import uk.ac.sanger.artemis.io.TwoBitStreamSequence;
 
 import org.biojava.bio.symbol.IllegalSymbolException;
 
 import java.util.WeakHashMap;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  *  This class is a wrapper for the uk.ac.sanger.artemis.io.Sequence class
@@ -77,18 +82,37 @@ public class Bases
   static public final int MAX_PRIORITY = 5;
 
   /**
-   *  A cache of the forward & reverse stop codon positions.
-   *  0 means not set/cached yet, 1 not a stop codon, 2 and 3 are a 
-   *  stop codon on fwd or reverse strand respectively.
+   *  The positions of the stop codons in all six frames.  This is null
+   *  until the search is started, in the background after the sequence is
+   *  read or when the stop codons are first needed.
    **/
-  private byte [] stop_codon_cache = null;
+  private FutureTask<CodonBitmap> stop_codons = null;
 
   /**
-   *  A cache of the forward & reverse start codon positions.
-   *  0 means not set/cached yet, 1 not a start codon, 2 and 3 are a 
-   *  start codon on fwd or reverse strand repectively.
+   *  The positions of the start codons given by start_codons_query in all
+   *  six frames, or null if they haven't been needed yet.
    **/
-  private byte [] start_codon_cache = null;
+  private FutureTask<CodonBitmap> start_codons = null;
+
+  /**
+   *  The codons that start_codons was made for.
+   **/
+  private StringVector start_codons_query = null;
+
+  /**
+   *  The stop and start codons of the part of the sequence that was last
+   *  asked for, used instead of stop_codons and start_codons when the
+   *  sequence is read from a file a page at a time (see isPaged()).
+   **/
+  private CodonBitmap window_stop_codons = null;
+  private CodonBitmap window_start_codons = null;
+
+  /**
+   *  The number of times the sequence has started or finished changing, so
+   *  this is odd while it is being changed.  A codon search is only used if
+   *  the sequence didn't change while it ran.
+   **/
+  private volatile int sequence_changes = 0;
   
   /**
    *  Create a new Bases object.
@@ -98,13 +122,13 @@ public class Bases
   {
     this.embl_sequence = sequence;
 
-    stop_codon_cache = null;
-
     forward_strand = new Strand(this, FORWARD);
     reverse_strand = new Strand(this, REVERSE);
 
     for(int i = 0 ; i < listener_hash_map_array.length ; ++i) 
       listener_hash_map_array [i] = new WeakHashMap();
+
+    startCodonSearch();
   }
 
   /**
@@ -149,8 +173,6 @@ public class Bases
   public void reverseComplement()
       throws ReadOnlyException 
   {
-    stop_codon_cache = null;
-
     final Strand temp = forward_strand;
     forward_strand = reverse_strand;
     reverse_strand = temp;
@@ -164,12 +186,20 @@ public class Bases
     try 
     {
 //    getSequence().setFromChar(new_sequence.toCharArray());
+      beginSequenceChange();
       getSequence().setFromChar(new_sequence);
     } 
     catch (IllegalSymbolException e) 
     {
       throw new Error ("internal error - unexpected exception: " + e);
     }
+    finally
+    {
+      endSequenceChange();
+    }
+
+    clearCodonCache();
+    startCodonSearch();
 
     final SequenceChangeEvent event =
       new SequenceChangeEvent (this, SequenceChangeEvent.REVERSE_COMPLEMENT);
@@ -273,8 +303,10 @@ public class Bases
   {
     // getSubSequenceC() will return a sequence going in the right direction
     // so we don't have to worry.
-    final char[] sub_sequence = getSubSequenceC(range, direction);
-    return AminoAcidSequence.getTranslation(sub_sequence, unknown_is_x);
+    final char[] sub_sequence = getScratchBuffer(range.getCount());
+    getSubSequenceC(range.getStart(), range.getEnd(), direction, sub_sequence);
+    return AminoAcidSequence.getTranslation(sub_sequence, range.getCount(),
+                                            unknown_is_x);
   }
 
 
@@ -284,8 +316,25 @@ public class Bases
   {
     // getSubSequenceC() will return a sequence going in the right direction
     // so we don't have to worry.
-    final char[] sub_sequence = getSubSequenceC(range, direction);
-    return AminoAcidSequence.getSpacedTranslation(sub_sequence, unknown_is_x);
+    final char[] sub_sequence = getScratchBuffer(range.getCount());
+    getSubSequenceC(range.getStart(), range.getEnd(), direction, sub_sequence);
+    return AminoAcidSequence.getSpacedTranslation(sub_sequence,
+                                         range.getCount(), unknown_is_x);
+  }
+
+  /**
+   *  Return a buffer of at least the given length for the current thread,
+   *  used to hold the bases while translating.
+   **/
+  private static char[] getScratchBuffer(final int length)
+  {
+    char[] buffer = scratch_buffer.get();
+    if(buffer == null || buffer.length < length)
+    {
+      buffer = new char[length];
+      scratch_buffer.set(buffer);
+    }
+    return buffer;
   }
 
   /**
@@ -456,41 +505,286 @@ public class Bases
   }
 
   /**
-   *  Returns stop_codon_cache after allocating it (if it is null).
+   *  Return true if the sequence is read from a file a page at a time.  The
+   *  codons of these sequences are only searched for in the ranges that are
+   *  asked for, as searching the whole sequence would read all of it and
+   *  the bitmaps would use len/4 bytes.
    **/
-  private byte[] getStopCodonCache() 
+  private boolean isPaged()
   {
-    if (stop_codon_cache == null) 
-    { 
-      final int nbytes = getLength() >> 1 >> 1;
-      stop_codon_cache = new byte[nbytes+1];
+    return embl_sequence instanceof IndexFastaStream ||
+           embl_sequence instanceof TwoBitStreamSequence;
+  }
+
+  /**
+   *  Start searching for the stop codons in the background, if the search
+   *  hasn't been started already.
+   **/
+  private synchronized void startCodonSearch()
+  {
+    if(stop_codons == null && !isPaged())
+    {
+      stop_codons = makeCodonTask(null);
+      CodonBitmap.runInBackground(stop_codons);
     }
+  }
 
-    return stop_codon_cache;
+  /**
+   *  Return a task that searches the sequence for the given codons, or for
+   *  stop codons if query_codons is null.  The result of the task is null
+   *  if the sequence changed during the search.
+   **/
+  private FutureTask<CodonBitmap> makeCodonTask(final StringVector query_codons)
+  {
+    return new FutureTask<CodonBitmap>(new Callable<CodonBitmap>()
+    {
+      public CodonBitmap call()
+      {
+        final int changes = sequence_changes;
+        if((changes & 1) != 0)
+          return null;
+
+        final CodonBitmap bitmap;
+        try
+        {
+          bitmap = CodonBitmap.make(getSequence(), query_codons, changes);
+        }
+        catch(RuntimeException e)
+        {
+          if(changes != sequence_changes)
+            return null;
+          throw e;
+        }
+        catch(Error e)
+        {
+          if(changes != sequence_changes)
+            return null;
+          throw e;
+        }
+
+        if(changes != sequence_changes)
+          return null;
+        return bitmap;
+      }
+    });
   }
 
-  
   /**
-   *  Returns start_codon_cache after allocating it (if it is null).
+   *  Return a task that has already finished with the given result.
    **/
-  private byte[] getStartCodonCache() 
+  private static FutureTask<CodonBitmap> makeFinishedCodonTask(final CodonBitmap bitmap)
   {
-    if (start_codon_cache == null) 
-    { 
-      final int nbytes = getLength() >> 1 >> 1;
-      start_codon_cache = new byte[nbytes];
+    final FutureTask<CodonBitmap> task =
+      new FutureTask<CodonBitmap>(new Callable<CodonBitmap>()
+    {
+      public CodonBitmap call()
+      {
+        return bitmap;
+      }
+    });
+    task.run();
+    return task;
+  }
+
+  /**
+   *  Return the positions of the stop codons if query_codons is null or of
+   *  the given codons otherwise.  If the search hasn't finished in the
+   *  background it is finished (or done) by this thread.  The search is
+   *  done again if the sequence changed while it ran.  For a paged
+   *  sequence only the codons around the bases from start to end (counting
+   *  from 0) are searched.
+   **/
+  private CodonBitmap getCodonBitmap(final StringVector query_codons,
+                                     final int start, final int end)
+  {
+    if(isPaged())
+      return getWindowCodonBitmap(query_codons, start, end);
+
+    while(true)
+    {
+      final FutureTask<CodonBitmap> task;
+
+      synchronized(this)
+      {
+        if(query_codons == null)
+        {
+          if(stop_codons == null)
+            stop_codons = makeCodonTask(null);
+          task = stop_codons;
+        }
+        else
+        {
+          if(start_codons == null || !query_codons.equals(start_codons_query))
+          {
+            start_codons_query = query_codons.copy();
+            start_codons = makeCodonTask(start_codons_query);
+          }
+          task = start_codons;
+        }
+      }
+
+      // does nothing if the task has been started by another thread
+      task.run();
+
+      final CodonBitmap bitmap;
+      try
+      {
+        bitmap = task.get();
+      }
+      catch(ExecutionException e)
+      {
+        throw new Error("internal error - unexpected exception: " + e.getCause());
+      }
+      catch(InterruptedException e)
+      {
+        throw new Error("internal error - unexpected exception: " + e);
+      }
+
+      if(bitmap != null && bitmap.getSequenceChanges() == sequence_changes)
+        return bitmap;
+
+      synchronized(this)
+      {
+        if(stop_codons == task)
+          stop_codons = null;
+        if(start_codons == task)
+          start_codons = null;
+      }
+
+      // wait for another thread to finish changing the sequence
+      Thread.yield();
+    }
+  }
+
+  /**
+   *  Return the positions of the stop codons (if query_codons is null) or
+   *  of the given codons around the bases from start to end, searching
+   *  them again unless they were found by the last call.
+   **/
+  private CodonBitmap getWindowCodonBitmap(final StringVector query_codons,
+                                           final int start, final int end)
+  {
+    final int changes;
+    synchronized(this)
+    {
+      final CodonBitmap last =
+        (query_codons == null ? window_stop_codons : window_start_codons);
+      if(last != null && last.getSequenceChanges() == sequence_changes &&
+         last.contains(start, end) &&
+         (query_codons == null || query_codons.equals(last.getQueryCodons())))
+        return last;
+      changes = sequence_changes;
+    }
+
+    final CodonBitmap bitmap = CodonBitmap.makeWindow(getSequence(),
+        query_codons == null ? null : query_codons.copy(),
+        changes, start, end);
+
+    synchronized(this)
+    {
+      if(changes == sequence_changes)
+      {
+        if(query_codons == null)
+          window_stop_codons = bitmap;
+        else
+          window_start_codons = bitmap;
+      }
+    }
+    return bitmap;
+  }
+
+  /**
+   *  Return a count that changes whenever the sequence is changed or
+   *  replaced, e.g. when another contig of an indexed sequence is shown
+   *  (see clearCodonCache()).  Values cached for the sequence are stale if
+   *  this has changed since they were calculated.
+   **/
+  public int getSequenceChanges()
+  {
+    return sequence_changes;
+  }
+
+  /**
+   *  Called before the sequence is changed.
+   **/
+  private synchronized void beginSequenceChange()
+  {
+    ++sequence_changes;
+  }
+
+  /**
+   *  Called after the sequence is changed, or after a change fails.
+   **/
+  private synchronized void endSequenceChange()
+  {
+    ++sequence_changes;
+  }
+
+  /**
+   *  Update the positions of the codons after the bases from start to
+   *  old_end (counting from 0) have been replaced by the bases from start
+   *  to new_end.  Only the codons that overlap the new bases are searched
+   *  again.  This must be called just after endSequenceChange().
+   **/
+  private synchronized void updateCodonBitmaps(final int start,
+                                               final int old_end,
+                                               final int new_end)
+  {
+    stop_codons = updateCodonTask(stop_codons, start, old_end, new_end);
+    start_codons = updateCodonTask(start_codons, start, old_end, new_end);
+
+    startCodonSearch();
+  }
+
+  /**
+   *  Return a finished task for the sequence after a change, or null if the
+   *  given task hasn't finished or didn't search the sequence as it was
+   *  just before the change (so it must be started again).
+   **/
+  private FutureTask<CodonBitmap> updateCodonTask(final FutureTask<CodonBitmap> task,
+                                                  final int start,
+                                                  final int old_end,
+                                                  final int new_end)
+  {
+    if(task == null || !task.isDone())
+      return null;
+
+    final CodonBitmap bitmap;
+    try
+    {
+      bitmap = task.get();
+    }
+    catch(ExecutionException e)
+    {
+      return null;
+    }
+    catch(InterruptedException e)
+    {
+      return null;
     }
 
-    return start_codon_cache;
+    // the change count before the change started
+    if(bitmap == null || bitmap.getSequenceChanges() != sequence_changes - 2)
+      return null;
+
+    return makeFinishedCodonTask(bitmap.update(getSequence(), start,
+                                               old_end, new_end,
+                                               sequence_changes));
   }
 
   /**
-   *  Clear stop codon cache (forward and reverse).
+   *  Clear the stop and start codon positions (forward and reverse).  They
+   *  are searched for again when they are next needed.  Searches that are
+   *  running now are not used because the sequence may have been replaced.
    **/
-  public void clearCodonCache()
+  public synchronized void clearCodonCache()
   {
-    stop_codon_cache = null;
-    start_codon_cache = null;
+    stop_codons = null;
+    start_codons = null;
+    start_codons_query = null;
+    window_stop_codons = null;
+    window_start_codons = null;
+    sequence_changes += 2;
   }
  
 
@@ -546,104 +840,50 @@ public class Bases
     if(range_end_index > sequence_length)
       range_end_index = sequence_length;
 
-    final char sequence_string[] =
-      getSequence().getCharSubSequence(range_start_index, range_end_index);
-
     range_start_index--;
     range_end_index--;
 
-    // whether a codon is a stop codon or not is cached in
-    // 2 bit chuncks (i.e. 4 per byte)
-    int ncurrent_byte;
-    int bit_position;
-    byte bitty;
-
-    final byte[] this_stop_codon_flags = getStopCodonCache();
-    if(direction == FORWARD)
-    {
-    
-      for(int i = range_start_index; i < range_end_index + 1; i += 3)
-      {
-        if(i < 0 || i >= sequence_length-1)
-          continue;
+    if(range_start_index > range_end_index)
+      return return_positions;
 
-        ncurrent_byte = i >> 1 >> 1;
-        bit_position  = i % 4;
+    final CodonBitmap codons =
+      getCodonBitmap(null, range_start_index, range_end_index);
 
-        // determine if codon type is cached or not
-        bitty = (byte) ((this_stop_codon_flags[ncurrent_byte]
-                              >> (2*bit_position) ) & 0x0003);
-        if(bitty == 0)
-        {
-          // not cached yet
-          setCache(range_start_index, range_end_index, sequence_string, i,
-              null, this_stop_codon_flags, ncurrent_byte, bit_position);
-        }
+    // the positions of the codons in the frame are read from the bitmap
+    int i;
+    if(direction == FORWARD)
+      i = codons.nextForward(range_start_index);
+    else
+      i = codons.previousReverse(range_end_index);
 
-        bitty = (byte) ((this_stop_codon_flags[ncurrent_byte]
-                           >> (2*bit_position) ) & 0x0003);
-        if( bitty == 1 || bitty == 3 ) 
-          continue;
+    while(i >= 0)
+    {
+      if(direction == FORWARD ? i > range_end_index : i <= range_start_index + 2)
+        break;
 
-        // if we reach here this is a stop codon
-        if(current_return_array_index == return_positions.length)
-        {
-            // first reallocate the array
-          final int[] new_array =
-            new int[return_positions.length * 3 / 2 + 1];
+      if(current_return_array_index == return_positions.length)
+      {
+        // first reallocate the array
+        final int[] new_array =
+          new int[return_positions.length * 3 / 2 + 1];
 
-          System.arraycopy(return_positions, 0,
-                           new_array, 0,
-                           return_positions.length);
-          return_positions = new_array;
-        }
+        System.arraycopy(return_positions, 0,
+                         new_array, 0,
+                         return_positions.length);
+        return_positions = new_array;
+      }
 
+      if(direction == FORWARD)
+      {
         return_positions[current_return_array_index] = i + 1;
-        ++current_return_array_index;
+        i = codons.nextForward(i + 3);
       }
-    }
-    else
-    {
-      for (int i = range_end_index ; i > range_start_index + 2 ; i -= 3)
+      else
       {
-        if(i < 2 || i >= sequence_length)
-          continue;
-
-        ncurrent_byte = i >> 1 >> 1;
-        bit_position = i % 4;
-        bitty = (byte) ((this_stop_codon_flags[ncurrent_byte]
-                              >> (2*bit_position) ) & 0x0003);
-
-        if(bitty == 0)
-        {
-          // not cached yet
-          setCache(range_start_index, range_end_index, sequence_string, i,
-              null, this_stop_codon_flags, ncurrent_byte, bit_position);
-        }
-
-        bitty = (byte) ((this_stop_codon_flags[ncurrent_byte]
-                           >> (2*bit_position) ) & 0x0003);
-
-        if( bitty == 1 || bitty != 3 )  
-          continue;
-
-        // if we reach here this is a stop codon
-        if(current_return_array_index == return_positions.length)
-        {
-          // first reallocate the array
-          final int[] new_array =
-            new int[return_positions.length * 3 / 2 + 1];
-
-          System.arraycopy(return_positions, 0,
-                           new_array, 0,
-                           return_positions.length);
-          return_positions = new_array;
-        }
-
-        return_positions[current_return_array_index] =
-            sequence_length - i;
-        ++current_return_array_index;
+        return_positions[current_return_array_index] = sequence_length - i;
+        i = (i < 3 ? -1 : codons.previousReverse(i - 3));
       }
+      ++current_return_array_index;
     }
 
     return return_positions;
@@ -688,9 +928,6 @@ public class Bases
     int[][] return_positions = new int[3][array_start_size];
 
     int[] current_return_array_index = new int[3];
-    current_return_array_index[0] = 0;
-    current_return_array_index[1] = 0;
-    current_return_array_index[2] = 0;
 
     int range_start_index = real_range.getStart();
     int range_end_index   = real_range.getEnd();
@@ -710,153 +947,77 @@ public class Bases
  
     range_start_index--;
     range_end_index--;
-    char[] sequence_string = null;
-
-    // whether a codon is a stp codon or not is cached in
-    // 2 bit chuncks (i.e. 4 per byte)
-    int ncurrent_byte;
-    int bit_position;
-    int nframe = 0;
-    byte bitty;
-
-    final byte[] this_forward_codon_flags;
-    // if this is null then searching for stop codons
-    if(query_codons == null)
-      this_forward_codon_flags = getStopCodonCache();
-    else
-      this_forward_codon_flags = getStartCodonCache();
-      
-    for(int i = range_start_index; i < range_end_index+1; i += 1)
-    {
-      if(i < 0 || i >= sequence_length)
-        continue;
 
-      ncurrent_byte = i >> 1 >> 1;
-      bit_position  = i % 4;
+    final CodonBitmap codons =
+      getCodonBitmap(query_codons, range_start_index, range_end_index);
 
-      // determine if codon type is cached or not
-      bitty = (byte) ((this_forward_codon_flags[ncurrent_byte]
-                                >> (2*bit_position) ) & 0x0003);
-        
-      if(bitty == 0)  // not cached yet
-      {
-        if(sequence_string == null)
-          sequence_string = getSequence().getCharSubSequence(range_start_index+1,
-                                                               range_end_index+1);
-
-        setCache(range_start_index, range_end_index, sequence_string, i,
-                 query_codons, this_forward_codon_flags, ncurrent_byte, 
-                 bit_position);
-        bitty = (byte) ((this_forward_codon_flags[ncurrent_byte]
-                                 >> (2*bit_position) ) & 0x0003);
-      }
-
-      if(  bitty == 1 ||                         // not a stop/start codon
-          (direction == FORWARD && bitty == 3) ||
-          (direction != FORWARD && bitty != 3 ))  
-        continue;
+    // only the codons that are wholly inside the range are returned
+    final int first_index;
+    final int last_index;
+    if(direction == FORWARD)
+    {
+      first_index = range_start_index;
+      last_index  = range_end_index - 2;
+    }
+    else
+    {
+      first_index = range_start_index + 2;
+      last_index  = range_end_index;
+    }
 
+    for(int frame_start = first_index;
+        frame_start < first_index + 3 && frame_start <= last_index;
+        ++frame_start)
+    {
+      final int nframe;
       if(direction == FORWARD) 
-        nframe = (i-range_start_index) % 3;
+        nframe = (frame_start-range_start_index) % 3;
       else
-        nframe = (range_end_index-i) % 3;
-      
-      // if we reach here this is a stop/start codon
-      if(current_return_array_index[nframe] == return_positions[nframe].length) 
-      {
-        // first reallocate the array
-        final int[][] new_array =
-            new int[3][return_positions[nframe].length * 3 / 2 + 1];
-
-        for(int j=0; j<3; j++)
-          System.arraycopy(return_positions[j], 0,
-                           new_array[j], 0,
-                           return_positions[j].length);
-        return_positions = new_array;
-      }
+        nframe = (range_end_index-frame_start) % 3;
 
+      int i;
       if(direction == FORWARD)
+        i = codons.nextForward(frame_start);
+      else
+        i = codons.nextReverse(frame_start);
+
+      while(i >= 0 && i <= last_index)
       {
-        if(i==0)
-          return_positions[nframe][current_return_array_index[nframe]] = i + 1;
+        // if we reach here this is a stop/start codon
+        if(current_return_array_index[nframe] == return_positions[nframe].length) 
+        {
+          // first reallocate the array
+          final int[][] new_array =
+              new int[3][return_positions[nframe].length * 3 / 2 + 1];
+
+          for(int j=0; j<3; j++)
+            System.arraycopy(return_positions[j], 0,
+                             new_array[j], 0,
+                             return_positions[j].length);
+          return_positions = new_array;
+        }
+
+        if(direction == FORWARD)
+        {
+          if(i==0)
+            return_positions[nframe][current_return_array_index[nframe]] = i + 1;
+          else
+            return_positions[nframe][current_return_array_index[nframe]] = i;
+          i = codons.nextForward(i + 3);
+        }
         else
-          return_positions[nframe][current_return_array_index[nframe]] = i;
+        {
+          return_positions[nframe][current_return_array_index[nframe]] =
+                sequence_length - i;
+          i = codons.nextReverse(i + 3);
+        }
+        ++current_return_array_index[nframe];
       }
-      else
-        return_positions[nframe][current_return_array_index[nframe]] =
-              sequence_length - i;
-      ++current_return_array_index[nframe];
     }
     
     return return_positions;
   }
 
-  /**
-   * Set the codon cache for forward and reverse strand.
-   * @param range_start_index
-   * @param range_end_index
-   * @param sequence_string
-   * @param i
-   * @param query_codons
-   * @param this_codon_flags
-   * @param ncurrent_byte
-   * @param bit_position
-   */
-  private void setCache(int range_start_index, 
-                        int range_end_index, 
-                        char[] sequence_string, 
-                        int i,
-                        final StringVector query_codons,
-                        final byte[] this_codon_flags,
-                        int ncurrent_byte,
-                        int bit_position)
-  {
-    // test if stop (or start) codon
-    boolean ismatch = false;
-    
-    // forward codon
-    if(i < range_end_index-1)
-      if(query_codons == null)
-        ismatch = isStopCodon(sequence_string[i-range_start_index],
-                              sequence_string[i-range_start_index+1],
-                              sequence_string[i-range_start_index+2]);
-      else
-        ismatch = isCodon(sequence_string[i-range_start_index],
-                          sequence_string[i-range_start_index+1],
-                          sequence_string[i-range_start_index+2],
-                          query_codons);
-
-    if(ismatch)
-    {
-      this_codon_flags[ncurrent_byte] =                // forward strand stop/start = 2
-             (byte)(this_codon_flags[ncurrent_byte] 
-                     | (0x0002 << 2*bit_position));
-    }
-    else
-    {
-      this_codon_flags[ncurrent_byte] =                // cached no stop/start = 1
-        (byte)(this_codon_flags[ncurrent_byte] 
-               | (0x0001 << 2*bit_position));
-    }
-
-    // reverse codon
-    ismatch = false;
-    if(i-range_start_index > 1 && i-range_start_index < sequence_string.length)
-      if(query_codons == null)
-        ismatch = isStopCodon(complement(sequence_string[i-range_start_index]),
-                              complement(sequence_string[i-range_start_index-1]),
-                              complement(sequence_string[i-range_start_index-2]));
-      else
-        ismatch = isCodon(complement(sequence_string[i-range_start_index]),
-                          complement(sequence_string[i-range_start_index-1]),
-                          complement(sequence_string[i-range_start_index-2]),
-                          query_codons);
-    if(ismatch)
-      this_codon_flags[ncurrent_byte] =                // reverse strand stop/start = 3
-             (byte)(this_codon_flags[ncurrent_byte] 
-                     | (0x0003 << 2*bit_position));
-  }
-
   /**
    *  Return the base at the given position.
    **/
@@ -996,6 +1157,57 @@ public class Bases
       return reverseComplement(sub_sequence);
   }
 
+  /**
+   *  Copy a sub sequence of the bases from this object into a buffer
+   *  supplied by the caller.  This gives the same bases as
+   *  getSubSequenceC(Range, int) but does not allocate, so should be used
+   *  by code that is called for every window of a plot.
+   *  @param start The first base of the range.
+   *  @param end The last base of the range.
+   *  @param direction The direction of the sequence.  If REVERSE the range
+   *    is on the reverse strand and the bases are reverse complemented.
+   *  @param dst The end - start + 1 bases are put at the start of this
+   *    array.  Bases outside the sequence are returned as '@'.
+   **/
+  public void getSubSequenceC(final int start, final int end,
+                              final int direction, final char[] dst)
+  {
+    final int real_start;
+    final int real_end;
+
+    if(direction == FORWARD)
+    {
+      real_start = start;
+      real_end   = end;
+    }
+    else
+    {
+      real_start = getComplementPosition(end);
+      real_end   = getComplementPosition(start);
+    }
+
+    final int length = real_end - real_start + 1;
+    final int sub_seq_start_index = Math.max(1, real_start);
+    final int sub_seq_end_index   = Math.min(getLength(), real_end);
+    int count = 0;
+
+    for(int i = real_start; i < sub_seq_start_index && count < length; ++i)
+      dst[count++] = '@';
+
+    if(sub_seq_start_index <= sub_seq_end_index)
+    {
+      getSequence().getCharSubSequence(sub_seq_start_index, sub_seq_end_index,
+                                       dst, count);
+      count += sub_seq_end_index - sub_seq_start_index + 1;
+    }
+
+    while(count < length)
+      dst[count++] = '@';
+
+    if(direction != FORWARD)
+      reverseComplement(dst, 0, length);
+  }
+
   /**
    *  This method truncates the sequence use the start and end of the argument.
    *  @param constraint This contains the start and end base of the new
@@ -1019,8 +1231,6 @@ public class Bases
   public void reverseComplement(final Feature feature)
               throws ReadOnlyException 
   {
-    stop_codon_cache = null;
-   
     final Range range = feature.getMaxRawRange();
     final int range_start_index = range.getStart();
     final int range_end_index   = range.getEnd();
@@ -1055,12 +1265,19 @@ public class Bases
                                                      
     try 
     {
+      beginSequenceChange();
       embl_sequence.setFromChar(new_sequence);
     } 
     catch (IllegalSymbolException e) 
     {
       throw new Error ("internal error - unexpected exception: " + e);
     }
+    finally
+    {
+      endSequenceChange();
+    }
+
+    updateCodonBitmaps(range_start_index - 1, range_end_index, range_end_index);
 
     final SequenceChangeEvent event =
       new SequenceChangeEvent(this, SequenceChangeEvent.CONTIG_REVERSE_COMPLEMENT,
@@ -1073,8 +1290,6 @@ public class Bases
   public void contigRearrange(final Feature feature, final int new_base_pos)
               throws ReadOnlyException
   {
-    stop_codon_cache = null;
-  
     final Range range = feature.getMaxRawRange();
     final int range_start_index = range.getStart();
     final int range_end_index   = range.getEnd();
@@ -1129,12 +1344,22 @@ public class Bases
 
     try 
     { 
+      beginSequenceChange();
       embl_sequence.setFromChar(new_sequence);
     }
     catch (IllegalSymbolException e)  
     {
       throw new Error ("internal error - unexpected exception: " + e);
     }
+    finally
+    {
+      endSequenceChange();
+    }
+
+    // only the bases between the old and new positions of the contig move
+    final int changed_start = Math.min(new_base_pos, range_start_index) - 1;
+    final int changed_end = Math.max(new_base_pos - 1, range_end_index);
+    updateCodonBitmaps(changed_start, changed_end, changed_end);
 
     final SequenceChangeEvent event =
       new SequenceChangeEvent(SequenceChangeEvent.CONTIG_REORDER,
@@ -1153,8 +1378,6 @@ public class Bases
    **/
   public String deleteRange (final Range range)
       throws ReadOnlyException {
-    stop_codon_cache = null;
-
     final String removed_bases =
       getSequence ().getSubSequence (range.getStart (), range.getEnd ());
 
@@ -1164,10 +1387,16 @@ public class Bases
                                      embl_sequence.length ());
 
     try {
+      beginSequenceChange ();
       embl_sequence.setFromChar(new_sequence.toCharArray());
     } catch (IllegalSymbolException e) {
       throw new Error ("internal error - unexpected exception: " + e);
-    } 
+    } finally {
+      endSequenceChange ();
+    }
+
+    updateCodonBitmaps (range.getStart () - 1, range.getEnd (),
+                        range.getStart () - 1);
 
     final SequenceChangeEvent event =
       new SequenceChangeEvent (this,
@@ -1196,8 +1425,6 @@ public class Bases
   public void addBases (final int position, final int direction,
                         final String bases)
       throws ReadOnlyException, IllegalSymbolException {
-    stop_codon_cache = null;
-
     final String new_sequence;
     final int real_position;
     final String real_bases;
@@ -1215,7 +1442,15 @@ public class Bases
       real_bases +
       getSequence ().getSubSequence (real_position, getLength ());
 
-    getSequence ().setFromChar(new_sequence.toCharArray());
+    try {
+      beginSequenceChange ();
+      getSequence ().setFromChar(new_sequence.toCharArray());
+    } finally {
+      endSequenceChange ();
+    }
+
+    updateCodonBitmaps (real_position - 1, real_position - 1,
+                        real_position - 1 + real_bases.length ());
 
     final SequenceChangeEvent event =
       new SequenceChangeEvent (this,
@@ -1375,6 +1610,27 @@ public class Bases
   }
 
 
+  /**
+   *  Reverse complement length bases of the argument in place, starting at
+   *  offset.
+   **/
+  public static void reverseComplement (final char[] sequence_char,
+                                        final int offset, final int length)
+  {
+    int i = offset;
+    int j = offset + length - 1;
+
+    for( ; i < j ; ++i, --j)
+    {
+      final char c = sequence_char[i];
+      sequence_char[i] = complement(sequence_char[j]);
+      sequence_char[j] = complement(c);
+    }
+
+    if(i == j)
+      sequence_char[i] = complement(sequence_char[i]);
+  }
+
   /**
    *  Return a String containing the complement of the argument String.  For
    *  example an argument of "aatc" will result in "ttag".
@@ -1453,7 +1709,7 @@ public class Bases
    *  complement of those three bases is a stop codon.
    *  Codons that contain an X are considered to be stop codons.
    **/
-  private static boolean isCodon(char first_letter, char second_letter, char third_letter,
+  static boolean isCodon(char first_letter, char second_letter, char third_letter,
                                  final StringVector query_codons)
   {
     char[] tran = {first_letter, second_letter, third_letter };
@@ -1472,7 +1728,7 @@ public class Bases
    *  complement of those three bases is a stop codon.
    *  Codons that contain an X are considered to be stop codons.
    **/
-  private static boolean isStopCodon(char first_letter, char second_letter, char third_letter)
+  static boolean isStopCodon(char first_letter, char second_letter, char third_letter)
   {
     // codons that contain an X are considered to be stop codons.
     if(first_letter == 'x' || second_letter == 'x' || third_letter == 'x')
@@ -1547,4 +1803,10 @@ public class Bases
    *  sequence of bases.
    **/
   private Strand reverse_strand;
+
+  /**
+   *  Per thread buffer used by getTranslation() and getSpacedTranslation().
+   **/
+  private static final ThreadLocal<char[]> scratch_buffer =
+    new ThreadLocal<char[]>();
 }
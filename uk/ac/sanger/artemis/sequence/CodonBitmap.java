@@ -0,0 +1,554 @@
+/* CodonBitmap.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis.sequence;
+
+import uk.ac.sanger.artemis.io.Sequence;
+import uk.ac.sanger.artemis.util.StringVector;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  The positions of the stop codons (or of a set of start codons) of a
+ *  sequence in all six frames, held as one bit per codon.  Bit k of the
+ *  forward bitmap of frame f is set if the codon that starts at base 3k+f
+ *  (counting from 0) matches.  Bit k of the reverse bitmap of frame f is set
+ *  if the complement of the bases 3k+f, 3k+f-1 and 3k+f-2 matches.
+ *  <p>
+ *  An object made by makeWindow() only holds the codons of part of the
+ *  sequence, starting at base window_start.  Bit k of its bitmaps is then
+ *  for the codon at base 3k+f+window_start.
+ *  <p>
+ *  Objects of this class are not changed once they are made - update()
+ *  returns a new object for an edited sequence.  Each object records the
+ *  change count (see Bases) of the sequence it was made from.
+ **/
+
+final class CodonBitmap
+{
+  /**
+   *  The number of bases searched by each task when a whole sequence is
+   *  searched.  This is a multiple of 3 * 64 so that each task sets bits in
+   *  different words.
+   **/
+  private static final int CHUNK_SIZE = 3 * 64 * 1024;
+
+  private static ExecutorService executor;
+
+  private static ExecutorService background_executor;
+
+  /** The length of the sequence. */
+  private final int length;
+
+  /**
+   *  The index of the first base of the codons held by this object, a
+   *  multiple of 3.  This is 0 unless the object was made by makeWindow().
+   **/
+  private final int window_start;
+
+  /** The index after the last base of the codons held by this object. */
+  private final int window_end;
+
+  /** The codons to look for or null for stop codons. */
+  private final StringVector query_codons;
+
+  /** The change count of the sequence this object was made from. */
+  private final int sequence_changes;
+
+  /** The bitmaps of the forward codons of each frame. */
+  private final long[][] forward_bits = new long[3][];
+
+  /** The bitmaps of the reverse codons of each frame. */
+  private final long[][] reverse_bits = new long[3][];
+
+  /**
+   *  Whether each forward codon of a, c, g and t matches, indexed by the
+   *  codes of the three bases (see getCode()).
+   **/
+  private final boolean[] forward_table;
+
+  /**
+   *  Whether each reverse codon of a, c, g and t matches, indexed by the
+   *  codes of the three bases in forward order.
+   **/
+  private final boolean[] reverse_table;
+
+  private CodonBitmap(final int length, final int window_start,
+                      final int window_end,
+                      final StringVector query_codons,
+                      final int sequence_changes,
+                      final boolean[] forward_table,
+                      final boolean[] reverse_table)
+  {
+    this.length = length;
+    this.window_start = window_start;
+    this.window_end = window_end;
+    this.query_codons = query_codons;
+    this.sequence_changes = sequence_changes;
+    this.forward_table = forward_table;
+    this.reverse_table = reverse_table;
+
+    final int words = (((window_end - window_start) / 3 + 1) >> 6) + 1;
+    for(int frame = 0; frame < 3; ++frame)
+    {
+      forward_bits[frame] = new long[words];
+      reverse_bits[frame] = new long[words];
+    }
+  }
+
+  /**
+   *  Search the whole of the given sequence.  Long sequences are searched
+   *  in parallel.
+   *  @param query_codons the codons to look for or null to look for stop
+   *    codons.  Each element of this vector should be a string that is 3
+   *    characters long.
+   *  @param sequence_changes the change count of the sequence
+   **/
+  static CodonBitmap make(final Sequence sequence,
+                          final StringVector query_codons,
+                          final int sequence_changes)
+  {
+    return make(sequence, query_codons, sequence_changes,
+                0, sequence.length());
+  }
+
+  /**
+   *  Search the bases of the given sequence from start to end (counting
+   *  from 0) only, rounded out to whole chunks of CHUNK_SIZE bases so that
+   *  nearby ranges can be read from the same object.  Used for sequences
+   *  that are read from a file a page at a time, where searching the whole
+   *  sequence would read all of it.
+   *  @param query_codons the codons to look for or null to look for stop
+   *    codons.
+   *  @param sequence_changes the change count of the sequence
+   **/
+  static CodonBitmap makeWindow(final Sequence sequence,
+                                final StringVector query_codons,
+                                final int sequence_changes,
+                                final int start, final int end)
+  {
+    final int window_start = Math.max(0, start) / CHUNK_SIZE * CHUNK_SIZE;
+    final int window_end =
+      Math.min(sequence.length(),
+               (Math.max(start, end) / CHUNK_SIZE + 1) * CHUNK_SIZE);
+    return make(sequence, query_codons, sequence_changes,
+                window_start, window_end);
+  }
+
+  /**
+   *  Search the bases from window_start (a multiple of 3) to window_end
+   *  of the given sequence.
+   **/
+  private static CodonBitmap make(final Sequence sequence,
+                                  final StringVector query_codons,
+                                  final int sequence_changes,
+                                  final int window_start,
+                                  final int window_end)
+  {
+    final boolean[] forward_table = new boolean[64];
+    final boolean[] reverse_table = new boolean[64];
+    final String bases = "acgt";
+
+    for(int i = 0; i < 64; ++i)
+    {
+      final char first  = bases.charAt(i >> 4);
+      final char second = bases.charAt((i >> 2) & 3);
+      final char third  = bases.charAt(i & 3);
+
+      forward_table[i] = isMatch(first, second, third, query_codons);
+      reverse_table[i] = isMatch(Bases.complement(third),
+                                 Bases.complement(second),
+                                 Bases.complement(first), query_codons);
+    }
+
+    final CodonBitmap bitmap =
+      new CodonBitmap(sequence.length(), window_start, window_end,
+                      query_codons, sequence_changes,
+                      forward_table, reverse_table);
+
+    if(window_end - window_start <= CHUNK_SIZE)
+    {
+      bitmap.search(sequence, window_start, window_end);
+      return bitmap;
+    }
+
+    final List<Callable<Object>> tasks = new Vector<Callable<Object>>();
+    for(int start = window_start; start < window_end; start += CHUNK_SIZE)
+    {
+      final int chunk_start = start;
+      final int chunk_end = Math.min(start + CHUNK_SIZE, window_end);
+      tasks.add(new Callable<Object>()
+      {
+        public Object call()
+        {
+          bitmap.search(sequence, chunk_start, chunk_end);
+          return null;
+        }
+      });
+    }
+
+    try
+    {
+      final List<Future<Object>> results = getExecutor().invokeAll(tasks);
+      for(int i = 0; i < results.size(); i++)
+        results.get(i).get();
+    }
+    catch(ExecutionException e)
+    {
+      throw new Error("internal error - unexpected exception: " + e.getCause());
+    }
+    catch(InterruptedException e)
+    {
+      throw new Error("internal error - unexpected exception: " + e);
+    }
+
+    return bitmap;
+  }
+
+  /**
+   *  Return a CodonBitmap for the given sequence, which is the sequence
+   *  this object was made from with the bases from start to old_end
+   *  replaced by the bases from start to new_end.  Only the codons that
+   *  overlap the new bases are searched; the others are copied from this
+   *  object.
+   *  @param start the index (counting from 0) of the first changed base
+   *  @param old_end the index after the last changed base before the change
+   *  @param new_end the index after the last changed base after the change
+   *  @param sequence_changes the change count of the edited sequence
+   **/
+  CodonBitmap update(final Sequence sequence, final int start,
+                     final int old_end, final int new_end,
+                     final int sequence_changes)
+  {
+    final CodonBitmap bitmap =
+      new CodonBitmap(sequence.length(), 0, sequence.length(),
+                      query_codons, sequence_changes,
+                      forward_table, reverse_table);
+
+    final int search_start = Math.max(0, start - 2);
+    final int search_end = Math.min(bitmap.length, new_end + 2);
+    final int shift = new_end - old_end;
+
+    for(int frame = 0; frame < 3; ++frame)
+    {
+      // the codons before the change
+      final int before_count = Math.max(0, (search_start - frame + 2) / 3);
+      copyBits(forward_bits[frame], 0,
+               bitmap.forward_bits[frame], 0, before_count);
+      copyBits(reverse_bits[frame], 0,
+               bitmap.reverse_bits[frame], 0, before_count);
+
+      // the codons after the change, which may now be in another frame
+      final int after_start = (search_end - frame + 2) / 3;
+      final int after_count =
+        Math.max(0, (bitmap.length - frame + 2) / 3 - after_start);
+      final int old_frame = ((frame - shift) % 3 + 3) % 3;
+      final int old_start = after_start + (frame - shift - old_frame) / 3;
+
+      copyBits(forward_bits[old_frame], old_start,
+               bitmap.forward_bits[frame], after_start, after_count);
+      copyBits(reverse_bits[old_frame], old_start,
+               bitmap.reverse_bits[frame], after_start, after_count);
+    }
+
+    bitmap.search(sequence, search_start, search_end);
+
+    return bitmap;
+  }
+
+  /**
+   *  Return the codons that this object holds the positions of or null if
+   *  it holds the positions of the stop codons.
+   **/
+  StringVector getQueryCodons()
+  {
+    return query_codons;
+  }
+
+  /**
+   *  Return the change count of the sequence this object was made from.
+   **/
+  int getSequenceChanges()
+  {
+    return sequence_changes;
+  }
+
+  /**
+   *  Return the length of the sequence this object was made from.
+   **/
+  int getLength()
+  {
+    return length;
+  }
+
+  /**
+   *  Return true if this object holds the codons at the indices from start
+   *  to end (counting from 0).
+   **/
+  boolean contains(final int start, final int end)
+  {
+    return start >= window_start && (end < window_end || window_end == length);
+  }
+
+  /**
+   *  Return the index of the first matching forward codon at or after the
+   *  given index and in the same frame, or -1 if there are none.
+   **/
+  int nextForward(final int index)
+  {
+    return nextSetBit(forward_bits[index % 3], index);
+  }
+
+  /**
+   *  Return the index of the last base of the first matching reverse codon
+   *  at or after the given index and in the same frame, or -1 if there are
+   *  none.
+   **/
+  int nextReverse(final int index)
+  {
+    return nextSetBit(reverse_bits[index % 3], index);
+  }
+
+  /**
+   *  Return the index of the last base of the last matching reverse codon
+   *  at or before the given index and in the same frame, or -1 if there are
+   *  none.
+   **/
+  int previousReverse(final int index)
+  {
+    if(index < window_start)
+      return -1;
+
+    final int frame = index % 3;
+    final long[] bits = reverse_bits[frame];
+    final int bit = (index - window_start) / 3;
+
+    int word_index = bit >> 6;
+    long word;
+    if(word_index >= bits.length)
+    {
+      word_index = bits.length - 1;
+      word = bits[word_index];
+    }
+    else
+      word = bits[word_index] & (-1L >>> (63 - (bit & 63)));
+
+    while(word == 0)
+    {
+      if(--word_index < 0)
+        return -1;
+      word = bits[word_index];
+    }
+
+    return 3 * ((word_index << 6) + 63 - Long.numberOfLeadingZeros(word)) +
+           frame + window_start;
+  }
+
+  /**
+   *  Return the index of the first codon with its bit set at or after the
+   *  given index and in the same frame, or -1 if there are none.
+   **/
+  private int nextSetBit(final long[] bits, int index)
+  {
+    final int frame = index % 3;
+    if(index < window_start)
+      index += (window_start - index + 2) / 3 * 3;
+    final int bit = (index - window_start) / 3;
+
+    int word_index = bit >> 6;
+    if(word_index >= bits.length)
+      return -1;
+
+    long word = bits[word_index] & (-1L << (bit & 63));
+    while(word == 0)
+    {
+      if(++word_index == bits.length)
+        return -1;
+      word = bits[word_index];
+    }
+
+    return 3 * ((word_index << 6) + Long.numberOfTrailingZeros(word)) +
+           frame + window_start;
+  }
+
+  /**
+   *  Set the bits of the forward and reverse codons at the indices from
+   *  start to end - 1.  The bits must be clear to start with.
+   **/
+  private void search(final Sequence sequence, final int start, final int end)
+  {
+    if(start >= end)
+      return;
+
+    final int first = Math.max(0, start - 2);
+    final int last = Math.min(length - 1, end + 1);
+
+    final char[] bases = new char[last - first + 1];
+    sequence.getCharSubSequence(first + 1, last + 1, bases, 0);
+
+    final int[] codes = new int[bases.length];
+    for(int i = 0; i < bases.length; ++i)
+      codes[i] = getCode(bases[i]);
+
+    for(int i = start; i < end; ++i)
+    {
+      final int j = i - first;
+      final int frame = i % 3;
+      final int bit = (i - window_start) / 3;
+
+      if(i + 2 < length)
+      {
+        final boolean is_match;
+        if((codes[j] | codes[j + 1] | codes[j + 2]) >= 0)
+          is_match = forward_table[codes[j] << 4 | codes[j + 1] << 2 |
+                                   codes[j + 2]];
+        else
+          is_match = isMatch(bases[j], bases[j + 1], bases[j + 2],
+                             query_codons);
+
+        if(is_match)
+          forward_bits[frame][bit >> 6] |= 1L << (bit & 63);
+      }
+
+      if(i >= 2)
+      {
+        final boolean is_match;
+        if((codes[j - 2] | codes[j - 1] | codes[j]) >= 0)
+          is_match = reverse_table[codes[j - 2] << 4 | codes[j - 1] << 2 |
+                                   codes[j]];
+        else
+          is_match = isMatch(Bases.complement(bases[j]),
+                             Bases.complement(bases[j - 1]),
+                             Bases.complement(bases[j - 2]),
+                             query_codons);
+
+        if(is_match)
+          reverse_bits[frame][bit >> 6] |= 1L << (bit & 63);
+      }
+    }
+  }
+
+  /**
+   *  Return 0, 1, 2 or 3 for a, c, g or t and -1 for any other letter.
+   **/
+  private static int getCode(final char base)
+  {
+    switch(base)
+    {
+    case 'a': return 0;
+    case 'c': return 1;
+    case 'g': return 2;
+    case 't': return 3;
+    default:
+      return -1;
+    }
+  }
+
+  private static boolean isMatch(final char first, final char second,
+                                 final char third,
+                                 final StringVector query_codons)
+  {
+    if(query_codons == null)
+      return Bases.isStopCodon(first, second, third);
+    else
+      return Bases.isCodon(first, second, third, query_codons);
+  }
+
+  /**
+   *  Copy count bits from src to dst, which must be clear.
+   **/
+  private static void copyBits(final long[] src, int src_bit,
+                               final long[] dst, int dst_bit, int count)
+  {
+    while(count > 0)
+    {
+      final int n = Math.min(64, count);
+
+      final int src_word = src_bit >> 6;
+      final int src_offset = src_bit & 63;
+      long value = src[src_word] >>> src_offset;
+      if(src_offset != 0 && src_word + 1 < src.length)
+        value |= src[src_word + 1] << (64 - src_offset);
+      if(n < 64)
+        value &= (1L << n) - 1;
+
+      final int dst_word = dst_bit >> 6;
+      final int dst_offset = dst_bit & 63;
+      dst[dst_word] |= value << dst_offset;
+      if(dst_offset != 0 && dst_offset + n > 64)
+        dst[dst_word + 1] |= value >>> (64 - dst_offset);
+
+      src_bit += n;
+      dst_bit += n;
+      count -= n;
+    }
+  }
+
+  /**
+   *  Run the given task on a background thread.
+   **/
+  static synchronized void runInBackground(final Runnable task)
+  {
+    if(background_executor == null)
+    {
+      background_executor = Executors.newSingleThreadExecutor(
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "codon search");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    background_executor.execute(task);
+  }
+
+  private static synchronized ExecutorService getExecutor()
+  {
+    if(executor == null)
+    {
+      executor = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "codon search chunks");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return executor;
+  }
+}
@@ -622,6 +622,40 @@ public class Strand {
     return getBases ().getSubSequenceC (range, FORWARD);
   }
   
+  /**
+   *  Copy a sub-sequence of bases from this strand into a buffer supplied by
+   *  the caller, so that nothing is allocated.
+   *  @param start The first base of the range.
+   *  @param end The last base of the range.
+   *  @param dst The end - start + 1 bases are put at the start of this array.
+   **/
+  public void getSubSequenceC (final int start, final int end,
+                               final char[] dst) {
+    getBases ().getSubSequenceC (start, end, getDirection (), dst);
+  }
+
+  /**
+   *  Copy a sub-sequence of bases from the Bases object that underlies this
+   *  Strand object into a buffer supplied by the caller.
+   *  @param start The first base of the range.
+   *  @param end The last base of the range.
+   *  @param dst The end - start + 1 bases are put at the start of this array.
+   **/
+  public void getRawSubSequenceC (final int start, final int end,
+                                  final char[] dst) {
+    getBases ().getSubSequenceC (start, end, FORWARD, dst);
+  }
+
+  /**
+   *  Return a view of a sub-sequence of bases from this strand.  The bases
+   *  are read from the sequence as they are needed rather than copied.
+   *  @param range The inclusive range of bases to view.
+   **/
+  public SubSequenceView getSubSequenceView (final Range range) {
+    return new SubSequenceView (getBases (), range.getStart (),
+                                range.getEnd (), getDirection ());
+  }
+
   /**
    *  Return a sub-sequence of bases from this Bases object that underlies
    *  this Strand object.  This returns the same as getSubSequence () for
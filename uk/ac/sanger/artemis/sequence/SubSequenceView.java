@@ -0,0 +1,135 @@
+/* SubSequenceView.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright(C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or(at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+package uk.ac.sanger.artemis.sequence;
+
+/**
+ *  A CharSequence view of a range of bases from a Bases object.  The bases
+ *  are not copied out of the underlying Sequence; they are read a block at a
+ *  time as they are asked for, and a REVERSE view complements them as they
+ *  are returned.  Bases outside the sequence are returned as '@', as for
+ *  Bases.getSubSequence().  A view can be moved to a new range with set()
+ *  so that one object can be reused.  A view is not thread safe and should
+ *  not be kept across changes to the sequence.
+ **/
+public class SubSequenceView implements CharSequence
+{
+  private static final int BLOCK_SIZE = 4096;
+  private static final int BLOCK_SLACK = 64;
+
+  private final Bases bases;
+  private int start;
+  private int length;
+  private int direction;
+
+  /** bases from the forward strand starting at block_start */
+  private final char[] block = new char[BLOCK_SIZE];
+  private int block_start = 0;
+  private int block_length = 0;
+
+  /**
+   *  Create a view of the given range of bases.
+   *  @param bases The Bases object to view.
+   *  @param start The first base of the range.
+   *  @param end The last base of the range.
+   *  @param direction FORWARD or REVERSE.  For REVERSE the range is on
+   *    the reverse strand.
+   **/
+  public SubSequenceView(final Bases bases, final int start,
+                         final int end, final int direction)
+  {
+    this.bases = bases;
+    set(start, end, direction);
+  }
+
+  /**
+   *  Move this view to a new range of bases.
+   **/
+  public void set(final int start, final int end, final int direction)
+  {
+    this.start = start;
+    this.length = Math.max(0, end - start + 1);
+    this.direction = direction;
+  }
+
+  public char charAt(final int index)
+  {
+    if(index < 0 || index >= length)
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+
+    final int position;
+    if(direction == Bases.FORWARD)
+      position = start + index;
+    else
+      position = bases.getComplementPosition(start + index);
+
+    if(position < 1 || position > bases.getLength())
+      return '@';
+
+    if(position < block_start || position >= block_start + block_length)
+      readBlock(position);
+
+    final char base = block[position - block_start];
+    if(direction == Bases.FORWARD)
+      return base;
+    return Bases.complement(base);
+  }
+
+  /**
+   *  Read the block of bases containing the given position.  The block is
+   *  placed so that most of it lies in the direction the bases are being
+   *  read in, with a little slack for callers that look back a few bases.
+   **/
+  private void readBlock(final int position)
+  {
+    if(position < block_start)
+      block_start = Math.max(1, position - BLOCK_SIZE + BLOCK_SLACK + 1);
+    else
+      block_start = Math.max(1, position - BLOCK_SLACK);
+
+    final int block_end =
+      Math.min(bases.getLength(), block_start + BLOCK_SIZE - 1);
+    block_length = block_end - block_start + 1;
+    bases.getSequence().getCharSubSequence(block_start, block_end, block, 0);
+  }
+
+  public int length()
+  {
+    return length;
+  }
+
+  public CharSequence subSequence(final int sub_start, final int sub_end)
+  {
+    if(sub_start < 0 || sub_end > length || sub_start > sub_end)
+      throw new IndexOutOfBoundsException(sub_start + ".." + sub_end);
+    return new SubSequenceView(bases, start + sub_start,
+                               start + sub_end - 1, direction);
+  }
+
+  public String toString()
+  {
+    final char[] sub_sequence = new char[length];
+    bases.getSubSequenceC(start, start + length - 1, direction, sub_sequence);
+    return new String(sub_sequence);
+  }
+}
@@ -27,10 +27,17 @@ package uk.ac.sanger.artemis.util;
 import uk.ac.sanger.artemis.Options;
 import uk.ac.sanger.artemis.io.ChadoCanonicalGene;
 import uk.ac.sanger.artemis.io.DocumentEntry;
+import uk.ac.sanger.artemis.io.DatabaseStreamSequence;
+import uk.ac.sanger.artemis.io.FastaStreamSequence;
+import uk.ac.sanger.artemis.io.GFFMisc;
 import uk.ac.sanger.artemis.io.GFFStreamFeature;
+import uk.ac.sanger.artemis.io.Key;
+import uk.ac.sanger.artemis.io.LineGroup;
+import uk.ac.sanger.artemis.io.LineGroupSource;
 import uk.ac.sanger.artemis.io.PartialSequence;
 import uk.ac.sanger.artemis.io.Range;
 import uk.ac.sanger.artemis.io.ReadFormatException;
+import uk.ac.sanger.artemis.io.StreamSequence;
 
 import uk.ac.sanger.artemis.chado.ArtemisUtils;
 import uk.ac.sanger.artemis.chado.ChadoCvTermView;
@@ -40,12 +47,14 @@ import uk.ac.sanger.artemis.chado.IBatisDAO;
 import uk.ac.sanger.artemis.chado.JdbcDAO;
 import uk.ac.sanger.artemis.chado.GmodDAO;
 import uk.ac.sanger.artemis.chado.ChadoTransaction;
+import uk.ac.sanger.artemis.chado.CvTermCache;
 import uk.ac.sanger.artemis.components.database.DatabaseEntrySource;
 import uk.ac.sanger.artemis.components.genebuilder.GeneUtils;
 import uk.ac.sanger.artemis.components.Splash;
 
 import org.gmod.schema.sequence.Feature;
 import org.gmod.schema.sequence.FeatureProp;
+import org.gmod.schema.sequence.FeatureDbXRef;
 import org.gmod.schema.sequence.FeatureLoc;
 import org.gmod.schema.sequence.FeaturePub;
 import org.gmod.schema.sequence.FeatureRelationship;
@@ -79,7 +88,15 @@ import java.util.Vector;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Iterator;
+import java.util.StringTokenizer;
 import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JOptionPane;
 import javax.swing.JPasswordField;
@@ -97,7 +114,14 @@ public class DatabaseDocument extends Document
   /** database schema */
   private String schema = "public";
 
-  private static Hashtable cvterms;
+  private static volatile CvTermCache cvterms;
+
+  /** number of threads reading from the database in parallel */
+  private static final int FETCH_THREADS = 4;
+  private static ExecutorService fetchExecutor;
+
+  /** time taken by each phase of the last commit */
+  private String commitTimings;
   
   private InputStreamProgressListener progress_listener;
 
@@ -612,6 +636,81 @@ public class DatabaseDocument extends Document
     return null;
   }
 
+  /**
+   * When the whole of a source feature is read into one entry return a
+   * LineGroupSource that makes the features directly from the chado
+   * features, rather than writing them as GFF to be read back from
+   * getInputStream(). The residues are read in blocks by
+   * DatabaseStreamSequence.
+   * @return the LineGroupSource or null if this Document should be
+   *         read from getInputStream()
+   */
+  public LineGroupSource getLineGroupSource() throws IOException
+  {
+    if(gff_buff != null || gene_builder || range != null || splitGFFEntry)
+      return null;
+
+    try
+    {
+      final GmodDAO dao = getDAO();
+      try
+      {
+        if(dao instanceof IBatisDAO)
+          ((IBatisDAO) dao).startTransaction();
+
+        logger4j.debug("RETRIEVE SOURCE FEATURE FROM: "+getLocation());
+        Feature srcFeature =
+          dao.getFeatureNoResiduesById(Integer.parseInt(srcFeatureId));
+
+        final StreamSequence sequence;
+        if(srcFeature.getResidues() != null)
+          sequence = new FastaStreamSequence(
+              new String(srcFeature.getResidues()), srcFeature.getUniqueName());
+        else if(srcFeature.getSeqLen() >= 0)
+          sequence = new DatabaseStreamSequence(dao, srcFeature.getFeatureId(),
+              srcFeature.getUniqueName(), srcFeature.getSeqLen());
+        else
+        {
+          srcFeature = dao.getFeatureById(Integer.parseInt(srcFeatureId));
+          sequence = new FastaStreamSequence(
+              new String(srcFeature.getResidues()), srcFeature.getUniqueName());
+        }
+
+        final ChadoFeatures features = new ChadoFeatures(dao, srcFeature);
+
+        if(dao instanceof IBatisDAO)
+          ((IBatisDAO) dao).commitTransaction();
+
+        return new ChadoLineGroupSource(features, sequence);
+      }
+      finally
+      {
+        if(dao instanceof IBatisDAO)
+          ((IBatisDAO) dao).endTransaction();
+      }
+    }
+    catch(RuntimeException re)
+    {
+      JOptionPane.showMessageDialog(null, "Problems Reading...\n" +
+          re.getMessage(),
+          "Problems Reading From the Database ",
+          JOptionPane.ERROR_MESSAGE);
+      
+      re.printStackTrace();
+      throw new IOException(re.getMessage());
+    }
+    catch(java.sql.SQLException sqlExp)
+    {
+      JOptionPane.showMessageDialog(null, "Problems Reading...\n" +
+          sqlExp.getMessage(),
+          "Problems Reading From the Database ",
+          JOptionPane.ERROR_MESSAGE);
+      
+      sqlExp.printStackTrace();
+      throw new IOException(sqlExp.getMessage());
+    }
+  }
+
   /**
    * 
    * Called (by DatabaseEntrySource) to retrieve all the documents for each
@@ -655,132 +754,327 @@ public class DatabaseDocument extends Document
   private ByteBuffer[] getGff(final GmodDAO dao, 
                               final Feature srcFeature)
   {
-    //final int srcfeature_id = Integer.parseInt(srcFeatureId);
-    
-    logger4j.debug("BUILD GFF FEATURES");
-    
-    // build srcfeature object
-    FeatureLoc featureloc = new FeatureLoc();
-    featureloc.setFeatureBySrcFeatureId(srcFeature);
-    Feature child = new Feature();
-    
-    // ignore match_part (BLAST HSPs)
-    CvTerm cvTerm;
-    try
-    {
-      cvTerm = getCvTermByCvAndCvTerm("match_part", "sequence");
-    }
-    catch(NullPointerException ne)
-    {
-      cvTerm = dao.getCvTermByNameAndCvName("match_part", "sequence");
-    }
-    
-    child.setFeatureLoc(featureloc);
-    child.setAnalysis(false);
-    child.setCvTerm(cvTerm);
-    
-    final List featList = dao.getFeaturesByLocatedOnFeature(child);
+    final ChadoFeatures features = new ChadoFeatures(dao, srcFeature);
     final ByteBuffer[] buffers = new ByteBuffer[TYPES.length + 1];
     for(int i = 0; i < buffers.length; i++)
       buffers[i] = new ByteBuffer();
-    
-    ByteBuffer this_buff;
-
-    int feature_size = featList.size();
-    final Hashtable id_store = new Hashtable(feature_size);
 
-    // build feature store
+    // create gff byte stream
+    final int feature_size = features.size();
     for(int i = 0; i < feature_size; i++)
-    {
-      Feature feat = (Feature)featList.get(i);
-      id_store.put(Integer.toString(feat.getFeatureId()), feat);
+    { 
+      // select buffer based on feature type
+      final Feature feat = features.get(i);
+      features.appendGff(feat, buffers[features.getTypeIndex(feat)]);
+       
+      if( i%10 == 0 || i == feature_size-1)
+        progress_listener.progressMade("Read from database: " + 
+                                       feat.getUniqueName());
     }
+
+    logger4j.debug(cvterms);
+    return buffers;
+  }
+
+  /**
+   * The features located on a source feature together with the dbxrefs,
+   * synonyms etc. needed to write them as GFF.
+   */
+  private class ChadoFeatures
+  {
+    private final GmodDAO dao;
+    private final Feature srcFeature;
+    private final List featList;
+    private final Hashtable id_store;
+    private final Hashtable dbxrefs;
+    private final Hashtable synonym;
+    private final Hashtable featureCvTerms;
+    private final Hashtable featureCvTermDbXRefs;
+    private final Hashtable featureCvTermPubs;
+    private final Hashtable featurePubs;
+    private final List pubDbXRefs;
+
+    private ChadoFeatures(final GmodDAO dao, final Feature srcFeature)
+    {
+      this.dao = dao;
+      this.srcFeature = srcFeature;
+
+      logger4j.debug("BUILD GFF FEATURES");
     
-    if(lazyFeatureLoad)
-      idFeatureStore = id_store;
-    
-    // get all dbrefs & synonyms etc
-    final Hashtable dbxrefs;
-    final Hashtable synonym;
-    final Hashtable featureCvTerms;
-    final Hashtable featureCvTermDbXRefs;
-    Hashtable featureCvTermPubs = null;
-    final Hashtable featurePubs;
-    final List pubDbXRefs;
+      // build srcfeature object
+      FeatureLoc featureloc = new FeatureLoc();
+      featureloc.setFeatureBySrcFeatureId(srcFeature);
+      Feature child = new Feature();
     
-    if(lazyFeatureLoad)
-    {
-      dbxrefs = null;
-      synonym = null;
-      featureCvTerms = null;
-      featureCvTermDbXRefs = null;
-      featureCvTermPubs = null;
-      featurePubs = null;
-      pubDbXRefs = null;
-    }
-    else
-    {
-      dbxrefs= IBatisDAO.mergeDbXRef(
-        dao.getFeatureDbXRefsBySrcFeature(srcFeature));
-      synonym = getAllFeatureSynonyms(
-        dao.getFeatureSynonymsBySrcFeature(srcFeature));
-      featureCvTerms = getFeatureCvTermsByFeature(dao, 
-        dao.getFeatureCvTermsBySrcFeature(srcFeature));
-      featureCvTermDbXRefs = getFeatureCvTermDbXRef(dao, 
-        dao.getFeatureCvTermDbXRefBySrcFeature(srcFeature));
-      
+      // ignore match_part (BLAST HSPs)
+      CvTerm cvTerm;
       try
       {
-        featureCvTermPubs = getFeatureCvTermPub(dao, 
-          dao.getFeatureCvTermPubBySrcFeature(srcFeature));
-      } 
-      catch(Exception e) 
-      { 
-        e.printStackTrace();
-        if(dao instanceof IBatisDAO)
+        cvTerm = getCvTermByCvAndCvTerm("match_part", "sequence");
+      }
+      catch(NullPointerException ne)
+      {
+        cvTerm = dao.getCvTermByNameAndCvName("match_part", "sequence");
+      }
+    
+      child.setFeatureLoc(featureloc);
+      child.setAnalysis(false);
+      child.setCvTerm(cvTerm);
+    
+      featList = dao.getFeaturesByLocatedOnFeature(child);
+
+      int feature_size = featList.size();
+      id_store = new Hashtable(feature_size);
+
+      // build feature store
+      for(int i = 0; i < feature_size; i++)
+      {
+        Feature feat = (Feature)featList.get(i);
+        id_store.put(Integer.toString(feat.getFeatureId()), feat);
+      }
+    
+      if(lazyFeatureLoad)
+        idFeatureStore = id_store;
+    
+      // get all dbrefs & synonyms etc
+      if(lazyFeatureLoad)
+      {
+        dbxrefs = null;
+        synonym = null;
+        featureCvTerms = null;
+        featureCvTermDbXRefs = null;
+        featureCvTermPubs = null;
+        featurePubs = null;
+        pubDbXRefs = null;
+      }
+      else
+      {
+        // these are independent so with iBatis they are read in parallel,
+        // each on its own connection from the pool
+        final Future fDbxrefs = fetch(dao, new Callable()
         {
-          try
+          public Object call()
           {
-            ((IBatisDAO) dao).endTransaction();
-            ((IBatisDAO) dao).startTransaction();
+            return IBatisDAO.mergeDbXRef(
+                dao.getFeatureDbXRefsBySrcFeature(srcFeature));
           }
-          catch(SQLException sqle){}  
-        }
+        });
+        final Future fSynonym = fetch(dao, new Callable()
+        {
+          public Object call()
+          {
+            return getAllFeatureSynonyms(
+                dao.getFeatureSynonymsBySrcFeature(srcFeature));
+          }
+        });
+        final Future fFeatureCvTerms = fetch(dao, new Callable()
+        {
+          public Object call()
+          {
+            return getFeatureCvTermsByFeature(dao, 
+                dao.getFeatureCvTermsBySrcFeature(srcFeature));
+          }
+        });
+        final Future fFeatureCvTermDbXRefs = fetch(dao, new Callable()
+        {
+          public Object call()
+          {
+            return getFeatureCvTermDbXRef(dao, 
+                dao.getFeatureCvTermDbXRefBySrcFeature(srcFeature));
+          }
+        });
+        final Future fFeatureCvTermPubs = fetch(dao, new Callable()
+        {
+          public Object call()
+          {
+            try
+            {
+              return getFeatureCvTermPub(dao, 
+                  dao.getFeatureCvTermPubBySrcFeature(srcFeature));
+            } 
+            catch(Exception e) 
+            { 
+              e.printStackTrace();
+              return null;
+            }
+          }
+        });
+        final Future fFeaturePubs = fetch(dao, new Callable()
+        {
+          public Object call()
+          {
+            return getFeaturePubs(dao,
+                dao.getFeaturePubsBySrcFeature(srcFeature));
+          }
+        });
+        final Future fPubDbXRefs = fetch(dao, new Callable()
+        {
+          public Object call()
+          {
+            return dao.getPubDbXRef();
+          }
+        });
+
+        dbxrefs = (Hashtable)getFetched(fDbxrefs);
+        synonym = (Hashtable)getFetched(fSynonym);
+        featureCvTerms = (Hashtable)getFetched(fFeatureCvTerms);
+        featureCvTermDbXRefs = (Hashtable)getFetched(fFeatureCvTermDbXRefs);
+        featureCvTermPubs = (Hashtable)getFetched(fFeatureCvTermPubs);
+        featurePubs = (Hashtable)getFetched(fFeaturePubs);
+        pubDbXRefs = (List)getFetched(fPubDbXRefs);
       }
-      featurePubs = getFeaturePubs(dao,
-          dao.getFeaturePubsBySrcFeature(srcFeature));
-      pubDbXRefs= dao.getPubDbXRef();
     }
-    
-    // create gff byte stream
-    for(int i = 0; i < feature_size; i++)
-    { 
-      // select buffer based on feature type
-      Feature feat = (Feature)featList.get(i);
+
+    private int size()
+    {
+      return featList.size();
+    }
+
+    private Feature get(final int i)
+    {
+      return (Feature)featList.get(i);
+    }
+
+    /**
+     * Return the index of the entry a feature goes in, 0 for the main
+     * entry or i+1 for the i'th entry in TYPES.
+     */
+    private int getTypeIndex(final Feature feat)
+    {
       int type_id = feat.getCvTerm().getCvTermId();
       String typeName = getCvtermName(type_id, dao, gene_builder);
-      this_buff = buffers[0];
+      int index = 0;
 
       for(int j = 0; j < TYPES.length; j++)
       {
         for(int k=0; k<TYPES[j][1].length; k++)
           if(TYPES[j][1][k].equals(typeName))
-            this_buff = buffers[j+1];
+            index = j+1;
       }
+      return index;
+    }
 
+    /**
+     * Append the GFF line for a feature to a buffer.
+     */
+    private void appendGff(final Feature feat, final ByteBuffer buff)
+    {
       chadoToGFF(feat, srcFeature.getUniqueName(),
                  dbxrefs, synonym, featureCvTerms,
                  pubDbXRefs, featureCvTermDbXRefs, featureCvTermPubs,
                  featurePubs,
                  id_store, dao, 
-                 feat.getFeatureLoc(), this_buff, gene_builder);
-       
-      if( i%10 == 0 || i == feature_size-1)
-        progress_listener.progressMade("Read from database: " + 
-                                       feat.getUniqueName());
+                 feat.getFeatureLoc(), buff, gene_builder);
     }
 
-    return buffers;
+    /**
+     * Make the GFFStreamFeature for a feature, without going through the
+     * GFF line.
+     */
+    private GFFStreamFeature makeFeature(final Feature feat)
+         throws ReadFormatException
+    {
+      return chadoToGFFRecord(feat, srcFeature.getUniqueName(),
+                 dbxrefs, synonym, featureCvTerms,
+                 pubDbXRefs, featureCvTermDbXRefs, featureCvTermPubs,
+                 featurePubs,
+                 id_store, dao, 
+                 feat.getFeatureLoc(), gene_builder).makeFeature();
+    }
+  }
+
+  /**
+   * Makes the LineGroups of a whole source feature for
+   * getLineGroupSource(). The features are made from the chado objects
+   * BATCH_SIZE at a time, in the order they would be in the text from
+   * getInputStream(), followed by the sequence.
+   */
+  private class ChadoLineGroupSource implements LineGroupSource
+  {
+    private static final int BATCH_SIZE = 100;
+
+    private final ChadoFeatures features;
+    private final int order[];
+    private int next = 0;
+
+    private final Vector batch = new Vector();
+    private int batchIndex = 0;
+
+    private LineGroup sequence;
+
+    private ChadoLineGroupSource(final ChadoFeatures features,
+                                 final StreamSequence sequence)
+         throws IOException
+    {
+      this.features = features;
+      this.sequence = sequence;
+
+      // features grouped by the entry they go in, as in getInputStream()
+      final int feature_size = features.size();
+      final int typeIndex[] = new int[feature_size];
+      final int typeStart[] = new int[TYPES.length + 2];
+      for(int i = 0; i < feature_size; i++)
+      {
+        typeIndex[i] = features.getTypeIndex(features.get(i));
+        typeStart[typeIndex[i] + 1]++;
+      }
+      for(int i = 1; i < typeStart.length; i++)
+        typeStart[i] += typeStart[i-1];
+
+      order = new int[feature_size];
+      for(int i = 0; i < feature_size; i++)
+        order[typeStart[typeIndex[i]]++] = i;
+
+      batch.add(makeMisc("##gff-version 3"));
+      batch.add(makeMisc("##sequence-region " +
+          features.srcFeature.getUniqueName() + " 1 " + sequence.length()));
+    }
+
+    private LineGroup makeMisc(final String line) throws IOException
+    {
+      return new GFFMisc(new LinePushBackReader(new StringReader(line)));
+    }
+
+    public LineGroup readNextLineGroup() throws IOException
+    {
+      if(batchIndex >= batch.size())
+        readBatch();
+
+      if(batchIndex < batch.size())
+        return (LineGroup)batch.get(batchIndex++);
+
+      final LineGroup last = sequence;
+      sequence = null;
+      return last;
+    }
+
+    /**
+     * Make the features for the next BATCH_SIZE chado features.
+     */
+    private void readBatch() throws IOException
+    {
+      batch.clear();
+      batchIndex = 0;
+      if(next >= order.length)
+        return;
+
+      final int end = Math.min(next + BATCH_SIZE, order.length);
+      Feature feat = null;
+      for(; next < end; next++)
+      {
+        feat = features.get(order[next]);
+        batch.add(features.makeFeature(feat));
+      }
+      progress_listener.progressMade("Read from database: " + 
+                                     feat.getUniqueName());
+    }
+
+    public void close()
+    {
+      batch.clear();
+      sequence = null;
+      logger4j.debug(cvterms);
+    }
   }
 
   /**
@@ -1231,6 +1525,39 @@ public class DatabaseDocument extends Document
                                  final FeatureLoc featureloc,
                                  final ByteBuffer this_buff,
                                  final boolean gene_builder)
+  {
+    chadoToGFFRecord(feat, parentFeature, dbxrefs, synonym, featureCvTerms,
+                     pubDbXRefs, featureCvTermDbXRefs, featureCvTermPubs,
+                     featurePubs, id_store, dao, featureloc,
+                     gene_builder).append(this_buff);
+  }
+
+  /**
+   * Convert the chado feature into the columns and attributes of a GFF line
+   * @param feat           Chado feature
+   * @param parentFeature  parent of this feature
+   * @param dbxrefs        hashtable containing dbxrefs
+   * @param synonym        hashtable containing synonynms
+   * @param featureCvTerms
+   * @param pubDbXRefs
+   * @param featureCvTermDbXRefs
+   * @param id_store       id store for looking up parent names
+   * @param dao            chado data access
+   * @param featureloc     feature location for this chado feature
+   */
+  private static GFFRecord chadoToGFFRecord(final Feature feat,
+                                            final String parentFeature,
+                                            final Hashtable dbxrefs,
+                                            final Hashtable synonym,
+                                            final Hashtable featureCvTerms,
+                                            final List pubDbXRefs,
+                                            final Hashtable featureCvTermDbXRefs,
+                                            final Hashtable featureCvTermPubs,
+                                            final Hashtable featurePubs,
+                                            final Hashtable id_store,
+                                            final GmodDAO dao,
+                                            final FeatureLoc featureloc,
+                                            final boolean gene_builder)
   {
     String gff_source = null;
     
@@ -1261,7 +1588,7 @@ public class DatabaseDocument extends Document
     }
     else */
     
-    ByteBuffer clusterOrthoParalog = null;
+    Vector clusterOrthoParalog = null;
     if(feat.getFeatureRelationshipsForSubjectId() != null)
     {
       Collection relations = feat.getFeatureRelationshipsForSubjectId();
@@ -1299,11 +1626,11 @@ public class DatabaseDocument extends Document
         else
         {
           if(clusterOrthoParalog == null)
-            clusterOrthoParalog = new ByteBuffer();
+            clusterOrthoParalog = new Vector();
           // ortholog/paralog/cluster data
           int orthologueFeature = fr.getFeatureByObjectId().getFeatureId();
-          clusterOrthoParalog.append(cvTermName+"="+
-              GFFStreamFeature.encode("object_id="+orthologueFeature+"; rank="+fr.getRank())+";");
+          clusterOrthoParalog.add(new String[] { cvTermName,
+              GFFStreamFeature.encode("object_id="+orthologueFeature+"; rank="+fr.getRank()) });
         }
       }
     }
@@ -1330,57 +1657,55 @@ public class DatabaseDocument extends Document
       }
     }
 
-    this_buff.append(parentFeature + "\t"); // seqid
+    final GFFRecord record = new GFFRecord();
+    record.seqid = parentFeature;
     
     if(gff_source != null)
-      this_buff.append(gff_source+"\t");    // source
+      record.source = gff_source;
     else
-      this_buff.append("chado\t");
+      record.source = "chado";
     
     if(typeName.equals("exon"))
-      this_buff.append(EXONMODEL + "\t");   // type
+      record.type = EXONMODEL;
     else
-      this_buff.append(typeName + "\t");    // type
-    this_buff.append(fmin + "\t");          // start
-    this_buff.append(fmax + "\t");          // end
-    this_buff.append(".\t");                // score
-    if(strand.equals( new Short((short)-1)) )                        // strand
-      this_buff.append("-\t");
+      record.type = typeName;
+    record.start = fmin;
+    record.end   = fmax;
+    if(strand.equals( new Short((short)-1)) )
+      record.strand = "-";
     else if(strand.equals( new Short((short)1)) )
-      this_buff.append("+\t");
+      record.strand = "+";
     else
-      this_buff.append(".\t");
+      record.strand = ".";
 
-    if(phase == null)
-      this_buff.append(".\t");               // phase
-    else
-      this_buff.append(phase+"\t"); 
+    if(phase != null)
+      record.phase = phase.toString(); 
 
-    this_buff.append("ID=" + name + ";");
-    this_buff.append("feature_id=" + featureId.toString() + ";");
+    record.add("ID", name);
+    record.add("feature_id", featureId.toString());
     
     if(feat.getName() != null)
-      this_buff.append("Name=" + feat.getName() + ";");
+      record.add("Name", feat.getName());
    
     if(parent_id != null && !parent_id.equals("0"))
     {
       if(parent_relationship.equals("derives_from"))
-        this_buff.append("Derives_from=" + parent_id + ";");
+        record.add("Derives_from", parent_id);
       else
-        this_buff.append("Parent=" + parent_id + ";");
+        record.add("Parent", parent_id);
     }
 
-    this_buff.append("timelastmodified=" + timelastmodified + ";");
-    this_buff.append("isObsolete=" + Boolean.toString(feat.isObsolete()) + ";");
+    record.add("timelastmodified", timelastmodified);
+    record.add("isObsolete", Boolean.toString(feat.isObsolete()));
     
     if(featureloc.isFminPartial())
-      this_buff.append("isFminPartial;");
+      record.add("isFminPartial", null);
     if(featureloc.isFmaxPartial())
-      this_buff.append("isFmaxPartial;");
+      record.add("isFmaxPartial", null);
     // this is the chado feature_relationship.rank used
     // to order joined features e.g. exons
     if(rank > -1)
-      this_buff.append("feature_relationship_rank="+rank+";"); 
+      record.add("feature_relationship_rank", Integer.toString(rank)); 
 
     //this_buff.append("feature_id="+feature_id+";");
     
@@ -1398,43 +1723,41 @@ public class DatabaseDocument extends Document
         if(qualifier_name == null)
           continue;
         if(featprop.getValue() != null)
-          this_buff.append(GFFStreamFeature.encode(qualifier_name)+ "=" +
-                           GFFStreamFeature.encode(featprop.getValue())+";");
+          record.add(GFFStreamFeature.encode(qualifier_name),
+                     GFFStreamFeature.encode(featprop.getValue()));
         else
-          this_buff.append(GFFStreamFeature.encode(qualifier_name)+";");
+          record.add(GFFStreamFeature.encode(qualifier_name), null);
       }
     }
 
     if(clusterOrthoParalog != null)
-      this_buff.append(clusterOrthoParalog);
+    {
+      for(int j=0; j<clusterOrthoParalog.size(); j++)
+      {
+        final String[] cluster = (String[])clusterOrthoParalog.get(j);
+        record.add(cluster[0], cluster[1]);
+      }
+    }
     
     // append dbxrefs
-    boolean foundPrimaryDbXRef = false;
+    final StringBuffer dbxref_buff = new StringBuffer();
     if(feat.getDbXRef() != null)
-    {
-      this_buff.append("Dbxref=");
-      this_buff.append(GFFStreamFeature.encode(
+      dbxref_buff.append(GFFStreamFeature.encode(
           feat.getDbXRef().getDb().getName()+":"+feat.getDbXRef().getAccession()));
-      foundPrimaryDbXRef = true;
-      if(dbxref == null || dbxref.size() == 0)
-        this_buff.append(";");
-    }
     
     if(dbxref != null && dbxref.size() > 0)
     {
-      if(foundPrimaryDbXRef)
-        this_buff.append(",");
-      else
-        this_buff.append("Dbxref=");
       for(int j=0; j<dbxref.size(); j++)
       {
-        this_buff.append(GFFStreamFeature.encode((String)dbxref.get(j)));
-        if(j<dbxref.size()-1)
-          this_buff.append(",");
+        if(dbxref_buff.length() > 0)
+          dbxref_buff.append(",");
+        dbxref_buff.append(GFFStreamFeature.encode((String)dbxref.get(j)));
       }
-      this_buff.append(";");
     }
     
+    if(feat.getDbXRef() != null || (dbxref != null && dbxref.size() > 0))
+      record.add("Dbxref", dbxref_buff.toString());
+    
     // append synonyms
     if(synonym != null &&
        synonym.containsKey(featureId))
@@ -1445,15 +1768,12 @@ public class DatabaseDocument extends Document
       {
         alias = (FeatureSynonym)v_synonyms.get(j);
         
-        this_buff.append( getCvtermName(alias.getSynonym().getCvTerm().getCvTermId(), dao, gene_builder) + "=" );
-        //this_buff.append(alias.getSynonym().getCvterm().getName()+"=");
-        this_buff.append(alias.getSynonym().getName());
-        
+        String alias_name = alias.getSynonym().getName();
         if(!alias.isCurrent())
-          this_buff.append(GFFStreamFeature.encode(";current=false"));
+          alias_name += GFFStreamFeature.encode(";current=false");
         
-        //if(j<v_synonyms.size()-1)
-        this_buff.append(";");
+        record.add(getCvtermName(alias.getSynonym().getCvTerm().getCvTermId(), dao, gene_builder),
+                   alias_name);
       }
     }
     
@@ -1466,9 +1786,7 @@ public class DatabaseDocument extends Document
       for(int j=0; j<v_featurePubs.size(); j++)
       {
         featurePub = (FeaturePub)v_featurePubs.get(j);
-        this_buff.append( "literature=" );
-        this_buff.append(featurePub.getPub().getUniqueName());
-        this_buff.append(";");
+        record.add("literature", featurePub.getPub().getUniqueName());
       }
     }
     
@@ -1494,13 +1812,119 @@ public class DatabaseDocument extends Document
         if(featureCvTermPubs != null)
           featureCvTermPubList = (List)featureCvTermPubs.get(featureCvTermId);
           
-        appendControlledVocabulary(this_buff, dao, feature_cvterm,
+        final ByteBuffer cv_buff = new ByteBuffer();
+        appendControlledVocabulary(cv_buff, dao, feature_cvterm,
                                    featureCvTermDbXRefList,featureCvTermPubList, pubDbXRefs, gene_builder);
+        record.add(new String(cv_buff.getBytes()));
       }
-      //System.out.println(new String(this_buff.getBytes()));
     }
       
-    this_buff.append("\n");
+    return record;
+  }
+
+  /**
+   * The columns and attributes of the GFF line for a chado feature.  The
+   * attribute names and values are held escaped, as they are written in
+   * the GFF line.
+   */
+  private static class GFFRecord
+  {
+    private String seqid;
+    private String source;
+    private String type;
+    private int start;
+    private int end;
+    private String strand;
+    private String phase = ".";
+
+    private final Vector names = new Vector();
+    private final Vector values = new Vector();
+
+    /**
+     * Add an attribute, with a null value if it has no value.
+     */
+    private void add(final String name, final String value)
+    {
+      names.add(name);
+      values.add(value);
+    }
+
+    /**
+     * Add an attribute written as "name=value;".
+     */
+    private void add(final String attribute)
+    {
+      int length = attribute.length();
+      if(attribute.endsWith(";"))
+        length--;
+      final int index = attribute.indexOf('=');
+      if(index < 0)
+        add(attribute.substring(0, length), null);
+      else
+        add(attribute.substring(0, index), attribute.substring(index+1, length));
+    }
+
+    /**
+     * Append the GFF line to a buffer.
+     */
+    private void append(final ByteBuffer buff)
+    {
+      buff.append(seqid + "\t");    // seqid
+      buff.append(source + "\t");   // source
+      buff.append(type + "\t");     // type
+      buff.append(start + "\t");    // start
+      buff.append(end + "\t");      // end
+      buff.append(".\t");           // score
+      buff.append(strand + "\t");   // strand
+      buff.append(phase + "\t");    // phase
+
+      for(int i=0; i<names.size(); i++)
+      {
+        buff.append((String)names.get(i));
+        if(values.get(i) != null)
+          buff.append("=" + (String)values.get(i));
+        buff.append(";");
+      }
+      buff.append("\n");
+    }
+
+    /**
+     * Make the feature with the unescaped attribute values, as
+     * GFFStreamFeature would from the GFF line.
+     */
+    private GFFStreamFeature makeFeature() throws ReadFormatException
+    {
+      final Hashtable attributes = new Hashtable();
+      for(int i=0; i<names.size(); i++)
+      {
+        final String name = GFFStreamFeature.decode((String)names.get(i)).trim();
+        final StringVector att_values = new StringVector();
+
+        if(values.get(i) != null)
+        {
+          final String value =
+            GFFStreamFeature.decode((String)values.get(i)).trim();
+          if(name.equals("Dbxref") || name.equals("Alias"))
+          {
+            final StringTokenizer stok = new StringTokenizer(value, ",");
+            while(stok.hasMoreTokens())
+              att_values.add(stok.nextToken());
+          }
+          else
+            att_values.add(value);
+        }
+
+        if(attributes.get(name) != null) 
+          ((StringVector)attributes.get(name)).add(att_values);
+        else 
+          attributes.put(name, att_values);
+      }
+
+      return new GFFStreamFeature(
+          (seqid == null ? null : GFFStreamFeature.decode(seqid)), source,
+          new Key(type), start, end, strand.equals("-"), ".", phase,
+          attributes);
+    }
   }
   
   /**
@@ -1785,12 +2209,12 @@ public class DatabaseDocument extends Document
    */
   public static Integer getCvtermID(final String name)
   {
-    Enumeration enum_cvterm = cvterms.keys();
-    while(enum_cvterm.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while(it.hasNext())
     {
-      Integer key = (Integer)enum_cvterm.nextElement();
-      if(name.equalsIgnoreCase( ((CvTerm)cvterms.get(key)).getName() ))
-        return key;
+      final CvTerm cvterm = it.next();
+      if(name.equalsIgnoreCase( cvterm.getName() ))
+        return new Integer(cvterm.getCvTermId());
     }
     return null;
   }
@@ -1819,7 +2243,7 @@ public class DatabaseDocument extends Document
     if(cvterms == null)
       getCvterms(dao);
 
-    return (CvTerm)cvterms.get(new Integer(id));
+    return cvterms.get(id, dao);
   }
   
   /**
@@ -1829,10 +2253,10 @@ public class DatabaseDocument extends Document
    */
   public static CvTerm getCvTermByCvTermName(final String cvterm_name)
   {
-    Enumeration enum_cvterm = cvterms.elements();
-    while(enum_cvterm.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while(it.hasNext())
     {
-      CvTerm cvterm = (CvTerm)enum_cvterm.nextElement();
+      CvTerm cvterm = it.next();
       if(cvterm_name.equalsIgnoreCase( cvterm.getName() ))
         return cvterm;
     }
@@ -1866,15 +2290,7 @@ public class DatabaseDocument extends Document
       }
     }
     
-    Enumeration enum_cvterm = cvterms.elements();
-    while(enum_cvterm.hasMoreElements())
-    {
-      CvTerm cvterm = (CvTerm)enum_cvterm.nextElement();
-      if(cvterm.getCvTermId() == cvTermId)
-        return cvterm;
-    }
-    
-    return null;
+    return cvterms.get(cvTermId);
   }
   
   /**
@@ -1886,15 +2302,7 @@ public class DatabaseDocument extends Document
   public static CvTerm getCvTermByCvAndCvTerm(final String cvterm_name,
                                               final String cvName)
   {
-    final Enumeration enum_cvterm = cvterms.elements();
-    while(enum_cvterm.hasMoreElements())
-    {
-      final CvTerm cvterm = (CvTerm)enum_cvterm.nextElement();
-      if(cvName.equals( cvterm.getCv().getName() ) &&
-         cvterm_name.equals( cvterm.getName() ))
-        return cvterm;
-    }
-    return null;
+    return cvterms.get(cvName, cvterm_name);
   }
 
   /**
@@ -1908,10 +2316,10 @@ public class DatabaseDocument extends Document
   public static CvTerm getCvTermByCvPartAndCvTerm(final String cvterm_name,
                                               final String cvName)
   {
-    Enumeration enum_cvterm = cvterms.elements();
-    while(enum_cvterm.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while(it.hasNext())
     {
-      CvTerm cvterm = (CvTerm)enum_cvterm.nextElement();
+      CvTerm cvterm = it.next();
       if(cvterm.getCv().getName().startsWith( cvName ) &&
          cvterm_name.equals( cvterm.getName() ))
         return cvterm;
@@ -1919,23 +2327,15 @@ public class DatabaseDocument extends Document
     return null;
   }
   /**
-   * Look up cvterms names and id and return in a hashtable.
+   * Look up cvterms names and id and store them in the cvterm cache.
    * @param dao the data access object
-   * @return    the cvterm <code>Hashtable</code>
+   * @return    the cvterm cache
    */
-  private static Hashtable getCvterms(final GmodDAO dao)
+  private static CvTermCache getCvterms(final GmodDAO dao)
   {
     try
     {
-      final List cvterm_list = dao.getCvTerms();
-      final Iterator it = cvterm_list.iterator();
-      cvterms = new Hashtable(cvterm_list.size());
-
-      while(it.hasNext())
-      {
-        final CvTerm cvterm = (CvTerm)it.next();
-        cvterms.put(new Integer(cvterm.getCvTermId()), cvterm);
-      }
+      cvterms = new CvTermCache(dao.getCvTerms());
     }
     catch(RuntimeException sqle)
     {
@@ -2006,11 +2406,10 @@ public class DatabaseDocument extends Document
   {
     final Vector cvterm_match = new Vector();
     
-    Enumeration enum_cvterm = cvterms.keys();
-    while(enum_cvterm.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while(it.hasNext())
     {
-      Integer key = (Integer)enum_cvterm.nextElement();
-      CvTerm cvterm = (CvTerm)cvterms.get(key);
+      CvTerm cvterm = it.next();
       
       if(cvterm.getCv().getName().startsWith(cv_name))
       {
@@ -2032,11 +2431,10 @@ public class DatabaseDocument extends Document
   
   public static CvTerm getCvtermFromGoId(final String goId)
   {
-    Enumeration enum_cvterm = cvterms.keys();
-    while (enum_cvterm.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while (it.hasNext())
     {
-      Integer key = (Integer) enum_cvterm.nextElement();
-      CvTerm cvTerm = (CvTerm) cvterms.get(key);
+      CvTerm cvTerm = it.next();
 
       if(cvTerm.getCv().getName().equals("molecular_function") ||
          cvTerm.getCv().getName().equals("biological_process") ||
@@ -2078,10 +2476,10 @@ public class DatabaseDocument extends Document
     if(cvControledCuratioNames != null)
       return cvControledCuratioNames;
     cvControledCuratioNames = new Vector();
-    final Enumeration enum_cvterm = cvterms.elements();
-    while(enum_cvterm.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while(it.hasNext())
     {
-      final CvTerm cvTerm = (CvTerm)enum_cvterm.nextElement();
+      final CvTerm cvTerm = it.next();
       final String cvNameStr = cvTerm.getCv().getName();
       
       if(cvNameStr.startsWith(DatabaseDocument.CONTROLLED_CURATION_TAG_CVNAME) && 
@@ -2118,10 +2516,10 @@ public class DatabaseDocument extends Document
     }
     
     Vector synonym_names = new Vector();
-    Enumeration cvterm_enum = cvterms.elements();
-    while(cvterm_enum.hasMoreElements())
+    final Iterator<CvTerm> it = cvterms.getCvTerms().iterator();
+    while(it.hasNext())
     {
-      CvTerm cvterm = (CvTerm)cvterm_enum.nextElement();
+      CvTerm cvterm = it.next();
       if(cvterm.getCv().getName().equals(cv_name))
         synonym_names.add(cvterm.getName());
     }
@@ -2135,7 +2533,7 @@ public class DatabaseDocument extends Document
     final GmodDAO dao = getDAOOnly();
     dao.persist(cvTerm);
     cvTerm = dao.getCvTermByNameAndCvName(cvTerm.getName(), cvTerm.getCv().getName());
-    cvterms.put(new Integer(cvTerm.getCvTermId()), cvTerm);
+    cvterms.put(cvTerm);
   }
   
   /**
@@ -2732,7 +3130,9 @@ public class DatabaseDocument extends Document
 
   /**
    * Commit the <code>ChadoTransaction</code> SQL back to the
-   * database.
+   * database. Unless forced, runs of transactions of the same type on
+   * the same table that only write (see isBatchable()) are sent in JDBC
+   * batches. The order of the transactions is not changed.
    * @param sql the collection of <code>ChadoTransaction</code> objects
    * @return
    */
@@ -2744,8 +3144,15 @@ public class DatabaseDocument extends Document
     final Hashtable featureIdStore = new Hashtable();
     boolean useTransactions = false;
 
+    // start time of each phase of the commit
+    final long phaseStart[] = new long[5];
+    int nphase = 0;
+    int nbatch = 0;
+    commitTimings = null;
+
     try
     {
+      phaseStart[nphase++] = System.currentTimeMillis();
       dao = getDAO();
       
       if(!force && dao instanceof IBatisDAO)
@@ -2790,24 +3197,40 @@ public class DatabaseDocument extends Document
         }
       }  
 
+      phaseStart[nphase++] = System.currentTimeMillis();
       final Timestamp ts = new Timestamp(new java.util.Date().getTime());
       //
       // commit to database
-      for(ncommit = 0; ncommit < sql.size(); ncommit++)
+      ncommit = 0;
+      while(ncommit < sql.size())
       {
-        try
+        final int runEnd = getRunEnd(sql, ncommit);
+
+        if(!force && runEnd - ncommit > 1 &&
+           isBatchable((ChadoTransaction) sql.get(ncommit)))
         {
-          ChadoTransaction tsn = (ChadoTransaction) sql.get(ncommit);
-          commitChadoTransaction(tsn, dao, ts);
+          ncommit = commitBatch(sql, ncommit, runEnd, dao, ts);
+          nbatch++;
+          continue;
         }
-        catch (RuntimeException re)
+
+        for(; ncommit < runEnd; ncommit++)
         {
-          if(!force)
-            throw re;
-          logger4j.warn(constructExceptionMessage(re, sql, ncommit));
-          logger4j.warn("NOW TRYING TO CONTINUE TO COMMIT");
+          try
+          {
+            ChadoTransaction tsn = (ChadoTransaction) sql.get(ncommit);
+            commitChadoTransaction(tsn, dao, ts);
+          }
+          catch (RuntimeException re)
+          {
+            if(!force)
+              throw re;
+            logger4j.warn(constructExceptionMessage(re, sql, ncommit));
+            logger4j.warn("NOW TRYING TO CONTINUE TO COMMIT");
+          }
         }
       }
+      phaseStart[nphase++] = System.currentTimeMillis();
 
       //
       // update timelastmodified timestamp
@@ -2876,6 +3299,7 @@ public class DatabaseDocument extends Document
         gff_feature.setLastModified(ts);
       }
 
+      phaseStart[nphase++] = System.currentTimeMillis();
       final String nocommit = System.getProperty("nocommit");
       if( useTransactions && 
           (nocommit == null || nocommit.equals("false")))
@@ -2905,6 +3329,8 @@ public class DatabaseDocument extends Document
     }
     catch (RuntimeException re)
     {
+      if(re instanceof BatchException)
+        ncommit = ((BatchException) re).index;
       final String msg = constructExceptionMessage(re, sql, ncommit);
       JOptionPane.showMessageDialog(null, msg,
           "Problems Writing to Database ",
@@ -2921,6 +3347,13 @@ public class DatabaseDocument extends Document
           logger4j.debug("END TRANSACTION");
         }
         catch(SQLException e){ e.printStackTrace(); }
+
+      if(nphase > 0)
+      {
+        phaseStart[nphase++] = System.currentTimeMillis();
+        commitTimings = getCommitTimings(phaseStart, nphase, sql.size(), nbatch);
+        logger4j.debug("COMMIT TIMINGS " + commitTimings);
+      }
     }
     
     if(featureIdStore != null)
@@ -2928,6 +3361,133 @@ public class DatabaseDocument extends Document
         
     return ncommit;
   }
+
+  /**
+   * Return the time taken by each phase of the last commit().
+   * @return the timings, or null
+   */
+  public String getCommitTimings()
+  {
+    return commitTimings;
+  }
+
+  private static String getCommitTimings(final long phaseStart[],
+                                         final int nphase,
+                                         final int ntransactions,
+                                         final int nbatch)
+  {
+    final String phaseNames[] = { "check timestamps",
+        "write " + ntransactions + " change(s) in " + nbatch + " batch(es)",
+        "update timestamps", "commit" };
+    final StringBuffer buff = new StringBuffer();
+    for(int i = 1; i < nphase; i++)
+    {
+      if(i > 1)
+        buff.append(", ");
+      buff.append(phaseNames[i-1] + " " +
+          (phaseStart[i] - phaseStart[i-1]) + " ms");
+    }
+    return buff.toString();
+  }
+
+  /**
+   * Return the index after the run of transactions, from start, that are
+   * of the same type and on the same table.
+   */
+  private static int getRunEnd(final Vector sql, final int start)
+  {
+    final ChadoTransaction first = (ChadoTransaction) sql.get(start);
+    if(first.getFeatureObject() == null)
+      return start+1;
+
+    int end = start+1;
+    while(end < sql.size())
+    {
+      final ChadoTransaction tsn = (ChadoTransaction) sql.get(end);
+      if(tsn.getType() != first.getType() ||
+         tsn.getFeatureObject() == null ||
+         tsn.getFeatureObject().getClass() != first.getFeatureObject().getClass())
+        break;
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Transactions that are a single write, which does not need any of the
+   * writes before it to be read back and which nothing else needs to
+   * read back until the end of the batch, can be sent in a JDBC batch.
+   */
+  private static boolean isBatchable(final ChadoTransaction tsn)
+  {
+    final Object featureObject = tsn.getFeatureObject();
+    if(featureObject instanceof FeatureProp)
+      return true;
+
+    if(tsn.getType() != ChadoTransaction.DELETE)
+      return false;
+    return featureObject.getClass() == Feature.class ||
+           featureObject instanceof FeatureDbXRef ||
+           featureObject instanceof FeaturePub ||
+           featureObject instanceof FeatureRelationship;
+  }
+
+  /**
+   * Commit a run of transactions in a JDBC batch.
+   * @return the index after the run
+   */
+  private int commitBatch(final Vector sql, final int start, final int end,
+                          final GmodDAO dao, final Timestamp ts)
+  {
+    logger4j.debug("BATCH OF " + (end-start) + " " +
+        ((ChadoTransaction) sql.get(start)).getLogComment());
+    dao.startBatch();
+    int i = start;
+    try
+    {
+      for(; i < end; i++)
+        commitChadoTransaction((ChadoTransaction) sql.get(i), dao, ts);
+    }
+    catch(RuntimeException re)
+    {
+      // send the writes before the failed one, as they would have been
+      // without batching, so that the batch is not left open
+      try
+      {
+        dao.executeBatch();
+      }
+      catch(RuntimeException e)
+      {
+        throw new BatchException(e, start);
+      }
+      throw new BatchException(re, i);
+    }
+    try
+    {
+      dao.executeBatch();
+    }
+    catch(RuntimeException re)
+    {
+      // which of the batch failed is not known
+      throw new BatchException(re, start);
+    }
+    return end;
+  }
+
+  /**
+   * Thrown when a transaction in a batch fails.
+   */
+  private static class BatchException extends RuntimeException
+  {
+    private static final long serialVersionUID = 1L;
+    private final int index;
+
+    BatchException(final RuntimeException cause, final int index)
+    {
+      super(cause.getMessage(), cause);
+      this.index = index;
+    }
+  }
   
   /**
    * Get the uniquenames involved in a transaction
@@ -3390,6 +3950,62 @@ public class DatabaseDocument extends Document
     } 
   }
   
+  /**
+   * Start reading something from the database. With iBatis this is done
+   * by the fetch thread pool, using a separate connection from the
+   * connection pool, otherwise it is done now.
+   */
+  private static Future fetch(final GmodDAO dao, final Callable callable)
+  {
+    if(dao instanceof IBatisDAO)
+      return getFetchExecutor().submit(callable);
+
+    final FutureTask task = new FutureTask(callable);
+    task.run();
+    return task;
+  }
+
+  /**
+   * Wait for and return the result of fetch().
+   */
+  private static Object getFetched(final Future future)
+  {
+    try
+    {
+      return future.get();
+    }
+    catch(ExecutionException e)
+    {
+      if(e.getCause() instanceof RuntimeException)
+        throw (RuntimeException)e.getCause();
+      if(e.getCause() instanceof Error)
+        throw (Error)e.getCause();
+      throw new RuntimeException(e.getCause());
+    }
+    catch(InterruptedException e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static synchronized ExecutorService getFetchExecutor()
+  {
+    if(fetchExecutor == null)
+    {
+      fetchExecutor = Executors.newFixedThreadPool(FETCH_THREADS,
+          new ThreadFactory()
+          {
+            public Thread newThread(Runnable r)
+            {
+              Thread t = new Thread(r, "Chado fetch");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return fetchExecutor;
+  }
+
   class CvTermThread extends Thread 
   {
     private GmodDAO dao;
@@ -27,6 +27,8 @@ package uk.ac.sanger.artemis.util;
 
 import java.io.*;
 
+import uk.ac.sanger.artemis.io.LineGroupSource;
+
 /**
  *  Each object of this class represents a file/directory on the server (when
  *  the program is running as an applet) or a file/directory in the current
@@ -120,6 +122,17 @@ public abstract class Document
     return line_push_push_reader;
   }
 
+  /**
+   *  Return an object that makes the LineGroups of this Document directly,
+   *  rather than writing them as text to be read back with
+   *  getLinePushBackReader().  This version returns null, meaning that the
+   *  Document must be read as text.
+   **/
+  public LineGroupSource getLineGroupSource() throws IOException 
+  {
+    return null;
+  }
+
   /**
    *  Add listener that will be passed to the ProgressInputStream constructor
    *  when getInputStream () is called.
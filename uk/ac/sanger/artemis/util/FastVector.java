@@ -53,6 +53,20 @@ public class FastVector extends ArrayList
     return super.add(object);
   }
 
+  /**
+   *  Add an object to the end of the vector without the check that add()
+   *  makes for an object that is already in the vector, which takes time
+   *  in proportion to the size of the vector.  The caller must make sure
+   *  that the object isn't already in the vector.
+   **/
+  public void addElementAtEnd(final Object object)
+  {
+    if(object == null) 
+      throw new Error("internal error - adding a null object");
+
+    super.add(object);
+  }
+
   /**
    *  Performs the same function as Vector.lastElement()
    **/
@@ -131,8 +131,11 @@ public class FileDocument extends Document {
       new FileOutputStream (write_file);
 
     if (write_file.getName ().endsWith (".gz")) {
-      // assume this file should be gzipped
-      return new java.util.zip.GZIPOutputStream (file_output_stream);
+      // assume this file should be gzipped - the compressed output is
+      // written in large blocks rather than the default 512 bytes
+      final int GZIP_BUFFER_SIZE = 65536;
+      return new java.util.zip.GZIPOutputStream (file_output_stream,
+                                                 GZIP_BUFFER_SIZE);
     } else {
       return file_output_stream;
     }
@@ -0,0 +1,153 @@
+/* SnapshotFile.java
+ *
+ * created: 2010
+ *
+ * This file is part of Artemis
+ *
+ * Copyright (C) 2010  Genome Research Limited
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ */
+
+package uk.ac.sanger.artemis.util;
+
+import uk.ac.sanger.artemis.Options;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *  The files that binary copies of text files are kept in.  The copy of
+ *  file_name is written next to it as .file_name followed by a suffix, and
+ *  copies are only used when an option is set.  Used by the entry
+ *  snapshots (.snap) and the binary comparison files (.cmp).
+ **/
+
+public class SnapshotFile
+{
+  /** The option that turns these snapshots on. */
+  private final String option_name;
+
+  /** The suffix of the snapshot file names. */
+  private final String suffix;
+
+  /**
+   *  Writes the contents of a snapshot.
+   **/
+  public interface Contents
+  {
+    /**
+     *  Write the snapshot to the given stream.  The stream is closed by
+     *  the caller so anything buffered must be flushed before returning.
+     **/
+    void writeTo(final FileOutputStream out) throws IOException;
+  }
+
+  /**
+   *  Create a new SnapshotFile.
+   *  @param option_name The option that must be set for the snapshots to
+   *    be read and written.
+   *  @param suffix The suffix of the snapshot file names, for example
+   *    ".snap".
+   **/
+  public SnapshotFile(final String option_name, final String suffix)
+  {
+    this.option_name = option_name;
+    this.suffix = suffix;
+  }
+
+  /**
+   *  Return true if the option for these snapshots is set.
+   **/
+  public boolean isEnabled()
+  {
+    return Options.getOptions().getPropertyTruthValue(option_name);
+  }
+
+  /**
+   *  Return the snapshot file for a text file.
+   **/
+  public File getSnapshotFile(final File file)
+  {
+    final File dir = file.getAbsoluteFile().getParentFile();
+    return new File(dir, "." + file.getName() + suffix);
+  }
+
+  /**
+   *  Return the File of a Document or null if it isn't a FileDocument.
+   **/
+  public static File getFile(final Document document)
+  {
+    if(document instanceof FileDocument)
+      return ((FileDocument) document).getFile();
+    return null;
+  }
+
+  /**
+   *  Map the whole file.
+   **/
+  public static ByteBuffer map(final File file) throws IOException
+  {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      final FileChannel channel = raf.getChannel();
+      if(channel.size() > Integer.MAX_VALUE)
+        throw new IOException("file is too large: " + file);
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  /**
+   *  Write a file to a temporary file and then rename it, so that a reader
+   *  never sees a partly written file.
+   **/
+  public static void write(final File file, final Contents contents)
+      throws IOException
+  {
+    final File tmp_file =
+      new File(file.getAbsoluteFile().getParentFile(),
+               file.getName() + ".tmp");
+    final FileOutputStream out = new FileOutputStream(tmp_file);
+
+    try
+    {
+      contents.writeTo(out);
+      out.close();
+    }
+    catch(IOException e)
+    {
+      out.close();
+      tmp_file.delete();
+      throw e;
+    }
+
+    file.delete();
+    if(!tmp_file.renameTo(file))
+    {
+      tmp_file.delete();
+      throw new IOException("could not rename " + tmp_file);
+    }
+  }
+}